@@ -12,6 +12,7 @@ import javafx.scene.layout.BorderPane;
 import javafx.scene.layout.HBox;
 import javafx.stage.Stage;
 
+import com.myapp.util.FrameScope;
 import org.bytedeco.opencv.global.opencv_imgproc;
 import org.bytedeco.opencv.global.opencv_core;
 import org.bytedeco.opencv.opencv_core.Mat;
@@ -82,29 +83,34 @@ public class CameraUI extends Application {
 
         timer = Executors.newSingleThreadScheduledExecutor();
         timer.scheduleAtFixedRate(() -> {
-            Mat frame = new Mat();
-            if (!capture.read(frame) || frame.empty()) return;
-
-            Mat gray = new Mat();
-            opencv_imgproc.cvtColor(frame, gray, opencv_imgproc.COLOR_BGR2GRAY);
-            RectVector faces = new RectVector();
-            if (faceDetector != null) faceDetector.detectMultiScale(gray, faces);
-
-            for (int i = 0; i < faces.size(); i++) {
-                Rect r = faces.get(i);
-                opencv_imgproc.rectangle(frame, r, new org.bytedeco.opencv.opencv_core.Scalar(0, 255, 0, 0));
-                Mat face = new Mat(gray, r);
-                String res = recognizer.predict(face);
-                if (res != null) {
-                    opencv_imgproc.putText(frame, res, new org.bytedeco.opencv.opencv_core.Point(r.x(), Math.max(r.y()-10, 10)), opencv_imgproc.FONT_HERSHEY_SIMPLEX, 0.8, new org.bytedeco.opencv.opencv_core.Scalar(0,255,0,0));
-                }
-            }
+            // Frame, gray copy, faces and drawing objects are freed at the end of each tick
+            FrameScope.run(this::processFrame);
+        }, 0, 33, TimeUnit.MILLISECONDS); // ~30 FPS
+    }
 
-            Image fxImage = matToImage(frame);
-            if (fxImage != null) {
-                Platform.runLater(() -> imageView.setImage(fxImage));
+    private void processFrame() {
+        Mat frame = new Mat();
+        if (!capture.read(frame) || frame.empty()) return;
+
+        Mat gray = new Mat();
+        opencv_imgproc.cvtColor(frame, gray, opencv_imgproc.COLOR_BGR2GRAY);
+        RectVector faces = new RectVector();
+        if (faceDetector != null) faceDetector.detectMultiScale(gray, faces);
+
+        for (int i = 0; i < faces.size(); i++) {
+            Rect r = faces.get(i);
+            opencv_imgproc.rectangle(frame, r, new org.bytedeco.opencv.opencv_core.Scalar(0, 255, 0, 0));
+            Mat face = new Mat(gray, r);
+            String res = recognizer.predict(face);
+            if (res != null) {
+                opencv_imgproc.putText(frame, res, new org.bytedeco.opencv.opencv_core.Point(r.x(), Math.max(r.y()-10, 10)), opencv_imgproc.FONT_HERSHEY_SIMPLEX, 0.8, new org.bytedeco.opencv.opencv_core.Scalar(0,255,0,0));
             }
-        }, 0, 33, TimeUnit.MILLISECONDS); // ~30 FPS
+        }
+
+        Image fxImage = matToImage(frame);
+        if (fxImage != null) {
+            Platform.runLater(() -> imageView.setImage(fxImage));
+        }
     }
 
     private void stopCamera() {
@@ -3,6 +3,9 @@ package com.myapp;
 import com.myapp.service.DeepLearningAttendanceService;
 import com.myapp.ml.DeepLearningRecognizer;
 import com.myapp.ml.DeepLearningTrainer;
+import com.myapp.ml.DnnTuning;
+import com.myapp.ml.EmbeddingCompactor;
+import com.myapp.ml.EmbeddingMigrator;
 import com.myapp.model.Attendance;
 import com.myapp.dao.RecognitionLogDAO;
 
@@ -20,6 +23,15 @@ public class DeepLearningMain {
 
         printBanner();
 
+        // Benchmark DNN backends/threads once per machine before any net is loaded
+        DnnTuning.calibrateIfNeeded();
+
+        // Prune students trained before the embedding limit, without blocking the menu
+        EmbeddingCompactor.startInBackground();
+
+        // Re-embed with the configured new model (if any) while recognition stays on the current one
+        EmbeddingMigrator.startInBackground();
+
         while (running) {
             printMenu();
             System.out.print("Enter your choice: ");
@@ -0,0 +1,533 @@
+package com.myapp.config;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.Properties;
+
+/**
+ * Recognition configuration manager
+ * Loads tuning options for face matching from recognition.properties.
+ * Every option has a built-in default, so the file is optional.
+ */
+public class RecognitionConfig {
+    private static final String CONFIG_FILE = "recognition.properties";
+    private static Properties properties;
+
+    // Default configuration
+    private static final double DEFAULT_THRESHOLD = 0.6;
+    private static final boolean DEFAULT_RERANK_ENABLED = true;
+    private static final int DEFAULT_RERANK_TOP_K = 5;
+    private static final String DEFAULT_MATCHER = "exact";
+    private static final String DEFAULT_HNSW_INDEX_PATH = "models/gallery/hnsw_centroids.idx";
+    private static final int DEFAULT_HNSW_M = 16;
+    private static final int DEFAULT_HNSW_EF_CONSTRUCTION = 200;
+    private static final int DEFAULT_HNSW_EF_SEARCH = 64;
+    private static final String DEFAULT_GALLERY_QUANTIZATION = "int8";
+    private static final int DEFAULT_PQ_SUBSPACES = 32;
+    private static final String DEFAULT_GALLERY_SNAPSHOT_PATH = "models/gallery/gallery.snap";
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 20000;
+    private static final int DEFAULT_BINARY_BITS = 256;
+    private static final int DEFAULT_BINARY_SHORTLIST = 100;
+    private static final int DEFAULT_MAX_EMBEDDINGS_PER_STUDENT = 20;
+    private static final int DEFAULT_SHARD_TIMEOUT_MS = 200;
+    private static final int DEFAULT_SHARD_RETRY_MS = 5000;
+    private static final double DEFAULT_MIGRATION_IMAGES_PER_SECOND = 2.0;
+    private static final int DEFAULT_PCA_DIMENSIONS = 48;
+    private static final int DEFAULT_PCA_SHORTLIST = 64;
+    private static final int DEFAULT_INFERENCE_BATCH_SIZE = 16;
+    private static final int DEFAULT_TRACKER_DETECT_INTERVAL = 5;
+    private static final double DEFAULT_TRACKER_IOU_THRESHOLD = 0.3;
+    private static final int DEFAULT_TRACKER_MAX_MISSED = 2;
+    private static final double DEFAULT_TRACKER_LOST_DIFFERENCE = 40.0;
+    private static final double DEFAULT_TRACKER_FINALIZE_CONFIDENCE = 0.8;
+    private static final int DEFAULT_TRACKER_MIN_VOTES = 3;
+    private static final double DEFAULT_TRACKER_VOTE_SHARE = 0.6;
+    private static final int DEFAULT_TRACKER_REFINE_INTERVAL = 10;
+    private static final int DEFAULT_TRACKER_MAX_RECOGNITIONS = 5;
+    private static final int DEFAULT_MOTION_WIDTH = 160;
+    private static final int DEFAULT_MOTION_PIXEL_THRESHOLD = 25;
+    private static final double DEFAULT_MOTION_MIN_AREA = 0.002;
+    private static final double DEFAULT_MOTION_BACKGROUND_RATE = 0.05;
+    private static final int DEFAULT_MOTION_IDLE_SECONDS = 30;
+    private static final double DEFAULT_MOTION_IDLE_FPS = 2.0;
+    private static final int DEFAULT_LATENCY_BUDGET_MS = 100;
+    private static final int DEFAULT_TARGET_FPS = 30;
+
+    static {
+        loadProperties();
+    }
+
+    /**
+     * Load recognition properties from file (defaults are used if missing)
+     */
+    private static void loadProperties() {
+        properties = new Properties();
+        try (FileInputStream fis = new FileInputStream(CONFIG_FILE)) {
+            properties.load(fis);
+        } catch (IOException e) {
+            // No file: built-in defaults apply
+        }
+    }
+
+    /**
+     * Minimum cosine similarity for a positive match
+     */
+    public static double getRecognitionThreshold() {
+        return getDouble("recognition.threshold", DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * Whether the top centroid candidates are re-ranked against individual embeddings
+     */
+    public static boolean isRerankEnabled() {
+        return getBoolean("recognition.rerank.enabled", DEFAULT_RERANK_ENABLED);
+    }
+
+    /**
+     * Number of centroid candidates passed to the re-rank stage
+     */
+    public static int getRerankTopK() {
+        return getInt("recognition.rerank.topK", DEFAULT_RERANK_TOP_K);
+    }
+
+    /**
+     * Candidate search strategy: exact, hnsw or binary
+     */
+    public static String getMatcher() {
+        return properties.getProperty("recognition.matcher", DEFAULT_MATCHER).trim();
+    }
+
+    /**
+     * Where the HNSW centroid index is persisted
+     */
+    public static String getHnswIndexPath() {
+        return properties.getProperty("recognition.hnsw.indexPath", DEFAULT_HNSW_INDEX_PATH);
+    }
+
+    /**
+     * HNSW links per node (higher = better recall, more memory)
+     */
+    public static int getHnswM() {
+        return getInt("recognition.hnsw.M", DEFAULT_HNSW_M);
+    }
+
+    /**
+     * HNSW beam width while building
+     */
+    public static int getHnswEfConstruction() {
+        return getInt("recognition.hnsw.efConstruction", DEFAULT_HNSW_EF_CONSTRUCTION);
+    }
+
+    /**
+     * HNSW beam width while searching (higher = better recall, slower)
+     */
+    public static int getHnswEfSearch() {
+        return getInt("recognition.hnsw.efSearch", DEFAULT_HNSW_EF_SEARCH);
+    }
+
+    /**
+     * Run the exact scan next to HNSW and report recall/top-1 agreement
+     */
+    public static boolean isHnswVerifyEnabled() {
+        return getBoolean("recognition.hnsw.verify", false);
+    }
+
+    /**
+     * Bits per binary hash code (rounded up to a multiple of 64)
+     */
+    public static int getBinaryHashBits() {
+        return getInt("recognition.binary.bits", DEFAULT_BINARY_BITS);
+    }
+
+    /**
+     * Students kept by the Hamming prefilter for exact scoring
+     */
+    public static int getBinaryShortlist() {
+        return getInt("recognition.binary.shortlist", DEFAULT_BINARY_SHORTLIST);
+    }
+
+    /**
+     * Run the exact scan next to the binary prefilter and report recall/latency
+     */
+    public static boolean isBinaryVerifyEnabled() {
+        return getBoolean("recognition.binary.verify", false);
+    }
+
+    /**
+     * Resident form of the gallery embeddings: int8 (scalar) or pq (product
+     * quantization) codes on the heap with the float32 rows memory-mapped,
+     * or none for float32 rows on the heap; final scores always come from
+     * the float32 rows
+     */
+    public static String getGalleryQuantization() {
+        return properties.getProperty("recognition.gallery.quantization", DEFAULT_GALLERY_QUANTIZATION).trim();
+    }
+
+    /**
+     * Product quantization subspaces (bytes per embedding)
+     */
+    public static int getPqSubspaces() {
+        return getInt("recognition.pq.subspaces", DEFAULT_PQ_SUBSPACES);
+    }
+
+    /**
+     * Whether large galleries scan PCA-projected centroids before the full-dimension re-score
+     */
+    public static boolean isPcaEnabled() {
+        return getBoolean("recognition.pca.enabled", false);
+    }
+
+    /**
+     * Principal components kept by the PCA projection (32-64 for 128-d FaceNet)
+     */
+    public static int getPcaDimensions() {
+        return getInt("recognition.pca.dimensions", DEFAULT_PCA_DIMENSIONS);
+    }
+
+    /**
+     * Candidates from the projected scan re-scored at full dimension
+     */
+    public static int getPcaShortlist() {
+        return getInt("recognition.pca.shortlist", DEFAULT_PCA_SHORTLIST);
+    }
+
+    /**
+     * Whether the gallery is persisted to (and started from) a snapshot file
+     */
+    public static boolean isGallerySnapshotEnabled() {
+        return getBoolean("recognition.gallery.snapshot.enabled", true);
+    }
+
+    /**
+     * Where the gallery snapshot file is kept
+     */
+    public static String getGallerySnapshotPath() {
+        return properties.getProperty("recognition.gallery.snapshot.path", DEFAULT_GALLERY_SNAPSHOT_PATH);
+    }
+
+    /**
+     * Whether large gallery scans are split across fork/join workers
+     */
+    public static boolean isParallelMatchingEnabled() {
+        return getBoolean("recognition.parallel.enabled", true);
+    }
+
+    /**
+     * Minimum number of scanned rows before a scan goes parallel
+     */
+    public static int getParallelThreshold() {
+        return getInt("recognition.parallel.threshold", DEFAULT_PARALLEL_THRESHOLD);
+    }
+
+    /**
+     * Worker threads for parallel scans (0 = common fork/join pool)
+     */
+    public static int getParallelThreads() {
+        return getInt("recognition.parallel.threads", 0);
+    }
+
+    /**
+     * Encoding of newly stored embedding BLOBs: float16 (half size) or float32
+     */
+    public static String getEmbeddingStorageFormat() {
+        return properties.getProperty("recognition.embedding.storageFormat", "float16").trim();
+    }
+
+    /**
+     * Representative embeddings kept per student at training time (0 = keep all)
+     */
+    public static int getMaxEmbeddingsPerStudent() {
+        return getInt("recognition.prune.maxEmbeddings", DEFAULT_MAX_EMBEDDINGS_PER_STUDENT);
+    }
+
+    /**
+     * Whether existing students are pruned to the limit in the background
+     */
+    public static boolean isCompactionEnabled() {
+        return getBoolean("recognition.prune.compaction", true);
+    }
+
+    /**
+     * Comma-separated gallery shards ("local" or host:port, one per
+     * student_id partition); empty = single in-process gallery
+     */
+    public static String getShards() {
+        return properties.getProperty("recognition.shards", "").trim();
+    }
+
+    /**
+     * Deadline for all shards to answer one query
+     */
+    public static int getShardTimeoutMs() {
+        return getInt("recognition.shard.timeoutMs", DEFAULT_SHARD_TIMEOUT_MS);
+    }
+
+    /**
+     * How long a failed shard is skipped before it is tried again
+     */
+    public static int getShardRetryMs() {
+        return getInt("recognition.shard.retryMs", DEFAULT_SHARD_RETRY_MS);
+    }
+
+    /**
+     * Most face crops embedded in one forward pass
+     */
+    public static int getInferenceBatchSize() {
+        return getInt("recognition.inference.batchSize", DEFAULT_INFERENCE_BATCH_SIZE);
+    }
+
+    /**
+     * Detector/embedder net pairs in the shared inference pool (0 = half the cores)
+     */
+    public static int getInferenceWorkers() {
+        return getInt("recognition.inference.workers", 0);
+    }
+
+    /**
+     * DNN backend: auto (calibrated per machine), opencv, openvino or halide
+     */
+    public static String getDnnBackend() {
+        return properties.getProperty("recognition.dnn.backend", "auto").trim();
+    }
+
+    /**
+     * DNN target: auto (calibrated per machine), cpu or cpu_fp16
+     */
+    public static String getDnnTarget() {
+        return properties.getProperty("recognition.dnn.target", "auto").trim();
+    }
+
+    /**
+     * OpenCV threads per net (0 = calibrated per machine)
+     */
+    public static int getDnnThreads() {
+        return getInt("recognition.dnn.threads", 0);
+    }
+
+    /**
+     * Face detector input size in pixels (0 = calibrated per machine)
+     */
+    public static int getDetectorInputSize() {
+        return getInt("recognition.dnn.detectorInputSize", 0);
+    }
+
+    /**
+     * Whether DNN settings are benchmarked at startup when this machine has none saved
+     */
+    public static boolean isDnnCalibrationEnabled() {
+        return getBoolean("recognition.dnn.calibrate", true);
+    }
+
+    /**
+     * Directory holding the per-machine DNN calibration files
+     */
+    public static String getDnnTuningDir() {
+        return properties.getProperty("recognition.dnn.tuningDir", "models/tuning").trim();
+    }
+
+    /**
+     * Seconds between native memory gauge lines in capture loops
+     */
+    public static int getNativeMemoryLogIntervalSec() {
+        return getInt("recognition.nativeMemory.logIntervalSec", 60);
+    }
+
+    /**
+     * Resident memory growth (MB) since the first captured frame reported as a possible leak
+     */
+    public static int getNativeMemoryWarnGrowthMb() {
+        return getInt("recognition.nativeMemory.warnGrowthMb", 256);
+    }
+
+    /**
+     * Frames between face detector passes while faces are being tracked
+     */
+    public static int getTrackerDetectInterval() {
+        return getInt("recognition.tracker.detectInterval", DEFAULT_TRACKER_DETECT_INTERVAL);
+    }
+
+    /**
+     * Minimum box overlap (IoU) for a detection to continue an existing track
+     */
+    public static double getTrackerIouThreshold() {
+        return getDouble("recognition.tracker.iouThreshold", DEFAULT_TRACKER_IOU_THRESHOLD);
+    }
+
+    /**
+     * Detector passes a track may go unmatched before it is dropped
+     */
+    public static int getTrackerMaxMissed() {
+        return getInt("recognition.tracker.maxMissed", DEFAULT_TRACKER_MAX_MISSED);
+    }
+
+    /**
+     * Mean pixel difference (0-255) of a tracked face that forces an early detector pass
+     */
+    public static double getTrackerLostDifference() {
+        return getDouble("recognition.tracker.lostDifference", DEFAULT_TRACKER_LOST_DIFFERENCE);
+    }
+
+    /**
+     * Match confidence that decides a track's identity on a single vote
+     */
+    public static double getTrackerFinalizeConfidence() {
+        return getDouble("recognition.tracker.finalizeConfidence", DEFAULT_TRACKER_FINALIZE_CONFIDENCE);
+    }
+
+    /**
+     * Matches of the same student that decide a track's identity
+     */
+    public static int getTrackerMinVotes() {
+        return getInt("recognition.tracker.minVotes", DEFAULT_TRACKER_MIN_VOTES);
+    }
+
+    /**
+     * Share of a track's votes the leading student must hold to win
+     */
+    public static double getTrackerVoteShare() {
+        return getDouble("recognition.tracker.voteShare", DEFAULT_TRACKER_VOTE_SHARE);
+    }
+
+    /**
+     * Frames between two embeddings of a track whose identity is undecided
+     */
+    public static int getTrackerRefineInterval() {
+        return getInt("recognition.tracker.refineInterval", DEFAULT_TRACKER_REFINE_INTERVAL);
+    }
+
+    /**
+     * Most embeddings spent on one track before it is settled as unknown
+     */
+    public static int getTrackerMaxRecognitions() {
+        return getInt("recognition.tracker.maxRecognitions", DEFAULT_TRACKER_MAX_RECOGNITIONS);
+    }
+
+    /**
+     * Whether camera loops skip face detection on frames without motion
+     */
+    public static boolean isMotionGateEnabled() {
+        return getBoolean("recognition.motion.enabled", true);
+    }
+
+    /**
+     * Width in pixels of the grayscale frame compared for motion
+     */
+    public static int getMotionWidth() {
+        return getInt("recognition.motion.width", DEFAULT_MOTION_WIDTH);
+    }
+
+    /**
+     * Gray level change (0-255) that counts a pixel as moved
+     */
+    public static int getMotionPixelThreshold() {
+        return getInt("recognition.motion.pixelThreshold", DEFAULT_MOTION_PIXEL_THRESHOLD);
+    }
+
+    /**
+     * Fraction of moved pixels that counts as motion
+     */
+    public static double getMotionMinArea() {
+        return getDouble("recognition.motion.minArea", DEFAULT_MOTION_MIN_AREA);
+    }
+
+    /**
+     * Weight of each new frame in the running background (adapts to lighting)
+     */
+    public static double getMotionBackgroundRate() {
+        return getDouble("recognition.motion.backgroundRate", DEFAULT_MOTION_BACKGROUND_RATE);
+    }
+
+    /**
+     * Seconds without motion before a camera loop drops to the idle frame rate
+     */
+    public static int getMotionIdleSeconds() {
+        return getInt("recognition.motion.idleSeconds", DEFAULT_MOTION_IDLE_SECONDS);
+    }
+
+    /**
+     * Frames per second captured while idle
+     */
+    public static double getMotionIdleFps() {
+        return getDouble("recognition.motion.idleFps", DEFAULT_MOTION_IDLE_FPS);
+    }
+
+    /**
+     * End-to-end latency (capture to displayed result) the camera loop adapts to
+     */
+    public static int getLatencyBudgetMs() {
+        return getInt("recognition.latency.budgetMs", DEFAULT_LATENCY_BUDGET_MS);
+    }
+
+    /**
+     * Highest frame rate the camera loop processes
+     */
+    public static int getTargetFps() {
+        return getInt("recognition.latency.targetFps", DEFAULT_TARGET_FPS);
+    }
+
+    /**
+     * Tag of the embedding model to migrate to in the background (empty = no migration)
+     */
+    public static String getMigrationModel() {
+        return properties.getProperty("recognition.migration.model", "").trim();
+    }
+
+    /**
+     * Network file of the model to migrate to
+     */
+    public static String getMigrationModelPath() {
+        return properties.getProperty("recognition.migration.modelPath", "").trim();
+    }
+
+    /**
+     * Dataset images re-embedded per second by the migration (0 = unthrottled)
+     */
+    public static double getMigrationImagesPerSecond() {
+        return getDouble("recognition.migration.imagesPerSecond", DEFAULT_MIGRATION_IMAGES_PER_SECOND);
+    }
+
+    /**
+     * Get property value
+     */
+    public static String getProperty(String key, String defaultValue) {
+        return properties.getProperty(key, defaultValue);
+    }
+
+    /**
+     * Get integer property, falling back to the default on missing or bad values
+     */
+    public static int getInt(String key, int defaultValue) {
+        try {
+            return Integer.parseInt(properties.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("⚠ Invalid value for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get double property, falling back to the default on missing or bad values
+     */
+    public static double getDouble(String key, double defaultValue) {
+        try {
+            return Double.parseDouble(properties.getProperty(key, String.valueOf(defaultValue)).trim());
+        } catch (NumberFormatException e) {
+            System.err.println("⚠ Invalid value for " + key + ", using " + defaultValue);
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Get boolean property
+     */
+    public static boolean getBoolean(String key, boolean defaultValue) {
+        return Boolean.parseBoolean(properties.getProperty(key, String.valueOf(defaultValue)).trim());
+    }
+
+    /**
+     * Reload configuration from file
+     */
+    public static void reload() {
+        loadProperties();
+    }
+}
@@ -5,9 +5,11 @@ import com.myapp.util.DatabaseConnection;
 
 import java.sql.*;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Data Access Object for Face Embeddings
@@ -15,6 +17,90 @@ import java.util.Map;
  */
 public class FaceEmbeddingDAO {
 
+    /**
+     * Listener notified after embeddings of a student were written or deleted
+     */
+    public interface EmbeddingChangeListener {
+        void onEmbeddingsChanged(int studentId);
+    }
+
+    /**
+     * Row count and latest update time of one student's embeddings,
+     * plus the course the student is enrolled in
+     */
+    public static class EmbeddingStats {
+        private final int count;
+        private final Timestamp lastUpdated;
+        private final int courseId;
+
+        public EmbeddingStats(int count, Timestamp lastUpdated, int courseId) {
+            this.count = count;
+            this.lastUpdated = lastUpdated;
+            this.courseId = courseId;
+        }
+
+        public int getCount() { return count; }
+        public Timestamp getLastUpdated() { return lastUpdated; }
+        public int getCourseId() { return courseId; }
+    }
+
+    /**
+     * One stored embedding with its id and quality score
+     */
+    public static class EmbeddingRecord {
+        private final int embeddingId;
+        private final float[] embedding;
+        private final float qualityScore;
+
+        public EmbeddingRecord(int embeddingId, float[] embedding, float qualityScore) {
+            this.embeddingId = embeddingId;
+            this.embedding = embedding;
+            this.qualityScore = qualityScore;
+        }
+
+        public int getEmbeddingId() { return embeddingId; }
+        public float[] getEmbedding() { return embedding; }
+        public float getQualityScore() { return qualityScore; }
+    }
+
+    /**
+     * Number of stored embeddings and the bytes their BLOBs take
+     */
+    public static class StorageStats {
+        private final int count;
+        private final long bytes;
+
+        public StorageStats(int count, long bytes) {
+            this.count = count;
+            this.bytes = bytes;
+        }
+
+        public int getCount() { return count; }
+        public long getBytes() { return bytes; }
+    }
+
+    private static final List<EmbeddingChangeListener> changeListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * Register a listener for embedding changes made through any DAO instance
+     */
+    public static void addChangeListener(EmbeddingChangeListener listener) {
+        changeListeners.add(listener);
+    }
+
+    /**
+     * Remove a previously registered change listener
+     */
+    public static void removeChangeListener(EmbeddingChangeListener listener) {
+        changeListeners.remove(listener);
+    }
+
+    private static void fireEmbeddingsChanged(int studentId) {
+        for (EmbeddingChangeListener listener : changeListeners) {
+            listener.onEmbeddingsChanged(studentId);
+        }
+    }
+
     /**
      * Store a face embedding for a student
      */
@@ -37,6 +123,9 @@ public class FaceEmbeddingDAO {
             pstmt.setFloat(6, qualityScore);
             
             int affectedRows = pstmt.executeUpdate();
+            if (affectedRows > 0) {
+                fireEmbeddingsChanged(studentId);
+            }
             return affectedRows > 0;
         }
     }
@@ -63,6 +152,27 @@ public class FaceEmbeddingDAO {
         return embeddings;
     }
 
+    /**
+     * Get the embeddings a specific model produced for a student
+     */
+    public List<float[]> getStudentEmbeddings(int studentId, String model) throws SQLException {
+        List<float[]> embeddings = new ArrayList<>();
+        String query = "SELECT embedding_vector FROM face_embeddings WHERE student_id = ? AND embedding_model = ?";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setInt(1, studentId);
+            pstmt.setString(2, model);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                embeddings.add(FaceNetEmbeddingGenerator.bytesToEmbedding(rs.getBytes("embedding_vector")));
+            }
+        }
+        return embeddings;
+    }
+
     /**
      * Get all embeddings from the database
      * Returns a map of student_id -> list of embeddings
@@ -87,6 +197,117 @@ public class FaceEmbeddingDAO {
         return embeddingsMap;
     }
 
+    /**
+     * Get all embeddings produced by one model
+     * Returns a map of student_id -> list of embeddings
+     */
+    public Map<Integer, List<float[]>> getAllEmbeddings(String model) throws SQLException {
+        Map<Integer, List<float[]>> embeddingsMap = new HashMap<>();
+        String query = "SELECT student_id, embedding_vector FROM face_embeddings WHERE embedding_model = ?";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setString(1, model);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                int studentId = rs.getInt("student_id");
+                byte[] embeddingBytes = rs.getBytes("embedding_vector");
+                float[] embedding = FaceNetEmbeddingGenerator.bytesToEmbedding(embeddingBytes);
+                
+                embeddingsMap.computeIfAbsent(studentId, k -> new ArrayList<>()).add(embedding);
+            }
+        }
+        return embeddingsMap;
+    }
+
+    /**
+     * Get one model's embeddings of one student_id partition (student_id mod partitions)
+     * Used by gallery shards that only hold part of the students
+     */
+    public Map<Integer, List<float[]>> getAllEmbeddings(String model, int partition, int partitions) throws SQLException {
+        Map<Integer, List<float[]>> embeddingsMap = new HashMap<>();
+        String query = "SELECT student_id, embedding_vector FROM face_embeddings " +
+                      "WHERE embedding_model = ? AND MOD(student_id, ?) = ?";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setString(1, model);
+            pstmt.setInt(2, partitions);
+            pstmt.setInt(3, partition);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                int studentId = rs.getInt("student_id");
+                byte[] embeddingBytes = rs.getBytes("embedding_vector");
+                float[] embedding = FaceNetEmbeddingGenerator.bytesToEmbedding(embeddingBytes);
+                
+                embeddingsMap.computeIfAbsent(studentId, k -> new ArrayList<>()).add(embedding);
+            }
+        }
+        return embeddingsMap;
+    }
+
+    /**
+     * Get embedding count, latest updated_at and course per active student
+     * for one model's embeddings
+     * Used to detect gallery changes without re-reading the BLOBs
+     */
+    public Map<Integer, EmbeddingStats> getEmbeddingStats(String model) throws SQLException {
+        Map<Integer, EmbeddingStats> statsMap = new HashMap<>();
+        String query = "SELECT e.student_id, s.course_id, COUNT(*) as count, " +
+                      "MAX(e.updated_at) as last_updated " +
+                      "FROM face_embeddings e JOIN students s ON e.student_id = s.student_id " +
+                      "WHERE s.is_active = TRUE AND e.embedding_model = ? " +
+                      "GROUP BY e.student_id, s.course_id";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setString(1, model);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                statsMap.put(rs.getInt("student_id"), 
+                            new EmbeddingStats(rs.getInt("count"), rs.getTimestamp("last_updated"),
+                                               rs.getInt("course_id")));
+            }
+        }
+        return statsMap;
+    }
+
+    /**
+     * Same as {@link #getEmbeddingStats(String)}, limited to students with
+     * rows updated after the given time
+     */
+    public Map<Integer, EmbeddingStats> getEmbeddingStatsSince(String model, Timestamp since) throws SQLException {
+        Map<Integer, EmbeddingStats> statsMap = new HashMap<>();
+        String query = "SELECT e.student_id, s.course_id, COUNT(*) as count, " +
+                      "MAX(e.updated_at) as last_updated " +
+                      "FROM face_embeddings e JOIN students s ON e.student_id = s.student_id " +
+                      "WHERE s.is_active = TRUE AND e.embedding_model = ? AND e.student_id IN " +
+                      "(SELECT student_id FROM face_embeddings WHERE embedding_model = ? AND updated_at > ?) " +
+                      "GROUP BY e.student_id, s.course_id";
+
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+
+            pstmt.setString(1, model);
+            pstmt.setString(2, model);
+            pstmt.setTimestamp(3, since);
+            ResultSet rs = pstmt.executeQuery();
+
+            while (rs.next()) {
+                statsMap.put(rs.getInt("student_id"),
+                            new EmbeddingStats(rs.getInt("count"), rs.getTimestamp("last_updated"),
+                                               rs.getInt("course_id")));
+            }
+        }
+        return statsMap;
+    }
+
     /**
      * Delete all embeddings for a student
      */
@@ -98,10 +319,135 @@ public class FaceEmbeddingDAO {
             
             pstmt.setInt(1, studentId);
             int affectedRows = pstmt.executeUpdate();
+            if (affectedRows > 0) {
+                fireEmbeddingsChanged(studentId);
+            }
             return affectedRows > 0;
         }
     }
 
+    /**
+     * Delete the embeddings one model produced for a student
+     */
+    public boolean deleteStudentEmbeddings(int studentId, String model) throws SQLException {
+        String query = "DELETE FROM face_embeddings WHERE student_id = ? AND embedding_model = ?";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setInt(1, studentId);
+            pstmt.setString(2, model);
+            int affectedRows = pstmt.executeUpdate();
+            if (affectedRows > 0) {
+                fireEmbeddingsChanged(studentId);
+            }
+            return affectedRows > 0;
+        }
+    }
+
+    /**
+     * Get one model's embeddings of a student together with their ids and quality scores
+     */
+    public List<EmbeddingRecord> getStudentEmbeddingRecords(int studentId, String model) throws SQLException {
+        List<EmbeddingRecord> records = new ArrayList<>();
+        String query = "SELECT embedding_id, embedding_vector, quality_score FROM face_embeddings " +
+                      "WHERE student_id = ? AND embedding_model = ? ORDER BY embedding_id";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setInt(1, studentId);
+            pstmt.setString(2, model);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                records.add(new EmbeddingRecord(
+                    rs.getInt("embedding_id"),
+                    FaceNetEmbeddingGenerator.bytesToEmbedding(rs.getBytes("embedding_vector")),
+                    rs.getFloat("quality_score")));
+            }
+        }
+        return records;
+    }
+
+    /**
+     * Get the students that have more than the given number of embeddings from one model
+     */
+    public List<Integer> getStudentsWithMoreEmbeddingsThan(int limit, String model) throws SQLException {
+        List<Integer> studentIds = new ArrayList<>();
+        String query = "SELECT student_id FROM face_embeddings WHERE embedding_model = ? " +
+                      "GROUP BY student_id HAVING COUNT(*) > ?";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setString(1, model);
+            pstmt.setInt(2, limit);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                studentIds.add(rs.getInt("student_id"));
+            }
+        }
+        return studentIds;
+    }
+
+    /**
+     * Get the active students whose embeddings from the source model are
+     * not yet covered by the target model: no target rows, or target rows
+     * older than the newest source row (the student was retrained since)
+     */
+    public List<Integer> getStudentsPendingMigration(String sourceModel, String targetModel) throws SQLException {
+        List<Integer> studentIds = new ArrayList<>();
+        String query = "SELECT src.student_id FROM " +
+                      "(SELECT student_id, MAX(updated_at) AS last_updated FROM face_embeddings " +
+                      " WHERE embedding_model = ? GROUP BY student_id) src " +
+                      "JOIN students s ON src.student_id = s.student_id " +
+                      "LEFT JOIN (SELECT student_id, MAX(updated_at) AS last_updated FROM face_embeddings " +
+                      " WHERE embedding_model = ? GROUP BY student_id) dst ON src.student_id = dst.student_id " +
+                      "WHERE s.is_active = TRUE AND (dst.student_id IS NULL OR dst.last_updated < src.last_updated) " +
+                      "ORDER BY src.student_id";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setString(1, sourceModel);
+            pstmt.setString(2, targetModel);
+            ResultSet rs = pstmt.executeQuery();
+            
+            while (rs.next()) {
+                studentIds.add(rs.getInt("student_id"));
+            }
+        }
+        return studentIds;
+    }
+
+    /**
+     * Delete specific embeddings of a student (single statement)
+     */
+    public int deleteEmbeddings(int studentId, List<Integer> embeddingIds) throws SQLException {
+        if (embeddingIds.isEmpty()) {
+            return 0;
+        }
+        String placeholders = String.join(",", Collections.nCopies(embeddingIds.size(), "?"));
+        String query = "DELETE FROM face_embeddings WHERE student_id = ? AND embedding_id IN (" +
+                      placeholders + ")";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setInt(1, studentId);
+            for (int i = 0; i < embeddingIds.size(); i++) {
+                pstmt.setInt(i + 2, embeddingIds.get(i));
+            }
+            int affectedRows = pstmt.executeUpdate();
+            if (affectedRows > 0) {
+                fireEmbeddingsChanged(studentId);
+            }
+            return affectedRows;
+        }
+    }
+
     /**
      * Get count of embeddings for a student
      */
@@ -175,6 +521,28 @@ public class FaceEmbeddingDAO {
         return 0;
     }
 
+    /**
+     * Get the number of embeddings from one model and the bytes of their
+     * stored BLOBs (measured, so it reflects whatever encoding the rows
+     * were written in)
+     */
+    public StorageStats getStorageStats(String model) throws SQLException {
+        String query = "SELECT COUNT(*) as count, COALESCE(SUM(LENGTH(embedding_vector)), 0) as bytes " +
+                      "FROM face_embeddings WHERE embedding_model = ?";
+        
+        try (Connection conn = DatabaseConnection.getConnection();
+             PreparedStatement pstmt = conn.prepareStatement(query)) {
+            
+            pstmt.setString(1, model);
+            ResultSet rs = pstmt.executeQuery();
+            
+            if (rs.next()) {
+                return new StorageStats(rs.getInt("count"), rs.getLong("bytes"));
+            }
+        }
+        return new StorageStats(0, 0);
+    }
+
     /**
      * Get number of unique students with embeddings
      */
@@ -0,0 +1,111 @@
+package com.myapp.ml;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.Properties;
+
+/**
+ * Embedding model that recognition is served from
+ * Kept in models/active_model.properties (tag + model file) so that every
+ * process, gallery shard servers included, agrees on it. The file only
+ * changes when a model migration cuts over; it is replaced atomically and
+ * re-read when its modification time changes.
+ */
+public final class ActiveModel {
+    private static final Path STATE_FILE = Paths.get("models", "active_model.properties");
+    private static final long CHECK_INTERVAL_MS = 1000;
+
+    private static volatile ActiveModel current =
+        new ActiveModel(FaceNetEmbeddingGenerator.MODEL_NAME, FaceNetEmbeddingGenerator.DEFAULT_MODEL_PATH);
+    private static long loadedModified = Long.MIN_VALUE;
+    private static long lastCheck;
+
+    private final String tag;
+    private final String modelPath;
+
+    private ActiveModel(String tag, String modelPath) {
+        this.tag = tag;
+        this.modelPath = modelPath;
+    }
+
+    /**
+     * Tag stored in face_embeddings.embedding_model for this model
+     */
+    public String getTag() { return tag; }
+
+    /**
+     * Network file (Torch .t7 or any format OpenCV DNN reads)
+     */
+    public String getModelPath() { return modelPath; }
+
+    /**
+     * The model currently serving recognition (FaceNet unless a migration cut over)
+     */
+    public static ActiveModel current() {
+        refresh();
+        return current;
+    }
+
+    /**
+     * Make another model the serving model (atomic file replace)
+     */
+    public static synchronized void activate(String tag, String modelPath) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("model.tag", tag);
+        properties.setProperty("model.path", modelPath);
+
+        Files.createDirectories(STATE_FILE.getParent());
+        Path temp = STATE_FILE.resolveSibling(STATE_FILE.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "Active embedding model (written by the model migration)");
+        }
+        Files.move(temp, STATE_FILE, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+
+        current = new ActiveModel(tag, modelPath);
+        loadedModified = Files.getLastModifiedTime(STATE_FILE).toMillis();
+        lastCheck = System.currentTimeMillis();
+    }
+
+    private static synchronized void refresh() {
+        long now = System.currentTimeMillis();
+        if (now - lastCheck < CHECK_INTERVAL_MS && loadedModified != Long.MIN_VALUE) {
+            return;
+        }
+        lastCheck = now;
+
+        long modified;
+        try {
+            modified = Files.getLastModifiedTime(STATE_FILE).toMillis();
+        } catch (IOException e) {
+            // No state file: the built-in FaceNet model is active
+            modified = -1;
+        }
+        if (modified == loadedModified) {
+            return;
+        }
+        loadedModified = modified;
+        if (modified == -1) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(STATE_FILE)) {
+            properties.load(in);
+        } catch (IOException e) {
+            System.err.println("⚠ Failed to read " + STATE_FILE + ": " + e.getMessage());
+            return;
+        }
+        String tag = properties.getProperty("model.tag", "").trim();
+        String path = properties.getProperty("model.path", "").trim();
+        if (tag.isEmpty() || path.isEmpty()) {
+            System.err.println("⚠ Incomplete " + STATE_FILE + ", keeping model " + current.tag);
+            return;
+        }
+        current = new ActiveModel(tag, path);
+    }
+}
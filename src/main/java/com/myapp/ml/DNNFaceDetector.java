@@ -1,5 +1,8 @@
 package com.myapp.ml;
 
+import com.myapp.util.FrameScope;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.FloatPointer;
 import org.bytedeco.opencv.opencv_core.*;
 import org.bytedeco.opencv.opencv_dnn.Net;
 import org.bytedeco.opencv.global.opencv_core;
@@ -12,7 +15,8 @@ import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
-import java.util.ArrayList;
+import java.nio.file.Files;
+import java.nio.file.Paths;
 import java.util.List;
 
 /**
@@ -22,8 +26,19 @@ import java.util.List;
 public class DNNFaceDetector {
     private Net net;
     private static final float CONFIDENCE_THRESHOLD = 0.5f;
-    private static final int INPUT_WIDTH = 300;
-    private static final int INPUT_HEIGHT = 300;
+    static final int DEFAULT_INPUT_SIZE = 300;
+
+    private static final Scalar MEAN = FrameScope.keep(new Scalar(104.0, 177.0, 123.0, 0));
+
+    // Square network input; smaller sizes trade recall on small faces for speed
+    private int inputSize = DEFAULT_INPUT_SIZE;
+
+    // Reused across calls (a detector is confined to one thread); kept out
+    // of the frame scope when a detector is created inside a capture loop
+    private Size blobSize = FrameScope.keep(new Size(DEFAULT_INPUT_SIZE, DEFAULT_INPUT_SIZE));
+    private final Mat blob = FrameScope.keep(new Mat());
+    private float[] detectionValues = new float[0];
+    private final FaceDetections results = new FaceDetections();
     
     // Pre-trained Caffe models for face detection
     private static final String PROTOTXT_URL = 
@@ -34,6 +49,10 @@ public class DNNFaceDetector {
     private String prototxtPath;
     private String modelPath;
 
+    // Model files read into native memory once and shared by every detector
+    private static BytePointer prototxtBytes;
+    private static BytePointer modelBytes;
+
     /**
      * Initialize the DNN face detector
      */
@@ -75,41 +94,77 @@ public class DNNFaceDetector {
      */
     private void loadModel() throws Exception {
         try {
-            net = opencv_dnn.readNetFromCaffe(prototxtPath, modelPath);
+            loadModelBytes(prototxtPath, modelPath);
+            net = FrameScope.keep(opencv_dnn.readNetFromCaffe(prototxtBytes, prototxtBytes.limit(),
+                                                              modelBytes, modelBytes.limit()));
             if (net.empty()) {
                 throw new Exception("Failed to load DNN model");
             }
+            DnnTuning tuning = DnnTuning.current();
+            configure(tuning.getDetectorBackend(), tuning.getDetectorTarget(), tuning.getDetectorInputSize());
             System.out.println("✓ DNN face detector loaded successfully");
         } catch (Exception e) {
             throw new Exception("Failed to initialize DNN face detector: " + e.getMessage());
         }
     }
 
+    private static synchronized void loadModelBytes(String prototxtPath, String modelPath) throws Exception {
+        if (modelBytes == null) {
+            prototxtBytes = FrameScope.keep(new BytePointer(Files.readAllBytes(Paths.get(prototxtPath))));
+            modelBytes = FrameScope.keep(new BytePointer(Files.readAllBytes(Paths.get(modelPath))));
+        }
+    }
+
+    /**
+     * Select the DNN backend/target and input size used by the next forward pass
+     */
+    void configure(int backend, int target, int inputSize) {
+        net.setPreferableBackend(backend);
+        net.setPreferableTarget(target);
+        setInputSize(inputSize);
+    }
+
+    int getInputSize() {
+        return inputSize;
+    }
+
+    /**
+     * Change the square input size used by the next forward pass
+     */
+    void setInputSize(int inputSize) {
+        if (inputSize != this.inputSize) {
+            blobSize.close();
+            blobSize = FrameScope.keep(new Size(inputSize, inputSize));
+            this.inputSize = inputSize;
+        }
+    }
+
     /**
      * Detect faces in an image using DNN
      * @param image Input image (BGR format)
      * @return List of detected face rectangles
      */
     public List<Rect> detectFaces(Mat image) {
-        List<Rect> faces = new ArrayList<>();
-        
+        detectFaces(image, results);
+        return results.toList();
+    }
+
+    /**
+     * Detect faces into a caller-owned container (cleared first)
+     * Reuses the blob, the output buffer and the container's rects, so a
+     * frame loop allocates no native memory here once warmed up.
+     */
+    public void detectFaces(Mat image, FaceDetections faces) {
+        faces.clear();
         if (image.empty()) {
-            return faces;
+            return;
         }
 
         int imageHeight = image.rows();
         int imageWidth = image.cols();
 
-        // Prepare input blob
-        Mat blob = opencv_dnn.blobFromImage(
-            image,
-            1.0,
-            new Size(INPUT_WIDTH, INPUT_HEIGHT),
-            new Scalar(104.0, 177.0, 123.0, 0),
-            false,
-            false,
-            opencv_core.CV_32F
-        );
+        // Prepare input blob (resized and mean-subtracted into the reused blob)
+        opencv_dnn.blobFromImage(image, blob, 1.0, blobSize, MEAN, false, false, opencv_core.CV_32F);
 
         // Forward pass
         net.setInput(blob);
@@ -118,16 +173,24 @@ public class DNNFaceDetector {
         // Detection output is a 4D matrix: [1, 1, N, 7]
         // where N is the number of detections and each detection is:
         // [batchId, classId, confidence, left, top, right, bottom]
-        Mat detectionMat = new Mat(detection.size(2), detection.size(3), opencv_core.CV_32F, detection.ptr(0, 0));
+        int count = detection.size(2);
+        int values = count * 7;
+        if (detectionValues.length < values) {
+            detectionValues = new float[values];
+        }
+        new FloatPointer(detection.data()).get(detectionValues, 0, values);
+        // The header is the only per-call native object (Net.forward has no output-Mat overload here)
+        detection.close();
 
-        for (int i = 0; i < detectionMat.rows(); i++) {
-            float confidence = detectionMat.ptr(i, 2).getFloat();
+        for (int i = 0; i < count; i++) {
+            int row = i * 7;
+            float confidence = detectionValues[row + 2];
 
             if (confidence > CONFIDENCE_THRESHOLD) {
-                int x1 = (int) (detectionMat.ptr(i, 3).getFloat() * imageWidth);
-                int y1 = (int) (detectionMat.ptr(i, 4).getFloat() * imageHeight);
-                int x2 = (int) (detectionMat.ptr(i, 5).getFloat() * imageWidth);
-                int y2 = (int) (detectionMat.ptr(i, 6).getFloat() * imageHeight);
+                int x1 = (int) (detectionValues[row + 3] * imageWidth);
+                int y1 = (int) (detectionValues[row + 4] * imageHeight);
+                int x2 = (int) (detectionValues[row + 5] * imageWidth);
+                int y2 = (int) (detectionValues[row + 6] * imageHeight);
 
                 // Ensure coordinates are within image bounds
                 x1 = Math.max(0, x1);
@@ -139,40 +202,19 @@ public class DNNFaceDetector {
                 int height = y2 - y1;
 
                 if (width > 0 && height > 0) {
-                    faces.add(new Rect(x1, y1, width, height));
+                    faces.add(x1, y1, width, height, confidence);
                 }
             }
         }
-
-        blob.close();
-        detection.close();
-        detectionMat.close();
-
-        return faces;
     }
 
     /**
      * Detect the largest/most prominent face in an image
      */
     public Rect detectLargestFace(Mat image) {
-        List<Rect> faces = detectFaces(image);
-        if (faces.isEmpty()) {
-            return null;
-        }
-
-        // Return the largest face by area
-        Rect largestFace = faces.get(0);
-        int maxArea = largestFace.width() * largestFace.height();
-
-        for (Rect face : faces) {
-            int area = face.width() * face.height();
-            if (area > maxArea) {
-                maxArea = area;
-                largestFace = face;
-            }
-        }
-
-        return largestFace;
+        detectFaces(image, results);
+        int largest = results.largest();
+        return largest < 0 ? null : FaceDetections.copyOf(results.get(largest));
     }
 
     /**
@@ -206,5 +248,8 @@ public class DNNFaceDetector {
         if (net != null && !net.isNull()) {
             net.close();
         }
+        blob.close();
+        blobSize.close();
+        results.close();
     }
 }
@@ -1,17 +1,25 @@
 package com.myapp.ml;
 
-import com.myapp.dao.FaceEmbeddingDAO;
+import com.myapp.config.RecognitionConfig;
 import com.myapp.dao.RecognitionLogDAO;
 import com.myapp.dao.StudentDAO;
+import com.myapp.ml.gallery.CandidateSearch;
+import com.myapp.ml.gallery.EmbeddingGallery;
+import com.myapp.ml.gallery.GalleryMatch;
+import com.myapp.ml.gallery.GalleryShard;
+import com.myapp.ml.gallery.LocalGalleryShard;
+import com.myapp.ml.gallery.ShardMatches;
+import com.myapp.ml.gallery.ShardedMatcher;
 import com.myapp.model.Student;
+import com.myapp.util.FrameScope;
 import org.bytedeco.opencv.opencv_core.*;
 import org.bytedeco.opencv.opencv_videoio.VideoCapture;
 import org.bytedeco.opencv.global.opencv_highgui;
 import org.bytedeco.opencv.global.opencv_imgproc;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 /**
  * Deep Learning based face recognizer
@@ -20,13 +28,20 @@ import java.util.Map;
 public class DeepLearningRecognizer {
     private DNNFaceDetector faceDetector;
     private FaceNetEmbeddingGenerator embeddingGenerator;
-    private FaceEmbeddingDAO embeddingDAO;
+    private EmbeddingGallery gallery;
+    private CandidateSearch candidateSearch;
+    private GalleryShard matcher;
+    private volatile Integer courseScope;
     private StudentDAO studentDAO;
     private RecognitionLogDAO recognitionLogDAO;
 
+    // Reused per recognition (detection results and the query embedding)
+    private final FaceDetections detections = new FaceDetections();
+    private float[] queryBuffer;
+
     // Threshold for face recognition (cosine similarity)
     // Higher threshold = more strict matching
-    private static final double RECOGNITION_THRESHOLD = 0.6;
+    private static final double RECOGNITION_THRESHOLD = RecognitionConfig.getRecognitionThreshold();
     
     // Minimum number of embeddings to match against
     private static final int MIN_EMBEDDINGS_FOR_MATCH = 2;
@@ -70,7 +85,11 @@ public class DeepLearningRecognizer {
     public DeepLearningRecognizer() throws Exception {
         this.faceDetector = new DNNFaceDetector();
         this.embeddingGenerator = new FaceNetEmbeddingGenerator();
-        this.embeddingDAO = new FaceEmbeddingDAO();
+        this.gallery = EmbeddingGallery.getInstance();
+        this.candidateSearch = CandidateSearch.create(RecognitionConfig.getMatcher());
+        String shards = RecognitionConfig.getShards();
+        this.matcher = shards.isEmpty() ?
+            new LocalGalleryShard(gallery, candidateSearch, "local") : ShardedMatcher.fromConfig(shards);
         this.studentDAO = new StudentDAO();
         this.recognitionLogDAO = new RecognitionLogDAO();
     }
@@ -80,19 +99,21 @@ public class DeepLearningRecognizer {
      */
     public RecognitionResult recognize(Mat image) {
         try {
-            // Detect face
-            Rect faceRect = faceDetector.detectLargestFace(image);
-            if (faceRect == null) {
+            // Detect face (into the reused container)
+            faceDetector.detectFaces(image, detections);
+            int largest = detections.largest();
+            if (largest < 0) {
                 logRecognition(null, 0.0f, RecognitionLogDAO.RecognitionResult.FAILED, 
                              "No face detected");
                 return new RecognitionResult(null, null, null, 0.0, false);
             }
 
             // Extract face region
-            Mat faceROI = new Mat(image, faceRect);
+            Mat faceROI = new Mat(image, detections.get(largest));
 
-            // Generate embedding
-            float[] queryEmbedding = embeddingGenerator.generateEmbedding(faceROI);
+            // Generate embedding with the model the gallery serves
+            String model = servingModel();
+            float[] queryEmbedding = embedQuery(generatorFor(model), faceROI);
             faceROI.close();
 
             if (queryEmbedding == null) {
@@ -102,7 +123,7 @@ public class DeepLearningRecognizer {
             }
 
             // Match against stored embeddings
-            return matchEmbedding(queryEmbedding);
+            return matchEmbedding(queryEmbedding, model);
 
         } catch (Exception e) {
             System.err.println("Error during recognition: " + e.getMessage());
@@ -111,50 +132,105 @@ public class DeepLearningRecognizer {
     }
 
     /**
-     * Match an embedding against all stored embeddings
+     * Recognize every face the caller has already detected in a frame
+     * The faces are embedded together in batched forward passes and matched
+     * together through {@link #matchBatch}; nothing is re-detected. Results
+     * are in the order of the given rects.
      */
-    private RecognitionResult matchEmbedding(float[] queryEmbedding) throws SQLException {
-        // Get all embeddings from database
-        Map<Integer, List<float[]>> allEmbeddings = embeddingDAO.getAllEmbeddings();
-
-        if (allEmbeddings.isEmpty()) {
-            logRecognition(null, 0.0f, RecognitionLogDAO.RecognitionResult.UNKNOWN, 
-                         "No embeddings in database");
-            return new RecognitionResult(null, null, null, 0.0, false);
+    public List<RecognitionResult> recognizeAll(Mat frame, List<Rect> faces) {
+        List<RecognitionResult> results = new ArrayList<>(faces.size());
+        if (faces.isEmpty()) {
+            return results;
         }
+        try {
+            String model = servingModel();
+            float[][] embeddings = generatorFor(model).generateEmbeddings(frame, faces);
+            List<List<GalleryMatch>> matches = matchBatch(embeddings, 1);
+            boolean stale = !model.equals(servingModel());
+            for (int i = 0; i < embeddings.length; i++) {
+                if (embeddings[i] == null) {
+                    logRecognition(null, 0.0f, RecognitionLogDAO.RecognitionResult.FAILED, 
+                                 "Failed to generate embedding");
+                    results.add(new RecognitionResult(null, null, null, 0.0, false));
+                } else if (stale) {
+                    // Scored against another model's gallery; drop this frame
+                    results.add(new RecognitionResult(null, null, null, 0.0, false));
+                } else {
+                    results.add(toResult(matches.get(i)));
+                }
+            }
+        } catch (Exception e) {
+            System.err.println("Error during recognition: " + e.getMessage());
+            while (results.size() < faces.size()) {
+                results.add(new RecognitionResult(null, null, null, 0.0, false));
+            }
+        }
+        return results;
+    }
 
-        int bestMatchStudentId = -1;
-        double bestSimilarity = -1.0;
-
-        // Compare with each student's embeddings
-        for (Map.Entry<Integer, List<float[]>> entry : allEmbeddings.entrySet()) {
-            int studentId = entry.getKey();
-            List<float[]> studentEmbeddings = entry.getValue();
+    /**
+     * Embed into the reused query buffer (sized on first use and after a
+     * model change); null when no embedding could be generated
+     */
+    private float[] embedQuery(FaceNetEmbeddingGenerator generator, Mat face) {
+        if (queryBuffer == null || queryBuffer.length != generator.getEmbeddingSize()) {
+            queryBuffer = generator.generateEmbedding(face);
+            return queryBuffer;
+        }
+        return generator.generateEmbedding(face, queryBuffer) ? queryBuffer : null;
+    }
 
-            // Calculate average similarity with this student's embeddings
-            double avgSimilarity = 0.0;
-            int validComparisons = 0;
+    /**
+     * Model to embed queries with: the local gallery's, or the active model
+     * for shards (which answer only for the model they serve)
+     */
+    private String servingModel() {
+        return matcher instanceof LocalGalleryShard ? gallery.getModelTag() : ActiveModel.current().getTag();
+    }
 
-            for (float[] storedEmbedding : studentEmbeddings) {
-                double similarity = FaceNetEmbeddingGenerator.calculateSimilarity(
-                    queryEmbedding, storedEmbedding);
-                
-                if (similarity >= 0) {
-                    avgSimilarity += similarity;
-                    validComparisons++;
-                }
+    /**
+     * Embedding generator for a model, reloaded after a model cut-over
+     */
+    private synchronized FaceNetEmbeddingGenerator generatorFor(String model) throws Exception {
+        if (!embeddingGenerator.getModelName().equals(model)) {
+            ActiveModel active = ActiveModel.current();
+            if (active.getTag().equals(model)) {
+                FaceNetEmbeddingGenerator previous = embeddingGenerator;
+                embeddingGenerator = new FaceNetEmbeddingGenerator(active.getTag(), active.getModelPath());
+                previous.close();
+                System.out.println("✓ Recognizer switched to embedding model " + model);
             }
+        }
+        return embeddingGenerator;
+    }
 
-            if (validComparisons > 0) {
-                avgSimilarity /= validComparisons;
+    /**
+     * Match an embedding against all stored embeddings
+     */
+    private RecognitionResult matchEmbedding(float[] queryEmbedding, String model) throws Exception {
+        // Resident gallery (or its shards): course partition first, then global
+        ShardMatches matches = matcher.search(queryEmbedding, model, courseScope, 1);
+        if (!model.equals(matches.getModelTag())) {
+            // The gallery cut over to another model; its scores would
+            // compare embeddings of different models, so drop this frame
+            return new RecognitionResult(null, null, null, 0.0, false);
+        }
+        return toResult(matches.select(RECOGNITION_THRESHOLD));
+    }
 
-                if (avgSimilarity > bestSimilarity) {
-                    bestSimilarity = avgSimilarity;
-                    bestMatchStudentId = studentId;
-                }
-            }
+    /**
+     * Turn the selected matches of one query into a logged result
+     */
+    private RecognitionResult toResult(List<GalleryMatch> candidates) throws Exception {
+        if (candidates.isEmpty()) {
+            logRecognition(null, 0.0f, RecognitionLogDAO.RecognitionResult.UNKNOWN, 
+                         "No embeddings in database");
+            return new RecognitionResult(null, null, null, 0.0, false);
         }
 
+        int bestMatchStudentId = candidates.get(0).getStudentId();
+        double bestSimilarity = candidates.get(0).getScore();
+
         // Check if best match meets threshold
         if (bestSimilarity >= RECOGNITION_THRESHOLD && bestMatchStudentId != -1) {
             // Get student details
@@ -182,6 +258,35 @@ public class DeepLearningRecognizer {
         return new RecognitionResult(null, null, null, bestSimilarity, false);
     }
 
+    /**
+     * Match several embeddings (e.g. every face in a frame) in one pass
+     * Same course-first selection as a single match; the queries that need
+     * the global gallery are scored with a cache-blocked batch kernel
+     * instead of once per face. The queries must be embeddings of the
+     * model the gallery serves. Returns the top-k students per query, best
+     * first; null queries get an empty list, and so does every query when
+     * the gallery cut over to another model mid-search.
+     */
+    public List<List<GalleryMatch>> matchBatch(float[][] queries, int k) throws Exception {
+        String model = servingModel();
+        List<ShardMatches> matches = matcher.searchBatch(queries, model, courseScope, k);
+        List<List<GalleryMatch>> results = new ArrayList<>(queries.length);
+        for (ShardMatches match : matches) {
+            results.add(model.equals(match.getModelTag()) ?
+                        match.select(RECOGNITION_THRESHOLD) : new ArrayList<>());
+        }
+        return results;
+    }
+
+    /**
+     * Restrict matching to one course's students first (null = whole gallery)
+     * Matches outside the course are still found through the global
+     * fallback when no course student clears the threshold.
+     */
+    public void setCourseScope(Integer courseId) {
+        this.courseScope = courseId;
+    }
+
     /**
      * Start real-time face recognition from camera
      */
@@ -198,60 +303,60 @@ public class DeepLearningRecognizer {
         }
 
         Mat frame = new Mat();
-        long lastRecognitionTime = 0;
-        final long RECOGNITION_COOLDOWN = 3000; // 3 seconds between recognitions
+        FaceTracker tracker = new FaceTracker(faceDetector);
+        MotionGate motionGate = new MotionGate();
 
         while (true) {
-            camera.read(frame);
-            if (frame.empty()) {
-                continue;
-            }
-
-            long currentTime = System.currentTimeMillis();
-
-            // Detect faces
-            List<Rect> faces = faceDetector.detectFaces(frame);
-
-            // Draw rectangles around detected faces
-            for (Rect faceRect : faces) {
-                // Draw rectangle
-                Scalar color = new Scalar(0, 255, 0, 0); // Green
-                opencv_imgproc.rectangle(frame, faceRect, color, 2, 0, 0);
+            FrameScope frameScope = FrameScope.open();
+            try (frameScope) {
+                camera.read(frame);
+                if (frame.empty()) {
+                    continue;
+                }
 
-                // Perform recognition periodically
-                if ((currentTime - lastRecognitionTime) > RECOGNITION_COOLDOWN) {
-                    RecognitionResult result = recognize(frame);
-                    
-                    if (result.isRecognized()) {
-                        System.out.println("✓ RECOGNIZED: " + result);
-                        color = new Scalar(0, 255, 0, 0); // Green for recognized
+                // Track faces and report each one once, when its identity vote is decided
+                List<FaceTracker.Track> tracks = tracker.update(frame, motionGate.hasMotion(frame));
+                for (FaceTracker.Track track : tracker.recognizePending(frame, this)) {
+                    if (track.isIdentified()) {
+                        System.out.println("✓ RECOGNIZED: " + track.getIdentity());
                     } else {
                         System.out.println("✗ UNKNOWN PERSON");
-                        color = new Scalar(0, 0, 255, 0); // Red for unknown
                     }
-                    
-                    lastRecognitionTime = currentTime;
+                }
+
+                // Draw rectangles around tracked faces
+                for (FaceTracker.Track track : tracks) {
+                    Scalar color = !track.isFinal() ? new Scalar(0, 255, 255, 0) :  // Yellow while voting
+                                   track.isIdentified() ? new Scalar(0, 255, 0, 0) :  // Green
+                                   new Scalar(0, 0, 255, 0);   // Red for unknown
+                    opencv_imgproc.rectangle(frame, track.toRect(), color, 2, 0, 0);
                 }
 
                 // Add label
-                String label = faces.size() + " face(s) detected";
-                opencv_imgproc.putText(frame, label, 
-                                      new Point(10, 30),
-                                      opencv_imgproc.FONT_HERSHEY_SIMPLEX,
-                                      0.7, new Scalar(255, 255, 255, 0), 2, 0, false);
-            }
+                if (!tracks.isEmpty()) {
+                    String label = tracks.size() + " face(s) detected";
+                    opencv_imgproc.putText(frame, label, 
+                                          new Point(10, 30),
+                                          opencv_imgproc.FONT_HERSHEY_SIMPLEX,
+                                          0.7, new Scalar(255, 255, 255, 0), 2, 0, false);
+                }
 
-            // Display frame
-            opencv_highgui.imshow("Face Recognition - Press 'q' to quit", frame);
+                // Display frame
+                opencv_highgui.imshow("Face Recognition - Press 'q' to quit", frame);
 
-            // Check for quit key
-            if (opencv_highgui.waitKey(30) == 'q') {
-                break;
+                // Check for quit key
+                if (opencv_highgui.waitKey(motionGate.frameDelayMillis(30)) == 'q') {
+                    break;
+                }
             }
         }
 
         camera.release();
         opencv_highgui.destroyAllWindows();
+        System.out.println("Face tracking: " + tracker.getStatus());
+        tracker.close();
+        System.out.println("Motion gate: " + motionGate.getStatus());
+        motionGate.close();
         System.out.println("\nCamera released. Goodbye!");
     }
 
@@ -262,7 +367,7 @@ public class DeepLearningRecognizer {
                                 RecognitionLogDAO.RecognitionResult result, String remarks) {
         try {
             recognitionLogDAO.logRecognition(
-                studentId, confidence, result, "DNN", "FaceNet", 
+                studentId, confidence, result, "DNN", embeddingGenerator.getModelName(), 
                 "default_camera", "main_entrance", remarks);
         } catch (SQLException e) {
             System.err.println("Failed to log recognition: " + e.getMessage());
@@ -273,12 +378,19 @@ public class DeepLearningRecognizer {
      * Clean up resources
      */
     public void close() {
+        if (matcher != null) {
+            matcher.close();
+        }
+        if (candidateSearch != null) {
+            candidateSearch.close();
+        }
         if (faceDetector != null) {
             faceDetector.close();
         }
         if (embeddingGenerator != null) {
             embeddingGenerator.close();
         }
+        detections.close();
     }
 
     /**
@@ -1,7 +1,9 @@
 package com.myapp.ml;
 
+import com.myapp.config.RecognitionConfig;
 import com.myapp.dao.FaceEmbeddingDAO;
 import com.myapp.dao.StudentDAO;
+import com.myapp.ml.gallery.EmbeddingGallery;
 import com.myapp.model.Student;
 import org.bytedeco.opencv.opencv_core.*;
 import org.bytedeco.opencv.global.opencv_imgcodecs;
@@ -13,13 +15,15 @@ import java.nio.file.Paths;
 import java.sql.SQLException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
 
 /**
  * Deep Learning based face trainer
  * Uses DNN face detector and FaceNet embeddings instead of LBPH
  */
 public class DeepLearningTrainer {
-    private DNNFaceDetector faceDetector;
+    private InferencePool inferencePool;
     private FaceNetEmbeddingGenerator embeddingGenerator;
     private FaceEmbeddingDAO embeddingDAO;
     private StudentDAO studentDAO;
@@ -28,7 +32,7 @@ public class DeepLearningTrainer {
     private static final String DATASET_BASE_PATH = "dataset";
 
     public DeepLearningTrainer() throws Exception {
-        this.faceDetector = new DNNFaceDetector();
+        this.inferencePool = InferencePool.getShared();
         this.embeddingGenerator = new FaceNetEmbeddingGenerator();
         this.embeddingDAO = new FaceEmbeddingDAO();
         this.studentDAO = new StudentDAO();
@@ -94,29 +98,45 @@ public class DeepLearningTrainer {
             System.out.println("Found " + imageFiles.length + " images");
             System.out.println("Processing images...\n");
 
-            // Delete existing embeddings for this student
-            embeddingDAO.deleteStudentEmbeddings(studentId);
+            // Delete this model's existing embeddings for the student
+            embeddingDAO.deleteStudentEmbeddings(studentId, embeddingGenerator.getModelName());
 
             int processedCount = 0;
-            int successCount = 0;
             List<String> errors = new ArrayList<>();
 
+            // Faces are embedded in batches and pruned before storing
+            FaceBatch batch = new FaceBatch(embeddingGenerator, RecognitionConfig.getInferenceBatchSize());
+
+            // Detection runs ahead on the inference pool, a few images per worker
+            int readAhead = inferencePool.getWorkers() * 2;
+            Mat[] images = new Mat[imageFiles.length];
+            List<Future<Rect>> detections = new ArrayList<>();
+
             for (File imageFile : imageFiles) {
+                for (int next = detections.size(); next < imageFiles.length &&
+                                                   next <= processedCount + readAhead; next++) {
+                    images[next] = opencv_imgcodecs.imread(imageFiles[next].getAbsolutePath());
+                    detections.add(images[next].empty() ? null :
+                                   inferencePool.submitDetectLargest(images[next]));
+                }
+                Mat image = images[processedCount];
+                Future<Rect> detection = detections.get(processedCount);
+                images[processedCount] = null;
+
                 processedCount++;
                 System.out.print("[" + processedCount + "/" + imageFiles.length + "] " + 
                                imageFile.getName() + "... ");
 
                 try {
-                    // Read image
-                    Mat image = opencv_imgcodecs.imread(imageFile.getAbsolutePath());
-                    if (image.empty()) {
+                    if (detection == null) {
                         System.out.println("✗ Failed to read");
                         errors.add(imageFile.getName() + ": Failed to read image");
+                        image.close();
                         continue;
                     }
 
                     // Detect face
-                    Rect faceRect = faceDetector.detectLargestFace(image);
+                    Rect faceRect = detection.get();
                     if (faceRect == null) {
                         System.out.println("✗ No face detected");
                         errors.add(imageFile.getName() + ": No face detected");
@@ -124,43 +144,43 @@ public class DeepLearningTrainer {
                         continue;
                     }
 
-                    // Extract face region
-                    Mat faceROI = new Mat(image, faceRect);
-
-                    // Generate embedding
-                    float[] embedding = embeddingGenerator.generateEmbedding(faceROI);
-                    if (embedding == null) {
-                        System.out.println("✗ Failed to generate embedding");
-                        errors.add(imageFile.getName() + ": Failed to generate embedding");
-                        faceROI.close();
-                        image.close();
-                        continue;
-                    }
-
                     // Calculate quality score (based on face size and clarity)
                     float qualityScore = calculateQualityScore(faceRect, image.cols(), image.rows());
 
-                    // Store embedding in database
-                    boolean stored = embeddingDAO.storeEmbedding(
-                        studentId, embedding, imageFile.getName(), 
-                        qualityScore, "FaceNet");
-
-                    if (stored) {
-                        System.out.println("✓ Success (quality: " + 
-                                         String.format("%.2f", qualityScore) + ")");
-                        successCount++;
-                    } else {
-                        System.out.println("✗ Failed to store");
-                        errors.add(imageFile.getName() + ": Failed to store embedding");
-                    }
+                    // Queue the face; embeddings are generated once per batch
+                    batch.add(image, faceRect, qualityScore, imageFile.getName());
+                    System.out.println("✓ Face detected (quality: " + 
+                                     String.format("%.2f", qualityScore) + ")");
 
-                    // Clean up
-                    faceROI.close();
+                } catch (Exception e) {
+                    Throwable cause = e instanceof ExecutionException ? e.getCause() : e;
+                    System.out.println("✗ Error: " + cause.getMessage());
+                    errors.add(imageFile.getName() + ": " + cause.getMessage());
                     image.close();
+                }
+            }
+            batch.flush();
+            for (String failed : batch.getFailedSources()) {
+                errors.add(failed + ": Failed to generate embedding");
+            }
 
-                } catch (Exception e) {
-                    System.out.println("✗ Error: " + e.getMessage());
-                    errors.add(imageFile.getName() + ": " + e.getMessage());
+            List<float[]> embeddings = batch.getEmbeddings();
+            List<String> imageSources = batch.getImageSources();
+            int successCount = embeddings.size();
+
+            // Keep only representative embeddings (near-duplicate frames are dropped)
+            float[] scores = batch.getQualityScores();
+            List<Integer> kept = EmbeddingPruner.select(embeddings, scores,
+                                                        RecognitionConfig.getMaxEmbeddingsPerStudent());
+            int storedCount = 0;
+            for (Integer index : kept) {
+                boolean stored = embeddingDAO.storeEmbedding(
+                    studentId, embeddings.get(index), imageSources.get(index),
+                    scores[index], embeddingGenerator.getModelName());
+                if (stored) {
+                    storedCount++;
+                } else {
+                    errors.add(imageSources.get(index) + ": Failed to store embedding");
                 }
             }
 
@@ -171,6 +191,8 @@ public class DeepLearningTrainer {
             System.out.println("Total images processed: " + processedCount);
             System.out.println("Successfully trained:   " + successCount);
             System.out.println("Failed:                 " + (processedCount - successCount));
+            System.out.println("Embeddings stored:      " + storedCount + " of " + successCount +
+                             " (near-duplicates pruned)");
             System.out.println("Success rate:           " + 
                              String.format("%.1f%%", (successCount * 100.0 / processedCount)));
 
@@ -183,7 +205,14 @@ public class DeepLearningTrainer {
 
             System.out.println("═".repeat(65) + "\n");
 
-            return successCount > 0;
+            // Publish the new embeddings to the resident gallery right away
+            try {
+                EmbeddingGallery.getInstance().refreshStudent(studentId);
+            } catch (SQLException e) {
+                System.err.println("⚠ Warning: Failed to refresh embedding gallery: " + e.getMessage());
+            }
+
+            return storedCount > 0;
 
         } catch (SQLException e) {
             System.err.println("✗ Database error: " + e.getMessage());
@@ -274,7 +303,7 @@ public class DeepLearningTrainer {
     /**
      * Get the dataset path for a student (creates directory structure)
      */
-    private String getStudentDatasetPath(Student student) {
+    static String getStudentDatasetPath(Student student) {
         // Sanitize student name for use as directory name
         String sanitizedName = student.getFullName()
             .toLowerCase()
@@ -294,7 +323,7 @@ public class DeepLearningTrainer {
     /**
      * Calculate quality score for a face detection
      */
-    private float calculateQualityScore(Rect faceRect, int imageWidth, int imageHeight) {
+    static float calculateQualityScore(Rect faceRect, int imageWidth, int imageHeight) {
         // Calculate face size relative to image
         float faceArea = faceRect.width() * faceRect.height();
         float imageArea = imageWidth * imageHeight;
@@ -332,9 +361,6 @@ public class DeepLearningTrainer {
      * Clean up resources
      */
     public void close() {
-        if (faceDetector != null) {
-            faceDetector.close();
-        }
         if (embeddingGenerator != null) {
             embeddingGenerator.close();
         }
@@ -351,6 +377,12 @@ public class DeepLearningTrainer {
             if (args.length > 0 && args[0].equals("--all")) {
                 // Train all students
                 trainer.trainAllStudents();
+            } else if (args.length > 0 && args[0].equals("--compact")) {
+                // Prune existing embeddings down to the configured limit
+                new EmbeddingCompactor().compact();
+            } else if (args.length >= 3 && args[0].equals("--migrate")) {
+                // Re-embed everyone with a new model, then cut over to it
+                new EmbeddingMigrator(args[1], args[2], RecognitionConfig.getMigrationImagesPerSecond()).migrate();
             } else if (args.length >= 2) {
                 // Train specific student
                 int studentId = Integer.parseInt(args[0]);
@@ -360,6 +392,8 @@ public class DeepLearningTrainer {
                 System.out.println("Usage:");
                 System.out.println("  java DeepLearningTrainer --all              (train all students)");
                 System.out.println("  java DeepLearningTrainer <studentId> <path> (train specific student)");
+                System.out.println("  java DeepLearningTrainer --compact          (prune stored embeddings)");
+                System.out.println("  java DeepLearningTrainer --migrate <tag> <modelPath> (switch embedding model)");
             }
         } catch (Exception e) {
             System.err.println("Error initializing trainer: " + e.getMessage());
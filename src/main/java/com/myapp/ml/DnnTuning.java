@@ -0,0 +1,554 @@
+package com.myapp.ml;
+
+import com.myapp.config.RecognitionConfig;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_dnn;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+import org.bytedeco.opencv.global.opencv_imgproc;
+import org.bytedeco.opencv.opencv_core.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.Random;
+import java.util.TreeSet;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * OpenCV DNN settings for this machine: backend and target per net,
+ * OpenCV thread count and face detector input size
+ *
+ * On startup the available CPU configurations are timed on a few
+ * calibration frames (synthetic, plus dataset images when there are any)
+ * and the fastest one is saved under models/tuning/<host>.properties, so
+ * each kiosk calibrates once. A configuration is only eligible when its
+ * output matches the OpenCV/CPU reference at full input size: the same
+ * faces, and embeddings with a cosine similarity of at least 0.995.
+ * Smaller detector inputs are only tried when the calibration frames
+ * contain faces to check them against. Explicit recognition.dnn.* values
+ * override the saved choice.
+ */
+public final class DnnTuning {
+    private static final int[] DETECTOR_INPUT_SIZES = {300, 256, 224};
+    private static final int SYNTHETIC_FRAMES = 3;
+    private static final int DATASET_FRAMES = 3;
+    private static final int TIMED_RUNS = 5;
+    // A candidate must beat the current best by this factor (timing noise)
+    private static final double MIN_SPEEDUP = 1.05;
+    private static final double MIN_EMBEDDING_COSINE = 0.995;
+    private static final double MIN_FACE_IOU = 0.7;
+
+    private static volatile DnnTuning current;
+
+    private final int detectorBackend;
+    private final int detectorTarget;
+    private final int detectorInputSize;
+    private final int embedderBackend;
+    private final int embedderTarget;
+    private final int threads;
+    private final double detectorMs;
+    private final double embedderMs;
+
+    private DnnTuning(int detectorBackend, int detectorTarget, int detectorInputSize,
+                      int embedderBackend, int embedderTarget, int threads,
+                      double detectorMs, double embedderMs) {
+        this.detectorBackend = detectorBackend;
+        this.detectorTarget = detectorTarget;
+        this.detectorInputSize = detectorInputSize;
+        this.embedderBackend = embedderBackend;
+        this.embedderTarget = embedderTarget;
+        this.threads = threads;
+        this.detectorMs = detectorMs;
+        this.embedderMs = embedderMs;
+    }
+
+    public int getDetectorBackend() { return detectorBackend; }
+    public int getDetectorTarget() { return detectorTarget; }
+    public int getDetectorInputSize() { return detectorInputSize; }
+    public int getEmbedderBackend() { return embedderBackend; }
+    public int getEmbedderTarget() { return embedderTarget; }
+
+    /**
+     * OpenCV threads per net (0 = OpenCV default)
+     */
+    public int getThreads() { return threads; }
+
+    /**
+     * Settings in effect: saved calibration (or defaults) with config overrides
+     */
+    public static DnnTuning current() {
+        DnnTuning tuning = current;
+        if (tuning == null) {
+            synchronized (DnnTuning.class) {
+                tuning = current;
+                if (tuning == null) {
+                    DnnTuning saved = load();
+                    tuning = withOverrides(saved != null ? saved : defaults());
+                    current = tuning;
+                }
+            }
+        }
+        return tuning;
+    }
+
+    /**
+     * Calibrate when this machine has no saved settings, then apply the
+     * thread count; call once at startup before any net is loaded
+     */
+    public static synchronized void calibrateIfNeeded() {
+        DnnTuning saved = load();
+        if (saved == null && RecognitionConfig.isDnnCalibrationEnabled()) {
+            try {
+                saved = calibrate();
+                save(saved);
+            } catch (Exception e) {
+                System.err.println("⚠ DNN calibration failed, using defaults: " + e.getMessage());
+            }
+        }
+        current = withOverrides(saved != null ? saved : defaults());
+        if (current.threads > 0) {
+            opencv_core.setNumThreads(current.threads);
+        }
+        System.out.println("✓ DNN settings: " + current);
+    }
+
+    @Override
+    public String toString() {
+        String text = String.format("detector %s/%s@%d, embedder %s/%s, %s thread(s)",
+                                    backendName(detectorBackend), targetName(detectorTarget), detectorInputSize,
+                                    backendName(embedderBackend), targetName(embedderTarget),
+                                    threads > 0 ? String.valueOf(threads) : "default");
+        if (detectorMs > 0) {
+            text += String.format(" (%.1f ms/frame, %.1f ms/face)", detectorMs, embedderMs);
+        }
+        return text;
+    }
+
+    /**
+     * Time the candidate configurations and pick the fastest one with output parity
+     */
+    static DnnTuning calibrate() throws Exception {
+        System.out.println("⏳ Calibrating DNN settings for this machine...");
+        ActiveModel model = ActiveModel.current();
+        DNNFaceDetector detector = null;
+        FaceNetEmbeddingGenerator embedder = null;
+        List<Mat> frames = calibrationFrames();
+        List<Mat> crops = new ArrayList<>();
+        try {
+            detector = new DNNFaceDetector();
+            embedder = new FaceNetEmbeddingGenerator(model.getTag(), model.getModelPath());
+            int cpu = opencv_dnn.DNN_TARGET_CPU;
+            int opencv = opencv_dnn.DNN_BACKEND_OPENCV;
+
+            // Reference outputs: OpenCV backend on the CPU at full input size
+            detector.configure(opencv, cpu, DNNFaceDetector.DEFAULT_INPUT_SIZE);
+            embedder.configure(opencv, cpu);
+            List<List<Rect>> referenceFaces = detectAll(detector, frames);
+            boolean hasFaces = referenceFaces.stream().anyMatch(faces -> !faces.isEmpty());
+            for (int i = 0; i < frames.size(); i++) {
+                crops.add(new Mat(frames.get(i), cropFor(frames.get(i), referenceFaces.get(i))));
+            }
+            float[][] referenceEmbeddings = embedAll(embedder, crops);
+
+            // Thread count, with the reference configuration
+            int bestThreads = opencv_core.getNumThreads();
+            double bestTime = Double.MAX_VALUE;
+            for (int threads : threadCandidates()) {
+                opencv_core.setNumThreads(threads);
+                double time = timeDetector(detector, frames) + timeEmbedder(embedder, crops);
+                System.out.println(String.format("  %d thread(s): %.1f ms", threads, time));
+                if (time * MIN_SPEEDUP < bestTime) {
+                    bestTime = time;
+                    bestThreads = threads;
+                }
+            }
+            opencv_core.setNumThreads(bestThreads);
+
+            // Detector backend/target and input size
+            int[] bestDetector = {opencv, cpu, DNNFaceDetector.DEFAULT_INPUT_SIZE};
+            double bestDetectorMs = Double.MAX_VALUE;
+            for (int[] combo : backendCandidates()) {
+                for (int size : DETECTOR_INPUT_SIZES) {
+                    if (size != DNNFaceDetector.DEFAULT_INPUT_SIZE && !hasFaces) {
+                        continue;
+                    }
+                    String name = backendName(combo[0]) + "/" + targetName(combo[1]) + "@" + size;
+                    try {
+                        detector.configure(combo[0], combo[1], size);
+                        if (!sameFaces(referenceFaces, detectAll(detector, frames))) {
+                            System.out.println("  detector " + name + ": output differs, skipped");
+                            continue;
+                        }
+                        double ms = timeDetector(detector, frames);
+                        System.out.println(String.format("  detector %s: %.1f ms/frame", name, ms));
+                        if (ms * MIN_SPEEDUP < bestDetectorMs) {
+                            bestDetectorMs = ms;
+                            bestDetector = new int[] {combo[0], combo[1], size};
+                        }
+                    } catch (RuntimeException e) {
+                        System.out.println("  detector " + name + ": unavailable (" + e.getMessage() + ")");
+                    }
+                }
+            }
+
+            // Embedder backend/target
+            int[] bestEmbedder = {opencv, cpu};
+            double bestEmbedderMs = Double.MAX_VALUE;
+            for (int[] combo : backendCandidates()) {
+                String name = backendName(combo[0]) + "/" + targetName(combo[1]);
+                try {
+                    embedder.configure(combo[0], combo[1]);
+                    if (!sameEmbeddings(referenceEmbeddings, embedAll(embedder, crops))) {
+                        System.out.println("  embedder " + name + ": output differs, skipped");
+                        continue;
+                    }
+                    double ms = timeEmbedder(embedder, crops);
+                    System.out.println(String.format("  embedder %s: %.1f ms/face", name, ms));
+                    if (ms * MIN_SPEEDUP < bestEmbedderMs) {
+                        bestEmbedderMs = ms;
+                        bestEmbedder = combo;
+                    }
+                } catch (RuntimeException e) {
+                    System.out.println("  embedder " + name + ": unavailable (" + e.getMessage() + ")");
+                }
+            }
+
+            DnnTuning tuning = new DnnTuning(bestDetector[0], bestDetector[1], bestDetector[2],
+                                             bestEmbedder[0], bestEmbedder[1], bestThreads,
+                                             bestDetectorMs, bestEmbedderMs);
+            System.out.println("✓ DNN calibration complete: " + tuning);
+            return tuning;
+        } finally {
+            for (Mat crop : crops) {
+                crop.close();
+            }
+            for (Mat frame : frames) {
+                frame.close();
+            }
+            if (detector != null) {
+                detector.close();
+            }
+            if (embedder != null) {
+                embedder.close();
+            }
+        }
+    }
+
+    private static DnnTuning defaults() {
+        return new DnnTuning(opencv_dnn.DNN_BACKEND_OPENCV, opencv_dnn.DNN_TARGET_CPU,
+                             DNNFaceDetector.DEFAULT_INPUT_SIZE,
+                             opencv_dnn.DNN_BACKEND_OPENCV, opencv_dnn.DNN_TARGET_CPU, 0, 0, 0);
+    }
+
+    private static DnnTuning withOverrides(DnnTuning tuning) {
+        int backend = parseBackend(RecognitionConfig.getDnnBackend());
+        int target = parseTarget(RecognitionConfig.getDnnTarget());
+        int threads = RecognitionConfig.getDnnThreads();
+        int inputSize = RecognitionConfig.getDetectorInputSize();
+        return new DnnTuning(backend >= 0 ? backend : tuning.detectorBackend,
+                             target >= 0 ? target : tuning.detectorTarget,
+                             inputSize > 0 ? inputSize : tuning.detectorInputSize,
+                             backend >= 0 ? backend : tuning.embedderBackend,
+                             target >= 0 ? target : tuning.embedderTarget,
+                             threads > 0 ? threads : tuning.threads,
+                             tuning.detectorMs, tuning.embedderMs);
+    }
+
+    // ----- Calibration helpers -----
+
+    /**
+     * Deterministic synthetic frames, plus a few dataset images (which have faces)
+     */
+    private static List<Mat> calibrationFrames() {
+        List<Mat> frames = new ArrayList<>();
+        Random random = new Random(42);
+        for (int i = 0; i < SYNTHETIC_FRAMES; i++) {
+            byte[] pixels = new byte[480 * 640 * 3];
+            random.nextBytes(pixels);
+            Mat frame = new Mat(480, 640, opencv_core.CV_8UC3);
+            frame.data().put(pixels);
+            // Blur the noise into camera-like blobs and edges
+            opencv_imgproc.GaussianBlur(frame, frame, new Size(0, 0), 3 + i * 4);
+            frames.add(frame);
+        }
+
+        Path dataset = Paths.get("dataset");
+        if (Files.isDirectory(dataset)) {
+            try (Stream<Path> files = Files.walk(dataset)) {
+                List<Path> images = files.filter(path -> {
+                    String name = path.getFileName().toString().toLowerCase();
+                    return name.endsWith(".jpg") || name.endsWith(".jpeg") || name.endsWith(".png");
+                }).limit(DATASET_FRAMES).collect(Collectors.toList());
+                for (Path image : images) {
+                    Mat frame = opencv_imgcodecs.imread(image.toString());
+                    if (frame.empty()) {
+                        frame.close();
+                    } else {
+                        frames.add(frame);
+                    }
+                }
+            } catch (IOException e) {
+                System.err.println("⚠ DNN calibration: cannot read dataset images: " + e.getMessage());
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * First detected face, or a centered square for frames without one
+     */
+    private static Rect cropFor(Mat frame, List<Rect> faces) {
+        if (!faces.isEmpty()) {
+            return faces.get(0);
+        }
+        int side = Math.min(frame.cols(), frame.rows()) / 2;
+        return new Rect((frame.cols() - side) / 2, (frame.rows() - side) / 2, side, side);
+    }
+
+    private static List<List<Rect>> detectAll(DNNFaceDetector detector, List<Mat> frames) {
+        List<List<Rect>> faces = new ArrayList<>();
+        for (Mat frame : frames) {
+            faces.add(detector.detectFaces(frame));
+        }
+        return faces;
+    }
+
+    private static float[][] embedAll(FaceNetEmbeddingGenerator embedder, List<Mat> crops) {
+        float[][] embeddings = new float[crops.size()][];
+        for (int i = 0; i < crops.size(); i++) {
+            embeddings[i] = embedder.generateEmbedding(crops.get(i));
+        }
+        return embeddings;
+    }
+
+    /**
+     * Median time of one pass over the frames, per frame
+     */
+    private static double timeDetector(DNNFaceDetector detector, List<Mat> frames) {
+        detectAll(detector, frames);
+        double[] runs = new double[TIMED_RUNS];
+        for (int run = 0; run < TIMED_RUNS; run++) {
+            long start = System.nanoTime();
+            detectAll(detector, frames);
+            runs[run] = (System.nanoTime() - start) / 1e6 / frames.size();
+        }
+        Arrays.sort(runs);
+        return runs[TIMED_RUNS / 2];
+    }
+
+    /**
+     * Median time of one pass over the crops, per face
+     */
+    private static double timeEmbedder(FaceNetEmbeddingGenerator embedder, List<Mat> crops) {
+        embedAll(embedder, crops);
+        double[] runs = new double[TIMED_RUNS];
+        for (int run = 0; run < TIMED_RUNS; run++) {
+            long start = System.nanoTime();
+            embedAll(embedder, crops);
+            runs[run] = (System.nanoTime() - start) / 1e6 / crops.size();
+        }
+        Arrays.sort(runs);
+        return runs[TIMED_RUNS / 2];
+    }
+
+    private static boolean sameFaces(List<List<Rect>> expected, List<List<Rect>> actual) {
+        for (int i = 0; i < expected.size(); i++) {
+            List<Rect> faces = actual.get(i);
+            if (faces.size() != expected.get(i).size()) {
+                return false;
+            }
+            for (Rect face : expected.get(i)) {
+                if (faces.stream().noneMatch(other -> iou(face, other) >= MIN_FACE_IOU)) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameEmbeddings(float[][] expected, float[][] actual) {
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] == null || actual[i] == null) {
+                if (expected[i] != actual[i]) {
+                    return false;
+                }
+                continue;
+            }
+            // Both are L2-normalized
+            if (VectorMath.dot(expected[i], actual[i]) < MIN_EMBEDDING_COSINE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static double iou(Rect a, Rect b) {
+        int x1 = Math.max(a.x(), b.x());
+        int y1 = Math.max(a.y(), b.y());
+        int x2 = Math.min(a.x() + a.width(), b.x() + b.width());
+        int y2 = Math.min(a.y() + a.height(), b.y() + b.height());
+        double intersection = Math.max(0, x2 - x1) * (double) Math.max(0, y2 - y1);
+        double union = a.area() + (double) b.area() - intersection;
+        return union > 0 ? intersection / union : 0;
+    }
+
+    /**
+     * 1, 2, 4, ... up to the core count (inclusive)
+     */
+    private static int[] threadCandidates() {
+        int cores = Runtime.getRuntime().availableProcessors();
+        TreeSet<Integer> candidates = new TreeSet<>();
+        for (int threads = 1; threads < cores; threads *= 2) {
+            candidates.add(threads);
+        }
+        candidates.add(cores);
+        return candidates.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * CPU backend/target pairs this OpenCV build reports (the OpenCV
+     * backend's FP16 path is always tried; it falls back where unsupported)
+     */
+    private static List<int[]> backendCandidates() {
+        List<int[]> candidates = new ArrayList<>();
+        candidates.add(new int[] {opencv_dnn.DNN_BACKEND_OPENCV, opencv_dnn.DNN_TARGET_CPU});
+        candidates.add(new int[] {opencv_dnn.DNN_BACKEND_OPENCV, opencv_dnn.DNN_TARGET_CPU_FP16});
+        IntIntPairVector available = opencv_dnn.getAvailableBackends();
+        for (long i = 0; i < available.size(); i++) {
+            int backend = available.first(i);
+            int target = available.second(i);
+            boolean cpuTarget = target == opencv_dnn.DNN_TARGET_CPU || target == opencv_dnn.DNN_TARGET_CPU_FP16;
+            if (cpuTarget && backendName(backend) != null &&
+                candidates.stream().noneMatch(c -> c[0] == backend && c[1] == target)) {
+                candidates.add(new int[] {backend, target});
+            }
+        }
+        available.close();
+        return candidates;
+    }
+
+    // ----- Names and persistence -----
+
+    private static String backendName(int backend) {
+        if (backend == opencv_dnn.DNN_BACKEND_OPENCV) return "opencv";
+        if (backend == opencv_dnn.DNN_BACKEND_INFERENCE_ENGINE) return "openvino";
+        if (backend == opencv_dnn.DNN_BACKEND_HALIDE) return "halide";
+        return null;
+    }
+
+    private static String targetName(int target) {
+        if (target == opencv_dnn.DNN_TARGET_CPU) return "cpu";
+        if (target == opencv_dnn.DNN_TARGET_CPU_FP16) return "cpu_fp16";
+        return null;
+    }
+
+    /**
+     * Backend constant for a config name (-1 = auto/unknown)
+     */
+    private static int parseBackend(String name) {
+        for (int backend : new int[] {opencv_dnn.DNN_BACKEND_OPENCV, opencv_dnn.DNN_BACKEND_INFERENCE_ENGINE,
+                                      opencv_dnn.DNN_BACKEND_HALIDE}) {
+            if (backendName(backend).equalsIgnoreCase(name)) {
+                return backend;
+            }
+        }
+        if (!"auto".equalsIgnoreCase(name)) {
+            System.err.println("⚠ Unknown DNN backend '" + name + "', using calibrated setting");
+        }
+        return -1;
+    }
+
+    /**
+     * Target constant for a config name (-1 = auto/unknown)
+     */
+    private static int parseTarget(String name) {
+        for (int target : new int[] {opencv_dnn.DNN_TARGET_CPU, opencv_dnn.DNN_TARGET_CPU_FP16}) {
+            if (targetName(target).equalsIgnoreCase(name)) {
+                return target;
+            }
+        }
+        if (!"auto".equalsIgnoreCase(name)) {
+            System.err.println("⚠ Unknown DNN target '" + name + "', using calibrated setting");
+        }
+        return -1;
+    }
+
+    /**
+     * Hardware and software the saved timings depend on; a mismatch
+     * (new CPU, OpenCV upgrade, model cut-over) forces a recalibration
+     */
+    private static String machineFingerprint() {
+        return System.getProperty("os.name") + "/" + System.getProperty("os.arch") + "/" +
+               Runtime.getRuntime().availableProcessors() + " cores/OpenCV " + opencv_core.CV_VERSION +
+               "/" + ActiveModel.current().getTag();
+    }
+
+    private static Path tuningFile() {
+        String host;
+        try {
+            host = InetAddress.getLocalHost().getHostName();
+        } catch (IOException e) {
+            host = "localhost";
+        }
+        return Paths.get(RecognitionConfig.getDnnTuningDir(), host.replaceAll("[^A-Za-z0-9._-]", "_") + ".properties");
+    }
+
+    /**
+     * Saved settings for this machine, or null when missing or stale
+     */
+    private static DnnTuning load() {
+        Path file = tuningFile();
+        if (!Files.exists(file)) {
+            return null;
+        }
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file)) {
+            properties.load(in);
+            if (!machineFingerprint().equals(properties.getProperty("machine"))) {
+                return null;
+            }
+            return new DnnTuning(Integer.parseInt(properties.getProperty("detector.backend")),
+                                 Integer.parseInt(properties.getProperty("detector.target")),
+                                 Integer.parseInt(properties.getProperty("detector.inputSize")),
+                                 Integer.parseInt(properties.getProperty("embedder.backend")),
+                                 Integer.parseInt(properties.getProperty("embedder.target")),
+                                 Integer.parseInt(properties.getProperty("threads")),
+                                 Double.parseDouble(properties.getProperty("detector.ms", "0")),
+                                 Double.parseDouble(properties.getProperty("embedder.ms", "0")));
+        } catch (IOException | RuntimeException e) {
+            System.err.println("⚠ Ignoring unreadable " + file + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void save(DnnTuning tuning) throws IOException {
+        Properties properties = new Properties();
+        properties.setProperty("machine", machineFingerprint());
+        properties.setProperty("detector.backend", String.valueOf(tuning.detectorBackend));
+        properties.setProperty("detector.target", String.valueOf(tuning.detectorTarget));
+        properties.setProperty("detector.inputSize", String.valueOf(tuning.detectorInputSize));
+        properties.setProperty("embedder.backend", String.valueOf(tuning.embedderBackend));
+        properties.setProperty("embedder.target", String.valueOf(tuning.embedderTarget));
+        properties.setProperty("threads", String.valueOf(tuning.threads));
+        properties.setProperty("detector.ms", String.valueOf(tuning.detectorMs));
+        properties.setProperty("embedder.ms", String.valueOf(tuning.embedderMs));
+
+        Path file = tuningFile();
+        Files.createDirectories(file.getParent());
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (OutputStream out = Files.newOutputStream(temp)) {
+            properties.store(out, "DNN calibration for this machine (delete to recalibrate)");
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
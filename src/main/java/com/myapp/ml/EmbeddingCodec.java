@@ -0,0 +1,201 @@
+package com.myapp.ml;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Binary encoding of embeddings for face_embeddings.embedding_vector
+ *
+ * Legacy rows are raw little-endian float32 values without a header.
+ * Versioned rows start with a 4-byte header (version, format, 0xC0, 0x7F)
+ * that reads as a NaN when taken as a little-endian float, so it can never
+ * be confused with the first value of a legacy embedding. The float16
+ * format stores IEEE half-precision values (2 bytes each), halving the
+ * BLOB size; its precision (~3 significant digits) leaves cosine ranking
+ * of unit-length embeddings practically unchanged.
+ */
+public final class EmbeddingCodec {
+
+    /**
+     * Storage formats for embedding BLOBs
+     */
+    public enum Format {
+        FLOAT32(0x20),
+        FLOAT16(0x10);
+
+        private final int code;
+
+        Format(int code) {
+            this.code = code;
+        }
+
+        static Format fromCode(int code) {
+            for (Format format : values()) {
+                if (format.code == code) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static final int HEADER_SIZE = 4;
+    private static final int VERSION = 1;
+    private static final byte MARKER_2 = (byte) 0xC0;
+    private static final byte MARKER_3 = (byte) 0x7F;
+
+    // Every half-precision bit pattern decoded once (256 KB)
+    private static final float[] HALF_TO_FLOAT = new float[1 << 16];
+
+    static {
+        for (int bits = 0; bits < HALF_TO_FLOAT.length; bits++) {
+            HALF_TO_FLOAT[bits] = halfToFloat((short) bits);
+        }
+    }
+
+    private EmbeddingCodec() {
+    }
+
+    /**
+     * Encode an embedding in the given format
+     */
+    public static byte[] encode(float[] embedding, Format format) {
+        if (format == Format.FLOAT32) {
+            ByteBuffer buffer = header(HEADER_SIZE + embedding.length * Float.BYTES, format);
+            buffer.asFloatBuffer().put(embedding);
+            return buffer.array();
+        }
+
+        short[] halves = new short[embedding.length];
+        for (int i = 0; i < embedding.length; i++) {
+            halves[i] = floatToHalf(embedding[i]);
+        }
+        ByteBuffer buffer = header(HEADER_SIZE + embedding.length * Short.BYTES, format);
+        buffer.asShortBuffer().put(halves);
+        return buffer.array();
+    }
+
+    /**
+     * Decode a versioned or legacy (headerless float32) BLOB
+     */
+    public static float[] decode(byte[] bytes) {
+        Format format = formatOf(bytes);
+        if (format == null) {
+            // Legacy row: raw little-endian float32
+            float[] embedding = new float[bytes.length / Float.BYTES];
+            ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN).asFloatBuffer().get(embedding);
+            return embedding;
+        }
+
+        ByteBuffer payload = ByteBuffer.wrap(bytes, HEADER_SIZE, bytes.length - HEADER_SIZE)
+                                       .slice().order(ByteOrder.LITTLE_ENDIAN);
+        if (format == Format.FLOAT32) {
+            float[] embedding = new float[payload.remaining() / Float.BYTES];
+            payload.asFloatBuffer().get(embedding);
+            return embedding;
+        }
+
+        short[] halves = new short[payload.remaining() / Short.BYTES];
+        payload.asShortBuffer().get(halves);
+        float[] embedding = new float[halves.length];
+        for (int i = 0; i < halves.length; i++) {
+            embedding[i] = HALF_TO_FLOAT[halves[i] & 0xFFFF];
+        }
+        return embedding;
+    }
+
+    /**
+     * Format of a versioned BLOB, or null for a legacy float32 row
+     */
+    public static Format formatOf(byte[] bytes) {
+        if (bytes.length < HEADER_SIZE || bytes[0] != VERSION ||
+            bytes[2] != MARKER_2 || bytes[3] != MARKER_3) {
+            return null;
+        }
+        return Format.fromCode(bytes[1] & 0xFF);
+    }
+
+    /**
+     * Parse a format name from configuration (float16 when unknown)
+     */
+    public static Format parseFormat(String name) {
+        if (name != null && name.trim().equalsIgnoreCase("float32")) {
+            return Format.FLOAT32;
+        }
+        if (name != null && !name.trim().equalsIgnoreCase("float16")) {
+            System.err.println("⚠ Unknown embedding storage format '" + name + "', using float16");
+        }
+        return Format.FLOAT16;
+    }
+
+    private static ByteBuffer header(int size, Format format) {
+        ByteBuffer buffer = ByteBuffer.allocate(size).order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put((byte) VERSION).put((byte) format.code).put(MARKER_2).put(MARKER_3);
+        return buffer;
+    }
+
+    /**
+     * IEEE 754 binary32 to binary16, round to nearest even
+     */
+    static short floatToHalf(float value) {
+        int bits = Float.floatToRawIntBits(value);
+        int sign = (bits >>> 16) & 0x8000;
+        int exponent = (bits >>> 23) & 0xFF;
+        int mantissa = bits & 0x7FFFFF;
+
+        if (exponent == 0xFF) {
+            // Infinity or NaN
+            return (short) (sign | 0x7C00 | (mantissa != 0 ? 0x200 : 0));
+        }
+        int halfExponent = exponent - 127 + 15;
+        if (halfExponent >= 0x1F) {
+            return (short) (sign | 0x7C00);
+        }
+        if (halfExponent <= 0) {
+            if (halfExponent < -10) {
+                return (short) sign;
+            }
+            // Subnormal half: shift the implicit bit in
+            mantissa |= 0x800000;
+            int shift = 14 - halfExponent;
+            int half = mantissa >>> shift;
+            int remainder = mantissa & ((1 << shift) - 1);
+            int halfway = 1 << (shift - 1);
+            if (remainder > halfway || (remainder == halfway && (half & 1) != 0)) {
+                half++;
+            }
+            return (short) (sign | half);
+        }
+
+        int half = (halfExponent << 10) | (mantissa >>> 13);
+        int remainder = mantissa & 0x1FFF;
+        if (remainder > 0x1000 || (remainder == 0x1000 && (half & 1) != 0)) {
+            // May carry into the exponent, which is still correct rounding
+            half++;
+        }
+        return (short) (sign | half);
+    }
+
+    /**
+     * IEEE 754 binary16 to binary32 (exact)
+     */
+    static float halfToFloat(short value) {
+        int bits = value & 0xFFFF;
+        int sign = (bits & 0x8000) << 16;
+        int exponent = (bits >>> 10) & 0x1F;
+        int mantissa = bits & 0x3FF;
+
+        if (exponent == 0) {
+            if (mantissa == 0) {
+                return Float.intBitsToFloat(sign);
+            }
+            // Subnormal: value = mantissa * 2^-24
+            float magnitude = mantissa * 0x1p-24f;
+            return sign != 0 ? -magnitude : magnitude;
+        }
+        if (exponent == 0x1F) {
+            return Float.intBitsToFloat(sign | 0x7F800000 | (mantissa << 13));
+        }
+        return Float.intBitsToFloat(sign | ((exponent - 15 + 127) << 23) | (mantissa << 13));
+    }
+}
@@ -0,0 +1,104 @@
+package com.myapp.ml;
+
+import com.myapp.config.RecognitionConfig;
+import com.myapp.dao.FaceEmbeddingDAO;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Prunes students that were trained before pruning existed (or with a
+ * higher limit) down to their representative embeddings
+ * Runs once over face_embeddings, either directly or on a background thread.
+ */
+public class EmbeddingCompactor {
+    private final FaceEmbeddingDAO embeddingDAO;
+    private final int maxEmbeddings;
+
+    public EmbeddingCompactor() {
+        this(new FaceEmbeddingDAO(), RecognitionConfig.getMaxEmbeddingsPerStudent());
+    }
+
+    public EmbeddingCompactor(FaceEmbeddingDAO embeddingDAO, int maxEmbeddings) {
+        this.embeddingDAO = embeddingDAO;
+        this.maxEmbeddings = maxEmbeddings;
+    }
+
+    /**
+     * Start a compaction pass on a daemon thread (no-op when disabled)
+     */
+    public static void startInBackground() {
+        if (!RecognitionConfig.isCompactionEnabled() || RecognitionConfig.getMaxEmbeddingsPerStudent() <= 0) {
+            return;
+        }
+        Thread thread = new Thread(() -> {
+            try {
+                new EmbeddingCompactor().compact();
+            } catch (SQLException e) {
+                System.err.println("⚠ Embedding compaction failed: " + e.getMessage());
+            }
+        }, "EmbeddingCompactor");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Prune every student above the limit; returns the number of deleted embeddings
+     */
+    public int compact() throws SQLException {
+        if (maxEmbeddings <= 0) {
+            return 0;
+        }
+        long start = System.currentTimeMillis();
+        String model = ActiveModel.current().getTag();
+        List<Integer> students = embeddingDAO.getStudentsWithMoreEmbeddingsThan(maxEmbeddings, model);
+        if (students.isEmpty()) {
+            return 0;
+        }
+
+        FaceEmbeddingDAO.StorageStats before = embeddingDAO.getStorageStats(model);
+        System.out.println("Compacting embeddings of " + students.size() + " student(s) to at most " +
+                         maxEmbeddings + " each...");
+        int deleted = 0;
+        for (Integer studentId : students) {
+            deleted += compactStudent(studentId, model);
+        }
+
+        FaceEmbeddingDAO.StorageStats after = embeddingDAO.getStorageStats(model);
+        System.out.println(String.format("✓ Embedding compaction (%s): %d -> %d embeddings (%.1f MB -> %.1f MB), " +
+                         "%d removed in %d ms", model, before.getCount(), after.getCount(),
+                         before.getBytes() / (1024.0 * 1024), after.getBytes() / (1024.0 * 1024),
+                         deleted, System.currentTimeMillis() - start));
+        return deleted;
+    }
+
+    /**
+     * Prune one student's embeddings from one model; returns the number deleted
+     */
+    public int compactStudent(int studentId, String model) throws SQLException {
+        List<FaceEmbeddingDAO.EmbeddingRecord> records = embeddingDAO.getStudentEmbeddingRecords(studentId, model);
+        if (records.size() <= maxEmbeddings) {
+            return 0;
+        }
+
+        List<float[]> embeddings = new ArrayList<>(records.size());
+        float[] qualityScores = new float[records.size()];
+        for (int i = 0; i < records.size(); i++) {
+            embeddings.add(records.get(i).getEmbedding());
+            qualityScores[i] = records.get(i).getQualityScore();
+        }
+
+        Set<Integer> keep = new HashSet<>(EmbeddingPruner.select(embeddings, qualityScores, maxEmbeddings));
+        List<Integer> remove = new ArrayList<>();
+        for (int i = 0; i < records.size(); i++) {
+            if (!keep.contains(i)) {
+                remove.add(records.get(i).getEmbeddingId());
+            }
+        }
+        return embeddingDAO.deleteEmbeddings(studentId, remove);
+    }
+}
@@ -0,0 +1,264 @@
+package com.myapp.ml;
+
+import com.myapp.config.RecognitionConfig;
+import com.myapp.dao.FaceEmbeddingDAO;
+import com.myapp.dao.StudentDAO;
+import com.myapp.ml.gallery.EmbeddingGallery;
+import com.myapp.model.Student;
+import org.bytedeco.opencv.opencv_core.*;
+import org.bytedeco.opencv.global.opencv_imgcodecs;
+
+import java.io.File;
+import java.sql.SQLException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Re-embeds every active student's dataset images with a new model in the
+ * background, then cuts recognition over to it
+ *
+ * New rows are written under the new model's tag next to the existing
+ * ones, so recognition keeps being served from the current model's
+ * gallery throughout. Students retrained with the current model while the
+ * migration runs are picked up again. Only when the new model covers every
+ * active student is the new model recorded as active and its gallery
+ * swapped in as a whole. Images are processed at a throttled rate so that
+ * a running recognition session keeps the CPU.
+ */
+public class EmbeddingMigrator {
+    private static final long PROGRESS_INTERVAL_MS = 10000;
+
+    private static volatile EmbeddingMigrator current;
+
+    private final String targetModel;
+    private final String targetModelPath;
+    private final long imageIntervalNanos;
+    private final FaceEmbeddingDAO embeddingDAO;
+    private final StudentDAO studentDAO;
+
+    // Progress, readable from any thread
+    private volatile String sourceModel = "";
+    private volatile String state = "not started";
+    private volatile int totalStudents;
+    private volatile int migratedStudents;
+    private volatile int failedStudents;
+    private volatile int processedImages;
+    private volatile long startTime;
+
+    private long nextImageTime;
+    private long lastProgressTime;
+
+    public EmbeddingMigrator(String targetModel, String targetModelPath, double imagesPerSecond) {
+        this.targetModel = targetModel;
+        this.targetModelPath = targetModelPath;
+        this.imageIntervalNanos = imagesPerSecond > 0 ? (long) (1_000_000_000L / imagesPerSecond) : 0;
+        this.embeddingDAO = new FaceEmbeddingDAO();
+        this.studentDAO = new StudentDAO();
+    }
+
+    /**
+     * Start the configured migration on a daemon thread (no-op when no
+     * migration is configured or its model is already active)
+     */
+    public static void startInBackground() {
+        String model = RecognitionConfig.getMigrationModel();
+        if (model.isEmpty() || model.equals(ActiveModel.current().getTag())) {
+            return;
+        }
+        EmbeddingMigrator migrator = new EmbeddingMigrator(model, RecognitionConfig.getMigrationModelPath(),
+                                                           RecognitionConfig.getMigrationImagesPerSecond());
+        current = migrator;
+        Thread thread = new Thread(() -> {
+            try {
+                migrator.migrate();
+            } catch (Exception e) {
+                migrator.state = "failed";
+                System.err.println("⚠ Embedding model migration failed: " + e.getMessage());
+            }
+        }, "EmbeddingMigrator");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    /**
+     * Migration started by this process, or null
+     */
+    public static EmbeddingMigrator getCurrent() {
+        return current;
+    }
+
+    /**
+     * Re-embed every uncovered student, then cut over; returns false when
+     * some students could not be migrated (recognition stays on the old model)
+     */
+    public boolean migrate() throws Exception {
+        sourceModel = ActiveModel.current().getTag();
+        if (sourceModel.equals(targetModel)) {
+            System.out.println("✓ Embedding model " + targetModel + " is already active");
+            state = "done";
+            return true;
+        }
+
+        startTime = System.currentTimeMillis();
+        state = "running";
+        System.out.println("Migrating embeddings from " + sourceModel + " to " + targetModel + "...");
+
+        DNNFaceDetector faceDetector = new DNNFaceDetector();
+        FaceNetEmbeddingGenerator generator = new FaceNetEmbeddingGenerator(targetModel, targetModelPath);
+        try {
+            // Repeat until no student is left (students retrained meanwhile come back)
+            Set<Integer> failed = new HashSet<>();
+            List<Integer> pending = pendingStudents(failed);
+            while (!pending.isEmpty()) {
+                totalStudents = migratedStudents + failedStudents + pending.size();
+                for (Integer studentId : pending) {
+                    if (migrateStudent(studentId, faceDetector, generator)) {
+                        migratedStudents++;
+                    } else {
+                        failed.add(studentId);
+                        failedStudents++;
+                    }
+                    reportProgress(false);
+                }
+                pending = pendingStudents(failed);
+            }
+            reportProgress(true);
+
+            if (!failed.isEmpty()) {
+                state = "blocked";
+                System.err.println("✗ Not cutting over to " + targetModel + ": " + failed.size() +
+                                 " student(s) could not be re-embedded " + failed +
+                                 "; recognition stays on " + sourceModel);
+                return false;
+            }
+
+            cutOver();
+            return true;
+        } finally {
+            faceDetector.close();
+            generator.close();
+        }
+    }
+
+    /**
+     * Progress line, e.g. for a statistics screen
+     */
+    public String getStatus() {
+        double seconds = Math.max(1, System.currentTimeMillis() - startTime) / 1000.0;
+        double rate = processedImages / seconds;
+        int done = migratedStudents + failedStudents;
+        String status = String.format("%s -> %s %s: %d/%d students (%d failed), %d images, %.1f img/s",
+                                      sourceModel, targetModel, state, done, totalStudents,
+                                      failedStudents, processedImages, rate);
+        if ("running".equals(state) && done > 0 && totalStudents > done) {
+            long remaining = (long) (seconds / done * (totalStudents - done));
+            status += String.format(", ~%d min left", Math.max(1, remaining / 60));
+        }
+        return status;
+    }
+
+    private List<Integer> pendingStudents(Set<Integer> failed) throws SQLException {
+        List<Integer> pending = embeddingDAO.getStudentsPendingMigration(sourceModel, targetModel);
+        pending.removeAll(failed);
+        return pending;
+    }
+
+    /**
+     * Re-embed one student's dataset and replace their rows under the new model
+     */
+    private boolean migrateStudent(int studentId, DNNFaceDetector faceDetector,
+                                   FaceNetEmbeddingGenerator generator) throws Exception {
+        Student student = studentDAO.getStudentById(studentId);
+        if (student == null) {
+            return false;
+        }
+        String datasetPath = student.getFacialDataPath();
+        if (datasetPath == null || !new File(datasetPath).isDirectory()) {
+            datasetPath = DeepLearningTrainer.getStudentDatasetPath(student);
+        }
+        File[] imageFiles = new File(datasetPath).listFiles((dir, name) ->
+            name.toLowerCase().endsWith(".jpg") ||
+            name.toLowerCase().endsWith(".jpeg") ||
+            name.toLowerCase().endsWith(".png"));
+        if (imageFiles == null || imageFiles.length == 0) {
+            System.err.println("⚠ Migration: no dataset images for student " + studentId + " (" + datasetPath + ")");
+            return false;
+        }
+
+        FaceBatch batch = new FaceBatch(generator, RecognitionConfig.getInferenceBatchSize());
+        for (File imageFile : imageFiles) {
+            throttle();
+            processedImages++;
+
+            Mat image = opencv_imgcodecs.imread(imageFile.getAbsolutePath());
+            if (image.empty()) {
+                continue;
+            }
+            Rect faceRect = faceDetector.detectLargestFace(image);
+            if (faceRect == null) {
+                image.close();
+                continue;
+            }
+            batch.add(image, faceRect, DeepLearningTrainer.calculateQualityScore(faceRect, image.cols(), image.rows()),
+                      imageFile.getName());
+        }
+        batch.flush();
+
+        List<float[]> embeddings = batch.getEmbeddings();
+        List<String> imageSources = batch.getImageSources();
+        if (embeddings.isEmpty()) {
+            System.err.println("⚠ Migration: no usable faces for student " + studentId);
+            return false;
+        }
+
+        float[] scores = batch.getQualityScores();
+        List<Integer> kept = EmbeddingPruner.select(embeddings, scores,
+                                                    RecognitionConfig.getMaxEmbeddingsPerStudent());
+        embeddingDAO.deleteStudentEmbeddings(studentId, targetModel);
+        int stored = 0;
+        for (Integer index : kept) {
+            if (embeddingDAO.storeEmbedding(studentId, embeddings.get(index), imageSources.get(index),
+                                            scores[index], targetModel)) {
+                stored++;
+            }
+        }
+        return stored > 0;
+    }
+
+    /**
+     * Record the new model as active and swap this process's gallery over;
+     * other processes follow on their next gallery sync
+     */
+    private void cutOver() throws Exception {
+        state = "cutting over";
+        ActiveModel.activate(targetModel, targetModelPath);
+        EmbeddingGallery.getInstance().switchModel(targetModel);
+        state = "done";
+        System.out.println("✓ Embedding model migration complete: " + getStatus());
+    }
+
+    /**
+     * Space images evenly at the configured rate
+     */
+    private void throttle() throws InterruptedException {
+        if (imageIntervalNanos == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (nextImageTime > now) {
+            Thread.sleep((nextImageTime - now) / 1_000_000);
+            now = System.nanoTime();
+        }
+        nextImageTime = Math.max(now, nextImageTime) + imageIntervalNanos;
+    }
+
+    private void reportProgress(boolean force) {
+        long now = System.currentTimeMillis();
+        if (force || now - lastProgressTime >= PROGRESS_INTERVAL_MS) {
+            lastProgressTime = now;
+            System.out.println("⏳ Embedding model migration " + getStatus());
+        }
+    }
+}
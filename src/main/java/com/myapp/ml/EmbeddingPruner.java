@@ -0,0 +1,86 @@
+package com.myapp.ml;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Picks a small representative subset of a student's embeddings
+ * Quality-weighted farthest-point sampling: start from the best-quality
+ * embedding, then repeatedly add the embedding that maximizes
+ * quality x (cosine distance to the nearest one already chosen). Near-duplicate
+ * frames from a burst capture add nothing and are dropped first, while
+ * distinct poses and lighting conditions are kept.
+ */
+public final class EmbeddingPruner {
+
+    private EmbeddingPruner() {
+    }
+
+    /**
+     * Indices of at most maxCount embeddings to keep (all of them when
+     * maxCount is 0 or not exceeded)
+     */
+    public static List<Integer> select(List<float[]> embeddings, float[] qualityScores, int maxCount) {
+        int n = embeddings.size();
+        List<Integer> selected = new ArrayList<>();
+        if (maxCount <= 0 || n <= maxCount) {
+            for (int i = 0; i < n; i++) {
+                selected.add(i);
+            }
+            return selected;
+        }
+
+        float[] norms = new float[n];
+        double[] weights = new double[n];
+        int first = 0;
+        for (int i = 0; i < n; i++) {
+            norms[i] = (float) Math.sqrt(VectorMath.dot(embeddings.get(i), embeddings.get(i)));
+            // Quality scores are in [0, 1]; keep a floor so low scores still count
+            weights[i] = 0.1 + Math.max(0.0, qualityScores[i]);
+            if (weights[i] > weights[first]) {
+                first = i;
+            }
+        }
+
+        double[] nearest = new double[n];
+        boolean[] taken = new boolean[n];
+        Arrays.fill(nearest, Double.MAX_VALUE);
+        int next = first;
+        while (selected.size() < maxCount) {
+            selected.add(next);
+            taken[next] = true;
+
+            float[] chosen = embeddings.get(next);
+            int best = -1;
+            double bestValue = 0.0;
+            for (int i = 0; i < n; i++) {
+                if (taken[i]) {
+                    continue;
+                }
+                double distance = cosineDistance(embeddings.get(i), norms[i], chosen, norms[next]);
+                if (distance < nearest[i]) {
+                    nearest[i] = distance;
+                }
+                double value = weights[i] * nearest[i];
+                if (value > bestValue) {
+                    bestValue = value;
+                    best = i;
+                }
+            }
+            if (best < 0) {
+                // Everything left duplicates a chosen embedding
+                break;
+            }
+            next = best;
+        }
+        return selected;
+    }
+
+    private static double cosineDistance(float[] a, float normA, float[] b, float normB) {
+        if (normA == 0 || normB == 0) {
+            return 1.0;
+        }
+        return Math.max(0.0, 1.0 - VectorMath.dot(a, b) / (normA * normB));
+    }
+}
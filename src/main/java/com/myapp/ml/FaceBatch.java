@@ -0,0 +1,94 @@
+package com.myapp.ml;
+
+import org.bytedeco.opencv.opencv_core.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Dataset face crops collected for batched embedding
+ * Crops are embedded together once the batch is full (or on flush), so
+ * training and migration run one forward pass per batch instead of per
+ * image. Each crop keeps its source image open until it is embedded.
+ */
+class FaceBatch {
+    private final FaceNetEmbeddingGenerator generator;
+    private final int capacity;
+
+    private final List<Mat> images = new ArrayList<>();
+    private final List<Mat> faces = new ArrayList<>();
+    private final List<Float> pendingScores = new ArrayList<>();
+    private final List<String> pendingSources = new ArrayList<>();
+
+    // Embedded so far, in input order
+    private final List<float[]> embeddings = new ArrayList<>();
+    private final List<Float> qualityScores = new ArrayList<>();
+    private final List<String> imageSources = new ArrayList<>();
+    private final List<String> failedSources = new ArrayList<>();
+
+    FaceBatch(FaceNetEmbeddingGenerator generator, int capacity) {
+        this.generator = generator;
+        this.capacity = Math.max(1, capacity);
+    }
+
+    /**
+     * Queue a face of an image; takes ownership of the image
+     */
+    void add(Mat image, Rect faceRect, float qualityScore, String imageSource) {
+        images.add(image);
+        faces.add(new Mat(image, faceRect));
+        pendingScores.add(qualityScore);
+        pendingSources.add(imageSource);
+        if (faces.size() >= capacity) {
+            flush();
+        }
+    }
+
+    /**
+     * Embed every queued face
+     */
+    void flush() {
+        if (faces.isEmpty()) {
+            return;
+        }
+        try {
+            float[][] batch = generator.generateEmbeddings(faces);
+            for (int i = 0; i < batch.length; i++) {
+                if (batch[i] != null) {
+                    embeddings.add(batch[i]);
+                    qualityScores.add(pendingScores.get(i));
+                    imageSources.add(pendingSources.get(i));
+                } else {
+                    failedSources.add(pendingSources.get(i));
+                }
+            }
+        } finally {
+            for (Mat face : faces) {
+                face.close();
+            }
+            for (Mat image : images) {
+                image.close();
+            }
+            faces.clear();
+            images.clear();
+            pendingScores.clear();
+            pendingSources.clear();
+        }
+    }
+
+    List<float[]> getEmbeddings() { return embeddings; }
+    List<String> getImageSources() { return imageSources; }
+
+    /**
+     * Images whose face produced no embedding
+     */
+    List<String> getFailedSources() { return failedSources; }
+
+    float[] getQualityScores() {
+        float[] scores = new float[qualityScores.size()];
+        for (int i = 0; i < scores.length; i++) {
+            scores[i] = qualityScores.get(i);
+        }
+        return scores;
+    }
+}
@@ -0,0 +1,100 @@
+package com.myapp.ml;
+
+import com.myapp.util.FrameScope;
+import org.bytedeco.opencv.opencv_core.Rect;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Reusable result container for {@link DNNFaceDetector#detectFaces(org.bytedeco.opencv.opencv_core.Mat, FaceDetections)}
+ * The Rect objects are recycled from one detection to the next, so a
+ * per-frame loop allocates nothing once the container has grown to the
+ * largest face count seen. Rects are only valid until the container is
+ * filled again; copy one to keep it longer.
+ */
+public class FaceDetections {
+    private Rect[] rects = new Rect[8];
+    private float[] confidences = new float[8];
+    private int size;
+
+    public int size() { return size; }
+    public boolean isEmpty() { return size == 0; }
+
+    public Rect get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        }
+        return rects[index];
+    }
+
+    public float getConfidence(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException(index + " >= " + size);
+        }
+        return confidences[index];
+    }
+
+    /**
+     * Index of the largest face by area, or -1 when empty
+     */
+    public int largest() {
+        int best = -1;
+        int bestArea = -1;
+        for (int i = 0; i < size; i++) {
+            int area = rects[i].width() * rects[i].height();
+            if (area > bestArea) {
+                bestArea = area;
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Independent copies of the current rects
+     */
+    public List<Rect> toList() {
+        List<Rect> copy = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            copy.add(copyOf(rects[i]));
+        }
+        return copy;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Release the native rects
+     */
+    public void close() {
+        for (int i = 0; i < rects.length; i++) {
+            if (rects[i] != null) {
+                rects[i].close();
+                rects[i] = null;
+            }
+        }
+        size = 0;
+    }
+
+    void add(int x, int y, int width, int height, float confidence) {
+        if (size == rects.length) {
+            rects = Arrays.copyOf(rects, size * 2);
+            confidences = Arrays.copyOf(confidences, size * 2);
+        }
+        Rect rect = rects[size];
+        if (rect == null) {
+            rect = FrameScope.keep(new Rect());
+            rects[size] = rect;
+        }
+        rect.x(x).y(y).width(width).height(height);
+        confidences[size++] = confidence;
+    }
+
+    static Rect copyOf(Rect rect) {
+        return new Rect(rect.x(), rect.y(), rect.width(), rect.height());
+    }
+}
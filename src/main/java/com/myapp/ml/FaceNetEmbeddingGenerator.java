@@ -1,5 +1,9 @@
 package com.myapp.ml;
 
+import com.myapp.config.RecognitionConfig;
+import com.myapp.util.FrameScope;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.javacpp.FloatPointer;
 import org.bytedeco.opencv.opencv_core.*;
 import org.bytedeco.opencv.opencv_dnn.Net;
 import org.bytedeco.opencv.global.opencv_core;
@@ -10,9 +14,14 @@ import java.io.*;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
-import java.nio.ByteBuffer;
-import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
 /**
  * FaceNet-based face embedding generator
@@ -22,6 +31,10 @@ import java.nio.FloatBuffer;
 public class FaceNetEmbeddingGenerator {
     private Net net;
     private static final int EMBEDDING_SIZE = 128;
+
+    // Tag stored with every embedding (face_embeddings.embedding_model)
+    public static final String MODEL_NAME = "FaceNet";
+    public static final String DEFAULT_MODEL_PATH = "models/facenet/openface.nn4.small2.v1.t7";
     private static final int INPUT_WIDTH = 160;
     private static final int INPUT_HEIGHT = 160;
     
@@ -29,12 +42,41 @@ public class FaceNetEmbeddingGenerator {
     private static final String MODEL_URL = 
         "https://github.com/pyannote/pyannote-data/raw/master/openface.nn4.small2.v1.t7";
     
-    private String modelPath;
+    // ONNX model files read into native memory once per path and shared
+    // (the Torch importer only reads from a file)
+    private static final Map<String, BytePointer> MODEL_BYTES = new HashMap<>();
+
+    private static final Scalar ZERO_MEAN = FrameScope.keep(new Scalar(0, 0, 0, 0));
+
+    // Reused across calls (a generator is confined to one thread); kept out
+    // of the frame scope when a generator is created inside a capture loop
+    private final Size inputSize = FrameScope.keep(new Size(INPUT_WIDTH, INPUT_HEIGHT));
+    private final Mat blob = FrameScope.keep(new Mat());
+    private final Mat converted = FrameScope.keep(new Mat());
+
+    private final String modelName;
+    private final String modelPath;
+    private int embeddingSize = EMBEDDING_SIZE;
 
     /**
-     * Initialize the FaceNet embedding generator
+     * Initialize the generator for the active embedding model
      */
     public FaceNetEmbeddingGenerator() throws Exception {
+        this(ActiveModel.current());
+    }
+
+    private FaceNetEmbeddingGenerator(ActiveModel model) throws Exception {
+        this(model.getTag(), model.getModelPath());
+    }
+
+    /**
+     * Initialize the generator for a specific model
+     * @param modelName Tag stored with the embeddings it produces
+     * @param modelPath Network file (.t7 for Torch, otherwise any format OpenCV DNN reads)
+     */
+    public FaceNetEmbeddingGenerator(String modelName, String modelPath) throws Exception {
+        this.modelName = modelName;
+        this.modelPath = modelPath;
         initializeModel();
         loadModel();
     }
@@ -43,14 +85,19 @@ public class FaceNetEmbeddingGenerator {
      * Download and initialize model file if not present
      */
     private void initializeModel() throws Exception {
-        File modelDir = new File("models/facenet");
+        File modelFile = new File(modelPath);
+        if (!DEFAULT_MODEL_PATH.equals(modelPath)) {
+            if (!modelFile.exists()) {
+                throw new Exception("Embedding model not found: " + modelPath);
+            }
+            return;
+        }
+
+        File modelDir = modelFile.getParentFile();
         if (!modelDir.exists()) {
             modelDir.mkdirs();
         }
 
-        modelPath = "models/facenet/openface.nn4.small2.v1.t7";
-        File modelFile = new File(modelPath);
-
         // Download model if not exists (this is ~30MB)
         if (!modelFile.exists()) {
             System.out.println("Downloading FaceNet model (this may take a few minutes)...");
@@ -59,92 +106,226 @@ public class FaceNetEmbeddingGenerator {
     }
 
     /**
-     * Load the FaceNet model
+     * Load the embedding model
      */
     private void loadModel() throws Exception {
         try {
-            net = opencv_dnn.readNetFromTorch(modelPath);
+            if (modelPath.endsWith(".t7")) {
+                net = opencv_dnn.readNetFromTorch(modelPath);
+            } else if (modelPath.endsWith(".onnx")) {
+                net = opencv_dnn.readNet("onnx", modelBytes(modelPath));
+            } else {
+                net = opencv_dnn.readNet(modelPath);
+            }
+            FrameScope.keep(net);
             if (net.empty()) {
-                throw new Exception("Failed to load FaceNet model");
+                throw new Exception("Failed to load " + modelName + " model");
             }
-            System.out.println("✓ FaceNet embedding generator loaded successfully");
+            DnnTuning tuning = DnnTuning.current();
+            configure(tuning.getEmbedderBackend(), tuning.getEmbedderTarget());
+            System.out.println("✓ " + modelName + " embedding generator loaded successfully");
         } catch (Exception e) {
             throw new Exception("Failed to initialize FaceNet: " + e.getMessage());
         }
     }
 
+    private static BytePointer modelBytes(String path) throws IOException {
+        synchronized (MODEL_BYTES) {
+            BytePointer bytes = MODEL_BYTES.get(path);
+            if (bytes == null) {
+                bytes = FrameScope.keep(new BytePointer(Files.readAllBytes(Paths.get(path))));
+                MODEL_BYTES.put(path, bytes);
+            }
+            return bytes;
+        }
+    }
+
+    /**
+     * Select the DNN backend/target used by the next forward pass
+     */
+    void configure(int backend, int target) {
+        net.setPreferableBackend(backend);
+        net.setPreferableTarget(target);
+    }
+
     /**
      * Generate face embedding from a face image
      * @param faceImage Face image (should be aligned and cropped to just the face)
-     * @return 128-dimensional embedding vector
+     * @return Embedding vector (128-dimensional for FaceNet)
      */
     public float[] generateEmbedding(Mat faceImage) {
         if (faceImage.empty()) {
             return null;
         }
+        Mat embedding = forward(faceImage);
+        float[] embeddingArray = new float[(int) embedding.total()];
+        readNormalized(embedding, embeddingArray);
+        return embeddingArray;
+    }
 
-        // Resize face to model input size
-        Mat resizedFace = new Mat();
-        opencv_imgproc.resize(faceImage, resizedFace, new Size(INPUT_WIDTH, INPUT_HEIGHT));
+    /**
+     * Generate a face embedding into a caller-owned array of
+     * {@link #getEmbeddingSize()} floats; returns false for an empty image
+     * Reuses the input blob and conversion buffer, so a frame loop
+     * allocates no native memory here once warmed up.
+     */
+    public boolean generateEmbedding(Mat faceImage, float[] embedding) {
+        if (faceImage.empty()) {
+            return false;
+        }
+        Mat output = forward(faceImage);
+        if (output.total() != embedding.length) {
+            int size = (int) output.total();
+            output.close();
+            throw new IllegalArgumentException("Embedding buffer holds " + embedding.length +
+                                               " floats, " + modelName + " outputs " + size);
+        }
+        readNormalized(output, embedding);
+        return true;
+    }
 
-        // Convert to RGB if needed
-        Mat rgbFace = new Mat();
-        if (resizedFace.channels() == 1) {
-            opencv_imgproc.cvtColor(resizedFace, rgbFace, opencv_imgproc.COLOR_GRAY2RGB);
-        } else {
-            opencv_imgproc.cvtColor(resizedFace, rgbFace, opencv_imgproc.COLOR_BGR2RGB);
+    /**
+     * Run the network on one face; the caller closes the returned output
+     */
+    private Mat forward(Mat faceImage) {
+        // Gray input is replicated to 3 channels
+        Mat input = faceImage;
+        if (faceImage.channels() == 1) {
+            opencv_imgproc.cvtColor(faceImage, converted, opencv_imgproc.COLOR_GRAY2BGR);
+            input = converted;
         }
 
-        // Create input blob (normalize to [0, 1])
-        Mat blob = opencv_dnn.blobFromImage(
-            rgbFace,
-            1.0 / 255.0,
-            new Size(INPUT_WIDTH, INPUT_HEIGHT),
-            new Scalar(0, 0, 0, 0),
-            true,
-            false,
-            opencv_core.CV_32F
-        );
+        // Resize to the model input and normalize to [0, 1] in one step.
+        // BGR without a channel swap gives the same blob as converting to
+        // RGB and letting blobFromImage swap back.
+        opencv_dnn.blobFromImage(input, blob, 1.0 / 255.0, inputSize, ZERO_MEAN, false, false,
+                                 opencv_core.CV_32F);
 
         // Forward pass
         net.setInput(blob);
-        Mat embedding = net.forward();
+        return net.forward();
+    }
+
+    /**
+     * Copy the network output into the array and L2 normalize it; closes the output
+     */
+    private void readNormalized(Mat output, float[] embedding) {
+        new FloatPointer(output.data()).get(embedding, 0, embedding.length);
+        output.close();
+        embeddingSize = embedding.length;
+        normalizeInPlace(embedding, 0, embedding.length);
+    }
 
-        // Extract embedding as float array
-        float[] embeddingArray = new float[EMBEDDING_SIZE];
-        FloatBuffer buffer = embedding.createBuffer();
-        buffer.get(embeddingArray);
+    /**
+     * Generate embeddings for several face images with one forward pass per
+     * batch (at most recognition.inference.batchSize faces each)
+     * Results are in input order; empty inputs get null. Produces the same
+     * values as {@link #generateEmbedding} per face.
+     */
+    public float[][] generateEmbeddings(List<Mat> faceImages) {
+        float[][] embeddings = new float[faceImages.size()][];
+        int batchSize = Math.max(1, RecognitionConfig.getInferenceBatchSize());
+        for (int from = 0; from < faceImages.size(); from += batchSize) {
+            int to = Math.min(faceImages.size(), from + batchSize);
+            embedBatch(faceImages, from, to, embeddings);
+        }
+        return embeddings;
+    }
 
-        // Normalize the embedding (L2 normalization)
-        embeddingArray = normalizeEmbedding(embeddingArray);
+    /**
+     * Generate embeddings for every face rectangle of a frame in one batch
+     */
+    public float[][] generateEmbeddings(Mat frame, List<Rect> faces) {
+        List<Mat> crops = new ArrayList<>(faces.size());
+        for (Rect face : faces) {
+            crops.add(new Mat(frame, face));
+        }
+        try {
+            return generateEmbeddings(crops);
+        } finally {
+            for (Mat crop : crops) {
+                crop.close();
+            }
+        }
+    }
 
-        // Clean up
-        resizedFace.close();
-        rgbFace.close();
-        blob.close();
-        embedding.close();
+    private void embedBatch(List<Mat> faceImages, int from, int to, float[][] embeddings) {
+        List<Integer> indices = new ArrayList<>(to - from);
+        List<Mat> prepared = new ArrayList<>(to - from);
+        MatVector batch = new MatVector();
+        try {
+            for (int i = from; i < to; i++) {
+                Mat face = faceImages.get(i);
+                if (face == null || face.empty()) {
+                    continue;
+                }
+                Mat resized = new Mat();
+                opencv_imgproc.resize(face, resized, inputSize);
+                prepared.add(resized);
+                if (resized.channels() == 1) {
+                    // Same input as the single-face path: gray replicated to 3 channels
+                    Mat color = new Mat();
+                    opencv_imgproc.cvtColor(resized, color, opencv_imgproc.COLOR_GRAY2BGR);
+                    prepared.add(color);
+                    resized = color;
+                }
+                batch.push_back(resized);
+                indices.add(i);
+            }
+            if (indices.isEmpty()) {
+                return;
+            }
 
-        return embeddingArray;
+            // The single-face path converts to RGB and then lets blobFromImage
+            // swap back, so BGR input without a swap gives the identical blob
+            opencv_dnn.blobFromImages(batch, blob, 1.0 / 255.0, inputSize, ZERO_MEAN, false, false,
+                                      opencv_core.CV_32F);
+            net.setInput(blob);
+            Mat output = net.forward();
+            int count = indices.size();
+            if (output.dims() < 2 || output.size(0) != count) {
+                // Network without batch support: one forward pass per face
+                output.close();
+                for (Integer index : indices) {
+                    embeddings[index] = generateEmbedding(faceImages.get(index));
+                }
+                return;
+            }
+
+            int dimension = (int) (output.total() / count);
+            float[] values = new float[count * dimension];
+            FloatBuffer buffer = output.createBuffer();
+            buffer.get(values);
+            embeddingSize = dimension;
+            for (int j = 0; j < count; j++) {
+                float[] embedding = Arrays.copyOfRange(values, j * dimension, (j + 1) * dimension);
+                normalizeInPlace(embedding, 0, dimension);
+                embeddings[indices.get(j)] = embedding;
+            }
+            output.close();
+        } finally {
+            for (Mat mat : prepared) {
+                mat.close();
+            }
+            batch.close();
+        }
     }
 
     /**
-     * L2 normalize the embedding vector
+     * L2 normalize values[offset..offset+length) in place
      */
-    private float[] normalizeEmbedding(float[] embedding) {
+    private static void normalizeInPlace(float[] values, int offset, int length) {
         float norm = 0.0f;
-        for (float val : embedding) {
-            norm += val * val;
+        for (int i = offset; i < offset + length; i++) {
+            norm += values[i] * values[i];
         }
         norm = (float) Math.sqrt(norm);
 
         if (norm > 0) {
-            float[] normalized = new float[embedding.length];
-            for (int i = 0; i < embedding.length; i++) {
-                normalized[i] = embedding[i] / norm;
+            for (int i = offset; i < offset + length; i++) {
+                values[i] /= norm;
             }
-            return normalized;
         }
-        return embedding;
     }
 
     /**
@@ -157,12 +338,8 @@ public class FaceNetEmbeddingGenerator {
             return -1.0;
         }
 
-        double dotProduct = 0.0;
-        for (int i = 0; i < embedding1.length; i++) {
-            dotProduct += embedding1[i] * embedding2[i];
-        }
-
-        return dotProduct;
+        // Vector API dot product when available, scalar fallback otherwise
+        return VectorMath.dot(embedding1, embedding2);
     }
 
     /**
@@ -188,25 +365,16 @@ public class FaceNetEmbeddingGenerator {
      * Convert embedding array to byte array for database storage
      */
     public static byte[] embeddingToBytes(float[] embedding) {
-        ByteBuffer buffer = ByteBuffer.allocate(embedding.length * 4);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        for (float value : embedding) {
-            buffer.putFloat(value);
-        }
-        return buffer.array();
+        EmbeddingCodec.Format format = EmbeddingCodec.parseFormat(RecognitionConfig.getEmbeddingStorageFormat());
+        return EmbeddingCodec.encode(embedding, format);
     }
 
     /**
      * Convert byte array from database to embedding array
+     * Accepts versioned (float16/float32) and legacy headerless float32 rows.
      */
     public static float[] bytesToEmbedding(byte[] bytes) {
-        ByteBuffer buffer = ByteBuffer.wrap(bytes);
-        buffer.order(ByteOrder.LITTLE_ENDIAN);
-        float[] embedding = new float[bytes.length / 4];
-        for (int i = 0; i < embedding.length; i++) {
-            embedding[i] = buffer.getFloat();
-        }
-        return embedding;
+        return EmbeddingCodec.decode(bytes);
     }
 
     /**
@@ -254,7 +422,14 @@ public class FaceNetEmbeddingGenerator {
      * Get embedding size
      */
     public int getEmbeddingSize() {
-        return EMBEDDING_SIZE;
+        return embeddingSize;
+    }
+
+    /**
+     * Tag of the model this generator runs (face_embeddings.embedding_model)
+     */
+    public String getModelName() {
+        return modelName;
     }
 
     /**
@@ -264,5 +439,8 @@ public class FaceNetEmbeddingGenerator {
         if (net != null && !net.isNull()) {
             net.close();
         }
+        blob.close();
+        converted.close();
+        inputSize.close();
     }
 }
@@ -0,0 +1,470 @@
+package com.myapp.ml;
+
+import com.myapp.config.RecognitionConfig;
+import com.myapp.util.FrameScope;
+import org.bytedeco.javacpp.BytePointer;
+import org.bytedeco.opencv.opencv_core.*;
+import org.bytedeco.opencv.global.opencv_imgproc;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Lightweight multi-face tracker for live camera loops
+ *
+ * The SSD detector runs only every N frames; in between, each track's box
+ * is carried forward along its last observed motion. A tiny thumbnail of
+ * every tracked face is compared against the frame each time, and a track
+ * whose pixels changed too much (the person moved away or turned) forces
+ * an immediate detector pass. Detections are associated with tracks by box
+ * overlap (IoU) and then by centroid distance, so a face keeps its track id
+ * while it stays in view.
+ *
+ * Identities are decided per track by voting: every embedding of the track
+ * casts a vote for the student it matched (or for "unknown"), and the
+ * identity becomes final once one student leads with enough votes, or at
+ * once for a single very confident match. A final track is never embedded
+ * again, and each track finalizes exactly once, so callers can act on
+ * {@link #recognizePending} results without their own cooldowns. Not
+ * thread-safe; one tracker per capture loop.
+ */
+public class FaceTracker {
+    private static final int THUMBNAIL_SIZE = 16;
+
+    private final DNNFaceDetector detector;
+    private final int detectInterval;
+    private final double iouThreshold;
+    private final int maxMissed;
+    private final double lostDifference;
+    private final double finalizeConfidence;
+    private final int minVotes;
+    private final double voteShare;
+    private final int refineInterval;
+    private final int maxRecognitions;
+
+    private final List<Track> tracks = new ArrayList<>();
+    private final FaceDetections detections = new FaceDetections();
+
+    // Reused between frames, so kept out of the frame scope
+    private final Rect roi = FrameScope.keep(new Rect());
+    private final Mat thumbnail = FrameScope.keep(new Mat());
+    private final Size thumbnailSize = FrameScope.keep(new Size(THUMBNAIL_SIZE, THUMBNAIL_SIZE));
+    private final byte[] thumbnailBytes = new byte[THUMBNAIL_SIZE * THUMBNAIL_SIZE * 3];
+
+    private int frameNumber;
+    private int lastDetectionFrame = Integer.MIN_VALUE / 2;
+    private int nextTrackId = 1;
+
+    // Counters for getStatus()
+    private long detectorPasses;
+    private long embeddings;
+    private long identified;
+
+    /**
+     * One face followed across frames
+     */
+    public static class Track {
+        private final int id;
+
+        // Box at the last detection and the current (predicted) box
+        private int detectedX;
+        private int detectedY;
+        private int x;
+        private int y;
+        private int width;
+        private int height;
+        private double velocityX;
+        private double velocityY;
+        private int lastDetectedFrame;
+        private int missed;
+        private final byte[] thumbnail = new byte[THUMBNAIL_SIZE * THUMBNAIL_SIZE * 3];
+
+        // Votes per student id; failed or unmatched embeddings vote "unknown"
+        private final Map<Integer, Vote> votes = new HashMap<>();
+        private DeepLearningRecognizer.RecognitionResult identity;
+        private boolean finalized;
+        private int lastRecognizedFrame;
+        private int recognitions;
+
+        Track(int id) {
+            this.id = id;
+        }
+
+        public int getId() { return id; }
+        public int getX() { return x; }
+        public int getY() { return y; }
+        public int getWidth() { return width; }
+        public int getHeight() { return height; }
+        public int getRecognitions() { return recognitions; }
+
+        /**
+         * Leading identity so far (null until the track has been embedded once)
+         */
+        public DeepLearningRecognizer.RecognitionResult getIdentity() { return identity; }
+
+        /**
+         * Whether the vote is decided; the identity no longer changes
+         */
+        public boolean isFinal() { return finalized; }
+
+        /**
+         * Final and matched to a student
+         */
+        public boolean isIdentified() {
+            return finalized && identity.isRecognized();
+        }
+
+        /**
+         * Current box as a Rect (allocated in the caller's frame scope)
+         */
+        public Rect toRect() {
+            return new Rect(x, y, width, height);
+        }
+
+        private void setBox(int x, int y, int width, int height, int frame) {
+            int elapsed = frame - lastDetectedFrame;
+            if (lastDetectedFrame > 0 && elapsed > 0) {
+                velocityX = (double) (x - detectedX) / elapsed;
+                velocityY = (double) (y - detectedY) / elapsed;
+            }
+            this.detectedX = x;
+            this.detectedY = y;
+            this.x = x;
+            this.y = y;
+            this.width = width;
+            this.height = height;
+            this.lastDetectedFrame = frame;
+            this.missed = 0;
+        }
+    }
+
+    /**
+     * Matches of one student within a track
+     */
+    private static class Vote {
+        private int count;
+        private DeepLearningRecognizer.RecognitionResult best;
+
+        void add(DeepLearningRecognizer.RecognitionResult result) {
+            count++;
+            if (best == null || result.getConfidence() > best.getConfidence()) {
+                best = result;
+            }
+        }
+    }
+
+    public FaceTracker(DNNFaceDetector detector) {
+        this.detector = detector;
+        this.detectInterval = Math.max(1, RecognitionConfig.getTrackerDetectInterval());
+        this.iouThreshold = RecognitionConfig.getTrackerIouThreshold();
+        this.maxMissed = Math.max(0, RecognitionConfig.getTrackerMaxMissed());
+        this.lostDifference = RecognitionConfig.getTrackerLostDifference();
+        this.finalizeConfidence = RecognitionConfig.getTrackerFinalizeConfidence();
+        this.minVotes = Math.max(1, RecognitionConfig.getTrackerMinVotes());
+        this.voteShare = RecognitionConfig.getTrackerVoteShare();
+        this.refineInterval = Math.max(1, RecognitionConfig.getTrackerRefineInterval());
+        this.maxRecognitions = Math.max(1, RecognitionConfig.getTrackerMaxRecognitions());
+    }
+
+    /**
+     * Advance all tracks to a new frame, running the detector when due
+     * @return the live tracks (do not modify)
+     */
+    public List<Track> update(Mat frame) {
+        return update(frame, true);
+    }
+
+    /**
+     * Advance all tracks, skipping the scheduled detector pass on a frame
+     * without motion unless a track still waits for its identity
+     * A tracked face that changed still triggers a detector pass.
+     */
+    public List<Track> update(Mat frame, boolean motion) {
+        frameNumber++;
+        if (frame.empty()) {
+            return getTracks();
+        }
+
+        boolean lost = false;
+        for (Track track : tracks) {
+            predict(track, frame);
+            if (!lost && changed(track, frame)) {
+                lost = true;
+            }
+        }
+
+        boolean due = frameNumber - lastDetectionFrame >= detectInterval &&
+                      (motion || hasUndecided());
+        if (lost || due) {
+            detect(frame);
+        }
+        return getTracks();
+    }
+
+    private boolean hasUndecided() {
+        for (Track track : tracks) {
+            if (!track.finalized) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public List<Track> getTracks() {
+        return Collections.unmodifiableList(tracks);
+    }
+
+    /**
+     * Tracks that should be embedded on this frame: new tracks, and
+     * undecided tracks whose last vote is refineInterval frames old
+     * Only tracks seen by the detector on this frame qualify, so the crop
+     * is a real detection rather than a predicted box.
+     */
+    public List<Track> pendingRecognition() {
+        List<Track> pending = new ArrayList<>();
+        for (Track track : tracks) {
+            if (track.lastDetectedFrame != frameNumber || track.finalized) {
+                continue;
+            }
+            if (track.recognitions == 0 ||
+                frameNumber - track.lastRecognizedFrame >= refineInterval) {
+                pending.add(track);
+            }
+        }
+        return pending;
+    }
+
+    /**
+     * Embed and match the pending tracks in one batch and count their votes
+     * @return the tracks whose identity became final on this frame (each
+     *         track is returned here at most once in its lifetime)
+     */
+    public List<Track> recognizePending(Mat frame, DeepLearningRecognizer recognizer) {
+        List<Track> pending = pendingRecognition();
+        if (pending.isEmpty()) {
+            return pending;
+        }
+        List<Rect> faces = new ArrayList<>(pending.size());
+        for (Track track : pending) {
+            faces.add(track.toRect());
+        }
+        List<DeepLearningRecognizer.RecognitionResult> results = recognizer.recognizeAll(frame, faces);
+        List<Track> decided = new ArrayList<>();
+        for (int i = 0; i < pending.size(); i++) {
+            Track track = pending.get(i);
+            if (vote(track, results.get(i))) {
+                decided.add(track);
+            }
+        }
+        embeddings += pending.size();
+        return decided;
+    }
+
+    /**
+     * Count one match for a track and finalize it when the vote is decided
+     * The leading student wins with minVotes votes, or with a single match
+     * of finalizeConfidence, as long as it holds voteShare of all votes
+     * (unknown ones included). A track that is still undecided after
+     * maxRecognitions embeddings is final as unknown.
+     */
+    boolean vote(Track track, DeepLearningRecognizer.RecognitionResult result) {
+        track.recognitions++;
+        track.lastRecognizedFrame = frameNumber;
+        if (result.isRecognized()) {
+            track.votes.computeIfAbsent(result.getStudentId(), id -> new Vote()).add(result);
+        }
+
+        Vote leader = null;
+        for (Vote vote : track.votes.values()) {
+            if (leader == null || vote.count > leader.count ||
+                (vote.count == leader.count && vote.best.getConfidence() > leader.best.getConfidence())) {
+                leader = vote;
+            }
+        }
+        track.identity = leader != null ? leader.best : result;
+
+        if (leader != null && leader.count >= voteShare * track.recognitions &&
+            (leader.count >= minVotes || leader.best.getConfidence() >= finalizeConfidence)) {
+            track.finalized = true;
+            identified++;
+        } else if (track.recognitions >= maxRecognitions) {
+            track.identity = new DeepLearningRecognizer.RecognitionResult(null, null, null,
+                                                                          result.getConfidence(), false);
+            track.finalized = true;
+        }
+        return track.finalized;
+    }
+
+    /**
+     * Share of frames that ran the detector and embeddings spent so far
+     */
+    public String getStatus() {
+        double detectedShare = frameNumber == 0 ? 0.0 : 100.0 * detectorPasses / frameNumber;
+        return String.format("%d frame(s), detector on %.0f%%, %d embedding(s), %d track(s) started, %d identified",
+                             frameNumber, detectedShare, embeddings, nextTrackId - 1, identified);
+    }
+
+    /**
+     * Forget all tracks (e.g. when the camera or session changes)
+     */
+    public void reset() {
+        tracks.clear();
+        lastDetectionFrame = Integer.MIN_VALUE / 2;
+    }
+
+    /**
+     * Release native buffers (the detector belongs to the caller)
+     */
+    public void close() {
+        detections.close();
+        roi.close();
+        thumbnail.close();
+        thumbnailSize.close();
+    }
+
+    private void detect(Mat frame) {
+        detector.detectFaces(frame, detections);
+        lastDetectionFrame = frameNumber;
+        detectorPasses++;
+
+        int count = detections.size();
+        boolean[] claimed = new boolean[count];
+        List<Track> unmatched = new ArrayList<>(tracks);
+
+        // Greedy association: best overlap first, then nearest centroid
+        associate(frame, unmatched, claimed, true);
+        associate(frame, unmatched, claimed, false);
+
+        for (Track track : unmatched) {
+            track.missed++;
+        }
+        Iterator<Track> it = tracks.iterator();
+        while (it.hasNext()) {
+            if (it.next().missed > maxMissed) {
+                it.remove();
+            }
+        }
+
+        for (int i = 0; i < count; i++) {
+            if (!claimed[i]) {
+                Rect rect = detections.get(i);
+                Track track = new Track(nextTrackId++);
+                track.setBox(rect.x(), rect.y(), rect.width(), rect.height(), frameNumber);
+                storeThumbnail(track, frame);
+                tracks.add(track);
+            }
+        }
+    }
+
+    private void associate(Mat frame, List<Track> unmatched, boolean[] claimed, boolean byOverlap) {
+        while (!unmatched.isEmpty()) {
+            Track bestTrack = null;
+            int bestDetection = -1;
+            double bestScore = 0;
+            for (Track track : unmatched) {
+                for (int i = 0; i < claimed.length; i++) {
+                    if (claimed[i]) {
+                        continue;
+                    }
+                    Rect rect = detections.get(i);
+                    double score = byOverlap ? overlap(track, rect) : closeness(track, rect);
+                    if (score > bestScore) {
+                        bestScore = score;
+                        bestTrack = track;
+                        bestDetection = i;
+                    }
+                }
+            }
+            if (bestTrack == null) {
+                return;
+            }
+            Rect rect = detections.get(bestDetection);
+            bestTrack.setBox(rect.x(), rect.y(), rect.width(), rect.height(), frameNumber);
+            storeThumbnail(bestTrack, frame);
+            claimed[bestDetection] = true;
+            unmatched.remove(bestTrack);
+        }
+    }
+
+    /**
+     * IoU of the track's predicted box and a detection, 0 below the threshold
+     */
+    private double overlap(Track track, Rect rect) {
+        int left = Math.max(track.x, rect.x());
+        int top = Math.max(track.y, rect.y());
+        int right = Math.min(track.x + track.width, rect.x() + rect.width());
+        int bottom = Math.min(track.y + track.height, rect.y() + rect.height());
+        if (right <= left || bottom <= top) {
+            return 0;
+        }
+        double intersection = (double) (right - left) * (bottom - top);
+        double union = (double) track.width * track.height + (double) rect.width() * rect.height() - intersection;
+        double iou = intersection / union;
+        return iou >= iouThreshold ? iou : 0;
+    }
+
+    /**
+     * 1 for identical centres, falling to 0 at half the larger box width
+     */
+    private double closeness(Track track, Rect rect) {
+        double dx = (track.x + track.width / 2.0) - (rect.x() + rect.width() / 2.0);
+        double dy = (track.y + track.height / 2.0) - (rect.y() + rect.height() / 2.0);
+        double reach = Math.max(track.width, rect.width()) / 2.0;
+        double distance = Math.sqrt(dx * dx + dy * dy);
+        return distance < reach ? 1.0 - distance / reach : 0;
+    }
+
+    /**
+     * Carry the box forward along the motion between its last two detections
+     */
+    private void predict(Track track, Mat frame) {
+        int elapsed = frameNumber - track.lastDetectedFrame;
+        int x = (int) Math.round(track.detectedX + track.velocityX * elapsed);
+        int y = (int) Math.round(track.detectedY + track.velocityY * elapsed);
+        track.x = Math.max(0, Math.min(x, frame.cols() - track.width));
+        track.y = Math.max(0, Math.min(y, frame.rows() - track.height));
+    }
+
+    /**
+     * Whether the face no longer looks like it did at its last detection
+     */
+    private boolean changed(Track track, Mat frame) {
+        if (track.lastDetectedFrame == frameNumber || !readThumbnail(track, frame)) {
+            return false;
+        }
+        long total = 0;
+        for (int i = 0; i < thumbnailBytes.length; i++) {
+            total += Math.abs((thumbnailBytes[i] & 0xff) - (track.thumbnail[i] & 0xff));
+        }
+        return (double) total / thumbnailBytes.length > lostDifference;
+    }
+
+    private void storeThumbnail(Track track, Mat frame) {
+        if (readThumbnail(track, frame)) {
+            System.arraycopy(thumbnailBytes, 0, track.thumbnail, 0, thumbnailBytes.length);
+        }
+    }
+
+    /**
+     * Downscale the track's current box into thumbnailBytes
+     */
+    private boolean readThumbnail(Track track, Mat frame) {
+        int width = Math.min(track.width, frame.cols() - track.x);
+        int height = Math.min(track.height, frame.rows() - track.y);
+        if (width <= 0 || height <= 0 || frame.channels() != 3) {
+            return false;
+        }
+        roi.x(track.x).y(track.y).width(width).height(height);
+        Mat face = new Mat(frame, roi);
+        opencv_imgproc.resize(face, thumbnail, thumbnailSize, 0, 0, opencv_imgproc.INTER_AREA);
+        face.close();
+        BytePointer pixels = thumbnail.data();
+        pixels.get(thumbnailBytes, 0, thumbnailBytes.length);
+        pixels.close();
+        return true;
+    }
+}
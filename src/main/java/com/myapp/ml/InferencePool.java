@@ -0,0 +1,175 @@
+package com.myapp.ml;
+
+import com.myapp.config.RecognitionConfig;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.opencv_core.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Pool of face detector and embedder nets for concurrent inference
+ *
+ * An OpenCV Net must not be used from two threads at once, so the pool owns
+ * one detector and one embedder per worker thread; each job borrows a net
+ * for its duration. The model files are read into memory once and every
+ * net is built from those bytes. OpenCV's own per-layer threading is capped
+ * at cores / workers (process-wide, and at the calibrated count when lower)
+ * so that N nets running together do not oversubscribe the CPU.
+ *
+ * Submitted Mats are read on a worker thread: callers must keep them open
+ * until the returned future completes.
+ */
+public class InferencePool {
+    private static final long CLOSE_TIMEOUT_SECONDS = 30;
+
+    private static InferencePool shared;
+
+    private final String modelName;
+    private final int workers;
+    private final int threadsPerNet;
+    private final ExecutorService executor;
+    private final BlockingQueue<DNNFaceDetector> detectors;
+    private final BlockingQueue<FaceNetEmbeddingGenerator> embedders;
+
+    public InferencePool(int workers, String modelName, String modelPath) throws Exception {
+        int cores = Runtime.getRuntime().availableProcessors();
+        this.modelName = modelName;
+        this.workers = workers > 0 ? workers : Math.max(1, cores / 2);
+        // Calibrated thread count, capped so that all workers fit on the cores
+        int tuned = DnnTuning.current().getThreads();
+        int fair = Math.max(1, cores / this.workers);
+        this.threadsPerNet = tuned > 0 ? Math.min(tuned, fair) : fair;
+        this.detectors = new ArrayBlockingQueue<>(this.workers);
+        this.embedders = new ArrayBlockingQueue<>(this.workers);
+
+        try {
+            for (int i = 0; i < this.workers; i++) {
+                detectors.add(new DNNFaceDetector());
+                embedders.add(new FaceNetEmbeddingGenerator(modelName, modelPath));
+            }
+        } catch (Exception e) {
+            closeNets();
+            throw e;
+        }
+        opencv_core.setNumThreads(threadsPerNet);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        this.executor = Executors.newFixedThreadPool(this.workers, r -> {
+            Thread thread = new Thread(r, "Inference-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        System.out.println("✓ Inference pool ready: " + this.workers + " worker(s) x " +
+                         threadsPerNet + " OpenCV thread(s), model " + modelName);
+    }
+
+    /**
+     * Process-wide pool for the active embedding model; rebuilt after a
+     * model cut-over
+     */
+    public static synchronized InferencePool getShared() throws Exception {
+        ActiveModel model = ActiveModel.current();
+        if (shared != null && !shared.modelName.equals(model.getTag())) {
+            shared.close();
+            shared = null;
+        }
+        if (shared == null) {
+            shared = new InferencePool(RecognitionConfig.getInferenceWorkers(),
+                                       model.getTag(), model.getModelPath());
+        }
+        return shared;
+    }
+
+    public int getWorkers() { return workers; }
+    public int getThreadsPerNet() { return threadsPerNet; }
+    public String getModelName() { return modelName; }
+
+    /**
+     * Detect all faces in an image
+     */
+    public Future<List<Rect>> submitDetect(Mat image) {
+        return withDetector(detector -> detector.detectFaces(image));
+    }
+
+    /**
+     * Detect the largest face in an image (null result when none)
+     */
+    public Future<Rect> submitDetectLargest(Mat image) {
+        return withDetector(detector -> detector.detectLargestFace(image));
+    }
+
+    /**
+     * Embed one face crop (null result when it fails)
+     */
+    public Future<float[]> submitEmbed(Mat face) {
+        return withEmbedder(embedder -> embedder.generateEmbedding(face));
+    }
+
+    /**
+     * Embed several faces of one frame in batched forward passes
+     */
+    public Future<float[][]> submitEmbed(Mat frame, List<Rect> faces) {
+        List<Rect> copy = new ArrayList<>(faces);
+        return withEmbedder(embedder -> embedder.generateEmbeddings(frame, copy));
+    }
+
+    /**
+     * Stop accepting jobs, let queued ones finish and release the nets
+     */
+    public void close() {
+        executor.shutdown();
+        try {
+            if (!executor.awaitTermination(CLOSE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                System.err.println("⚠ Inference pool: jobs still running after " +
+                                 CLOSE_TIMEOUT_SECONDS + "s, closing anyway");
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+        closeNets();
+    }
+
+    private <T> Future<T> withDetector(Function<DNNFaceDetector, T> job) {
+        return executor.submit(() -> {
+            DNNFaceDetector detector = detectors.take();
+            try {
+                return job.apply(detector);
+            } finally {
+                detectors.add(detector);
+            }
+        });
+    }
+
+    private <T> Future<T> withEmbedder(Function<FaceNetEmbeddingGenerator, T> job) {
+        return executor.submit(() -> {
+            FaceNetEmbeddingGenerator embedder = embedders.take();
+            try {
+                return job.apply(embedder);
+            } finally {
+                embedders.add(embedder);
+            }
+        });
+    }
+
+    private void closeNets() {
+        DNNFaceDetector detector;
+        while ((detector = detectors.poll()) != null) {
+            detector.close();
+        }
+        FaceNetEmbeddingGenerator embedder;
+        while ((embedder = embedders.poll()) != null) {
+            embedder.close();
+        }
+    }
+}
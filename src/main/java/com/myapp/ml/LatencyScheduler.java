@@ -0,0 +1,151 @@
+package com.myapp.ml;
+
+import com.myapp.config.RecognitionConfig;
+
+import java.util.function.IntConsumer;
+
+/**
+ * Keeps a camera loop within its end-to-end latency budget
+ *
+ * The loop reports how long detection and recognition took and when each
+ * processed frame was captured. While the smoothed capture-to-result
+ * latency is over budget the scheduler steps down a quality ladder, and it
+ * steps back up once latency has stayed well below budget:
+ * <ol>
+ *   <li>recognize faces on every 2nd, then every 4th analysed frame
+ *       (faces in between keep their previous identity)</li>
+ *   <li>shrink the face detector input to 80%, then 64% of its size</li>
+ *   <li>analyse only every 2nd, 3rd, then 4th frame (the others are shown
+ *       with the last results)</li>
+ * </ol>
+ * Not thread-safe; one scheduler per loop.
+ */
+public class LatencyScheduler {
+    private static final double SMOOTHING = 0.2;
+    private static final double RECOVER_BELOW = 0.6;
+    private static final int SETTLE_FRAMES = 10;
+    private static final int RECOVER_FRAMES = 30;
+    private static final int MIN_INPUT_SIZE = 128;
+    private static final int[] RECOGNIZE_EVERY = {1, 2, 4};
+    private static final double[] INPUT_SCALES = {1.0, 0.8, 0.64};
+    private static final int MAX_STRIDE = 4;
+    private static final int MAX_STEP = RECOGNIZE_EVERY.length - 1 + INPUT_SCALES.length - 1 + MAX_STRIDE - 1;
+
+    private final IntConsumer resizeDetector;
+    private final int budgetMs;
+    private final int frameIntervalMs;
+    private final int fullInputSize;
+
+    private int step;
+    private int framesSinceChange;
+    private long frameCount;
+    private long analysedCount;
+
+    // Smoothed timings in milliseconds
+    private double latencyMs;
+    private double detectMs;
+    private double recognizeMs;
+
+    public LatencyScheduler(DNNFaceDetector detector) {
+        this(detector.getInputSize(), detector::setInputSize);
+    }
+
+    /**
+     * Scheduler driving any detector input size through a callback
+     */
+    LatencyScheduler(int fullInputSize, IntConsumer resizeDetector) {
+        this.resizeDetector = resizeDetector;
+        this.budgetMs = Math.max(1, RecognitionConfig.getLatencyBudgetMs());
+        this.frameIntervalMs = 1000 / Math.max(1, RecognitionConfig.getTargetFps());
+        this.fullInputSize = fullInputSize;
+    }
+
+    /**
+     * Whether this frame should run detection (false: reuse the last results)
+     */
+    public boolean shouldAnalyze() {
+        return frameCount++ % getStride() == 0;
+    }
+
+    /**
+     * Whether the faces of this analysed frame should be recognized
+     * (false: carry identities over from the previous frame)
+     */
+    public boolean shouldRecognize() {
+        return analysedCount++ % getRecognizeEvery() == 0;
+    }
+
+    public void detected(long nanos) {
+        detectMs = smooth(detectMs, nanos / 1e6);
+    }
+
+    public void recognized(long nanos) {
+        recognizeMs = smooth(recognizeMs, nanos / 1e6);
+    }
+
+    /**
+     * Record a finished frame and adapt the ladder to its latency
+     * @param capturedNanos System.nanoTime() when the frame was captured
+     */
+    public void frameDone(long capturedNanos) {
+        latencyMs = smooth(latencyMs, (System.nanoTime() - capturedNanos) / 1e6);
+        framesSinceChange++;
+        if (latencyMs > budgetMs && framesSinceChange >= SETTLE_FRAMES && step < MAX_STEP) {
+            setStep(step + 1);
+            System.out.println("⚠ Latency " + Math.round(latencyMs) + " ms over the " + budgetMs +
+                             " ms budget: " + describeLevel());
+        } else if (latencyMs < budgetMs * RECOVER_BELOW && framesSinceChange >= RECOVER_FRAMES && step > 0) {
+            setStep(step - 1);
+            System.out.println("✓ Latency " + Math.round(latencyMs) + " ms: " + describeLevel());
+        }
+    }
+
+    /**
+     * Target time between processed frames
+     */
+    public int getFrameIntervalMillis() {
+        return frameIntervalMs;
+    }
+
+    public String getStatus() {
+        return String.format("latency %.0f ms (budget %d ms), detect %.0f ms, recognize %.0f ms, %s",
+                             latencyMs, budgetMs, detectMs, recognizeMs, describeLevel());
+    }
+
+    /**
+     * Give the detector back its full input size
+     */
+    public void close() {
+        resizeDetector.accept(fullInputSize);
+    }
+
+    private void setStep(int step) {
+        this.step = step;
+        this.framesSinceChange = 0;
+        resizeDetector.accept(getInputSize());
+    }
+
+    private int getRecognizeEvery() {
+        return RECOGNIZE_EVERY[Math.min(step, RECOGNIZE_EVERY.length - 1)];
+    }
+
+    private int getInputSize() {
+        int index = Math.max(0, Math.min(step - (RECOGNIZE_EVERY.length - 1), INPUT_SCALES.length - 1));
+        // Multiple of 4 keeps the SSD feature maps aligned
+        int size = (int) (fullInputSize * INPUT_SCALES[index]) / 4 * 4;
+        return Math.min(fullInputSize, Math.max(MIN_INPUT_SIZE, size));
+    }
+
+    private int getStride() {
+        return 1 + Math.max(0, step - (RECOGNIZE_EVERY.length - 1) - (INPUT_SCALES.length - 1));
+    }
+
+    private String describeLevel() {
+        return "recognize every " + getRecognizeEvery() + ", detector " + getInputSize() +
+               " px, analyse every " + getStride();
+    }
+
+    private static double smooth(double average, double sample) {
+        return average == 0 ? sample : average + SMOOTHING * (sample - average);
+    }
+}
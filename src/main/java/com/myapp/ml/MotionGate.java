@@ -0,0 +1,153 @@
+package com.myapp.ml;
+
+import com.myapp.config.RecognitionConfig;
+import com.myapp.util.FrameScope;
+import org.bytedeco.opencv.opencv_core.*;
+import org.bytedeco.opencv.global.opencv_core;
+import org.bytedeco.opencv.global.opencv_imgproc;
+
+/**
+ * Cheap motion check that lets camera loops skip face detection
+ *
+ * Each frame is shrunk to a small blurred grayscale image and compared
+ * with a running-average background; the frame has motion when enough
+ * pixels differ. The background keeps adapting, so slow lighting changes
+ * do not count. After a configurable time without motion the gate reports
+ * the loop as idle, and the loop paces itself at the idle frame rate until
+ * the next frame with motion wakes it. Not thread-safe; one gate per loop.
+ */
+public class MotionGate {
+    private final boolean enabled;
+    private final int width;
+    private final int pixelThreshold;
+    private final double minArea;
+    private final double backgroundRate;
+    private final long idleMillis;
+    private final int idleDelayMillis;
+
+    // Reused between frames, so kept out of the frame scope
+    private final Mat small = FrameScope.keep(new Mat());
+    private final Mat gray = FrameScope.keep(new Mat());
+    private final Mat background = FrameScope.keep(new Mat());
+    private final Mat backgroundGray = FrameScope.keep(new Mat());
+    private final Mat diff = FrameScope.keep(new Mat());
+    private final Size blurSize = FrameScope.keep(new Size(5, 5));
+    private Size smallSize;
+    private int sourceCols;
+    private int sourceRows;
+
+    private long lastMotionMillis = System.currentTimeMillis();
+
+    // Counters for getStatus()
+    private long frames;
+    private long skipped;
+    private long idleFrames;
+
+    public MotionGate() {
+        this.enabled = RecognitionConfig.isMotionGateEnabled();
+        this.width = Math.max(16, RecognitionConfig.getMotionWidth());
+        this.pixelThreshold = RecognitionConfig.getMotionPixelThreshold();
+        this.minArea = RecognitionConfig.getMotionMinArea();
+        this.backgroundRate = RecognitionConfig.getMotionBackgroundRate();
+        this.idleMillis = RecognitionConfig.getMotionIdleSeconds() * 1000L;
+        double idleFps = RecognitionConfig.getMotionIdleFps();
+        this.idleDelayMillis = idleFps > 0 ? (int) Math.round(1000.0 / idleFps) : 0;
+    }
+
+    /**
+     * Whether the frame differs from the background (always true when the
+     * gate is disabled); frames without motion are counted as skipped
+     */
+    public boolean hasMotion(Mat frame) {
+        frames++;
+        if (!enabled || frame.empty()) {
+            return true;
+        }
+        boolean motion = measure(frame);
+        if (motion) {
+            lastMotionMillis = System.currentTimeMillis();
+        } else {
+            skipped++;
+            if (isIdle()) {
+                idleFrames++;
+            }
+        }
+        return motion;
+    }
+
+    /**
+     * No motion for the idle period
+     */
+    public boolean isIdle() {
+        return enabled && System.currentTimeMillis() - lastMotionMillis >= idleMillis;
+    }
+
+    /**
+     * Delay between frames while idle (the loop's own delay otherwise)
+     */
+    public int frameDelayMillis(int activeDelayMillis) {
+        return isIdle() ? Math.max(activeDelayMillis, idleDelayMillis) : activeDelayMillis;
+    }
+
+    /**
+     * Share of frames skipped for lack of motion, and of those while idle
+     */
+    public String getStatus() {
+        if (!enabled) {
+            return "disabled";
+        }
+        double skippedShare = frames == 0 ? 0.0 : 100.0 * skipped / frames;
+        return String.format("%d frame(s), %.0f%% skipped without motion (%d while idle)",
+                             frames, skippedShare, idleFrames);
+    }
+
+    /**
+     * Release native buffers
+     */
+    public void close() {
+        small.close();
+        gray.close();
+        background.close();
+        backgroundGray.close();
+        diff.close();
+        blurSize.close();
+        if (smallSize != null) {
+            smallSize.close();
+        }
+    }
+
+    private boolean measure(Mat frame) {
+        if (smallSize == null || frame.cols() != sourceCols || frame.rows() != sourceRows) {
+            // First frame or a new resolution: start a new background
+            if (smallSize != null) {
+                smallSize.close();
+            }
+            int smallWidth = Math.min(width, frame.cols());
+            int smallHeight = Math.max(1, (int) Math.round((double) frame.rows() * smallWidth / frame.cols()));
+            smallSize = FrameScope.keep(new Size(smallWidth, smallHeight));
+            sourceCols = frame.cols();
+            sourceRows = frame.rows();
+            background.release();
+        }
+
+        opencv_imgproc.resize(frame, small, smallSize, 0, 0, opencv_imgproc.INTER_AREA);
+        if (small.channels() == 3) {
+            opencv_imgproc.cvtColor(small, gray, opencv_imgproc.COLOR_BGR2GRAY);
+        } else {
+            small.copyTo(gray);
+        }
+        opencv_imgproc.GaussianBlur(gray, gray, blurSize, 0);
+
+        if (background.empty()) {
+            gray.convertTo(background, opencv_core.CV_32F);
+            return true;
+        }
+
+        background.convertTo(backgroundGray, opencv_core.CV_8U);
+        opencv_core.absdiff(gray, backgroundGray, diff);
+        opencv_imgproc.threshold(diff, diff, pixelThreshold, 255, opencv_imgproc.THRESH_BINARY);
+        double changed = (double) opencv_core.countNonZero(diff) / diff.total();
+        opencv_imgproc.accumulateWeighted(gray, background, backgroundRate);
+        return changed >= minArea;
+    }
+}
@@ -0,0 +1,90 @@
+package com.myapp.ml;
+
+import com.myapp.config.RecognitionConfig;
+
+/**
+ * Dot products over packed float arrays
+ * Uses the JDK Vector API (jdk.incubator.vector) when the module is
+ * available at runtime and falls back to an unrolled scalar loop otherwise.
+ */
+public final class VectorMath {
+    private static final boolean SIMD_AVAILABLE = detectSimd();
+
+    private VectorMath() {
+    }
+
+    /**
+     * Check that the incubator module is resolved and the SIMD kernel links
+     */
+    private static boolean detectSimd() {
+        if (!RecognitionConfig.getBoolean("recognition.simd.enabled", true)) {
+            return false;
+        }
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        try {
+            float[] probe = {1f, 2f, 3f};
+            return SimdKernels.dot(probe, 0, probe, 0, probe.length) == 14f;
+        } catch (Throwable t) {
+            return false;
+        }
+    }
+
+    /**
+     * Whether dot products run on the Vector API
+     */
+    public static boolean isSimdEnabled() {
+        return SIMD_AVAILABLE;
+    }
+
+    /**
+     * Dot product of two equally sized vectors
+     */
+    public static float dot(float[] a, float[] b) {
+        return dot(a, 0, b, 0, a.length);
+    }
+
+    /**
+     * Dot product of a[aOffset..aOffset+length) and b[bOffset..bOffset+length)
+     */
+    public static float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        if (SIMD_AVAILABLE) {
+            return SimdKernels.dot(a, aOffset, b, bOffset, length);
+        }
+        return scalarDot(a, aOffset, b, bOffset, length);
+    }
+
+    /**
+     * Score rows [fromRow, toRow) of a row-major matrix against one query;
+     * out[row - fromRow] receives each dot product
+     */
+    public static void dotRows(float[] matrix, int dimension, int fromRow, int toRow,
+                               float[] query, float[] out) {
+        if (SIMD_AVAILABLE) {
+            SimdKernels.dotRows(matrix, dimension, fromRow, toRow, query, out);
+            return;
+        }
+        for (int row = fromRow; row < toRow; row++) {
+            out[row - fromRow] = scalarDot(matrix, row * dimension, query, 0, dimension);
+        }
+    }
+
+    /**
+     * Scalar fallback with four independent accumulators
+     */
+    static float scalarDot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < length; i += 4) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+            s1 += a[aOffset + i + 1] * b[bOffset + i + 1];
+            s2 += a[aOffset + i + 2] * b[bOffset + i + 2];
+            s3 += a[aOffset + i + 3] * b[bOffset + i + 3];
+        }
+        for (; i < length; i++) {
+            s0 += a[aOffset + i] * b[bOffset + i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+}
@@ -0,0 +1,62 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.ml.VectorMath;
+
+/**
+ * Scores many queries against a packed gallery in one cache-blocked pass
+ * Equivalent to the matrix product queries x gallery^T, computed tile by
+ * tile: a block of gallery rows is kept hot in cache while every query is
+ * scored against it, so gallery memory is streamed once per batch instead
+ * of once per query.
+ */
+public final class BatchScorer {
+    // Gallery rows per tile: 64 rows x 128 floats = 32 KB
+    private static final int ROW_BLOCK = 64;
+
+    private BatchScorer() {
+    }
+
+    /**
+     * Top-k rows (by student id) for each query; queries with the wrong
+     * dimension get an empty result
+     */
+    public static TopK[] topK(PackedGallery gallery, float[][] queries, int k) {
+        TopK[] results = new TopK[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            results[q] = new TopK(Math.max(1, k));
+        }
+        scoreInto(gallery, queries, 0, gallery.size(), results);
+        return results;
+    }
+
+    /**
+     * Score gallery rows [fromRow, toRow) for every query into results[q]
+     */
+    static void scoreInto(PackedGallery gallery, float[][] queries, int fromRow, int toRow,
+                          TopK[] results) {
+        int dimension = gallery.getDimension();
+        float[] vectors = gallery.vectors();
+        int[] studentIds = gallery.studentIds();
+        float[] tileScores = new float[ROW_BLOCK];
+
+        for (int blockStart = fromRow; blockStart < toRow; blockStart += ROW_BLOCK) {
+            int blockEnd = Math.min(blockStart + ROW_BLOCK, toRow);
+            for (int q = 0; q < queries.length; q++) {
+                float[] query = queries[q];
+                if (query == null || query.length != dimension) {
+                    continue;
+                }
+                VectorMath.dotRows(vectors, dimension, blockStart, blockEnd, query, tileScores);
+
+                TopK topK = results[q];
+                double threshold = topK.threshold();
+                for (int row = blockStart; row < blockEnd; row++) {
+                    float score = tileScores[row - blockStart];
+                    if (score > threshold && topK.offer(studentIds[row], score)) {
+                        threshold = topK.threshold();
+                    }
+                }
+            }
+        }
+    }
+}
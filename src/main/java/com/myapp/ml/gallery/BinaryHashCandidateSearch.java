@@ -0,0 +1,190 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.config.RecognitionConfig;
+import com.myapp.ml.VectorMath;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Two-stage candidate search with a binary hash prefilter
+ * Every centroid is reduced to the sign bits of a fixed random projection
+ * (random-hyperplane hashing, so Hamming distance tracks the angle between
+ * vectors) packed into longs. A query is hashed the same way, the closest
+ * codes by Hamming distance (XOR + Long.bitCount) form a shortlist, and only
+ * the shortlist is scored with the exact centroid similarity.
+ * A whole student costs bits / 8 bytes to scan instead of dimension * 4.
+ */
+public class BinaryHashCandidateSearch implements CandidateSearch {
+    private static final long PROJECTION_SEED = 0x5EEDL;
+
+    private final ExactCandidateSearch exactSearch = new ExactCandidateSearch();
+    private final int bits;
+    private final int words;
+    private final int shortlistSize;
+    private final boolean verify;
+    private final RecallMonitor recallMonitor = new RecallMonitor("Binary hash");
+
+    // Projection rows (bits x dimension), created for the first gallery dimension seen
+    private float[] projection;
+    private int dimension;
+
+    // Per-student codes reused across snapshots while the centroid is unchanged
+    private final Map<Integer, long[]> codeCache = new HashMap<>();
+    private final Map<Integer, Long> stampCache = new HashMap<>();
+    private volatile HashCodes hashCodes;
+
+    /**
+     * Codes for one snapshot, row-aligned with its centroid matrix
+     */
+    private static class HashCodes {
+        final EmbeddingGallery.Snapshot snapshot;
+        final long[] codes;
+
+        HashCodes(EmbeddingGallery.Snapshot snapshot, long[] codes) {
+            this.snapshot = snapshot;
+            this.codes = codes;
+        }
+    }
+
+    public BinaryHashCandidateSearch() {
+        this.words = Math.max(1, (RecognitionConfig.getBinaryHashBits() + 63) / 64);
+        this.bits = words * 64;
+        this.shortlistSize = RecognitionConfig.getBinaryShortlist();
+        this.verify = RecognitionConfig.isBinaryVerifyEnabled();
+    }
+
+    @Override
+    public List<GalleryMatch> search(EmbeddingGallery.Snapshot snapshot, float[] query, int k) {
+        if (snapshot.isEmpty() || query.length != snapshot.getDimension()) {
+            return exactSearch.search(snapshot, query, k);
+        }
+
+        long start = System.nanoTime();
+        HashCodes current = codesFor(snapshot);
+        long[] codes = current.codes;
+        long[] queryCode = hash(query, 0, new float[bits], new long[words]);
+        PackedGallery centroids = snapshot.getCentroids();
+
+        // Stage 1: Hamming shortlist (ids are centroid rows, score = -distance)
+        TopK shortlist = new TopK(Math.max(k, shortlistSize));
+        for (int row = 0; row < centroids.size(); row++) {
+            int distance = 0;
+            int offset = row * words;
+            for (int w = 0; w < words; w++) {
+                distance += Long.bitCount(codes[offset + w] ^ queryCode[w]);
+            }
+            shortlist.offer(row, -distance);
+        }
+
+        // Stage 2: exact similarity on the shortlist only
+        TopK topK = new TopK(Math.max(1, k));
+        for (int i = 0; i < shortlist.size(); i++) {
+            int row = shortlist.idAt(i);
+            topK.offer(centroids.studentIdAt(row), centroids.dot(row, query));
+        }
+        List<GalleryMatch> matches = topK.toMatches();
+
+        if (verify) {
+            long approximateTime = System.nanoTime() - start;
+            long exactStart = System.nanoTime();
+            List<GalleryMatch> exact = exactSearch.search(snapshot, query, k);
+            recallMonitor.record(exact, matches, k, approximateTime, System.nanoTime() - exactStart);
+        }
+        return matches;
+    }
+
+    @Override
+    public String getName() {
+        return "binary";
+    }
+
+    /**
+     * Recall@k of the shortlist search over all verified queries (NaN if none)
+     */
+    public double getVerifiedRecall() {
+        return recallMonitor.getRecall();
+    }
+
+    /**
+     * Codes for the snapshot, hashing only centroids that changed since
+     * the previous snapshot
+     */
+    private synchronized HashCodes codesFor(EmbeddingGallery.Snapshot snapshot) {
+        HashCodes current = hashCodes;
+        if (current != null && current.snapshot == snapshot) {
+            return current;
+        }
+
+        PackedGallery centroids = snapshot.getCentroids();
+        if (projection == null || dimension != centroids.getDimension()) {
+            dimension = centroids.getDimension();
+            projection = createProjection(bits, dimension);
+            codeCache.clear();
+            stampCache.clear();
+        }
+
+        long start = System.currentTimeMillis();
+        long[] codes = new long[centroids.size() * words];
+        float[] projected = new float[bits];
+        Map<Integer, long[]> present = new HashMap<>();
+        int hashed = 0;
+        for (int row = 0; row < centroids.size(); row++) {
+            int studentId = centroids.studentIdAt(row);
+            long stamp = centroids.rowStamp(row);
+            long[] code = codeCache.get(studentId);
+            Long cachedStamp = stampCache.get(studentId);
+            if (code == null || cachedStamp == null || cachedStamp != stamp) {
+                code = hash(centroids.vectors(), row * dimension, projected, new long[words]);
+                stampCache.put(studentId, stamp);
+                hashed++;
+            }
+            present.put(studentId, code);
+            System.arraycopy(code, 0, codes, row * words, words);
+        }
+        codeCache.keySet().retainAll(present.keySet());
+        stampCache.keySet().retainAll(present.keySet());
+        codeCache.putAll(present);
+
+        if (hashed > 0) {
+            System.out.println("✓ Binary hash codes updated: " + hashed + " of " + centroids.size() +
+                             " students hashed (" + bits + " bits, " +
+                             (System.currentTimeMillis() - start) + " ms)");
+        }
+        current = new HashCodes(snapshot, codes);
+        hashCodes = current;
+        return current;
+    }
+
+    /**
+     * Sign bits of the projection of vector[offset..offset+dimension)
+     */
+    private long[] hash(float[] vector, int offset, float[] projected, long[] code) {
+        float[] input = vector;
+        if (offset != 0 || vector.length != dimension) {
+            input = new float[dimension];
+            System.arraycopy(vector, offset, input, 0, dimension);
+        }
+        VectorMath.dotRows(projection, dimension, 0, bits, input, projected);
+        for (int bit = 0; bit < bits; bit++) {
+            if (projected[bit] > 0) {
+                code[bit >>> 6] |= 1L << (bit & 63);
+            }
+        }
+        return code;
+    }
+
+    /**
+     * Fixed-seed Gaussian hyperplanes so codes are stable across restarts
+     */
+    private static float[] createProjection(int bits, int dimension) {
+        Random random = new Random(PROJECTION_SEED);
+        float[] projection = new float[bits * dimension];
+        for (int i = 0; i < projection.length; i++) {
+            projection[i] = (float) random.nextGaussian();
+        }
+        return projection;
+    }
+}
@@ -0,0 +1,66 @@
+package com.myapp.ml.gallery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Strategy for the first matching stage: find the k students whose
+ * centroids are most similar to the query
+ * Implementations return exact centroid similarities as scores so the
+ * recognition threshold means the same thing for every strategy.
+ */
+public interface CandidateSearch {
+
+    /**
+     * Top-k candidate students for the query, best first
+     */
+    List<GalleryMatch> search(EmbeddingGallery.Snapshot snapshot, float[] query, int k);
+
+    /**
+     * Top-k candidates for several queries at once (one list per query)
+     */
+    default List<List<GalleryMatch>> searchBatch(EmbeddingGallery.Snapshot snapshot,
+                                                 float[][] queries, int k) {
+        List<List<GalleryMatch>> results = new ArrayList<>(queries.length);
+        for (float[] query : queries) {
+            results.add(query != null ? search(snapshot, query, k) : new ArrayList<>());
+        }
+        return results;
+    }
+
+    /**
+     * Short name used in configuration and logs
+     */
+    String getName();
+
+    /**
+     * Release background resources
+     */
+    default void close() {
+    }
+
+    /**
+     * Create the strategy selected by name ("exact" when unknown)
+     */
+    static CandidateSearch create(String name) {
+        return create(name, 0, 1);
+    }
+
+    /**
+     * Create the strategy for one gallery partition; persisted state is
+     * kept per partition
+     */
+    static CandidateSearch create(String name, int partition, int partitions) {
+        switch (name == null ? "" : name.trim().toLowerCase()) {
+            case "hnsw":
+                return new HnswCandidateSearch(partition, partitions);
+            case "binary":
+                return new BinaryHashCandidateSearch();
+            case "exact":
+                return new ExactCandidateSearch();
+            default:
+                System.err.println("⚠ Unknown matcher '" + name + "', using exact search");
+                return new ExactCandidateSearch();
+        }
+    }
+}
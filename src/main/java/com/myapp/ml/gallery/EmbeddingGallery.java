@@ -0,0 +1,1083 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.config.RecognitionConfig;
+import com.myapp.dao.FaceEmbeddingDAO;
+import com.myapp.ml.ActiveModel;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Resident in-memory gallery of face embeddings
+ * Loaded once (from the on-disk snapshot file when present, otherwise from
+ * the database) and kept in sync incrementally. Readers work on an immutable snapshot that is replaced (copy-on-write)
+ * whenever students are added, retrained or removed.
+ * Only the embeddings of the active model are held; when a model
+ * migration cuts over, the new model's snapshot is built on the side and
+ * swapped in as a whole.
+ */
+public class EmbeddingGallery {
+    private static EmbeddingGallery instance;
+
+    // How often to poll face_embeddings for changes made by other nodes
+    private static final long SYNC_INTERVAL_MS = 10000;
+
+    // PCA projection: below this many students a full scan is already cheap;
+    // refitted once the gallery has grown by a quarter since the last fit
+    private static final int PCA_MIN_STUDENTS = 1000;
+    private static final double PCA_REFIT_GROWTH = 1.25;
+
+    // Quantizer codebooks are retrained once the rows have grown by a
+    // quarter since they were trained
+    private static final double QUANTIZER_RETRAIN_GROWTH = 1.25;
+
+    private final FaceEmbeddingDAO embeddingDAO;
+    // This gallery holds the students with student_id mod partitions == partition
+    private final int partition;
+    private final int partitions;
+    private final ReentrantLock syncLock = new ReentrantLock();
+    private final Set<Integer> dirtyStudents = ConcurrentHashMap.newKeySet();
+    // Written before the snapshot on a model switch, so a reader that saw
+    // the new snapshot also sees the new tag
+    private volatile String modelTag;
+    private volatile Snapshot snapshot;
+    private volatile long lastSyncTime;
+    // Embedding rows the current quantizer was trained on
+    private volatile int quantizerTrainedOn;
+
+    // Periodic syncs run here so readers never wait on the database
+    private final AtomicBoolean syncQueued = new AtomicBoolean(false);
+    private final ExecutorService syncer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "GallerySync");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Snapshot file persistence (written in the background, latest wins)
+    private final Path snapshotPath;
+    private final AtomicReference<PendingWrite> pendingWrite = new AtomicReference<>();
+    private final ExecutorService snapshotWriter = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "GallerySnapshotWriter");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private static class PendingWrite {
+        final Snapshot snapshot;
+        final String modelTag;
+
+        PendingWrite(Snapshot snapshot, String modelTag) {
+            this.snapshot = snapshot;
+            this.modelTag = modelTag;
+        }
+    }
+
+    /**
+     * Per-student entry: centroid plus the change markers the student's
+     * embeddings were loaded with (the rows themselves live in the snapshot)
+     */
+    public static class StudentEmbeddings {
+        private final int studentId;
+        private final int courseId;
+        private final int dimension;
+        private final int embeddingCount;
+        private final float[] centroid;
+        private final int count;
+        private final Timestamp lastUpdated;
+
+        StudentEmbeddings(int studentId, float[] vectors, int dimension, FaceEmbeddingDAO.EmbeddingStats stats) {
+            this(studentId, stats.getCourseId(), dimension, dimension == 0 ? 0 : vectors.length / dimension,
+                 computeCentroid(vectors, dimension), stats.getCount(), stats.getLastUpdated());
+        }
+
+        StudentEmbeddings(int studentId, int courseId, int dimension, int embeddingCount,
+                          float[] centroid, int count, Timestamp lastUpdated) {
+            this.studentId = studentId;
+            this.courseId = courseId;
+            this.dimension = dimension;
+            this.embeddingCount = embeddingCount;
+            this.centroid = centroid;
+            this.count = count;
+            this.lastUpdated = lastUpdated;
+        }
+
+        public int getStudentId() { return studentId; }
+        public int getCourseId() { return courseId; }
+        public int getDimension() { return dimension; }
+        public int getEmbeddingCount() { return embeddingCount; }
+
+        /**
+         * Mean of the student's full-precision embeddings (not re-normalized),
+         * so that dot(query, centroid) == average of dot(query, embedding)
+         */
+        public float[] getCentroid() { return centroid; }
+
+        int getCount() { return count; }
+        Timestamp getLastUpdated() { return lastUpdated; }
+    }
+
+    /**
+     * Immutable view of the gallery; safe to read from any thread
+     * Centroids and the individual embeddings are packed into contiguous
+     * full-precision matrices. With a quantizer the embeddings are held on
+     * the heap only as byte codes, scored asymmetrically to narrow the
+     * re-rank candidates; their float32 rows live in a memory-mapped file
+     * and are read only for the final scores. The embedding rows of
+     * centroid row i are [rowStart[i], rowStart[i + 1]). Students are ordered
+     * by course, so each course partition is one contiguous range of
+     * centroid rows. With a PCA projection, centroid scans run over the
+     * projected centroids and only a shortlist is scored at full dimension.
+     */
+    public static class Snapshot {
+        private final Map<Integer, StudentEmbeddings> students;
+        private final Map<Integer, Integer> centroidRows;
+        private final PackedGallery centroids;
+        private final EmbeddingQuantizer quantizer;
+        private final EmbeddingRows embeddings;
+        private final byte[] embeddingCodes;
+        private final int[] rowStart;
+        private final Map<Integer, int[]> courseRanges;
+        private final PcaProjection projection;
+        private final PackedGallery projectedCentroids;
+
+        /**
+         * Wrap already packed data; usable is in row order (by course, then
+         * student) and the row buffers hold each student's rows back to back
+         */
+        Snapshot(Map<Integer, StudentEmbeddings> students, List<StudentEmbeddings> usable,
+                 int dimension, float[] centroidVectors, EmbeddingRows rows, byte[] rowCodes,
+                 EmbeddingQuantizer quantizer) {
+            this.students = Collections.unmodifiableMap(students);
+            this.quantizer = quantizer;
+
+            int totalRows = 0;
+            for (StudentEmbeddings entry : usable) {
+                totalRows += entry.getEmbeddingCount();
+            }
+            if (rows.size() != totalRows) {
+                throw new IllegalArgumentException("Row buffer holds " + rows.size() + " rows, students " +
+                                                   totalRows);
+            }
+            int[] centroidIds = new int[usable.size()];
+            this.rowStart = new int[usable.size() + 1];
+            Map<Integer, Integer> rowIndex = new HashMap<>();
+            Map<Integer, int[]> ranges = new HashMap<>();
+
+            int row = 0;
+            for (int i = 0; i < usable.size(); i++) {
+                StudentEmbeddings entry = usable.get(i);
+                int[] range = ranges.computeIfAbsent(entry.getCourseId(), c -> new int[2]);
+                if (range[1] == 0) {
+                    range[0] = i;
+                }
+                range[1] = i + 1;
+
+                centroidIds[i] = entry.getStudentId();
+                rowIndex.put(entry.getStudentId(), i);
+                rowStart[i] = row;
+                row += entry.getEmbeddingCount();
+            }
+            rowStart[usable.size()] = row;
+
+            this.centroidRows = rowIndex;
+            this.courseRanges = ranges;
+            this.centroids = new PackedGallery(dimension, centroidVectors, centroidIds);
+            this.embeddings = rows;
+            this.embeddingCodes = rowCodes;
+            this.projection = null;
+            this.projectedCentroids = null;
+        }
+
+        private Snapshot(Snapshot source, EmbeddingRows embeddings, EmbeddingQuantizer quantizer,
+                         byte[] embeddingCodes, PcaProjection projection, PackedGallery projectedCentroids) {
+            this.students = source.students;
+            this.centroidRows = source.centroidRows;
+            this.centroids = source.centroids;
+            this.quantizer = quantizer;
+            this.embeddings = embeddings;
+            this.embeddingCodes = embeddingCodes;
+            this.rowStart = source.rowStart;
+            this.courseRanges = source.courseRanges;
+            this.projection = projection;
+            this.projectedCentroids = projectedCentroids;
+        }
+
+        /**
+         * Same snapshot with another projection (null = none); projected
+         * rows of students unchanged since previous are copied from it when
+         * it used the same projection
+         */
+        Snapshot withProjection(PcaProjection target, Snapshot previous) {
+            if (target == projection) {
+                return this;
+            }
+            if (target == null || target.getDimension() != getDimension()) {
+                return new Snapshot(this, embeddings, quantizer, embeddingCodes, null, null);
+            }
+
+            int width = target.getProjectedDimension();
+            int dimension = getDimension();
+            float[] source = centroids.vectors();
+            float[] projected = new float[centroids.size() * width];
+            float[] centered = new float[dimension];
+            float[] scratch = new float[target.getComponents()];
+            boolean reuse = previous != null && previous.projection == target;
+            for (int row = 0; row < centroids.size(); row++) {
+                int studentId = centroids.studentIdAt(row);
+                Integer previousRow = reuse ? previous.centroidRows.get(studentId) : null;
+                if (previousRow != null && previous.students.get(studentId) == students.get(studentId)) {
+                    System.arraycopy(previous.projectedCentroids.vectors(), previousRow * width,
+                                     projected, row * width, width);
+                } else {
+                    target.projectRow(source, row * dimension, projected, row * width, centered, scratch);
+                }
+            }
+            return new Snapshot(this, embeddings, quantizer, embeddingCodes, target,
+                                new PackedGallery(width, projected, centroids.studentIds()));
+        }
+
+        /**
+         * Same snapshot with every embedding row re-encoded by another quantizer
+         */
+        Snapshot withQuantizer(EmbeddingQuantizer target) {
+            int dimension = getDimension();
+            int rows = getEmbeddingCount();
+            int codeSize = target.getCodeSize();
+            float[] vectors = embeddings.toArray();
+            byte[] codes = new byte[rows * codeSize];
+            for (int row = 0; row < rows; row++) {
+                target.encode(vectors, row * dimension, codes, row * codeSize);
+            }
+            return new Snapshot(this, embeddings, target, codes, projection, projectedCentroids);
+        }
+
+        /**
+         * Same snapshot with its float32 rows written to a file in directory
+         * (the temp directory if null) and mapped instead of held on the heap
+         */
+        Snapshot withMappedRows(Path directory) throws IOException {
+            if (embeddings.isMapped()) {
+                return this;
+            }
+            return new Snapshot(this, embeddings.spill(directory), quantizer, embeddingCodes,
+                                projection, projectedCentroids);
+        }
+
+        /**
+         * Build a snapshot; rows of students in loadedRows are taken from
+         * there, all others are copied from the previous snapshot (which
+         * must use the same quantizer)
+         */
+        static Snapshot build(Map<Integer, StudentEmbeddings> students, Map<Integer, float[]> loadedRows,
+                              Snapshot previous, EmbeddingQuantizer quantizer) {
+            int dimension = 0;
+            for (StudentEmbeddings entry : students.values()) {
+                if (entry.getDimension() > 0) {
+                    dimension = entry.getDimension();
+                    break;
+                }
+            }
+            if (quantizer != null && dimension > 0 && quantizer.getDimension() != dimension) {
+                throw new IllegalArgumentException("Quantizer dimension " + quantizer.getDimension() +
+                                                   " != gallery dimension " + dimension);
+            }
+
+            // Only students matching the gallery dimension take part in matching
+            List<StudentEmbeddings> usable = new ArrayList<>();
+            int totalRows = 0;
+            for (StudentEmbeddings entry : students.values()) {
+                boolean hasRows = loadedRows.containsKey(entry.getStudentId()) ||
+                                  (previous != null && previous.containsStudent(entry.getStudentId()));
+                if (entry.getEmbeddingCount() == 0) {
+                    System.err.println("⚠ Skipping student " + entry.getStudentId() + ": no embeddings");
+                } else if (!hasRows) {
+                    System.err.println("⚠ Skipping student " + entry.getStudentId() +
+                                     ": embedding rows were not loaded");
+                } else if (entry.getDimension() != dimension) {
+                    System.err.println("⚠ Skipping student " + entry.getStudentId() +
+                                     ": embedding dimension " + entry.getDimension() +
+                                     " != " + dimension);
+                } else {
+                    usable.add(entry);
+                    totalRows += entry.getEmbeddingCount();
+                }
+            }
+
+            usable.sort((a, b) -> a.getCourseId() != b.getCourseId() ?
+                Integer.compare(a.getCourseId(), b.getCourseId()) :
+                Integer.compare(a.getStudentId(), b.getStudentId()));
+
+            int codeSize = quantizer != null ? quantizer.getCodeSize() : 0;
+            float[] centroidVectors = new float[usable.size() * dimension];
+            float[] rowVectors = new float[totalRows * dimension];
+            byte[] rowCodes = quantizer != null ? new byte[totalRows * codeSize] : null;
+
+            int row = 0;
+            for (int i = 0; i < usable.size(); i++) {
+                StudentEmbeddings entry = usable.get(i);
+                System.arraycopy(entry.getCentroid(), 0, centroidVectors, i * dimension, dimension);
+
+                int count = entry.getEmbeddingCount();
+                float[] loaded = loadedRows.get(entry.getStudentId());
+                if (loaded != null) {
+                    System.arraycopy(loaded, 0, rowVectors, row * dimension, loaded.length);
+                    if (quantizer != null) {
+                        for (int r = 0; r < count; r++) {
+                            quantizer.encode(loaded, r * dimension, rowCodes, (row + r) * codeSize);
+                        }
+                    }
+                } else {
+                    int from = previous.rowStart[previous.centroidRows.get(entry.getStudentId())];
+                    previous.embeddings.copy(from, count, rowVectors, row * dimension);
+                    if (quantizer != null) {
+                        System.arraycopy(previous.embeddingCodes, from * codeSize,
+                                         rowCodes, row * codeSize, count * codeSize);
+                    }
+                }
+                row += count;
+            }
+            return new Snapshot(students, usable, dimension, centroidVectors,
+                                EmbeddingRows.onHeap(rowVectors, dimension), rowCodes, quantizer);
+        }
+
+        public Map<Integer, StudentEmbeddings> getStudents() { return students; }
+        public int getStudentCount() { return centroids.size(); }
+        public int getEmbeddingCount() { return rowStart[rowStart.length - 1]; }
+        public int getDimension() { return centroids.getDimension(); }
+        public boolean isEmpty() { return centroids.size() == 0; }
+
+        /**
+         * Packed per-student centroid matrix (one row per student)
+         */
+        public PackedGallery getCentroids() { return centroids; }
+
+        /**
+         * Full-precision rows of every individual embedding (mapped for
+         * quantized snapshots)
+         */
+        EmbeddingRows embeddings() { return embeddings; }
+
+        /**
+         * Quantized embedding rows (null without a quantizer); callers must not modify it
+         */
+        byte[] embeddingCodes() { return embeddingCodes; }
+
+        /**
+         * Quantizer the embedding codes are encoded with (null = float32 only)
+         */
+        public EmbeddingQuantizer getQuantizer() { return quantizer; }
+
+        /**
+         * PCA projection used for centroid scans (null = full-dimension scans)
+         */
+        public PcaProjection getProjection() { return projection; }
+
+        /**
+         * Approximate heap used by the packed centroids and embedding rows
+         * (mapped float32 rows are not counted, only the codes)
+         */
+        public long getResidentBytes() {
+            long bytes = (long) centroids.size() * (getDimension() + 1) * Float.BYTES;
+            if (projectedCentroids != null) {
+                bytes += (long) projectedCentroids.size() * projectedCentroids.getDimension() * Float.BYTES;
+            }
+            bytes += embeddings.heapBytes();
+            return bytes + (embeddingCodes != null ? embeddingCodes.length : 0);
+        }
+
+        /**
+         * Score the query against every student centroid (one dot product
+         * per student) and keep the best k; large galleries are scanned in parallel
+         */
+        public List<GalleryMatch> searchCentroids(float[] query, int k) {
+            if (query.length != getDimension()) {
+                return Collections.emptyList();
+            }
+            return scanCentroids(query, 0, centroids.size(), k).toMatches();
+        }
+
+        /**
+         * Best k centroid rows in [fromRow, toRow): a direct scan, or a scan
+         * of the projected centroids whose shortlist is re-scored at full
+         * dimension (so scores are always exact centroid similarities)
+         */
+        private TopK scanCentroids(float[] query, int fromRow, int toRow, int k) {
+            if (projection == null) {
+                return ParallelScorer.topK(centroids, query, fromRow, toRow, k);
+            }
+            int shortlist = Math.max(k, RecognitionConfig.getPcaShortlist());
+            TopK candidates = ParallelScorer.topK(projectedCentroids, projection.projectQuery(query),
+                                                  fromRow, toRow, shortlist);
+            return rescore(candidates, query, k);
+        }
+
+        private TopK rescore(TopK candidates, float[] query, int k) {
+            TopK topK = new TopK(Math.max(1, k));
+            for (int i = 0; i < candidates.size(); i++) {
+                int studentId = candidates.idAt(i);
+                topK.offer(studentId, centroids.dot(centroidRows.get(studentId), query));
+            }
+            return topK;
+        }
+
+        /**
+         * Number of students in a course partition
+         */
+        public int getCourseStudentCount(int courseId) {
+            int[] range = courseRanges.get(courseId);
+            return range == null ? 0 : range[1] - range[0];
+        }
+
+        /**
+         * Exact centroid search restricted to one course's students
+         */
+        public List<GalleryMatch> searchCourse(int courseId, float[] query, int k) {
+            int[] range = courseRanges.get(courseId);
+            if (range == null || query.length != getDimension()) {
+                return Collections.emptyList();
+            }
+            return scanCentroids(query, range[0], range[1], k).toMatches();
+        }
+
+        /**
+         * Score several queries against every centroid in one blocked pass
+         */
+        public List<List<GalleryMatch>> searchCentroidsBatch(float[][] queries, int k) {
+            List<List<GalleryMatch>> results = new ArrayList<>(queries.length);
+            if (projection == null) {
+                for (TopK result : ParallelScorer.topK(centroids, queries, k)) {
+                    results.add(result.toMatches());
+                }
+                return results;
+            }
+
+            float[][] projectedQueries = new float[queries.length][];
+            for (int q = 0; q < queries.length; q++) {
+                projectedQueries[q] = projection.projectQuery(queries[q]);
+            }
+            TopK[] candidates = ParallelScorer.topK(projectedCentroids, projectedQueries,
+                                                    Math.max(k, RecognitionConfig.getPcaShortlist()));
+            for (int q = 0; q < queries.length; q++) {
+                results.add(rescore(candidates[q], queries[q], k).toMatches());
+            }
+            return results;
+        }
+
+        /**
+         * Whether the student takes part in matching
+         */
+        public boolean containsStudent(int studentId) {
+            return centroidRows.containsKey(studentId);
+        }
+
+        /**
+         * Exact centroid similarity for one student, or -1 if not in the gallery
+         */
+        public double centroidSimilarity(int studentId, float[] query) {
+            Integer index = centroidRows.get(studentId);
+            if (index == null || query.length != getDimension()) {
+                return -1.0;
+            }
+            return centroids.dot(index, query);
+        }
+
+        /**
+         * Average similarity against one student's individual embeddings,
+         * skipping negative similarities (the original scoring rule)
+         */
+        public double averageSimilarity(int studentId, float[] query) {
+            Integer index = centroidRows.get(studentId);
+            if (index == null || query.length != getDimension()) {
+                return -1.0;
+            }
+            return averageSimilarity(index, query, null);
+        }
+
+        /**
+         * Exact average over float32 rows, or its approximation over the
+         * codes when a scorer is given
+         */
+        private double averageSimilarity(int index, float[] query, EmbeddingQuantizer.Scorer scorer) {
+            int codeSize = scorer != null ? quantizer.getCodeSize() : 0;
+            double sum = 0.0;
+            int validComparisons = 0;
+            for (int row = rowStart[index]; row < rowStart[index + 1]; row++) {
+                double similarity = scorer != null ?
+                    scorer.score(embeddingCodes, row * codeSize) : embeddings.dot(row, query);
+                if (similarity >= 0) {
+                    sum += similarity;
+                    validComparisons++;
+                }
+            }
+            return validComparisons > 0 ? sum / validComparisons : -1.0;
+        }
+
+        /**
+         * Re-score centroid candidates against the individual embeddings of
+         * each candidate and return them best first
+         */
+        public List<GalleryMatch> rerank(float[] query, List<GalleryMatch> candidates) {
+            return rerank(query, candidates, candidates.size());
+        }
+
+        /**
+         * Re-rank candidates and keep the best k
+         * With a quantizer, stage 1 scores every candidate's codes and keeps
+         * the best k; the survivors are then scored against their float32
+         * rows, so returned scores are always exact average similarities.
+         */
+        public List<GalleryMatch> rerank(float[] query, List<GalleryMatch> candidates, int k) {
+            TopK topK = new TopK(Math.max(1, Math.min(k, candidates.size())));
+            if (query.length != getDimension()) {
+                return topK.toMatches();
+            }
+            List<GalleryMatch> survivors = candidates;
+            if (quantizer != null && candidates.size() > k) {
+                EmbeddingQuantizer.Scorer scorer = quantizer.scorer(query);
+                TopK approximate = new TopK(Math.max(1, k));
+                for (GalleryMatch candidate : candidates) {
+                    Integer index = centroidRows.get(candidate.getStudentId());
+                    if (index != null) {
+                        approximate.offer(candidate.getStudentId(), averageSimilarity(index, query, scorer));
+                    }
+                }
+                survivors = approximate.toMatches();
+            }
+            for (GalleryMatch candidate : survivors) {
+                Integer index = centroidRows.get(candidate.getStudentId());
+                if (index != null) {
+                    topK.offer(candidate.getStudentId(), averageSimilarity(index, query, null));
+                }
+            }
+            return topK.toMatches();
+        }
+    }
+
+    private static float[] pack(List<float[]> embeddings, int dimension) {
+        float[] packed = new float[embeddings.size() * dimension];
+        int row = 0;
+        for (float[] embedding : embeddings) {
+            if (embedding.length == dimension) {
+                System.arraycopy(embedding, 0, packed, row * dimension, dimension);
+                row++;
+            }
+        }
+        return row == embeddings.size() ? packed : Arrays.copyOf(packed, row * dimension);
+    }
+
+    private static float[] computeCentroid(float[] vectors, int dimension) {
+        float[] centroid = new float[dimension];
+        if (dimension == 0 || vectors.length == 0) {
+            return centroid;
+        }
+        int rows = vectors.length / dimension;
+        double[] sum = new double[dimension];
+        for (int row = 0; row < rows; row++) {
+            for (int i = 0; i < dimension; i++) {
+                sum[i] += vectors[row * dimension + i];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            centroid[i] = (float) (sum[i] / rows);
+        }
+        return centroid;
+    }
+
+    /**
+     * Attach the configured quantizer to a new snapshot: trained on its
+     * first non-empty snapshot, retrained when the rows have grown by a
+     * quarter since the last training, otherwise kept as is
+     */
+    private Snapshot withQuantizer(Snapshot next) {
+        String type = RecognitionConfig.getGalleryQuantization();
+        int rows = next.getEmbeddingCount();
+        int dimension = next.getDimension();
+        if ("none".equalsIgnoreCase(type) || rows == 0 || dimension == 0) {
+            return next;
+        }
+        EmbeddingQuantizer current = next.getQuantizer();
+        if (current != null && current.getDimension() == dimension &&
+            rows < quantizerTrainedOn * QUANTIZER_RETRAIN_GROWTH) {
+            return next;
+        }
+        EmbeddingQuantizer trained = EmbeddingQuantizer.train(type, next.embeddings().toArray(), rows,
+                                                              dimension, RecognitionConfig.getPqSubspaces());
+        if (trained == null) {
+            return next;
+        }
+        quantizerTrainedOn = rows;
+        return next.withQuantizer(trained);
+    }
+
+    /**
+     * Move a quantized snapshot's float32 rows off the heap into a mapped
+     * file next to the snapshot file, so only the codes stay resident; if
+     * the file cannot be written the rows stay on the heap
+     */
+    private Snapshot withRowsOffHeap(Snapshot next) {
+        if (next.getQuantizer() == null || next.embeddings().isMapped()) {
+            return next;
+        }
+        Path directory = snapshotPath != null ? snapshotPath.toAbsolutePath().getParent() : null;
+        try {
+            return next.withMappedRows(directory);
+        } catch (IOException e) {
+            System.err.println("⚠ Keeping gallery rows on the heap: " + e.getMessage());
+            return next;
+        }
+    }
+
+    /**
+     * Attach the PCA projection to a new snapshot: fitted once the gallery
+     * is large enough, refitted when it has grown by a quarter since the
+     * last fit, otherwise carried over from the previous snapshot
+     */
+    private static Snapshot withProjection(Snapshot next, Snapshot previous) {
+        PcaProjection current = previous != null ? previous.getProjection() : next.getProjection();
+        int students = next.getStudentCount();
+        int dimension = next.getDimension();
+        if (!RecognitionConfig.isPcaEnabled() || students < PCA_MIN_STUDENTS || dimension == 0) {
+            return next.withProjection(null, previous);
+        }
+
+        int components = Math.min(RecognitionConfig.getPcaDimensions(), dimension);
+        PcaProjection target = current;
+        if (current == null || current.getDimension() != dimension ||
+            current.getComponents() != components ||
+            students >= current.getFittedOn() * PCA_REFIT_GROWTH) {
+            target = PcaProjection.fit(next.getCentroids().vectors(), students, dimension, components,
+                                       current != null ? current.getVersion() + 1 : 1);
+        }
+        return next.withProjection(target, previous);
+    }
+
+    EmbeddingGallery(FaceEmbeddingDAO embeddingDAO) {
+        this(embeddingDAO, 0, 1);
+    }
+
+    EmbeddingGallery(FaceEmbeddingDAO embeddingDAO, int partition, int partitions) {
+        if (partitions < 1 || partition < 0 || partition >= partitions) {
+            throw new IllegalArgumentException("Invalid gallery partition " + partition + " of " + partitions);
+        }
+        this.embeddingDAO = embeddingDAO;
+        this.partition = partition;
+        this.partitions = partitions;
+        this.modelTag = ActiveModel.current().getTag();
+        String path = RecognitionConfig.getGallerySnapshotPath();
+        if (partitions > 1) {
+            path = path + "." + partition + "of" + partitions;
+        }
+        this.snapshotPath = RecognitionConfig.isGallerySnapshotEnabled() ? Paths.get(path) : null;
+        FaceEmbeddingDAO.addChangeListener(this::invalidateStudent);
+    }
+
+    /**
+     * Create a gallery holding only one student_id partition (a matcher shard)
+     */
+    public static EmbeddingGallery forPartition(int partition, int partitions) {
+        return new EmbeddingGallery(new FaceEmbeddingDAO(), partition, partitions);
+    }
+
+    /**
+     * Partition a student belongs to when the gallery is split into partitions
+     */
+    public static int partitionOf(int studentId, int partitions) {
+        return Math.floorMod(studentId, partitions);
+    }
+
+    private boolean inPartition(int studentId) {
+        return partitions == 1 || partitionOf(studentId, partitions) == partition;
+    }
+
+    /**
+     * Get the process-wide gallery shared by all recognizers and trainers
+     */
+    public static synchronized EmbeddingGallery getInstance() {
+        if (instance == null) {
+            instance = new EmbeddingGallery(new FaceEmbeddingDAO());
+        }
+        return instance;
+    }
+
+    /**
+     * Get the current gallery snapshot, loading it first if needed
+     * A due sync is handed to the background sync thread; the current
+     * snapshot is returned right away.
+     */
+    public Snapshot getSnapshot() throws SQLException {
+        if (snapshot == null) {
+            syncLock.lock();
+            try {
+                if (snapshot == null) {
+                    loadAll();
+                }
+            } finally {
+                syncLock.unlock();
+            }
+        } else if (!dirtyStudents.isEmpty() ||
+                   System.currentTimeMillis() - lastSyncTime > SYNC_INTERVAL_MS) {
+            requestSync();
+        }
+        return snapshot;
+    }
+
+    /**
+     * Queue a sync on the background thread unless one is already pending
+     */
+    private void requestSync() {
+        if (!syncQueued.compareAndSet(false, true)) {
+            return;
+        }
+        syncer.execute(() -> {
+            syncLock.lock();
+            try {
+                sync();
+            } catch (SQLException e) {
+                System.err.println("⚠ Gallery sync failed, serving cached snapshot: " + e.getMessage());
+            } finally {
+                syncLock.unlock();
+                syncQueued.set(false);
+            }
+        });
+    }
+
+    /**
+     * Tag of the embedding model the gallery currently serves
+     */
+    public String getModelTag() {
+        return modelTag;
+    }
+
+    /**
+     * Serve another model's embeddings: its gallery is loaded while the
+     * current snapshot keeps serving, then swapped in at once
+     */
+    public void switchModel(String newModelTag) throws SQLException {
+        syncLock.lock();
+        try {
+            if (!newModelTag.equals(modelTag) || snapshot == null) {
+                switchTo(newModelTag);
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    private void switchTo(String newModelTag) throws SQLException {
+        String previousTag = modelTag;
+        Snapshot next = loadFromDatabase(newModelTag);
+        modelTag = newModelTag;
+        snapshot = next;
+        persist(next);
+        System.out.println("✓ Embedding gallery cut over from " + previousTag + " to " + newModelTag);
+    }
+
+    /**
+     * Mark a student's embeddings as changed; the next access queues their reload
+     */
+    public void invalidateStudent(int studentId) {
+        if (inPartition(studentId)) {
+            dirtyStudents.add(studentId);
+        }
+    }
+
+    /**
+     * Reload a student's embeddings immediately (e.g. right after training)
+     */
+    public void refreshStudent(int studentId) throws SQLException {
+        dirtyStudents.add(studentId);
+        syncLock.lock();
+        try {
+            if (snapshot == null) {
+                loadAll();
+            } else {
+                sync();
+            }
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * Drop the resident gallery; the next access reloads it from the database
+     */
+    public void invalidateAll() {
+        syncLock.lock();
+        try {
+            snapshot = null;
+            dirtyStudents.clear();
+        } finally {
+            syncLock.unlock();
+        }
+    }
+
+    /**
+     * First load: map the snapshot file and catch up with the database,
+     * or fall back to a full database load
+     */
+    private void loadAll() throws SQLException {
+        if (snapshotPath != null && Files.exists(snapshotPath) && loadFromFile()) {
+            return;
+        }
+        snapshot = loadFromDatabase(modelTag);
+        persist(snapshot);
+    }
+
+    /**
+     * Start from the snapshot file, then reload only the students whose
+     * rows were updated after its high-water mark (a file of an empty
+     * gallery is compared against the full stats instead)
+     */
+    private boolean loadFromFile() throws SQLException {
+        long start = System.currentTimeMillis();
+        GallerySnapshotFile.Loaded loaded;
+        try {
+            loaded = GallerySnapshotFile.read(snapshotPath);
+        } catch (IOException e) {
+            System.err.println("⚠ Ignoring gallery snapshot file: " + e.getMessage());
+            return false;
+        }
+
+        Snapshot fileSnapshot = withProjection(loaded.getSnapshot(), null);
+        String quantization = fileSnapshot.getQuantizer() != null ? fileSnapshot.getQuantizer().getName() : "none";
+        if (!modelTag.equals(loaded.getModelTag())) {
+            System.out.println("⚠ Gallery snapshot was built for model " + loaded.getModelTag() + ", reloading");
+            return false;
+        }
+        if (!fileSnapshot.isEmpty() &&
+            !quantization.equalsIgnoreCase(RecognitionConfig.getGalleryQuantization())) {
+            System.out.println("⚠ Gallery snapshot quantization changed, reloading");
+            return false;
+        }
+
+        dirtyStudents.clear();
+        quantizerTrainedOn = fileSnapshot.getEmbeddingCount();
+        snapshot = fileSnapshot;
+        long mapped = System.currentTimeMillis();
+        Timestamp highWaterMark = loaded.getHighWaterMark();
+        int updated;
+        try {
+            updated = highWaterMark != null ?
+                catchUp(fileSnapshot, highWaterMark) : applyChanges(fileSnapshot, new HashSet<>());
+        } catch (SQLException e) {
+            // Serve the file contents; the next background sync retries the catch-up
+            System.err.println("⚠ Gallery catch-up failed, serving snapshot file: " + e.getMessage());
+            return true;
+        }
+        System.out.println("✓ Embedding gallery mapped from " + snapshotPath + ": " +
+                         fileSnapshot.getStudentCount() + " students, " +
+                         fileSnapshot.getEmbeddingCount() + " embeddings (" + (mapped - start) +
+                         " ms), " + updated + " student(s) changed since " +
+                         highWaterMark + " (" + (System.currentTimeMillis() - mapped) + " ms)");
+        return true;
+    }
+
+    /**
+     * Full load of one model's embeddings from the database
+     */
+    private Snapshot loadFromDatabase(String model) throws SQLException {
+        long start = System.currentTimeMillis();
+        dirtyStudents.clear();
+
+        // Read the change markers first so rows written during the load
+        // show up as a mismatch on the next sync
+        Map<Integer, FaceEmbeddingDAO.EmbeddingStats> stats = getPartitionStats(model);
+        Map<Integer, List<float[]>> allEmbeddings = partitions == 1 ?
+            embeddingDAO.getAllEmbeddings(model) : embeddingDAO.getAllEmbeddings(model, partition, partitions);
+
+        Map<Integer, StudentEmbeddings> students = new HashMap<>();
+        Map<Integer, float[]> loadedRows = new HashMap<>();
+        for (Map.Entry<Integer, List<float[]>> entry : allEmbeddings.entrySet()) {
+            // Students missing from the stats are inactive (or were just deleted)
+            FaceEmbeddingDAO.EmbeddingStats studentStats = stats.get(entry.getKey());
+            if (studentStats == null || entry.getValue().isEmpty()) {
+                continue;
+            }
+            int studentDimension = entry.getValue().get(0).length;
+            float[] packed = pack(entry.getValue(), studentDimension);
+            students.put(entry.getKey(), new StudentEmbeddings(entry.getKey(), packed, studentDimension, studentStats));
+            loadedRows.put(entry.getKey(), packed);
+        }
+
+        Snapshot loaded = withRowsOffHeap(withQuantizer(
+            withProjection(Snapshot.build(students, loadedRows, null, null), null)));
+        EmbeddingQuantizer quantizer = loaded.getQuantizer();
+        lastSyncTime = System.currentTimeMillis();
+        System.out.println("✓ Embedding gallery loaded (" + model + "): " + loaded.getStudentCount() +
+                         " students, " + loaded.getEmbeddingCount() + " embeddings, " +
+                         (quantizer != null ? quantizer.getName() + " codes" +
+                             (loaded.embeddings().isMapped() ? ", float32 rows mapped" : " + float32 rows") :
+                             "float32") +
+                         (loaded.getProjection() != null ?
+                             ", PCA " + loaded.getProjection().getComponents() + "d" : "") + " " +
+                         (loaded.getResidentBytes() / 1024) + " KB (" +
+                         (lastSyncTime - start) + " ms)");
+        return loaded;
+    }
+
+    /**
+     * Incremental sync: reload only students whose rows changed locally
+     * or whose count/updated_at differ from what the snapshot holds
+     */
+    private void sync() throws SQLException {
+        // Another process (a model migration) cut over to a new model
+        String activeTag = ActiveModel.current().getTag();
+        if (!activeTag.equals(modelTag)) {
+            switchTo(activeTag);
+            return;
+        }
+
+        Snapshot current = snapshot;
+        Set<Integer> changed = new HashSet<>();
+        for (Integer studentId : dirtyStudents) {
+            if (dirtyStudents.remove(studentId)) {
+                changed.add(studentId);
+            }
+        }
+
+        try {
+            applyChanges(current, changed);
+        } catch (SQLException e) {
+            // Keep local invalidations so the next sync retries them
+            dirtyStudents.addAll(changed);
+            throw e;
+        }
+    }
+
+    /**
+     * Compare the snapshot with the full stats and rebuild it for changed
+     * students; returns how many changed
+     */
+    private int applyChanges(Snapshot current, Set<Integer> changed) throws SQLException {
+        Map<Integer, FaceEmbeddingDAO.EmbeddingStats> stats = getPartitionStats(modelTag);
+        addChanged(current, stats, changed);
+        for (Integer studentId : current.getStudents().keySet()) {
+            if (!stats.containsKey(studentId)) {
+                changed.add(studentId);
+            }
+        }
+
+        lastSyncTime = System.currentTimeMillis();
+        return reload(current, changed, stats);
+    }
+
+    /**
+     * Reload only the students with rows updated after the snapshot file's
+     * high-water mark; removed and deactivated students are left to the
+     * next full sync, which is queued right away
+     */
+    private int catchUp(Snapshot current, Timestamp highWaterMark) throws SQLException {
+        Map<Integer, FaceEmbeddingDAO.EmbeddingStats> stats =
+            embeddingDAO.getEmbeddingStatsSince(modelTag, highWaterMark);
+        if (partitions > 1) {
+            stats.keySet().removeIf(studentId -> !inPartition(studentId));
+        }
+        Set<Integer> changed = new HashSet<>();
+        addChanged(current, stats, changed);
+        int updated = reload(current, changed, stats);
+        // Leaves the next sync due, so it runs as soon as the gallery is used
+        lastSyncTime = 0;
+        return updated;
+    }
+
+    /**
+     * Add the students whose stats differ from what the snapshot holds
+     */
+    private static void addChanged(Snapshot current, Map<Integer, FaceEmbeddingDAO.EmbeddingStats> stats,
+                                   Set<Integer> changed) {
+        for (Map.Entry<Integer, FaceEmbeddingDAO.EmbeddingStats> entry : stats.entrySet()) {
+            StudentEmbeddings existing = current.getStudents().get(entry.getKey());
+            if (existing == null ||
+                existing.getCount() != entry.getValue().getCount() ||
+                existing.getCourseId() != entry.getValue().getCourseId() ||
+                !Objects.equals(existing.getLastUpdated(), entry.getValue().getLastUpdated())) {
+                changed.add(entry.getKey());
+            }
+        }
+    }
+
+    /**
+     * Rebuild the snapshot with the changed students' rows reloaded;
+     * students without stats are removed
+     */
+    private int reload(Snapshot current, Set<Integer> changed,
+                       Map<Integer, FaceEmbeddingDAO.EmbeddingStats> stats) throws SQLException {
+        if (changed.isEmpty()) {
+            return 0;
+        }
+
+        Map<Integer, StudentEmbeddings> students = new HashMap<>(current.getStudents());
+        Map<Integer, float[]> loadedRows = new HashMap<>();
+        for (Integer studentId : changed) {
+            FaceEmbeddingDAO.EmbeddingStats studentStats = stats.get(studentId);
+            List<float[]> embeddings = studentStats != null ?
+                embeddingDAO.getStudentEmbeddings(studentId, modelTag) : Collections.emptyList();
+
+            if (embeddings.isEmpty()) {
+                students.remove(studentId);
+            } else {
+                int dimension = embeddings.get(0).length;
+                float[] packed = pack(embeddings, dimension);
+                students.put(studentId, new StudentEmbeddings(studentId, packed, dimension, studentStats));
+                loadedRows.put(studentId, packed);
+            }
+        }
+
+        snapshot = withRowsOffHeap(withQuantizer(withProjection(
+            Snapshot.build(students, loadedRows, current, current.getQuantizer()), current)));
+        System.out.println("✓ Embedding gallery synced: " + changed.size() + " student(s) updated");
+        persist(snapshot);
+        return changed.size();
+    }
+
+    /**
+     * Change markers of one model's students in this gallery's partition
+     */
+    private Map<Integer, FaceEmbeddingDAO.EmbeddingStats> getPartitionStats(String model) throws SQLException {
+        Map<Integer, FaceEmbeddingDAO.EmbeddingStats> stats = embeddingDAO.getEmbeddingStats(model);
+        if (partitions > 1) {
+            stats.keySet().removeIf(studentId -> !inPartition(studentId));
+        }
+        return stats;
+    }
+
+    /**
+     * Queue the snapshot to be written to the snapshot file; only the
+     * latest queued snapshot is written
+     */
+    private void persist(Snapshot target) {
+        if (snapshotPath == null || pendingWrite.getAndSet(new PendingWrite(target, modelTag)) != null) {
+            return;
+        }
+        snapshotWriter.submit(() -> {
+            PendingWrite latest = pendingWrite.getAndSet(null);
+            if (latest == null) {
+                return;
+            }
+            try {
+                GallerySnapshotFile.write(latest.snapshot, latest.modelTag, snapshotPath);
+            } catch (IOException e) {
+                System.err.println("⚠ Failed to write gallery snapshot: " + e.getMessage());
+            }
+        });
+    }
+}
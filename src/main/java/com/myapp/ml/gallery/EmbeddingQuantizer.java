@@ -0,0 +1,84 @@
+package com.myapp.ml.gallery;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Compact code representation of embeddings with asymmetric scoring:
+ * the gallery side is stored as byte codes, the query stays full precision
+ */
+public interface EmbeddingQuantizer {
+
+    /**
+     * Scores one prepared query against encoded vectors
+     */
+    interface Scorer {
+        /**
+         * Approximate dot product of the query with the code at codes[offset]
+         */
+        float score(byte[] codes, int offset);
+    }
+
+    int getDimension();
+
+    /**
+     * Bytes per encoded vector
+     */
+    int getCodeSize();
+
+    /**
+     * Short name used in configuration and logs
+     */
+    String getName();
+
+    /**
+     * Encode src[srcOffset..srcOffset+dimension) into dst[dstOffset..dstOffset+codeSize)
+     */
+    void encode(float[] src, int srcOffset, byte[] dst, int dstOffset);
+
+    /**
+     * Precompute the per-query lookup/weight tables
+     */
+    Scorer scorer(float[] query);
+
+    /**
+     * Write the trained parameters (read back with {@link #read})
+     */
+    void write(DataOutputStream out) throws IOException;
+
+    /**
+     * Read parameters written by {@link #write} for the named quantizer
+     */
+    static EmbeddingQuantizer read(String name, ByteBuffer in) throws IOException {
+        switch (name) {
+            case "int8":
+                return ScalarQuantizer.read(in);
+            case "pq":
+                return ProductQuantizer.read(in);
+            default:
+                throw new IOException("Unknown quantizer: " + name);
+        }
+    }
+
+    /**
+     * Train the quantizer selected by name on packed rows (null for "none")
+     */
+    static EmbeddingQuantizer train(String type, float[] rows, int count, int dimension, int pqSubspaces) {
+        if (count == 0 || dimension == 0) {
+            return null;
+        }
+        switch (type == null ? "" : type.trim().toLowerCase()) {
+            case "int8":
+                return ScalarQuantizer.train(rows, count, dimension);
+            case "pq":
+                return ProductQuantizer.train(rows, count, dimension, pqSubspaces);
+            case "none":
+            case "":
+                return null;
+            default:
+                System.err.println("⚠ Unknown quantization '" + type + "', keeping float32 embeddings");
+                return null;
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.ml.VectorMath;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Full-precision embedding rows (row-major, size x dimension), held either
+ * in a heap array or in a memory-mapped file
+ * Mapped rows cost no heap: the page cache keeps the pages the re-rank
+ * touches and the OS may evict the rest. Quantized snapshots keep their
+ * rows mapped, so only the codes are resident.
+ */
+final class EmbeddingRows {
+    private final int dimension;
+    private final int size;
+    // Exactly one of the two is set
+    private final float[] vectors;
+    private final FloatBuffer mapped;
+
+    private EmbeddingRows(int dimension, int size, float[] vectors, FloatBuffer mapped) {
+        this.dimension = dimension;
+        this.size = size;
+        this.vectors = vectors;
+        this.mapped = mapped;
+    }
+
+    static EmbeddingRows onHeap(float[] vectors, int dimension) {
+        return new EmbeddingRows(dimension, dimension == 0 ? 0 : vectors.length / dimension, vectors, null);
+    }
+
+    /**
+     * Rows read in place from a mapped buffer (e.g. a slice of the snapshot file)
+     */
+    static EmbeddingRows mapped(FloatBuffer rows, int size, int dimension) {
+        if (rows.remaining() < size * dimension) {
+            throw new IllegalArgumentException("Mapped rows shorter than " + size + " x " + dimension);
+        }
+        return new EmbeddingRows(dimension, size, null, rows);
+    }
+
+    /**
+     * Write the rows to a file in directory (the temp directory if null)
+     * and map it; the file is unlinked at once, so its space is reclaimed
+     * when the mapping is collected
+     */
+    EmbeddingRows spill(Path directory) throws IOException {
+        if (directory != null) {
+            Files.createDirectories(directory);
+        }
+        Path file = directory != null ?
+            Files.createTempFile(directory, "gallery-rows", ".bin") : Files.createTempFile("gallery-rows", ".bin");
+        try {
+            try (DataOutputStream out = new DataOutputStream(
+                    new BufferedOutputStream(Files.newOutputStream(file), 1 << 16))) {
+                write(out);
+            }
+            FloatBuffer rows;
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                rows = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()).asFloatBuffer();
+            }
+            return mapped(rows, size, dimension);
+        } finally {
+            try {
+                Files.delete(file);
+            } catch (IOException e) {
+                // Mapped files cannot be unlinked on some platforms
+                file.toFile().deleteOnExit();
+            }
+        }
+    }
+
+    int getDimension() { return dimension; }
+    int size() { return size; }
+    boolean isMapped() { return mapped != null; }
+
+    /**
+     * Heap taken by the rows (0 when mapped)
+     */
+    long heapBytes() {
+        return vectors != null ? (long) vectors.length * Float.BYTES : 0;
+    }
+
+    /**
+     * Dot product of one row with the query
+     */
+    float dot(int row, float[] query) {
+        if (vectors != null) {
+            return VectorMath.dot(vectors, row * dimension, query, 0, dimension);
+        }
+        int offset = row * dimension;
+        float s0 = 0f, s1 = 0f, s2 = 0f, s3 = 0f;
+        int i = 0;
+        for (; i + 3 < dimension; i += 4) {
+            s0 += mapped.get(offset + i) * query[i];
+            s1 += mapped.get(offset + i + 1) * query[i + 1];
+            s2 += mapped.get(offset + i + 2) * query[i + 2];
+            s3 += mapped.get(offset + i + 3) * query[i + 3];
+        }
+        for (; i < dimension; i++) {
+            s0 += mapped.get(offset + i) * query[i];
+        }
+        return (s0 + s1) + (s2 + s3);
+    }
+
+    /**
+     * Copy count rows starting at fromRow into dst[dstOffset..)
+     */
+    void copy(int fromRow, int count, float[] dst, int dstOffset) {
+        if (vectors != null) {
+            System.arraycopy(vectors, fromRow * dimension, dst, dstOffset, count * dimension);
+        } else {
+            mapped.get(fromRow * dimension, dst, dstOffset, count * dimension);
+        }
+    }
+
+    /**
+     * All rows as a heap array (the backing array itself when on the heap;
+     * callers must not modify it)
+     */
+    float[] toArray() {
+        if (vectors != null) {
+            return vectors;
+        }
+        float[] copy = new float[size * dimension];
+        copy(0, size, copy, 0);
+        return copy;
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        int length = size * dimension;
+        for (int i = 0; i < length; i++) {
+            out.writeFloat(vectors != null ? vectors[i] : mapped.get(i));
+        }
+    }
+}
@@ -0,0 +1,26 @@
+package com.myapp.ml.gallery;
+
+import java.util.List;
+
+/**
+ * Linear scan over every student centroid
+ * Always exact; also serves as the fallback and reference for approximate strategies.
+ */
+public class ExactCandidateSearch implements CandidateSearch {
+
+    @Override
+    public List<GalleryMatch> search(EmbeddingGallery.Snapshot snapshot, float[] query, int k) {
+        return snapshot.searchCentroids(query, k);
+    }
+
+    @Override
+    public List<List<GalleryMatch>> searchBatch(EmbeddingGallery.Snapshot snapshot,
+                                                float[][] queries, int k) {
+        return snapshot.searchCentroidsBatch(queries, k);
+    }
+
+    @Override
+    public String getName() {
+        return "exact";
+    }
+}
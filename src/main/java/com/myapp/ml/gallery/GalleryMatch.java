@@ -0,0 +1,22 @@
+package com.myapp.ml.gallery;
+
+/**
+ * A candidate student from a gallery search with its similarity score
+ */
+public class GalleryMatch {
+    private final int studentId;
+    private final double score;
+
+    public GalleryMatch(int studentId, double score) {
+        this.studentId = studentId;
+        this.score = score;
+    }
+
+    public int getStudentId() { return studentId; }
+    public double getScore() { return score; }
+
+    @Override
+    public String toString() {
+        return String.format("student %d (%.4f)", studentId, score);
+    }
+}
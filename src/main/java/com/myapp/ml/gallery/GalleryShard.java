@@ -0,0 +1,44 @@
+package com.myapp.ml.gallery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One part of the gallery that can answer match queries
+ * Either an in-process gallery, a remote matcher process, or the
+ * scatter-gather combination of several shards.
+ */
+public interface GalleryShard {
+
+    /**
+     * Best k course and global matches for a query embedded by the given
+     * model (course may be null)
+     * A gallery serving another model answers with no matches, tagged with
+     * the model it serves.
+     */
+    ShardMatches search(float[] query, String model, Integer courseId, int k) throws Exception;
+
+    /**
+     * Search for several queries (e.g. every face of a frame); null
+     * queries get empty matches
+     */
+    default List<ShardMatches> searchBatch(float[][] queries, String model, Integer courseId, int k)
+            throws Exception {
+        List<ShardMatches> results = new ArrayList<>(queries.length);
+        for (float[] query : queries) {
+            results.add(query != null ? search(query, model, courseId, k) : ShardMatches.empty(model));
+        }
+        return results;
+    }
+
+    /**
+     * Short name used in logs
+     */
+    String getName();
+
+    /**
+     * Release connections and background resources
+     */
+    default void close() {
+    }
+}
@@ -0,0 +1,225 @@
+package com.myapp.ml.gallery;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Versioned binary image of a gallery snapshot, so a process can start
+ * matching without pulling and decoding every face_embeddings BLOB
+ *
+ * Layout (big-endian):
+ *   magic, version, model tag, updated_at high-water mark (ms),
+ *   dimension, students, rows, quantizer name + parameters,
+ *   PCA projection flag + parameters (version 2+),
+ *   per student: id, course, stats count, updated_at (ms), rows,
+ *   centroid matrix (students x dimension float32),
+ *   embedding rows (rows x dimension float32),
+ *   embedding codes (rows x code size bytes, quantized galleries only)
+ *
+ * The file is read through a memory mapping, so the rows are bulk-copied
+ * from the page cache instead of being parsed value by value. The float32
+ * rows of a quantized gallery are not copied at all: the snapshot reads
+ * them in place from the mapping for its final re-rank.
+ */
+public final class GallerySnapshotFile {
+    private static final int FILE_MAGIC = 0x47534E50; // "GSNP"
+    private static final int FILE_VERSION = 3;
+    private static final long NO_TIMESTAMP = Long.MIN_VALUE;
+
+    private GallerySnapshotFile() {
+    }
+
+    /**
+     * A snapshot read back from disk together with its header
+     */
+    public static class Loaded {
+        private final EmbeddingGallery.Snapshot snapshot;
+        private final String modelTag;
+        private final Timestamp highWaterMark;
+
+        Loaded(EmbeddingGallery.Snapshot snapshot, String modelTag, Timestamp highWaterMark) {
+            this.snapshot = snapshot;
+            this.modelTag = modelTag;
+            this.highWaterMark = highWaterMark;
+        }
+
+        public EmbeddingGallery.Snapshot getSnapshot() { return snapshot; }
+        public String getModelTag() { return modelTag; }
+
+        /**
+         * Latest updated_at contained in the file (null if the gallery was empty)
+         */
+        public Timestamp getHighWaterMark() { return highWaterMark; }
+    }
+
+    /**
+     * Write the snapshot atomically (temp file + rename)
+     */
+    public static void write(EmbeddingGallery.Snapshot snapshot, String modelTag, Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        PackedGallery centroids = snapshot.getCentroids();
+        int dimension = snapshot.getDimension();
+        EmbeddingQuantizer quantizer = snapshot.getQuantizer();
+
+        List<EmbeddingGallery.StudentEmbeddings> ordered = new ArrayList<>(centroids.size());
+        long highWaterMark = NO_TIMESTAMP;
+        for (int i = 0; i < centroids.size(); i++) {
+            EmbeddingGallery.StudentEmbeddings entry = snapshot.getStudents().get(centroids.studentIdAt(i));
+            ordered.add(entry);
+            if (entry.getLastUpdated() != null) {
+                highWaterMark = Math.max(highWaterMark, entry.getLastUpdated().getTime());
+            }
+        }
+
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp), 1 << 16))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeUTF(modelTag);
+            out.writeLong(highWaterMark);
+            out.writeInt(dimension);
+            out.writeInt(ordered.size());
+            out.writeInt(snapshot.getEmbeddingCount());
+            out.writeUTF(quantizer != null ? quantizer.getName() : "none");
+            if (quantizer != null) {
+                quantizer.write(out);
+            }
+            PcaProjection projection = snapshot.getProjection();
+            out.writeBoolean(projection != null);
+            if (projection != null) {
+                projection.write(out);
+            }
+
+            for (EmbeddingGallery.StudentEmbeddings entry : ordered) {
+                out.writeInt(entry.getStudentId());
+                out.writeInt(entry.getCourseId());
+                out.writeInt(entry.getCount());
+                out.writeLong(entry.getLastUpdated() != null ? entry.getLastUpdated().getTime() : NO_TIMESTAMP);
+                out.writeInt(entry.getEmbeddingCount());
+            }
+
+            for (float value : centroids.vectors()) {
+                out.writeFloat(value);
+            }
+            snapshot.embeddings().write(out);
+            if (quantizer != null) {
+                out.write(snapshot.embeddingCodes());
+            }
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Map and read a snapshot file written by {@link #write}
+     */
+    public static Loaded read(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            int version = in.getInt() == FILE_MAGIC ? in.getInt() : -1;
+            if (version < 1 || version > FILE_VERSION) {
+                throw new IOException("Not a gallery snapshot (or unsupported version): " + path);
+            }
+
+            String modelTag = readUTF(in);
+            long highWaterMark = in.getLong();
+            int dimension = in.getInt();
+            int studentCount = in.getInt();
+            int rowCount = in.getInt();
+            String quantizerName = readUTF(in);
+            EmbeddingQuantizer quantizer = "none".equals(quantizerName) ?
+                null : EmbeddingQuantizer.read(quantizerName, in);
+            if (quantizer != null && quantizer.getDimension() != dimension) {
+                throw new IOException("Quantizer dimension does not match gallery: " + path);
+            }
+            if (quantizer != null && version < 3) {
+                // Older quantized files hold only codes, no rows for the exact re-rank
+                throw new IOException("Quantized snapshot without float32 rows: " + path);
+            }
+            PcaProjection projection = version >= 2 && in.get() != 0 ? PcaProjection.read(in) : null;
+
+            int[][] header = new int[studentCount][];
+            long[] lastUpdated = new long[studentCount];
+            int totalRows = 0;
+            for (int i = 0; i < studentCount; i++) {
+                int studentId = in.getInt();
+                int courseId = in.getInt();
+                int count = in.getInt();
+                lastUpdated[i] = in.getLong();
+                int rows = in.getInt();
+                header[i] = new int[] {studentId, courseId, count, rows};
+                totalRows += rows;
+            }
+            if (totalRows != rowCount) {
+                throw new IOException("Corrupt gallery snapshot (row count mismatch): " + path);
+            }
+
+            float[] centroidVectors = new float[studentCount * dimension];
+            in.asFloatBuffer().get(centroidVectors);
+            in.position(in.position() + centroidVectors.length * Float.BYTES);
+
+            int rowBytes = rowCount * dimension * Float.BYTES;
+            EmbeddingRows rows;
+            if (quantizer != null) {
+                rows = EmbeddingRows.mapped(in.slice(in.position(), rowBytes).asFloatBuffer(), rowCount, dimension);
+            } else {
+                float[] rowVectors = new float[rowCount * dimension];
+                in.asFloatBuffer().get(rowVectors);
+                rows = EmbeddingRows.onHeap(rowVectors, dimension);
+            }
+            in.position(in.position() + rowBytes);
+            byte[] rowCodes = null;
+            if (quantizer != null) {
+                rowCodes = new byte[rowCount * quantizer.getCodeSize()];
+                in.get(rowCodes);
+            }
+
+            Map<Integer, EmbeddingGallery.StudentEmbeddings> students = new HashMap<>();
+            List<EmbeddingGallery.StudentEmbeddings> ordered = new ArrayList<>(studentCount);
+            for (int i = 0; i < studentCount; i++) {
+                float[] centroid = new float[dimension];
+                System.arraycopy(centroidVectors, i * dimension, centroid, 0, dimension);
+                EmbeddingGallery.StudentEmbeddings entry = new EmbeddingGallery.StudentEmbeddings(
+                    header[i][0], header[i][1], dimension, header[i][3], centroid, header[i][2],
+                    lastUpdated[i] == NO_TIMESTAMP ? null : new Timestamp(lastUpdated[i]));
+                students.put(entry.getStudentId(), entry);
+                ordered.add(entry);
+            }
+
+            EmbeddingGallery.Snapshot snapshot = new EmbeddingGallery.Snapshot(
+                students, ordered, dimension, centroidVectors, rows, rowCodes, quantizer)
+                .withProjection(projection, null);
+            return new Loaded(snapshot, modelTag,
+                              highWaterMark == NO_TIMESTAMP ? null : new Timestamp(highWaterMark));
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException e) {
+            throw new IOException("Truncated or corrupt gallery snapshot: " + path, e);
+        }
+    }
+
+    /**
+     * Counterpart of DataOutputStream.writeUTF for a ByteBuffer
+     * (modified UTF-8 equals UTF-8 for the tags written here)
+     */
+    private static String readUTF(MappedByteBuffer in) {
+        byte[] bytes = new byte[in.getShort() & 0xFFFF];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
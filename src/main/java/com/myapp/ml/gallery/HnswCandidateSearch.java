@@ -0,0 +1,193 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.config.RecognitionConfig;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Approximate candidate search over student centroids with an HNSW graph
+ * The index is persisted under models/gallery and brought in line with each
+ * new gallery snapshot on a background thread (new/retrained students are
+ * inserted, removed or deactivated students deleted). Until the index has
+ * caught up, queries fall back to the exact scan.
+ */
+public class HnswCandidateSearch implements CandidateSearch {
+    private final ExactCandidateSearch exactSearch = new ExactCandidateSearch();
+    private final ExecutorService indexer = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "HnswIndexer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean syncing = new AtomicBoolean(false);
+    private final Path indexPath;
+    private final boolean verify;
+
+    private volatile HnswIndex index;
+    private volatile EmbeddingGallery.Snapshot indexedSnapshot;
+
+    // Verification mode statistics (approximate vs exact top-k)
+    private final RecallMonitor recallMonitor = new RecallMonitor("HNSW");
+
+    public HnswCandidateSearch() {
+        this(0, 1);
+    }
+
+    /**
+     * Index of one gallery partition, persisted next to the configured path
+     * with a ".{partition}of{partitions}" suffix when partitioned
+     */
+    public HnswCandidateSearch(int partition, int partitions) {
+        String path = RecognitionConfig.getHnswIndexPath();
+        if (partitions > 1) {
+            path = path + "." + partition + "of" + partitions;
+        }
+        this.indexPath = Paths.get(path);
+        this.verify = RecognitionConfig.isHnswVerifyEnabled();
+    }
+
+    @Override
+    public List<GalleryMatch> search(EmbeddingGallery.Snapshot snapshot, float[] query, int k) {
+        if (indexedSnapshot != snapshot) {
+            requestSync(snapshot);
+        }
+
+        HnswIndex current = index;
+        if (current == null || indexedSnapshot == null || current.getDimension() != query.length) {
+            return exactSearch.search(snapshot, query, k);
+        }
+
+        // Graph works on normalized centroids; report exact centroid scores
+        long start = System.nanoTime();
+        TopK approximate = current.search(query, k);
+        TopK rescored = new TopK(Math.max(1, k));
+        for (int i = 0; i < approximate.size(); i++) {
+            int studentId = approximate.idAt(i);
+            if (snapshot.containsStudent(studentId)) {
+                rescored.offer(studentId, snapshot.centroidSimilarity(studentId, query));
+            }
+        }
+        List<GalleryMatch> matches = rescored.toMatches();
+
+        if (verify) {
+            long approximateTime = System.nanoTime() - start;
+            long exactStart = System.nanoTime();
+            List<GalleryMatch> exact = exactSearch.search(snapshot, query, k);
+            recallMonitor.record(exact, matches, k, approximateTime, System.nanoTime() - exactStart);
+        }
+        return matches.isEmpty() ? exactSearch.search(snapshot, query, k) : matches;
+    }
+
+    @Override
+    public String getName() {
+        return "hnsw";
+    }
+
+    /**
+     * Recall@k of the approximate search over all verified queries (NaN if none)
+     */
+    public double getVerifiedRecall() {
+        return recallMonitor.getRecall();
+    }
+
+    /**
+     * Kick off a background sync of the index with the snapshot
+     */
+    private void requestSync(EmbeddingGallery.Snapshot snapshot) {
+        if (!syncing.compareAndSet(false, true)) {
+            return;
+        }
+        indexer.submit(() -> {
+            try {
+                syncIndex(snapshot);
+                indexedSnapshot = snapshot;
+            } catch (Exception e) {
+                System.err.println("✗ HNSW index sync failed: " + e.getMessage());
+            } finally {
+                syncing.set(false);
+            }
+        });
+    }
+
+    private void syncIndex(EmbeddingGallery.Snapshot snapshot) {
+        long start = System.currentTimeMillis();
+        PackedGallery centroids = snapshot.getCentroids();
+
+        HnswIndex current = index;
+        if (current == null) {
+            current = loadOrCreate(centroids.getDimension());
+        } else if (current.getDimension() != centroids.getDimension()) {
+            current = newIndex(centroids.getDimension());
+        }
+
+        int inserted = 0;
+        Set<Integer> present = new HashSet<>();
+        for (int row = 0; row < centroids.size(); row++) {
+            int studentId = centroids.studentIdAt(row);
+            long stamp = centroids.rowStamp(row);
+            present.add(studentId);
+
+            Long indexedStamp = current.getStamp(studentId);
+            if (indexedStamp == null || indexedStamp != stamp) {
+                current.insert(studentId, centroids.rowCopy(row), stamp);
+                inserted++;
+            }
+        }
+
+        int deleted = 0;
+        for (Integer label : current.getLabels()) {
+            if (!present.contains(label) && current.delete(label)) {
+                deleted++;
+            }
+        }
+
+        index = current;
+        if (inserted > 0 || deleted > 0) {
+            try {
+                current.save(indexPath);
+            } catch (IOException e) {
+                System.err.println("⚠ Failed to persist HNSW index: " + e.getMessage());
+            }
+            System.out.println("✓ HNSW index synced: +" + inserted + " / -" + deleted +
+                             " students, " + current.size() + " indexed (" +
+                             (System.currentTimeMillis() - start) + " ms)");
+        }
+    }
+
+    private HnswIndex loadOrCreate(int dimension) {
+        if (Files.exists(indexPath)) {
+            try {
+                HnswIndex loaded = HnswIndex.load(indexPath, RecognitionConfig.getHnswEfSearch());
+                if (loaded.getDimension() == dimension &&
+                    loaded.getM() == RecognitionConfig.getHnswM()) {
+                    System.out.println("✓ HNSW index loaded from " + indexPath +
+                                     " (" + loaded.size() + " students)");
+                    return loaded;
+                }
+                System.out.println("⚠ HNSW index parameters changed, rebuilding");
+            } catch (IOException e) {
+                System.err.println("⚠ Failed to load HNSW index, rebuilding: " + e.getMessage());
+            }
+        }
+        return newIndex(dimension);
+    }
+
+    private HnswIndex newIndex(int dimension) {
+        return new HnswIndex(dimension, RecognitionConfig.getHnswM(),
+                             RecognitionConfig.getHnswEfConstruction(),
+                             RecognitionConfig.getHnswEfSearch());
+    }
+
+    @Override
+    public void close() {
+        indexer.shutdownNow();
+    }
+}
@@ -0,0 +1,540 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.ml.VectorMath;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Random;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Hierarchical Navigable Small World graph for approximate nearest
+ * neighbour search by cosine similarity
+ * Each node carries a label (student id) and a stamp identifying the
+ * vector version it was built from. Supports online insert/replace and
+ * delete (tombstones, compacted once they pile up) and binary persistence.
+ */
+public class HnswIndex {
+    private static final int FILE_MAGIC = 0x484E5357; // "HNSW"
+    private static final int FILE_VERSION = 1;
+
+    // Rebuild once this fraction of nodes are tombstones
+    private static final double MAX_DELETED_FRACTION = 0.25;
+
+    private final int dimension;
+    private final int m;
+    private final int maxM0;
+    private final int efConstruction;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+    private volatile int efSearch;
+
+    private float[] vectors;
+    private int[] labels;
+    private long[] stamps;
+    private boolean[] deleted;
+    private int[][][] links; // node -> level -> {count, neighbours...}
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+    private final Map<Integer, Integer> labelToNode = new HashMap<>();
+
+    private static class Candidate {
+        final int node;
+        final float similarity;
+
+        Candidate(int node, float similarity) {
+            this.node = node;
+            this.similarity = similarity;
+        }
+    }
+
+    private static final Comparator<Candidate> BEST_FIRST =
+        (a, b) -> Float.compare(b.similarity, a.similarity);
+    private static final Comparator<Candidate> WORST_FIRST =
+        (a, b) -> Float.compare(a.similarity, b.similarity);
+
+    /**
+     * @param m              links per node on upper levels (2m on level 0)
+     * @param efConstruction beam width while inserting
+     * @param efSearch       beam width while searching (recall/speed trade-off)
+     */
+    public HnswIndex(int dimension, int m, int efConstruction, int efSearch) {
+        this.dimension = dimension;
+        this.m = Math.max(2, m);
+        this.maxM0 = this.m * 2;
+        this.efConstruction = Math.max(efConstruction, this.m);
+        this.efSearch = Math.max(1, efSearch);
+        this.levelMultiplier = 1.0 / Math.log(this.m);
+        allocate(64);
+    }
+
+    public int getDimension() { return dimension; }
+    public int getM() { return m; }
+    public int getEfConstruction() { return efConstruction; }
+    public int getEfSearch() { return efSearch; }
+
+    public void setEfSearch(int efSearch) {
+        this.efSearch = Math.max(1, efSearch);
+    }
+
+    /**
+     * Number of live (non-deleted) nodes
+     */
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Stamp of the vector stored for a label, or null if the label is absent
+     */
+    public Long getStamp(int label) {
+        lock.readLock().lock();
+        try {
+            Integer node = labelToNode.get(label);
+            return node != null ? stamps[node] : null;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Labels currently present in the index
+     */
+    public List<Integer> getLabels() {
+        lock.readLock().lock();
+        try {
+            return new ArrayList<>(labelToNode.keySet());
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Insert a vector, replacing any previous vector with the same label
+     */
+    public void insert(int label, float[] vector, long stamp) {
+        if (vector.length != dimension) {
+            throw new IllegalArgumentException("Expected dimension " + dimension + ", got " + vector.length);
+        }
+        lock.writeLock().lock();
+        try {
+            Integer existing = labelToNode.remove(label);
+            if (existing != null) {
+                deleted[existing] = true;
+                deletedCount++;
+            }
+            insertNode(label, normalized(vector), stamp);
+            compactIfNeeded();
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Remove a label; returns false if it was not indexed
+     */
+    public boolean delete(int label) {
+        lock.writeLock().lock();
+        try {
+            Integer node = labelToNode.remove(label);
+            if (node == null) {
+                return false;
+            }
+            deleted[node] = true;
+            deletedCount++;
+            compactIfNeeded();
+            return true;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Approximate top-k labels by cosine similarity to the query
+     */
+    public TopK search(float[] query, int k) {
+        TopK topK = new TopK(Math.max(1, k));
+        if (query.length != dimension) {
+            return topK;
+        }
+        float[] q = normalized(query);
+
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0) {
+                return topK;
+            }
+            int current = entryPoint;
+            float currentSimilarity = similarity(q, current);
+            for (int level = maxLevel; level > 0; level--) {
+                Candidate best = greedyClosest(q, current, currentSimilarity, level);
+                current = best.node;
+                currentSimilarity = best.similarity;
+            }
+
+            PriorityQueue<Candidate> results = searchLayer(q, current, currentSimilarity,
+                                                           Math.max(efSearch, k), 0);
+            for (Candidate candidate : results) {
+                if (!deleted[candidate.node]) {
+                    topK.offer(labels[candidate.node], candidate.similarity);
+                }
+            }
+            return topK;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private void insertNode(int label, float[] vector, long stamp) {
+        ensureCapacity(size + 1);
+        int node = size++;
+        int level = (int) Math.floor(-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+
+        System.arraycopy(vector, 0, vectors, node * dimension, dimension);
+        labels[node] = label;
+        stamps[node] = stamp;
+        deleted[node] = false;
+        links[node] = new int[level + 1][];
+        for (int l = 0; l <= level; l++) {
+            links[node][l] = new int[(l == 0 ? maxM0 : m) + 1];
+        }
+        labelToNode.put(label, node);
+
+        if (entryPoint < 0) {
+            entryPoint = node;
+            maxLevel = level;
+            return;
+        }
+
+        int current = entryPoint;
+        float currentSimilarity = similarity(vector, current);
+        for (int l = maxLevel; l > level; l--) {
+            Candidate best = greedyClosest(vector, current, currentSimilarity, l);
+            current = best.node;
+            currentSimilarity = best.similarity;
+        }
+
+        for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+            PriorityQueue<Candidate> found = searchLayer(vector, current, currentSimilarity, efConstruction, l);
+            List<Candidate> sorted = new ArrayList<>(found);
+            sorted.sort(BEST_FIRST);
+
+            List<Candidate> neighbours = selectNeighbours(sorted, m);
+            int[] nodeLinks = links[node][l];
+            for (Candidate neighbour : neighbours) {
+                nodeLinks[++nodeLinks[0]] = neighbour.node;
+            }
+            for (Candidate neighbour : neighbours) {
+                connect(neighbour.node, node, l);
+            }
+
+            current = sorted.get(0).node;
+            currentSimilarity = sorted.get(0).similarity;
+        }
+
+        if (level > maxLevel) {
+            maxLevel = level;
+            entryPoint = node;
+        }
+    }
+
+    /**
+     * Add a back-link from target to source, pruning target's list if full
+     */
+    private void connect(int target, int source, int level) {
+        int[] targetLinks = links[target][level];
+        int capacity = targetLinks.length - 1;
+        if (targetLinks[0] < capacity) {
+            targetLinks[++targetLinks[0]] = source;
+            return;
+        }
+
+        List<Candidate> candidates = new ArrayList<>(capacity + 1);
+        candidates.add(new Candidate(source, nodeSimilarity(target, source)));
+        for (int i = 1; i <= targetLinks[0]; i++) {
+            candidates.add(new Candidate(targetLinks[i], nodeSimilarity(target, targetLinks[i])));
+        }
+        candidates.sort(BEST_FIRST);
+
+        List<Candidate> kept = selectNeighbours(candidates, capacity);
+        targetLinks[0] = 0;
+        for (Candidate candidate : kept) {
+            targetLinks[++targetLinks[0]] = candidate.node;
+        }
+    }
+
+    /**
+     * Neighbour selection heuristic: prefer candidates that are closer to
+     * the base than to any already selected neighbour, then top up with the
+     * closest discarded ones to keep the graph well connected
+     */
+    private List<Candidate> selectNeighbours(List<Candidate> sortedBestFirst, int limit) {
+        List<Candidate> selected = new ArrayList<>(limit);
+        List<Candidate> discarded = new ArrayList<>();
+        for (Candidate candidate : sortedBestFirst) {
+            if (selected.size() >= limit) {
+                break;
+            }
+            boolean diverse = true;
+            for (Candidate chosen : selected) {
+                if (nodeSimilarity(candidate.node, chosen.node) > candidate.similarity) {
+                    diverse = false;
+                    break;
+                }
+            }
+            if (diverse) {
+                selected.add(candidate);
+            } else {
+                discarded.add(candidate);
+            }
+        }
+        for (int i = 0; i < discarded.size() && selected.size() < limit; i++) {
+            selected.add(discarded.get(i));
+        }
+        return selected;
+    }
+
+    private Candidate greedyClosest(float[] query, int start, float startSimilarity, int level) {
+        int current = start;
+        float currentSimilarity = startSimilarity;
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] nodeLinks = links[current][level];
+            for (int i = 1; i <= nodeLinks[0]; i++) {
+                float s = similarity(query, nodeLinks[i]);
+                if (s > currentSimilarity) {
+                    currentSimilarity = s;
+                    current = nodeLinks[i];
+                    improved = true;
+                }
+            }
+        }
+        return new Candidate(current, currentSimilarity);
+    }
+
+    /**
+     * Beam search on one level; returns up to ef nodes (worst at the head)
+     */
+    private PriorityQueue<Candidate> searchLayer(float[] query, int entry, float entrySimilarity,
+                                                 int ef, int level) {
+        BitSet visited = new BitSet(size);
+        PriorityQueue<Candidate> toExpand = new PriorityQueue<>(BEST_FIRST);
+        PriorityQueue<Candidate> results = new PriorityQueue<>(WORST_FIRST);
+
+        Candidate start = new Candidate(entry, entrySimilarity);
+        visited.set(entry);
+        toExpand.add(start);
+        results.add(start);
+
+        while (!toExpand.isEmpty()) {
+            Candidate current = toExpand.poll();
+            if (results.size() >= ef && current.similarity < results.peek().similarity) {
+                break;
+            }
+            int[] nodeLinks = links[current.node].length > level ? links[current.node][level] : null;
+            if (nodeLinks == null) {
+                continue;
+            }
+            for (int i = 1; i <= nodeLinks[0]; i++) {
+                int neighbour = nodeLinks[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float s = similarity(query, neighbour);
+                if (results.size() < ef || s > results.peek().similarity) {
+                    Candidate candidate = new Candidate(neighbour, s);
+                    toExpand.add(candidate);
+                    results.add(candidate);
+                    if (results.size() > ef) {
+                        results.poll();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    private float similarity(float[] query, int node) {
+        return VectorMath.dot(vectors, node * dimension, query, 0, dimension);
+    }
+
+    private float nodeSimilarity(int a, int b) {
+        return VectorMath.dot(vectors, a * dimension, vectors, b * dimension, dimension);
+    }
+
+    private float[] normalized(float[] vector) {
+        double norm = 0.0;
+        for (float v : vector) {
+            norm += v * v;
+        }
+        norm = Math.sqrt(norm);
+        float[] result = new float[vector.length];
+        for (int i = 0; i < vector.length; i++) {
+            result[i] = norm > 0 ? (float) (vector[i] / norm) : vector[i];
+        }
+        return result;
+    }
+
+    private void compactIfNeeded() {
+        if (deletedCount > 16 && deletedCount > size * MAX_DELETED_FRACTION) {
+            rebuild();
+        }
+    }
+
+    /**
+     * Rebuild the graph from live nodes only, dropping tombstones
+     */
+    private void rebuild() {
+        int oldSize = size;
+        float[] oldVectors = vectors;
+        int[] oldLabels = labels;
+        long[] oldStamps = stamps;
+        boolean[] oldDeleted = deleted;
+
+        allocate(Math.max(64, (oldSize - deletedCount) * 2));
+        size = 0;
+        deletedCount = 0;
+        entryPoint = -1;
+        maxLevel = -1;
+        labelToNode.clear();
+
+        float[] vector = new float[dimension];
+        for (int node = 0; node < oldSize; node++) {
+            if (!oldDeleted[node]) {
+                System.arraycopy(oldVectors, node * dimension, vector, 0, dimension);
+                insertNode(oldLabels[node], vector.clone(), oldStamps[node]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        vectors = new float[capacity * dimension];
+        labels = new int[capacity];
+        stamps = new long[capacity];
+        deleted = new boolean[capacity];
+        links = new int[capacity][][];
+    }
+
+    private void ensureCapacity(int required) {
+        if (required <= labels.length) {
+            return;
+        }
+        int capacity = Math.max(required, labels.length * 2);
+        vectors = Arrays.copyOf(vectors, capacity * dimension);
+        labels = Arrays.copyOf(labels, capacity);
+        stamps = Arrays.copyOf(stamps, capacity);
+        deleted = Arrays.copyOf(deleted, capacity);
+        links = Arrays.copyOf(links, capacity);
+    }
+
+    /**
+     * Write the index to disk (atomically via a temp file)
+     */
+    public void save(Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+
+        lock.readLock().lock();
+        try (DataOutputStream out = new DataOutputStream(
+                new BufferedOutputStream(Files.newOutputStream(temp)))) {
+            out.writeInt(FILE_MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(dimension);
+            out.writeInt(m);
+            out.writeInt(efConstruction);
+            out.writeInt(size);
+            out.writeInt(entryPoint);
+            out.writeInt(maxLevel);
+            for (int node = 0; node < size; node++) {
+                out.writeInt(labels[node]);
+                out.writeLong(stamps[node]);
+                out.writeBoolean(deleted[node]);
+                out.writeInt(links[node].length);
+                for (int i = 0; i < dimension; i++) {
+                    out.writeFloat(vectors[node * dimension + i]);
+                }
+                for (int[] levelLinks : links[node]) {
+                    out.writeInt(levelLinks[0]);
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        out.writeInt(levelLinks[i]);
+                    }
+                }
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+        Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read an index written by {@link #save(Path)}
+     */
+    public static HnswIndex load(Path path, int efSearch) throws IOException {
+        try (DataInputStream in = new DataInputStream(
+                new BufferedInputStream(Files.newInputStream(path)))) {
+            if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+                throw new IOException("Not an HNSW index file (or unsupported version): " + path);
+            }
+            int dimension = in.readInt();
+            int m = in.readInt();
+            int efConstruction = in.readInt();
+            HnswIndex index = new HnswIndex(dimension, m, efConstruction, efSearch);
+
+            int size = in.readInt();
+            index.allocate(Math.max(64, size));
+            index.size = size;
+            index.entryPoint = in.readInt();
+            index.maxLevel = in.readInt();
+            for (int node = 0; node < size; node++) {
+                index.labels[node] = in.readInt();
+                index.stamps[node] = in.readLong();
+                index.deleted[node] = in.readBoolean();
+                int levels = in.readInt();
+                for (int i = 0; i < dimension; i++) {
+                    index.vectors[node * dimension + i] = in.readFloat();
+                }
+                index.links[node] = new int[levels][];
+                for (int l = 0; l < levels; l++) {
+                    int[] levelLinks = new int[(l == 0 ? index.maxM0 : index.m) + 1];
+                    levelLinks[0] = in.readInt();
+                    for (int i = 1; i <= levelLinks[0]; i++) {
+                        levelLinks[i] = in.readInt();
+                    }
+                    index.links[node][l] = levelLinks;
+                }
+                if (index.deleted[node]) {
+                    index.deletedCount++;
+                } else {
+                    index.labelToNode.put(index.labels[node], node);
+                }
+            }
+            return index;
+        }
+    }
+}
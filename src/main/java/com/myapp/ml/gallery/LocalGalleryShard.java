@@ -0,0 +1,146 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.config.RecognitionConfig;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Gallery held in this process
+ * Stage 1 costs one dot product per student against the centroid
+ * (equals the average similarity over that student's embeddings), either
+ * as an exact scan or through the configured candidate search. Stage 2
+ * re-ranks the top candidates against their individual embeddings. With a
+ * course, the course partition is searched first and the global gallery
+ * only when no partition match clears the threshold. Queries of a model
+ * the gallery does not serve (e.g. right after a cut-over) are not scored.
+ */
+public class LocalGalleryShard implements GalleryShard {
+    private final EmbeddingGallery gallery;
+    private final CandidateSearch candidateSearch;
+    private final String name;
+    private final double threshold;
+
+    public LocalGalleryShard(EmbeddingGallery gallery, CandidateSearch candidateSearch, String name) {
+        this.gallery = gallery;
+        this.candidateSearch = candidateSearch;
+        this.name = name;
+        this.threshold = RecognitionConfig.getRecognitionThreshold();
+    }
+
+    @Override
+    public ShardMatches search(float[] query, String model, Integer courseId, int k) throws SQLException {
+        String served = gallery.getModelTag();
+        EmbeddingGallery.Snapshot snapshot = gallery.getSnapshot();
+        if (!servesModel(served, model) || snapshot.isEmpty()) {
+            return ShardMatches.empty(gallery.getModelTag());
+        }
+
+        List<GalleryMatch> course = searchCourse(snapshot, query, courseId, k);
+        if (clearsThreshold(course)) {
+            return new ShardMatches(course, null, model);
+        }
+        List<GalleryMatch> global = candidateSearch.search(snapshot, query, candidateCount(k));
+        return new ShardMatches(course, rerank(snapshot, query, global, k), model);
+    }
+
+    /**
+     * Same selection as {@link #search} for several queries; the queries
+     * that need the global gallery are scored together in one batch pass
+     */
+    @Override
+    public List<ShardMatches> searchBatch(float[][] queries, String model, Integer courseId, int k)
+            throws SQLException {
+        String served = gallery.getModelTag();
+        EmbeddingGallery.Snapshot snapshot = gallery.getSnapshot();
+        if (!servesModel(served, model)) {
+            return new ArrayList<>(Collections.nCopies(queries.length, ShardMatches.empty(gallery.getModelTag())));
+        }
+        List<ShardMatches> results = new ArrayList<>(Collections.nCopies(queries.length, ShardMatches.empty(model)));
+        if (snapshot.isEmpty()) {
+            return results;
+        }
+
+        List<Integer> fallback = new ArrayList<>();
+        List<List<GalleryMatch>> fallbackCourse = new ArrayList<>();
+        for (int i = 0; i < queries.length; i++) {
+            if (queries[i] == null) {
+                continue;
+            }
+            List<GalleryMatch> course = searchCourse(snapshot, queries[i], courseId, k);
+            if (clearsThreshold(course)) {
+                results.set(i, new ShardMatches(course, null, model));
+            } else {
+                fallback.add(i);
+                fallbackCourse.add(course);
+            }
+        }
+        if (fallback.isEmpty()) {
+            return results;
+        }
+
+        float[][] globalQueries = new float[fallback.size()][];
+        for (int j = 0; j < fallback.size(); j++) {
+            globalQueries[j] = queries[fallback.get(j)];
+        }
+        List<List<GalleryMatch>> global = candidateSearch.searchBatch(snapshot, globalQueries, candidateCount(k));
+        for (int j = 0; j < fallback.size(); j++) {
+            results.set(fallback.get(j), new ShardMatches(fallbackCourse.get(j),
+                rerank(snapshot, globalQueries[j], global.get(j), k), model));
+        }
+        return results;
+    }
+
+    public EmbeddingGallery getGallery() {
+        return gallery;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public void close() {
+        candidateSearch.close();
+    }
+
+    /**
+     * Whether a snapshot read after the served tag holds the query model's
+     * embeddings (the tag is written before the snapshot on a cut-over, so
+     * an unchanged tag means the snapshot is of that model)
+     */
+    private boolean servesModel(String served, String model) {
+        return served.equals(model) && served.equals(gallery.getModelTag());
+    }
+
+    /**
+     * Best k matches inside the course partition (empty without a course)
+     */
+    private List<GalleryMatch> searchCourse(EmbeddingGallery.Snapshot snapshot, float[] query,
+                                            Integer courseId, int k) {
+        if (courseId == null || snapshot.getCourseStudentCount(courseId) == 0) {
+            return Collections.emptyList();
+        }
+        return rerank(snapshot, query, snapshot.searchCourse(courseId, query, candidateCount(k)), k);
+    }
+
+    private boolean clearsThreshold(List<GalleryMatch> course) {
+        return !course.isEmpty() && course.get(0).getScore() >= threshold;
+    }
+
+    private static int candidateCount(int k) {
+        return RecognitionConfig.isRerankEnabled() ? Math.max(k, RecognitionConfig.getRerankTopK()) : k;
+    }
+
+    private static List<GalleryMatch> rerank(EmbeddingGallery.Snapshot snapshot, float[] query,
+                                             List<GalleryMatch> candidates, int k) {
+        return RecognitionConfig.isRerankEnabled() ? snapshot.rerank(query, candidates, k) : limit(candidates, k);
+    }
+
+    private static List<GalleryMatch> limit(List<GalleryMatch> matches, int k) {
+        return matches.size() <= k ? matches : matches.subList(0, k);
+    }
+}
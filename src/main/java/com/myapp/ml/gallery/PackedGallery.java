@@ -0,0 +1,84 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.ml.VectorMath;
+
+/**
+ * Contiguous row-major matrix of embeddings with a parallel array of
+ * student ids (row i belongs to studentIds[i])
+ * Immutable once built; scoring walks one flat float[] without pointer chasing.
+ */
+public class PackedGallery {
+    private final int dimension;
+    private final int size;
+    private final float[] vectors;
+    private final int[] studentIds;
+
+    public PackedGallery(int dimension, float[] vectors, int[] studentIds) {
+        if (vectors.length != studentIds.length * dimension) {
+            throw new IllegalArgumentException("Vector buffer does not match " +
+                                               studentIds.length + " x " + dimension);
+        }
+        this.dimension = dimension;
+        this.size = studentIds.length;
+        this.vectors = vectors;
+        this.studentIds = studentIds;
+    }
+
+    public int getDimension() { return dimension; }
+    public int size() { return size; }
+    public int studentIdAt(int row) { return studentIds[row]; }
+
+    /**
+     * Backing buffer (row-major, size x dimension); callers must not modify it
+     */
+    float[] vectors() { return vectors; }
+
+    /**
+     * Student id column; callers must not modify it
+     */
+    int[] studentIds() { return studentIds; }
+
+    /**
+     * Dot product of one row with the query
+     */
+    public float dot(int row, float[] query) {
+        return VectorMath.dot(vectors, row * dimension, query, 0, dimension);
+    }
+
+    /**
+     * Copy a row out as a standalone vector
+     */
+    public float[] rowCopy(int row) {
+        float[] copy = new float[dimension];
+        System.arraycopy(vectors, row * dimension, copy, 0, dimension);
+        return copy;
+    }
+
+    /**
+     * Content hash of one row, used to tell whether a derived index is stale
+     */
+    public long rowStamp(int row) {
+        long hash = 1125899906842597L;
+        int offset = row * dimension;
+        for (int i = 0; i < dimension; i++) {
+            hash = 31 * hash + Float.floatToIntBits(vectors[offset + i]);
+        }
+        return hash;
+    }
+
+    /**
+     * Score every row and keep the best rows in topK (ids are student ids)
+     */
+    public void score(float[] query, TopK topK) {
+        score(query, 0, size, topK);
+    }
+
+    /**
+     * Score rows [fromRow, toRow) into topK
+     */
+    public void score(float[] query, int fromRow, int toRow, TopK topK) {
+        for (int row = fromRow; row < toRow; row++) {
+            topK.offer(studentIds[row], VectorMath.dot(vectors, row * dimension, query, 0, dimension));
+        }
+    }
+}
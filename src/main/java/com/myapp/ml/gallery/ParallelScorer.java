@@ -0,0 +1,167 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.config.RecognitionConfig;
+import com.myapp.ml.VectorMath;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Fork/join scan of a packed gallery for large galleries
+ * The row range is split into cache-sized chunks; each worker keeps its own
+ * top-k and the partial results are merged on the way back up. Ranges below
+ * the configured row threshold are scanned on the calling thread, so small
+ * galleries do not pay the fork overhead.
+ */
+public final class ParallelScorer {
+    // Rows per leaf task: 512 rows x 128 floats = 256 KB, about one L2 cache
+    private static final int CHUNK_ROWS = 512;
+
+    private static volatile ForkJoinPool pool;
+
+    private ParallelScorer() {
+    }
+
+    /**
+     * Whether a scan over this many rows is split across workers
+     */
+    public static boolean isParallel(int rows) {
+        return RecognitionConfig.isParallelMatchingEnabled() &&
+               rows >= RecognitionConfig.getParallelThreshold() &&
+               rows > CHUNK_ROWS &&
+               getPool().getParallelism() > 1;
+    }
+
+    /**
+     * Best k rows in [fromRow, toRow) for one query
+     */
+    public static TopK topK(PackedGallery gallery, float[] query, int fromRow, int toRow, int k) {
+        if (!isParallel(toRow - fromRow)) {
+            TopK topK = new TopK(k);
+            gallery.score(query, fromRow, toRow, topK);
+            return topK;
+        }
+        return getPool().invoke(new ScanTask(gallery, query, fromRow, toRow, k));
+    }
+
+    /**
+     * Best k rows for each query; rows are split across workers, each
+     * running the cache-blocked batch kernel on its chunk
+     */
+    public static TopK[] topK(PackedGallery gallery, float[][] queries, int k) {
+        if (!isParallel(gallery.size())) {
+            return BatchScorer.topK(gallery, queries, k);
+        }
+        return getPool().invoke(new BatchTask(gallery, queries, 0, gallery.size(), k));
+    }
+
+    /**
+     * Run scans on the given pool instead of the configured one (tests)
+     */
+    static synchronized void setPool(ForkJoinPool forkJoinPool) {
+        pool = forkJoinPool;
+    }
+
+    /**
+     * Common pool, or a dedicated pool when recognition.parallel.threads is set
+     */
+    static ForkJoinPool getPool() {
+        ForkJoinPool current = pool;
+        if (current == null) {
+            synchronized (ParallelScorer.class) {
+                current = pool;
+                if (current == null) {
+                    int threads = RecognitionConfig.getParallelThreads();
+                    current = threads > 0 ? new ForkJoinPool(threads) : ForkJoinPool.commonPool();
+                    pool = current;
+                }
+            }
+        }
+        return current;
+    }
+
+    private static class ScanTask extends RecursiveTask<TopK> {
+        private static final long serialVersionUID = 1L;
+
+        private final PackedGallery gallery;
+        private final float[] query;
+        private final int fromRow;
+        private final int toRow;
+        private final int k;
+
+        ScanTask(PackedGallery gallery, float[] query, int fromRow, int toRow, int k) {
+            this.gallery = gallery;
+            this.query = query;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.k = k;
+        }
+
+        @Override
+        protected TopK compute() {
+            if (toRow - fromRow <= CHUNK_ROWS) {
+                return scanChunk();
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            ScanTask left = new ScanTask(gallery, query, fromRow, middle, k);
+            left.fork();
+            TopK result = new ScanTask(gallery, query, middle, toRow, k).compute();
+            result.merge(left.join());
+            return result;
+        }
+
+        private TopK scanChunk() {
+            TopK topK = new TopK(k);
+            float[] scores = new float[toRow - fromRow];
+            VectorMath.dotRows(gallery.vectors(), gallery.getDimension(), fromRow, toRow, query, scores);
+            int[] studentIds = gallery.studentIds();
+            double threshold = topK.threshold();
+            for (int row = fromRow; row < toRow; row++) {
+                float score = scores[row - fromRow];
+                if (score > threshold && topK.offer(studentIds[row], score)) {
+                    threshold = topK.threshold();
+                }
+            }
+            return topK;
+        }
+    }
+
+    private static class BatchTask extends RecursiveTask<TopK[]> {
+        private static final long serialVersionUID = 1L;
+
+        private final PackedGallery gallery;
+        private final float[][] queries;
+        private final int fromRow;
+        private final int toRow;
+        private final int k;
+
+        BatchTask(PackedGallery gallery, float[][] queries, int fromRow, int toRow, int k) {
+            this.gallery = gallery;
+            this.queries = queries;
+            this.fromRow = fromRow;
+            this.toRow = toRow;
+            this.k = k;
+        }
+
+        @Override
+        protected TopK[] compute() {
+            if (toRow - fromRow <= CHUNK_ROWS) {
+                TopK[] results = new TopK[queries.length];
+                for (int q = 0; q < queries.length; q++) {
+                    results[q] = new TopK(Math.max(1, k));
+                }
+                BatchScorer.scoreInto(gallery, queries, fromRow, toRow, results);
+                return results;
+            }
+            int middle = (fromRow + toRow) >>> 1;
+            BatchTask left = new BatchTask(gallery, queries, fromRow, middle, k);
+            left.fork();
+            TopK[] results = new BatchTask(gallery, queries, middle, toRow, k).compute();
+            TopK[] leftResults = left.join();
+            for (int q = 0; q < results.length; q++) {
+                results[q].merge(leftResults[q]);
+            }
+            return results;
+        }
+    }
+}
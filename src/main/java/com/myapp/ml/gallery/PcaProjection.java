@@ -0,0 +1,220 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.ml.VectorMath;
+import org.apache.commons.math3.linear.MatrixUtils;
+import org.apache.commons.math3.linear.RealMatrix;
+import org.apache.commons.math3.linear.SingularValueDecomposition;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+/**
+ * Learned linear projection of embeddings onto their top principal
+ * components, used to scan the centroids in fewer dimensions
+ *
+ * A gallery vector c is mapped to [P(c - mean), mean . c] and a query q to
+ * [P(q - mean), 1]. Their dot product equals P(q - mean) . P(c - mean) + mean . c,
+ * which differs from q . c only by the projection error of the centered
+ * part plus a per-query constant, so candidate ranking is preserved while
+ * each row costs components + 1 floats instead of the full dimension.
+ */
+public class PcaProjection {
+    // Centroids used for fitting at most (sampled above this)
+    private static final int MAX_FIT_SAMPLES = 20000;
+    private static final long SAMPLE_SEED = 42L;
+
+    private final int version;
+    private final int dimension;
+    private final int components;
+    private final int fittedOn;
+    private final float[] mean;
+    // Principal axes, row-major (components x dimension)
+    private final float[] axes;
+
+    PcaProjection(int version, int dimension, int components, int fittedOn, float[] mean, float[] axes) {
+        this.version = version;
+        this.dimension = dimension;
+        this.components = components;
+        this.fittedOn = fittedOn;
+        this.mean = mean;
+        this.axes = axes;
+    }
+
+    /**
+     * Fit on count packed rows (row-major, count x dimension)
+     */
+    public static PcaProjection fit(float[] rows, int count, int dimension, int components, int version) {
+        components = Math.max(1, Math.min(components, dimension));
+        int[] sample = sampleRows(count);
+
+        double[] mean = new double[dimension];
+        for (int row : sample) {
+            for (int i = 0; i < dimension; i++) {
+                mean[i] += rows[row * dimension + i];
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            mean[i] /= sample.length;
+        }
+
+        // Covariance (upper triangle, mirrored)
+        double[][] covariance = new double[dimension][dimension];
+        double[] centered = new double[dimension];
+        for (int row : sample) {
+            for (int i = 0; i < dimension; i++) {
+                centered[i] = rows[row * dimension + i] - mean[i];
+            }
+            for (int i = 0; i < dimension; i++) {
+                double value = centered[i];
+                double[] line = covariance[i];
+                for (int j = i; j < dimension; j++) {
+                    line[j] += value * centered[j];
+                }
+            }
+        }
+        for (int i = 0; i < dimension; i++) {
+            for (int j = i; j < dimension; j++) {
+                covariance[i][j] /= Math.max(1, sample.length - 1);
+                covariance[j][i] = covariance[i][j];
+            }
+        }
+
+        // The covariance is symmetric positive semi-definite, so its singular
+        // vectors are the principal axes and the singular values (sorted
+        // descending) are the variances; unlike EigenDecomposition the SVD
+        // also converges when the centroids span only a low-rank subspace
+        SingularValueDecomposition svd =
+            new SingularValueDecomposition(MatrixUtils.createRealMatrix(covariance));
+        double[] variances = svd.getSingularValues();
+        RealMatrix basis = svd.getU();
+
+        float[] axes = new float[components * dimension];
+        double kept = 0;
+        double total = 0;
+        for (double variance : variances) {
+            total += variance;
+        }
+        for (int c = 0; c < components; c++) {
+            for (int i = 0; i < dimension; i++) {
+                axes[c * dimension + i] = (float) basis.getEntry(i, c);
+            }
+            kept += variances[c];
+        }
+
+        float[] meanVector = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            meanVector[i] = (float) mean[i];
+        }
+        System.out.println(String.format("✓ PCA projection v%d fitted on %d vectors: %d -> %d dims " +
+                                         "(%.1f%% of variance kept)", version, count, dimension,
+                                         components, total > 0 ? kept * 100 / total : 100.0));
+        return new PcaProjection(version, dimension, components, count, meanVector, axes);
+    }
+
+    public int getVersion() { return version; }
+    public int getDimension() { return dimension; }
+    public int getComponents() { return components; }
+
+    /**
+     * Width of a projected row (components plus the mean term)
+     */
+    public int getProjectedDimension() { return components + 1; }
+
+    /**
+     * Number of vectors the projection was fitted on
+     */
+    public int getFittedOn() { return fittedOn; }
+
+    /**
+     * Project a query (the mean column is 1)
+     */
+    public float[] projectQuery(float[] query) {
+        float[] centered = new float[dimension];
+        center(query, 0, centered);
+        float[] projected = new float[components + 1];
+        VectorMath.dotRows(axes, dimension, 0, components, centered, projected);
+        projected[components] = 1.0f;
+        return projected;
+    }
+
+    /**
+     * Project a packed matrix (rows x dimension) into rows x (components + 1)
+     */
+    float[] projectRows(float[] rows, int count) {
+        float[] projected = new float[count * (components + 1)];
+        float[] centered = new float[dimension];
+        float[] scratch = new float[components];
+        for (int row = 0; row < count; row++) {
+            projectRow(rows, row * dimension, projected, row * (components + 1), centered, scratch);
+        }
+        return projected;
+    }
+
+    /**
+     * Project one gallery vector src[srcOffset..) into dst[dstOffset..dstOffset+components+1)
+     */
+    void projectRow(float[] src, int srcOffset, float[] dst, int dstOffset, float[] centered, float[] scratch) {
+        center(src, srcOffset, centered);
+        VectorMath.dotRows(axes, dimension, 0, components, centered, scratch);
+        System.arraycopy(scratch, 0, dst, dstOffset, components);
+        dst[dstOffset + components] = VectorMath.dot(mean, 0, src, srcOffset, dimension);
+    }
+
+    static PcaProjection read(ByteBuffer in) {
+        int version = in.getInt();
+        int dimension = in.getInt();
+        int components = in.getInt();
+        int fittedOn = in.getInt();
+        float[] mean = new float[dimension];
+        float[] axes = new float[components * dimension];
+        in.asFloatBuffer().get(mean).get(axes);
+        in.position(in.position() + (mean.length + axes.length) * Float.BYTES);
+        return new PcaProjection(version, dimension, components, fittedOn, mean, axes);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(version);
+        out.writeInt(dimension);
+        out.writeInt(components);
+        out.writeInt(fittedOn);
+        for (float value : mean) {
+            out.writeFloat(value);
+        }
+        for (float value : axes) {
+            out.writeFloat(value);
+        }
+    }
+
+    private void center(float[] src, int offset, float[] centered) {
+        for (int i = 0; i < dimension; i++) {
+            centered[i] = src[offset + i] - mean[i];
+        }
+    }
+
+    private static int[] sampleRows(int count) {
+        int size = Math.min(count, MAX_FIT_SAMPLES);
+        int[] sample = new int[size];
+        if (size == count) {
+            for (int i = 0; i < count; i++) {
+                sample[i] = i;
+            }
+            return sample;
+        }
+        // Partial Fisher-Yates over the row indices
+        int[] indices = new int[count];
+        for (int i = 0; i < count; i++) {
+            indices[i] = i;
+        }
+        Random random = new Random(SAMPLE_SEED);
+        for (int i = 0; i < size; i++) {
+            int j = i + random.nextInt(count - i);
+            int swap = indices[i];
+            indices[i] = indices[j];
+            indices[j] = swap;
+            sample[i] = indices[i];
+        }
+        return sample;
+    }
+}
@@ -0,0 +1,184 @@
+package com.myapp.ml.gallery;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * Product quantization: the vector is split into M subspaces and each
+ * sub-vector is replaced by the index of its nearest of 256 trained
+ * codewords (one byte per subspace, e.g. 32 bytes instead of 512).
+ * Queries are scored with asymmetric distance tables: dot(query_m, codeword)
+ * is precomputed for every subspace/codeword once, so scoring a code is M
+ * table lookups.
+ */
+public class ProductQuantizer implements EmbeddingQuantizer {
+    private static final int CODEWORDS = 256;
+    private static final int TRAINING_SAMPLE = 10000;
+    private static final int KMEANS_ITERATIONS = 8;
+
+    private final int dimension;
+    private final int subspaces;
+    private final int subDimension;
+    // [subspace][codeword * subDimension + i]
+    private final float[][] codebooks;
+
+    ProductQuantizer(int dimension, float[][] codebooks) {
+        this.dimension = dimension;
+        this.subspaces = codebooks.length;
+        this.subDimension = dimension / subspaces;
+        this.codebooks = codebooks;
+    }
+
+    /**
+     * Train one k-means codebook per subspace on (a sample of) count packed rows
+     * The subspace count is the largest divisor of the dimension not above
+     * the requested one.
+     */
+    public static ProductQuantizer train(float[] rows, int count, int dimension, int requestedSubspaces) {
+        int subspaces = Math.max(1, Math.min(requestedSubspaces, dimension));
+        while (dimension % subspaces != 0) {
+            subspaces--;
+        }
+        int subDimension = dimension / subspaces;
+
+        Random random = new Random(42);
+        int sampleSize = Math.min(count, TRAINING_SAMPLE);
+        int[] sample = new int[sampleSize];
+        for (int i = 0; i < sampleSize; i++) {
+            sample[i] = sampleSize == count ? i : random.nextInt(count);
+        }
+
+        float[][] codebooks = new float[subspaces][];
+        for (int m = 0; m < subspaces; m++) {
+            codebooks[m] = kMeans(rows, dimension, sample, m * subDimension, subDimension, random);
+        }
+        return new ProductQuantizer(dimension, codebooks);
+    }
+
+    private static float[] kMeans(float[] rows, int dimension, int[] sample, int offset,
+                                  int subDimension, Random random) {
+        float[] centers = new float[CODEWORDS * subDimension];
+        for (int c = 0; c < CODEWORDS; c++) {
+            int row = sample[random.nextInt(sample.length)];
+            System.arraycopy(rows, row * dimension + offset, centers, c * subDimension, subDimension);
+        }
+
+        int[] assignment = new int[sample.length];
+        double[] sums = new double[CODEWORDS * subDimension];
+        int[] counts = new int[CODEWORDS];
+        for (int iteration = 0; iteration < KMEANS_ITERATIONS; iteration++) {
+            for (int s = 0; s < sample.length; s++) {
+                assignment[s] = nearest(centers, subDimension, rows, sample[s] * dimension + offset);
+            }
+
+            Arrays.fill(sums, 0.0);
+            Arrays.fill(counts, 0);
+            for (int s = 0; s < sample.length; s++) {
+                int c = assignment[s];
+                int base = sample[s] * dimension + offset;
+                for (int i = 0; i < subDimension; i++) {
+                    sums[c * subDimension + i] += rows[base + i];
+                }
+                counts[c]++;
+            }
+            for (int c = 0; c < CODEWORDS; c++) {
+                if (counts[c] == 0) {
+                    // Reseed empty clusters on a random training vector
+                    int row = sample[random.nextInt(sample.length)];
+                    System.arraycopy(rows, row * dimension + offset, centers, c * subDimension, subDimension);
+                    continue;
+                }
+                for (int i = 0; i < subDimension; i++) {
+                    centers[c * subDimension + i] = (float) (sums[c * subDimension + i] / counts[c]);
+                }
+            }
+        }
+        return centers;
+    }
+
+    private static int nearest(float[] centers, int subDimension, float[] src, int srcOffset) {
+        int best = 0;
+        float bestDistance = Float.MAX_VALUE;
+        for (int c = 0; c < CODEWORDS; c++) {
+            float distance = 0f;
+            int base = c * subDimension;
+            for (int i = 0; i < subDimension; i++) {
+                float diff = src[srcOffset + i] - centers[base + i];
+                distance += diff * diff;
+            }
+            if (distance < bestDistance) {
+                bestDistance = distance;
+                best = c;
+            }
+        }
+        return best;
+    }
+
+    static ProductQuantizer read(ByteBuffer in) {
+        int dimension = in.getInt();
+        int subspaces = in.getInt();
+        float[][] codebooks = new float[subspaces][CODEWORDS * (dimension / subspaces)];
+        for (float[] codebook : codebooks) {
+            in.asFloatBuffer().get(codebook);
+            in.position(in.position() + codebook.length * Float.BYTES);
+        }
+        return new ProductQuantizer(dimension, codebooks);
+    }
+
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(dimension);
+        out.writeInt(subspaces);
+        for (float[] codebook : codebooks) {
+            for (float value : codebook) {
+                out.writeFloat(value);
+            }
+        }
+    }
+
+    @Override
+    public int getDimension() { return dimension; }
+
+    @Override
+    public int getCodeSize() { return subspaces; }
+
+    @Override
+    public String getName() { return "pq"; }
+
+    public int getSubspaces() { return subspaces; }
+
+    @Override
+    public void encode(float[] src, int srcOffset, byte[] dst, int dstOffset) {
+        for (int m = 0; m < subspaces; m++) {
+            dst[dstOffset + m] = (byte) nearest(codebooks[m], subDimension, src, srcOffset + m * subDimension);
+        }
+    }
+
+    @Override
+    public Scorer scorer(float[] query) {
+        // table[m * 256 + c] = dot(query_m, codeword_c)
+        float[] table = new float[subspaces * CODEWORDS];
+        for (int m = 0; m < subspaces; m++) {
+            float[] codebook = codebooks[m];
+            int queryOffset = m * subDimension;
+            for (int c = 0; c < CODEWORDS; c++) {
+                float dot = 0f;
+                int base = c * subDimension;
+                for (int i = 0; i < subDimension; i++) {
+                    dot += query[queryOffset + i] * codebook[base + i];
+                }
+                table[m * CODEWORDS + c] = dot;
+            }
+        }
+        return (codes, offset) -> {
+            float sum = 0f;
+            for (int m = 0; m < subspaces; m++) {
+                sum += table[m * CODEWORDS + (codes[offset + m] & 0xFF)];
+            }
+            return sum;
+        };
+    }
+}
@@ -0,0 +1,70 @@
+package com.myapp.ml.gallery;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recall and latency bookkeeping for an approximate candidate search
+ * that is run side by side with the exact scan (verification mode)
+ */
+class RecallMonitor {
+    private static final int REPORT_EVERY = 100;
+
+    private final String name;
+    private final AtomicLong queries = new AtomicLong();
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong expected = new AtomicLong();
+    private final AtomicLong topOneAgreements = new AtomicLong();
+    private final AtomicLong approximateNanos = new AtomicLong();
+    private final AtomicLong exactNanos = new AtomicLong();
+
+    RecallMonitor(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Compare one approximate result with the exact top-k
+     */
+    void record(List<GalleryMatch> exact, List<GalleryMatch> approximate, int k,
+                long approximateTime, long exactTime) {
+        Set<Integer> approximateIds = new HashSet<>();
+        for (GalleryMatch match : approximate) {
+            approximateIds.add(match.getStudentId());
+        }
+        int found = 0;
+        for (GalleryMatch match : exact) {
+            if (approximateIds.contains(match.getStudentId())) {
+                found++;
+            }
+        }
+
+        long count = queries.incrementAndGet();
+        hits.addAndGet(found);
+        expected.addAndGet(exact.size());
+        approximateNanos.addAndGet(approximateTime);
+        exactNanos.addAndGet(exactTime);
+        if (!exact.isEmpty() && !approximate.isEmpty() &&
+            exact.get(0).getStudentId() == approximate.get(0).getStudentId()) {
+            topOneAgreements.incrementAndGet();
+        } else if (!exact.isEmpty()) {
+            System.out.println("⚠ " + name + " top-1 mismatch: exact " + exact.get(0) +
+                             ", approximate " + (approximate.isEmpty() ? "none" : approximate.get(0)));
+        }
+        if (count % REPORT_EVERY == 0) {
+            System.out.println(String.format("%s verification: %d queries, recall@%d %.1f%%, " +
+                             "top-1 agreement %.1f%%, %.3f ms vs exact %.3f ms per query",
+                             name, count, k, getRecall() * 100, topOneAgreements.get() * 100.0 / count,
+                             approximateNanos.get() / 1e6 / count, exactNanos.get() / 1e6 / count));
+        }
+    }
+
+    /**
+     * Recall@k over all verified queries (NaN if none)
+     */
+    double getRecall() {
+        long total = expected.get();
+        return total == 0 ? Double.NaN : hits.get() / (double) total;
+    }
+}
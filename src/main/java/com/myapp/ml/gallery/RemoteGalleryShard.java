@@ -0,0 +1,124 @@
+package com.myapp.ml.gallery;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Client for a gallery shard served by another process (see ShardServer)
+ * Connections are kept open and reused; a connection that fails or times
+ * out is discarded and a fresh one is opened on the next request. A batch
+ * of queries goes out as one request.
+ */
+public class RemoteGalleryShard implements GalleryShard {
+    private final String host;
+    private final int port;
+    private final int timeoutMs;
+    private final ConcurrentLinkedQueue<Connection> idle = new ConcurrentLinkedQueue<>();
+
+    private static class Connection {
+        final Socket socket;
+        final DataInputStream in;
+        final DataOutputStream out;
+
+        Connection(Socket socket) throws IOException {
+            this.socket = socket;
+            this.in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+            this.out = new DataOutputStream(new BufferedOutputStream(socket.getOutputStream()));
+        }
+
+        void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // Already broken
+            }
+        }
+    }
+
+    public RemoteGalleryShard(String host, int port, int timeoutMs) {
+        this.host = host;
+        this.port = port;
+        this.timeoutMs = timeoutMs;
+    }
+
+    @Override
+    public ShardMatches search(float[] query, String model, Integer courseId, int k) throws IOException {
+        return request(new float[][] {query}, model, courseId, k).get(0);
+    }
+
+    @Override
+    public List<ShardMatches> searchBatch(float[][] queries, String model, Integer courseId, int k)
+            throws IOException {
+        List<ShardMatches> results = new ArrayList<>(Collections.nCopies(queries.length, ShardMatches.empty(model)));
+        List<Integer> sent = new ArrayList<>();
+        for (int i = 0; i < queries.length; i++) {
+            if (queries[i] != null) {
+                sent.add(i);
+            }
+        }
+        for (int from = 0; from < sent.size(); from += ShardProtocol.MAX_QUERIES) {
+            List<Integer> chunk = sent.subList(from, Math.min(sent.size(), from + ShardProtocol.MAX_QUERIES));
+            float[][] batch = new float[chunk.size()][];
+            for (int j = 0; j < batch.length; j++) {
+                batch[j] = queries[chunk.get(j)];
+            }
+            List<ShardMatches> answers = request(batch, model, courseId, k);
+            for (int j = 0; j < batch.length; j++) {
+                results.set(chunk.get(j), answers.get(j));
+            }
+        }
+        return results;
+    }
+
+    private List<ShardMatches> request(float[][] queries, String model, Integer courseId, int k)
+            throws IOException {
+        Connection connection = idle.poll();
+        if (connection == null) {
+            connection = connect();
+        }
+        try {
+            ShardProtocol.writeRequest(connection.out, queries, model, courseId, k);
+            List<ShardMatches> answers = ShardProtocol.readResponse(connection.in, queries.length);
+            idle.offer(connection);
+            return answers;
+        } catch (IOException e) {
+            connection.close();
+            throw e;
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Socket socket = new Socket();
+        try {
+            socket.connect(new InetSocketAddress(host, port), timeoutMs);
+            socket.setSoTimeout(timeoutMs);
+            socket.setTcpNoDelay(true);
+            return new Connection(socket);
+        } catch (IOException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    @Override
+    public String getName() {
+        return host + ":" + port;
+    }
+
+    @Override
+    public void close() {
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+}
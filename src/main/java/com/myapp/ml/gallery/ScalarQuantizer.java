@@ -0,0 +1,106 @@
+package com.myapp.ml.gallery;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Per-dimension int8 scalar quantization (4x smaller than float32)
+ * Each dimension is mapped linearly from its trained [min, max] range onto
+ * 256 levels. A query is scored as bias + sum(weight_i * code_i), with the
+ * weights and bias folded from the query once per search.
+ */
+public class ScalarQuantizer implements EmbeddingQuantizer {
+    private static final int LEVELS = 255;
+
+    private final int dimension;
+    private final float[] min;
+    private final float[] step;
+
+    ScalarQuantizer(float[] min, float[] step) {
+        this.dimension = min.length;
+        this.min = min;
+        this.step = step;
+    }
+
+    /**
+     * Fit the per-dimension ranges on count packed rows
+     */
+    public static ScalarQuantizer train(float[] rows, int count, int dimension) {
+        float[] min = new float[dimension];
+        float[] max = new float[dimension];
+        Arrays.fill(min, Float.POSITIVE_INFINITY);
+        Arrays.fill(max, Float.NEGATIVE_INFINITY);
+        for (int row = 0; row < count; row++) {
+            for (int i = 0; i < dimension; i++) {
+                float value = rows[row * dimension + i];
+                if (value < min[i]) min[i] = value;
+                if (value > max[i]) max[i] = value;
+            }
+        }
+        float[] step = new float[dimension];
+        for (int i = 0; i < dimension; i++) {
+            float range = max[i] - min[i];
+            step[i] = range > 0 ? range / LEVELS : 1e-9f;
+        }
+        return new ScalarQuantizer(min, step);
+    }
+
+    static ScalarQuantizer read(ByteBuffer in) {
+        int dimension = in.getInt();
+        float[] min = new float[dimension];
+        float[] step = new float[dimension];
+        in.asFloatBuffer().get(min).get(step);
+        in.position(in.position() + 2 * dimension * Float.BYTES);
+        return new ScalarQuantizer(min, step);
+    }
+
+    @Override
+    public void write(DataOutputStream out) throws IOException {
+        out.writeInt(dimension);
+        for (float value : min) {
+            out.writeFloat(value);
+        }
+        for (float value : step) {
+            out.writeFloat(value);
+        }
+    }
+
+    @Override
+    public int getDimension() { return dimension; }
+
+    @Override
+    public int getCodeSize() { return dimension; }
+
+    @Override
+    public String getName() { return "int8"; }
+
+    @Override
+    public void encode(float[] src, int srcOffset, byte[] dst, int dstOffset) {
+        for (int i = 0; i < dimension; i++) {
+            int level = Math.round((src[srcOffset + i] - min[i]) / step[i]);
+            level = Math.max(0, Math.min(LEVELS, level));
+            dst[dstOffset + i] = (byte) (level - 128);
+        }
+    }
+
+    @Override
+    public Scorer scorer(float[] query) {
+        // x_i ~= min_i + step_i * (code_i + 128)
+        float[] weights = new float[dimension];
+        float bias = 0f;
+        for (int i = 0; i < dimension; i++) {
+            weights[i] = query[i] * step[i];
+            bias += query[i] * (min[i] + 128 * step[i]);
+        }
+        final float queryBias = bias;
+        return (codes, offset) -> {
+            float sum = queryBias;
+            for (int i = 0; i < dimension; i++) {
+                sum += weights[i] * codes[offset + i];
+            }
+            return sum;
+        };
+    }
+}
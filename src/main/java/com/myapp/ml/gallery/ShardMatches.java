@@ -0,0 +1,51 @@
+package com.myapp.ml.gallery;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Answer of one gallery (or the merged answer of all shards) for one query:
+ * the best matches inside the course partition, and the best matches of
+ * the whole gallery. The global search is skipped (null) when a course
+ * match already clears the recognition threshold. The answer is tagged
+ * with the embedding model of the gallery that scored it; scores are only
+ * meaningful for queries of that model.
+ */
+public class ShardMatches {
+    private final List<GalleryMatch> courseMatches;
+    private final List<GalleryMatch> globalMatches;
+    private final String modelTag;
+
+    public ShardMatches(List<GalleryMatch> courseMatches, List<GalleryMatch> globalMatches, String modelTag) {
+        this.courseMatches = courseMatches != null ? courseMatches : Collections.emptyList();
+        this.globalMatches = globalMatches;
+        this.modelTag = modelTag;
+    }
+
+    public static ShardMatches empty(String modelTag) {
+        return new ShardMatches(Collections.emptyList(), Collections.emptyList(), modelTag);
+    }
+
+    public List<GalleryMatch> getCourseMatches() { return courseMatches; }
+
+    /**
+     * Whole-gallery matches, or null if the global search was skipped
+     */
+    public List<GalleryMatch> getGlobalMatches() { return globalMatches; }
+
+    /**
+     * Model whose gallery produced the scores (null if it changed mid-search)
+     */
+    public String getModelTag() { return modelTag; }
+
+    /**
+     * Course matches when the best of them clears the threshold,
+     * otherwise the global matches
+     */
+    public List<GalleryMatch> select(double threshold) {
+        if (!courseMatches.isEmpty() && courseMatches.get(0).getScore() >= threshold) {
+            return courseMatches;
+        }
+        return globalMatches != null ? globalMatches : courseMatches;
+    }
+}
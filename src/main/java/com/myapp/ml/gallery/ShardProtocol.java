@@ -0,0 +1,146 @@
+package com.myapp.ml.gallery;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Wire format between RemoteGalleryShard and ShardServer
+ * Request:  query model tag, courseId (-1 = none), k, query count,
+ *           dimension, query floats (count x dimension)
+ * Response: status (0 = ok, 1 = error + message), tag of the model the
+ *           shard serves, then per query: course matches, global match
+ *           count (-1 = skipped) + global matches;
+ *           each match is (studentId int, score double)
+ * A frame's queries travel in one request, so a shard costs one round
+ * trip per frame rather than one per face.
+ */
+final class ShardProtocol {
+    static final int NO_COURSE = -1;
+    static final int STATUS_OK = 0;
+    static final int STATUS_ERROR = 1;
+    static final int MAX_QUERIES = 256;
+    private static final int MAX_DIMENSION = 4096;
+    private static final int MAX_K = 1000;
+
+    private ShardProtocol() {
+    }
+
+    /**
+     * Send 1..MAX_QUERIES queries of equal dimension
+     */
+    static void writeRequest(DataOutputStream out, float[][] queries, String model, Integer courseId, int k)
+            throws IOException {
+        out.writeUTF(model);
+        out.writeInt(courseId != null ? courseId : NO_COURSE);
+        out.writeInt(k);
+        out.writeInt(queries.length);
+        out.writeInt(queries[0].length);
+        for (float[] query : queries) {
+            for (float value : query) {
+                out.writeFloat(value);
+            }
+        }
+        out.flush();
+    }
+
+    /**
+     * Answer a request with one ShardMatches per query (all scored by the
+     * same gallery, so the first answer's tag stands for all of them)
+     */
+    static void writeResponse(DataOutputStream out, List<ShardMatches> answers) throws IOException {
+        String modelTag = answers.get(0).getModelTag();
+        out.writeInt(STATUS_OK);
+        out.writeUTF(modelTag != null ? modelTag : "");
+        for (ShardMatches matches : answers) {
+            writeMatches(out, matches.getCourseMatches());
+            if (matches.getGlobalMatches() == null) {
+                out.writeInt(-1);
+            } else {
+                writeMatches(out, matches.getGlobalMatches());
+            }
+        }
+        out.flush();
+    }
+
+    static void writeError(DataOutputStream out, String message) throws IOException {
+        out.writeInt(STATUS_ERROR);
+        out.writeUTF(message != null ? message : "error");
+        out.flush();
+    }
+
+    /**
+     * Read the answers to a request of count queries
+     */
+    static List<ShardMatches> readResponse(DataInputStream in, int count) throws IOException {
+        if (in.readInt() != STATUS_OK) {
+            throw new IOException("Shard error: " + in.readUTF());
+        }
+        String modelTag = in.readUTF();
+        List<ShardMatches> answers = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            List<GalleryMatch> course = readMatches(in, in.readInt());
+            int globalCount = in.readInt();
+            answers.add(new ShardMatches(course, globalCount < 0 ? null : readMatches(in, globalCount),
+                                         modelTag.isEmpty() ? null : modelTag));
+        }
+        return answers;
+    }
+
+    /**
+     * Validated request fields as read by the server
+     */
+    static class Request {
+        final float[][] queries;
+        final String model;
+        final Integer courseId;
+        final int k;
+
+        Request(float[][] queries, String model, Integer courseId, int k) {
+            this.queries = queries;
+            this.model = model;
+            this.courseId = courseId;
+            this.k = k;
+        }
+    }
+
+    static Request readRequest(DataInputStream in) throws IOException {
+        String model = in.readUTF();
+        int courseId = in.readInt();
+        int k = in.readInt();
+        int count = in.readInt();
+        int dimension = in.readInt();
+        if (k < 1 || k > MAX_K || count < 1 || count > MAX_QUERIES ||
+            dimension < 1 || dimension > MAX_DIMENSION) {
+            throw new IOException("Malformed shard request");
+        }
+        float[][] queries = new float[count][dimension];
+        for (float[] query : queries) {
+            for (int i = 0; i < dimension; i++) {
+                query[i] = in.readFloat();
+            }
+        }
+        return new Request(queries, model, courseId == NO_COURSE ? null : courseId, k);
+    }
+
+    private static void writeMatches(DataOutputStream out, List<GalleryMatch> matches) throws IOException {
+        out.writeInt(matches.size());
+        for (GalleryMatch match : matches) {
+            out.writeInt(match.getStudentId());
+            out.writeDouble(match.getScore());
+        }
+    }
+
+    private static List<GalleryMatch> readMatches(DataInputStream in, int count) throws IOException {
+        if (count > MAX_K) {
+            throw new IOException("Malformed shard response");
+        }
+        List<GalleryMatch> matches = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            matches.add(new GalleryMatch(in.readInt(), in.readDouble()));
+        }
+        return matches;
+    }
+}
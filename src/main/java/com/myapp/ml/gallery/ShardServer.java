@@ -0,0 +1,124 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.config.RecognitionConfig;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Matcher process serving one student_id partition of the gallery
+ * Usage: ShardServer <port> <partition> <partitions> [bindAddress]
+ * The recognizer reaches it through a host:port entry in recognition.shards.
+ */
+public class ShardServer {
+    private final LocalGalleryShard shard;
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "ShardServerWorker");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private volatile boolean running = true;
+
+    public ShardServer(LocalGalleryShard shard, int port, InetAddress bindAddress) throws IOException {
+        this.shard = shard;
+        this.serverSocket = new ServerSocket(port, 50, bindAddress);
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    /**
+     * Accept connections until stopped; each connection gets its own worker
+     */
+    public void serve() {
+        while (running) {
+            try {
+                Socket socket = serverSocket.accept();
+                socket.setTcpNoDelay(true);
+                workers.submit(() -> handle(socket));
+            } catch (IOException e) {
+                if (running) {
+                    System.err.println("⚠ Shard accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    /**
+     * Answer requests on one connection until the client hangs up
+     */
+    private void handle(Socket socket) {
+        try (Socket client = socket;
+             DataInputStream in = new DataInputStream(new BufferedInputStream(client.getInputStream()));
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(client.getOutputStream()))) {
+            while (running) {
+                ShardProtocol.Request request;
+                try {
+                    request = ShardProtocol.readRequest(in);
+                } catch (EOFException e) {
+                    return;
+                }
+                try {
+                    ShardProtocol.writeResponse(out, shard.searchBatch(request.queries, request.model,
+                                                                       request.courseId, request.k));
+                } catch (Exception e) {
+                    ShardProtocol.writeError(out, e.getMessage());
+                }
+            }
+        } catch (IOException e) {
+            // Client went away or sent garbage; drop the connection
+        }
+    }
+
+    public void stop() {
+        running = false;
+        try {
+            serverSocket.close();
+        } catch (IOException e) {
+            // Ignore on shutdown
+        }
+        workers.shutdownNow();
+        shard.close();
+    }
+
+    public static void main(String[] args) {
+        if (args.length < 3) {
+            System.err.println("Usage: ShardServer <port> <partition> <partitions> [bindAddress]");
+            System.exit(1);
+        }
+        try {
+            int port = Integer.parseInt(args[0]);
+            int partition = Integer.parseInt(args[1]);
+            int partitions = Integer.parseInt(args[2]);
+            InetAddress bindAddress = InetAddress.getByName(args.length > 3 ? args[3] : "127.0.0.1");
+
+            EmbeddingGallery gallery = EmbeddingGallery.forPartition(partition, partitions);
+            LocalGalleryShard shard = new LocalGalleryShard(gallery,
+                CandidateSearch.create(RecognitionConfig.getMatcher(), partition, partitions),
+                "partition " + partition);
+            EmbeddingGallery.Snapshot snapshot = gallery.getSnapshot();
+
+            ShardServer server = new ShardServer(shard, port, bindAddress);
+            Runtime.getRuntime().addShutdownHook(new Thread(server::stop));
+            System.out.println("✓ Shard " + partition + "/" + partitions + " serving " +
+                             snapshot.getStudentCount() + " students on " +
+                             bindAddress.getHostAddress() + ":" + server.getPort());
+            server.serve();
+        } catch (Exception e) {
+            System.err.println("✗ Shard server failed: " + e.getMessage());
+            e.printStackTrace();
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,259 @@
+package com.myapp.ml.gallery;
+
+import com.myapp.config.RecognitionConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Scatter-gather matching over gallery shards partitioned by student_id
+ * A query is sent to every shard in parallel and the per-shard top-k
+ * lists are merged. Each round has a deadline: shards that do not answer
+ * in time or fail are left out of that result, and a failed shard is
+ * skipped for a back-off period, so a dead shard costs nothing instead of
+ * a timeout per query. Results are partial (never wrong-scored) while a
+ * shard is missing. A shard that still serves another embedding model
+ * (it switches on its next gallery sync after a cut-over) is treated as
+ * missing: its scores compare embeddings of different models.
+ */
+public class ShardedMatcher implements GalleryShard {
+    private final List<GalleryShard> shards;
+    private final long[] retryAt;
+    private final boolean[] down;
+    // Last model each shard answered with, to log a mismatch once
+    private final String[] servedModel;
+    // Shards whose answers were used by the last round (all at first)
+    private boolean[] answering;
+    private final int timeoutMs;
+    private final int retryMs;
+    private final ExecutorService executor;
+
+    public ShardedMatcher(List<GalleryShard> shards, int timeoutMs, int retryMs) {
+        this.shards = new ArrayList<>(shards);
+        this.retryAt = new long[shards.size()];
+        this.down = new boolean[shards.size()];
+        this.servedModel = new String[shards.size()];
+        this.answering = new boolean[shards.size()];
+        Arrays.fill(answering, true);
+        this.timeoutMs = timeoutMs;
+        this.retryMs = retryMs;
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "ShardFanOut");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Build the shard list from recognition.shards: "local" entries are
+     * in-process partitions, "host:port" entries are ShardServer processes;
+     * partition i of N is the i-th entry
+     */
+    public static ShardedMatcher fromConfig(String spec) {
+        String[] entries = spec.split(",");
+        int timeoutMs = RecognitionConfig.getShardTimeoutMs();
+        List<GalleryShard> shards = new ArrayList<>();
+        for (int i = 0; i < entries.length; i++) {
+            String entry = entries[i].trim();
+            if (entry.equalsIgnoreCase("local")) {
+                shards.add(new LocalGalleryShard(EmbeddingGallery.forPartition(i, entries.length),
+                    CandidateSearch.create(RecognitionConfig.getMatcher(), i, entries.length),
+                    "local partition " + i));
+            } else {
+                int colon = entry.lastIndexOf(':');
+                if (colon <= 0) {
+                    throw new IllegalArgumentException("Invalid shard address: " + entry);
+                }
+                shards.add(new RemoteGalleryShard(entry.substring(0, colon),
+                    Integer.parseInt(entry.substring(colon + 1)), timeoutMs));
+            }
+        }
+        System.out.println("✓ Sharded matching over " + shards.size() + " shard(s)");
+        return new ShardedMatcher(shards, timeoutMs, RecognitionConfig.getShardRetryMs());
+    }
+
+    @Override
+    public ShardMatches search(float[] query, String model, Integer courseId, int k) {
+        return searchBatch(new float[][] {query}, model, courseId, k).get(0);
+    }
+
+    /**
+     * Send all queries to every shard in one request per shard and merge
+     * the answers per query
+     */
+    @Override
+    public List<ShardMatches> searchBatch(float[][] queries, String model, Integer courseId, int k) {
+        // Shards that miss the deadline still read the queries afterwards,
+        // and callers reuse their query buffers
+        float[][] shardQueries = new float[queries.length][];
+        int first = -1;
+        for (int q = 0; q < queries.length; q++) {
+            if (queries[q] != null) {
+                shardQueries[q] = queries[q].clone();
+                first = first < 0 ? q : first;
+            }
+        }
+        List<ShardMatches> results = new ArrayList<>(queries.length);
+        if (first < 0) {
+            for (int q = 0; q < queries.length; q++) {
+                results.add(ShardMatches.empty(model));
+            }
+            return results;
+        }
+
+        long now = System.currentTimeMillis();
+        List<Future<List<ShardMatches>>> futures = new ArrayList<>(shards.size());
+        for (int i = 0; i < shards.size(); i++) {
+            if (isDown(i, now)) {
+                futures.add(null);
+                continue;
+            }
+            GalleryShard shard = shards.get(i);
+            futures.add(executor.submit(() -> shard.searchBatch(shardQueries, model, courseId, k)));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        TopK[] course = new TopK[queries.length];
+        TopK[] global = new TopK[queries.length];
+        boolean[] anyGlobal = new boolean[queries.length];
+        for (int q = 0; q < queries.length; q++) {
+            course[q] = new TopK(Math.max(1, k));
+            global[q] = new TopK(Math.max(1, k));
+        }
+        boolean[] answering = new boolean[shards.size()];
+        int answered = 0;
+        for (int i = 0; i < futures.size(); i++) {
+            Future<List<ShardMatches>> future = futures.get(i);
+            if (future == null) {
+                continue;
+            }
+            try {
+                List<ShardMatches> answers =
+                    future.get(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                markUp(i);
+                if (!servesModel(i, answers.get(first).getModelTag(), model)) {
+                    continue;
+                }
+                answering[i] = true;
+                answered++;
+                for (int q = 0; q < queries.length; q++) {
+                    if (queries[q] == null) {
+                        continue;
+                    }
+                    ShardMatches matches = answers.get(q);
+                    for (GalleryMatch match : matches.getCourseMatches()) {
+                        course[q].offer(match.getStudentId(), match.getScore());
+                    }
+                    if (matches.getGlobalMatches() != null) {
+                        anyGlobal[q] = true;
+                        for (GalleryMatch match : matches.getGlobalMatches()) {
+                            global[q].offer(match.getStudentId(), match.getScore());
+                        }
+                    }
+                }
+            } catch (TimeoutException e) {
+                future.cancel(true);
+                markDown(i, new TimeoutException("timed out after " + timeoutMs + " ms"));
+            } catch (ExecutionException e) {
+                markDown(i, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        reportAnswering(answering, answered);
+
+        for (int q = 0; q < queries.length; q++) {
+            if (queries[q] == null) {
+                results.add(ShardMatches.empty(model));
+                continue;
+            }
+            // Every shard whose course matches missed the threshold also searched globally
+            results.add(new ShardMatches(course[q].toMatches(),
+                anyGlobal[q] || answered == 0 ? global[q].toMatches() : null, model));
+        }
+        return results;
+    }
+
+    /**
+     * Log partial results when the set of answering shards changes, not
+     * on every query while a shard is missing
+     */
+    private synchronized void reportAnswering(boolean[] now, int answered) {
+        if (Arrays.equals(now, answering)) {
+            return;
+        }
+        answering = now;
+        if (answered == shards.size()) {
+            System.out.println("✓ All " + shards.size() + " shards answering");
+            return;
+        }
+        StringBuilder missing = new StringBuilder();
+        for (int i = 0; i < now.length; i++) {
+            if (!now[i]) {
+                missing.append(missing.length() == 0 ? "" : ", ").append(shards.get(i).getName());
+            }
+        }
+        System.err.println("⚠ Partial matches: " + answered + " of " + shards.size() +
+                         " shards answering (missing " + missing + ")");
+    }
+
+    /**
+     * Whether a shard's answer was scored against the query model's gallery
+     */
+    private synchronized boolean servesModel(int shard, String served, String model) {
+        boolean matches = model.equals(served);
+        if (!Objects.equals(served, servedModel[shard])) {
+            if (!matches) {
+                System.err.println("⚠ Shard " + shards.get(shard).getName() + " serves model " + served +
+                                 ", not " + model + "; ignoring its matches until it syncs");
+            } else if (servedModel[shard] != null) {
+                System.out.println("✓ Shard " + shards.get(shard).getName() + " now serves model " + model);
+            }
+            servedModel[shard] = served;
+        }
+        return matches;
+    }
+
+    private synchronized boolean isDown(int shard, long now) {
+        return down[shard] && now < retryAt[shard];
+    }
+
+    private synchronized void markUp(int shard) {
+        if (down[shard]) {
+            down[shard] = false;
+            System.out.println("✓ Shard " + shards.get(shard).getName() + " is back");
+        }
+    }
+
+    private synchronized void markDown(int shard, Throwable cause) {
+        if (!down[shard]) {
+            System.err.println("⚠ Shard " + shards.get(shard).getName() + " unavailable, retrying in " +
+                             retryMs + " ms: " + (cause != null && cause.getMessage() != null ?
+                             cause.getMessage() : String.valueOf(cause)));
+        }
+        down[shard] = true;
+        retryAt[shard] = System.currentTimeMillis() + retryMs;
+    }
+
+    @Override
+    public String getName() {
+        return "sharded(" + shards.size() + ")";
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+        for (GalleryShard shard : shards) {
+            shard.close();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.myapp.ml.gallery;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Bounded best-k collector over (studentId, score) pairs
+ * Keeps entries sorted by descending score in primitive arrays, so
+ * offering a score during a gallery scan does not allocate.
+ */
+public class TopK {
+    private final int[] ids;
+    private final double[] scores;
+    private int size;
+
+    public TopK(int k) {
+        if (k < 1) {
+            throw new IllegalArgumentException("k must be at least 1");
+        }
+        this.ids = new int[k];
+        this.scores = new double[k];
+    }
+
+    /**
+     * Offer a candidate; returns true if it entered the top-k
+     */
+    public boolean offer(int id, double score) {
+        int k = ids.length;
+        if (size == k && score <= scores[k - 1]) {
+            return false;
+        }
+
+        int pos = size < k ? size++ : k - 1;
+        while (pos > 0 && scores[pos - 1] < score) {
+            scores[pos] = scores[pos - 1];
+            ids[pos] = ids[pos - 1];
+            pos--;
+        }
+        scores[pos] = score;
+        ids[pos] = id;
+        return true;
+    }
+
+    /**
+     * Merge all entries of another collector into this one
+     */
+    public void merge(TopK other) {
+        for (int i = 0; i < other.size; i++) {
+            offer(other.ids[i], other.scores[i]);
+        }
+    }
+
+    /**
+     * Lowest score currently kept, or -infinity while not full
+     */
+    public double threshold() {
+        return size < ids.length ? Double.NEGATIVE_INFINITY : scores[size - 1];
+    }
+
+    public int size() { return size; }
+    public int capacity() { return ids.length; }
+    public int idAt(int index) { return ids[index]; }
+    public double scoreAt(int index) { return scores[index]; }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * Copy the kept entries out as matches, best first
+     */
+    public List<GalleryMatch> toMatches() {
+        List<GalleryMatch> matches = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            matches.add(new GalleryMatch(ids[i], scores[i]));
+        }
+        return matches;
+    }
+}
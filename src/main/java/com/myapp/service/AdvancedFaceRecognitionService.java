@@ -2,8 +2,12 @@ package com.myapp.service;
 
 import com.myapp.dao.StudentDAO;
 import com.myapp.ml.DNNFaceDetector;
+import com.myapp.ml.LatencyScheduler;
+import com.myapp.ml.MotionGate;
 import com.myapp.model.Attendance;
 import com.myapp.model.Student;
+import com.myapp.util.FrameScope;
+import com.myapp.util.LatestFrameReader;
 import org.bytedeco.javacpp.IntPointer;
 import org.bytedeco.javacpp.DoublePointer;
 import org.bytedeco.opencv.opencv_core.*;
@@ -58,6 +62,8 @@ public class AdvancedFaceRecognitionService {
         }
         
         public FaceDetection(Rect rect, Student student, double confidence, RecognitionStatus status) {
+            // Handed to the UI thread, so it must outlive the frame that detected it
+            FrameScope.keep(rect);
             this.rect = rect;
             this.student = student;
             this.confidence = confidence;
@@ -132,6 +138,11 @@ public class AdvancedFaceRecognitionService {
             return;
         }
         
+        if (camera == null || !camera.isOpened()) {
+            callback.onError("Camera is not started");
+            return;
+        }
+        
         isRunning.set(true);
         lastRecognitionTime.clear();
         
@@ -139,52 +150,125 @@ public class AdvancedFaceRecognitionService {
         new Thread(() -> {
             Mat frame = new Mat();
             Mat grayFrame = new Mat();
+            MotionGate motionGate = new MotionGate();
+            LatencyScheduler scheduler = new LatencyScheduler(dnnDetector);
+            LatestFrameReader reader = new LatestFrameReader(camera, "FaceCaptureThread");
+            List<FaceDetection> detections = new ArrayList<>();
             
             try {
                 while (isRunning.get()) {
-                    // Capture frame
-                    if (!camera.read(frame) || frame.empty()) {
-                        Thread.sleep(10);
-                        continue;
-                    }
+                    FrameScope frameScope = FrameScope.open();
+                    try (frameScope) {
+                        // Always the freshest frame; frames that arrived meanwhile are dropped
+                        long capturedAt = reader.next(frame, 1000);
+                        if (capturedAt < 0) {
+                            continue;
+                        }
+                        long frameStart = System.nanoTime();
                     
-                    // Convert to grayscale for recognition
-                    opencv_imgproc.cvtColor(frame, grayFrame, opencv_imgproc.COLOR_BGR2GRAY);
+                        // Skipped frames and a still scene keep the last results,
+                        // unless a face there is still unresolved
+                        if (scheduler.shouldAnalyze() && (motionGate.hasMotion(frame) || !isSettled(detections))) {
+                            // Convert to grayscale for recognition
+                            opencv_imgproc.cvtColor(frame, grayFrame, opencv_imgproc.COLOR_BGR2GRAY);
                     
-                    // Detect faces using DNN
-                    List<Rect> faceRects = dnnDetector.detectFaces(frame);
-                    List<FaceDetection> detections = new ArrayList<>();
+                            // Detect faces using DNN
+                            long start = System.nanoTime();
+                            List<Rect> faceRects = dnnDetector.detectFaces(frame);
+                            scheduler.detected(System.nanoTime() - start);
+
+                            // Over budget, faces keep the identity found on an earlier frame
+                            boolean recognize = scheduler.shouldRecognize();
+                            List<FaceDetection> previous = detections;
+                            detections = new ArrayList<>();
+                            start = System.nanoTime();
                     
-                    // Process each detected face
-                    for (Rect faceRect : faceRects) {
-                        FaceDetection detection = processFace(grayFrame, faceRect, courseId, sessionType, callback);
-                        if (detection != null) {
-                            detections.add(detection);
-                            
-                            // Draw on frame
+                            // Process each detected face
+                            for (Rect faceRect : faceRects) {
+                                FaceDetection detection = recognize ? null : carryOver(previous, faceRect);
+                                if (detection == null) {
+                                    detection = processFace(grayFrame, faceRect, courseId, sessionType, callback);
+                                }
+                                if (detection != null) {
+                                    detections.add(detection);
+                                }
+                            }
+                            scheduler.recognized(System.nanoTime() - start);
+                        }
+
+                        // Draw on frame
+                        for (FaceDetection detection : detections) {
                             drawDetection(frame, detection);
                         }
-                    }
                     
-                    // Convert to BufferedImage and send to callback
-                    BufferedImage bufferedImage = matToBufferedImage(frame);
-                    if (bufferedImage != null) {
-                        callback.onFrameProcessed(bufferedImage, detections);
-                    }
+                        // Convert to BufferedImage and send to callback
+                        BufferedImage bufferedImage = matToBufferedImage(frame);
+                        if (bufferedImage != null) {
+                            callback.onFrameProcessed(bufferedImage, detections);
+                        }
+                        scheduler.frameDone(capturedAt);
                     
-                    // Control frame rate
-                    Thread.sleep(33); // ~30 FPS
+                        // Pace to the target frame rate (the idle rate after a quiet spell)
+                        long elapsedMs = (System.nanoTime() - frameStart) / 1_000_000;
+                        long delay = motionGate.frameDelayMillis(scheduler.getFrameIntervalMillis()) - elapsedMs;
+                        if (delay > 0) {
+                            Thread.sleep(delay);
+                        }
+                    }
                 }
             } catch (Exception e) {
                 callback.onError("Recognition error: " + e.getMessage());
                 e.printStackTrace();
             } finally {
+                reader.close();
                 frame.release();
                 grayFrame.release();
+                System.out.println("Motion gate: " + motionGate.getStatus());
+                System.out.println("Scheduler: " + scheduler.getStatus() + ", " +
+                                 reader.getDropped() + " stale frame(s) dropped");
+                motionGate.close();
+                scheduler.close();
             }
         }, "FaceRecognitionThread").start();
     }
     
+    /**
+     * The previous frame's result for the same face (by box overlap), moved
+     * to the new box; null for a face that was not there before
+     */
+    private FaceDetection carryOver(List<FaceDetection> previous, Rect faceRect) {
+        FaceDetection best = null;
+        double bestOverlap = 0.3;
+        for (FaceDetection detection : previous) {
+            Rect rect = detection.rect;
+            int width = Math.min(rect.x() + rect.width(), faceRect.x() + faceRect.width()) - Math.max(rect.x(), faceRect.x());
+            int height = Math.min(rect.y() + rect.height(), faceRect.y() + faceRect.height()) - Math.max(rect.y(), faceRect.y());
+            if (width <= 0 || height <= 0) {
+                continue;
+            }
+            double intersection = (double) width * height;
+            double overlap = intersection / ((double) rect.area() + faceRect.area() - intersection);
+            if (overlap > bestOverlap) {
+                bestOverlap = overlap;
+                best = detection;
+            }
+        }
+        return best == null ? null : new FaceDetection(faceRect, best.student, best.confidence, best.status);
+    }
+
+    /**
+     * Whether every face of the last processed frame was resolved to a student
+     */
+    private boolean isSettled(List<FaceDetection> detections) {
+        for (FaceDetection detection : detections) {
+            if (detection.status != FaceDetection.RecognitionStatus.RECOGNIZED &&
+                detection.status != FaceDetection.RecognitionStatus.ALREADY_MARKED) {
+                return false;
+            }
+        }
+        return true;
+    }
+
     /**
      * Process a single detected face
      */
@@ -4,15 +4,23 @@ import com.myapp.dao.RecognitionLogDAO;
 import com.myapp.dao.StudentDAO;
 import com.myapp.ml.DeepLearningRecognizer;
 import com.myapp.ml.DNNFaceDetector;
+import com.myapp.ml.DnnTuning;
+import com.myapp.ml.EmbeddingMigrator;
+import com.myapp.ml.FaceTracker;
+import com.myapp.ml.MotionGate;
 import com.myapp.model.Attendance;
 import com.myapp.model.Student;
+import com.myapp.util.FrameScope;
+import com.myapp.util.NativeMemoryGauge;
 import org.bytedeco.opencv.opencv_core.*;
 import org.bytedeco.opencv.opencv_videoio.VideoCapture;
 import org.bytedeco.opencv.global.opencv_highgui;
 import org.bytedeco.opencv.global.opencv_imgproc;
 
 import java.sql.SQLException;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 /**
  * Deep Learning based Face Recognition Attendance Service
@@ -24,6 +32,8 @@ public class DeepLearningAttendanceService {
     private final RecognitionLogDAO recognitionLogDAO;
     private DeepLearningRecognizer recognizer;
     private DNNFaceDetector faceDetector;
+    private FaceTracker tracker;
+    private MotionGate motionGate;
 
     public DeepLearningAttendanceService() {
         this.studentDAO = new StudentDAO();
@@ -46,8 +56,13 @@ public class DeepLearningAttendanceService {
             // Initialize recognizer and detector
             recognizer = new DeepLearningRecognizer();
             faceDetector = new DNNFaceDetector();
+            tracker = new FaceTracker(faceDetector);
+            motionGate = new MotionGate();
             System.out.println("✓ Deep learning models loaded");
 
+            // Match against this course's students first
+            recognizer.setCourseScope(courseId);
+
             // Verify we have students with embeddings
             List<Student> students = studentDAO.getStudentsWithFacialData();
             if (students.isEmpty()) {
@@ -76,61 +91,66 @@ public class DeepLearningAttendanceService {
         System.out.println("   Press 'q' to quit\n");
 
         Mat frame = new Mat();
-        long lastRecognitionTime = 0;
-        int lastRecognizedStudentId = -1;
-        final long RECOGNITION_COOLDOWN = 5000; // 5 seconds cooldown
+        // Students marked this session; a student seen again on a new track
+        // (left and came back) needs no second database write
+        Set<Integer> markedStudents = new HashSet<>();
 
         while (true) {
-            camera.read(frame);
-            if (frame.empty()) {
-                continue;
-            }
+            // Everything native this frame allocates is freed when it ends
+            FrameScope frameScope = FrameScope.open();
+            try (frameScope) {
+                camera.read(frame);
+                if (frame.empty()) {
+                    continue;
+                }
 
-            long currentTime = System.currentTimeMillis();
-
-            // Detect faces
-            List<Rect> faces = faceDetector.detectFaces(frame);
-
-            // Process each detected face
-            for (Rect faceRect : faces) {
-                // Draw rectangle around face
-                Scalar color = new Scalar(0, 255, 0, 0); // Green
-                opencv_imgproc.rectangle(frame, faceRect, color, 2, 0, 0);
-
-                // Perform recognition periodically
-                if ((currentTime - lastRecognitionTime) > RECOGNITION_COOLDOWN) {
-                    DeepLearningRecognizer.RecognitionResult result = recognizer.recognize(frame);
-
-                    if (result.isRecognized()) {
-                        int studentId = result.getStudentId();
-                        
-                        // Only mark if it's a different student or cooldown has passed
-                        if (studentId != lastRecognizedStudentId) {
-                            try {
-                                // Try to mark attendance
-                                boolean marked = attendanceService.markAttendance(
-                                    studentId, courseId, sessionType);
-
-                                if (marked) {
-                                    System.out.println("✓ ATTENDANCE MARKED: " + result.getStudentName() +
-                                                     " (" + result.getAdmissionNumber() + ")");
-                                    System.out.println("  Confidence: " + 
-                                                     String.format("%.1f%%", result.getConfidence() * 100));
-                                    color = new Scalar(0, 255, 0, 0); // Green for success
-                                } else {
-                                    System.out.println("⚠ Already marked: " + result.getStudentName());
-                                    color = new Scalar(255, 165, 0, 0); // Orange for duplicate
-                                }
-
-                                lastRecognizedStudentId = studentId;
-                                lastRecognitionTime = currentTime;
-
-                            } catch (SQLException e) {
-                                System.err.println("✗ Database error: " + e.getMessage());
-                            }
+                // Follow faces between detector passes (none while nothing moves);
+                // undecided tracks are embedded until their identity vote is final
+                List<FaceTracker.Track> tracks = tracker.update(frame, motionGate.hasMotion(frame));
+                List<FaceTracker.Track> decided = tracker.recognizePending(frame, recognizer);
+
+                // Each track is decided once, so attendance is marked once per face
+                for (FaceTracker.Track track : decided) {
+                    if (!track.isIdentified()) {
+                        System.out.println("✗ Unknown face (track " + track.getId() + ")");
+                        continue;
+                    }
+                    DeepLearningRecognizer.RecognitionResult result = track.getIdentity();
+                    int studentId = result.getStudentId();
+                    if (markedStudents.contains(studentId)) {
+                        continue;
+                    }
+
+                    try {
+                        // Try to mark attendance
+                        boolean marked = attendanceService.markAttendance(
+                            studentId, courseId, sessionType);
+
+                        if (marked) {
+                            System.out.println("✓ ATTENDANCE MARKED: " + result.getStudentName() +
+                                             " (" + result.getAdmissionNumber() + ")");
+                            System.out.println("  Confidence: " + 
+                                             String.format("%.1f%%", result.getConfidence() * 100));
+                        } else {
+                            System.out.println("⚠ Already marked: " + result.getStudentName());
                         }
+                        markedStudents.add(studentId);
+
+                    } catch (SQLException e) {
+                        System.err.println("✗ Database error: " + e.getMessage());
+                    }
+                }
+
+                // Draw every tracked face with its identity so far
+                for (FaceTracker.Track track : tracks) {
+                    Rect faceRect = track.toRect();
+                    DeepLearningRecognizer.RecognitionResult result = track.getIdentity();
 
-                        // Draw name on frame
+                    if (!track.isFinal()) {
+                        // Still voting
+                        opencv_imgproc.rectangle(frame, faceRect, new Scalar(0, 255, 255, 0), 2, 0, 0);
+                    } else if (result.isRecognized()) {
+                        opencv_imgproc.rectangle(frame, faceRect, new Scalar(0, 255, 0, 0), 2, 0, 0);
                         String label = result.getStudentName() + " - " + 
                                      String.format("%.0f%%", result.getConfidence() * 100);
                         opencv_imgproc.putText(frame, label,
@@ -139,34 +159,28 @@ public class DeepLearningAttendanceService {
                                              0.6, new Scalar(255, 255, 255, 0), 2, 0, false);
                     } else {
                         // Unknown face
-                        color = new Scalar(0, 0, 255, 0); // Red for unknown
+                        opencv_imgproc.rectangle(frame, faceRect, new Scalar(0, 0, 255, 0), 2, 0, 0);
                         opencv_imgproc.putText(frame, "Unknown",
                                              new Point(faceRect.x(), faceRect.y() - 10),
                                              opencv_imgproc.FONT_HERSHEY_SIMPLEX,
                                              0.6, new Scalar(0, 0, 255, 0), 2, 0, false);
-
-                        // Reset if unknown face
-                        if ((currentTime - lastRecognitionTime) > RECOGNITION_COOLDOWN) {
-                            lastRecognizedStudentId = -1;
-                            lastRecognitionTime = currentTime;
-                        }
                     }
                 }
-            }
 
-            // Display status text
-            String statusText = faces.size() + " face(s) detected";
-            opencv_imgproc.putText(frame, statusText,
-                                 new Point(10, 30),
-                                 opencv_imgproc.FONT_HERSHEY_SIMPLEX,
-                                 0.7, new Scalar(255, 255, 255, 0), 2, 0, false);
+                // Display status text
+                String statusText = tracks.size() + " face(s) tracked";
+                opencv_imgproc.putText(frame, statusText,
+                                     new Point(10, 30),
+                                     opencv_imgproc.FONT_HERSHEY_SIMPLEX,
+                                     0.7, new Scalar(255, 255, 255, 0), 2, 0, false);
 
-            // Display frame
-            opencv_highgui.imshow("Deep Learning Attendance - Press 'q' to quit", frame);
+                // Display frame
+                opencv_highgui.imshow("Deep Learning Attendance - Press 'q' to quit", frame);
 
-            // Check for quit key
-            if (opencv_highgui.waitKey(30) == 'q') {
-                break;
+                // Check for quit key (polled at the idle frame rate after a quiet spell)
+                if (opencv_highgui.waitKey(motionGate.frameDelayMillis(30)) == 'q') {
+                    break;
+                }
             }
         }
 
@@ -200,34 +214,42 @@ public class DeepLearningAttendanceService {
             System.out.println("Looking for face... Press 'q' to cancel");
 
             while (true) {
-                camera.read(frame);
-                if (frame.empty()) {
-                    continue;
-                }
+                FrameScope frameScope = FrameScope.open();
+                try (frameScope) {
+                    camera.read(frame);
+                    if (frame.empty()) {
+                        continue;
+                    }
+
+                    // Detect faces
+                    List<Rect> faces = faceDetector.detectFaces(frame);
 
-                // Detect faces
-                List<Rect> faces = faceDetector.detectFaces(frame);
+                    if (!faces.isEmpty()) {
+                        // Draw rectangles
+                        for (Rect face : faces) {
+                            opencv_imgproc.rectangle(frame, face, 
+                                                   new Scalar(0, 255, 0, 0), 2, 0, 0);
+                        }
 
-                if (!faces.isEmpty()) {
-                    // Draw rectangles
-                    for (Rect face : faces) {
-                        opencv_imgproc.rectangle(frame, face, 
-                                               new Scalar(0, 255, 0, 0), 2, 0, 0);
+                        // Recognize the detected faces; stop at the first match
+                        for (DeepLearningRecognizer.RecognitionResult candidate : recognizer.recognizeAll(frame, faces)) {
+                            result = candidate;
+                            if (result.isRecognized()) {
+                                break;
+                            }
+                        }
+
+                        if (result.isRecognized()) {
+                            System.out.println("✓ Recognized: " + result);
+                            break;
+                        }
                     }
 
-                    // Recognize
-                    result = recognizer.recognize(frame);
-                    
-                    if (result.isRecognized()) {
-                        System.out.println("✓ Recognized: " + result);
+                    opencv_highgui.imshow("Recognition - Press 'q' to cancel", frame);
+                    if (opencv_highgui.waitKey(30) == 'q') {
                         break;
                     }
                 }
-
-                opencv_highgui.imshow("Recognition - Press 'q' to cancel", frame);
-                if (opencv_highgui.waitKey(30) == 'q') {
-                    break;
-                }
             }
 
             camera.release();
@@ -260,6 +282,13 @@ public class DeepLearningAttendanceService {
             System.out.println("║ Avg Confidence:    " + String.format("%-44.2f", stats.get("avg_confidence")) + "║");
             System.out.println("╚═══════════════════════════════════════════════════════════════╝\n");
 
+            EmbeddingMigrator migrator = EmbeddingMigrator.getCurrent();
+            if (migrator != null) {
+                System.out.println("Model migration: " + migrator.getStatus() + "\n");
+            }
+            System.out.println("DNN settings: " + DnnTuning.current() + "\n");
+            System.out.println("Native memory: " + NativeMemoryGauge.getStatus() + "\n");
+
         } catch (SQLException e) {
             System.err.println("✗ Failed to retrieve statistics: " + e.getMessage());
         }
@@ -272,6 +301,16 @@ public class DeepLearningAttendanceService {
         if (recognizer != null) {
             recognizer.close();
         }
+        if (tracker != null) {
+            System.out.println("Face tracking: " + tracker.getStatus());
+            tracker.close();
+            tracker = null;
+        }
+        if (motionGate != null) {
+            System.out.println("Motion gate: " + motionGate.getStatus());
+            motionGate.close();
+            motionGate = null;
+        }
         if (faceDetector != null) {
             faceDetector.close();
         }
@@ -3,6 +3,7 @@ package com.myapp.service;
 import com.myapp.dao.StudentDAO;
 import com.myapp.model.Attendance;
 import com.myapp.model.Student;
+import com.myapp.util.FrameScope;
 import org.bytedeco.javacpp.IntPointer;
 import org.bytedeco.javacpp.DoublePointer;
 import org.bytedeco.opencv.opencv_core.*;
@@ -97,118 +98,122 @@ public class FaceRecognitionAttendanceService {
         final long RECOGNITION_COOLDOWN = 5000; // 5 seconds cooldown
 
         while (true) {
-            camera.read(frame);
-            if (frame.empty()) {
-                continue;
-            }
+            // The RectVector, ROIs, Scalars and Points of a frame are freed when it ends
+            FrameScope frameScope = FrameScope.open();
+            try (frameScope) {
+                camera.read(frame);
+                if (frame.empty()) {
+                    continue;
+                }
 
-            // Convert to grayscale
-            opencv_imgproc.cvtColor(frame, grayFrame, opencv_imgproc.COLOR_BGR2GRAY);
+                // Convert to grayscale
+                opencv_imgproc.cvtColor(frame, grayFrame, opencv_imgproc.COLOR_BGR2GRAY);
 
-            // Detect faces
-            RectVector faces = new RectVector();
-            faceDetector.detectMultiScale(grayFrame, faces, 1.1, 5, 0, new Size(30, 30), new Size());
+                // Detect faces
+                RectVector faces = new RectVector();
+                faceDetector.detectMultiScale(grayFrame, faces, 1.1, 5, 0, new Size(30, 30), new Size());
 
-            // Process each detected face
-            for (int i = 0; i < faces.size(); i++) {
-                Rect faceRect = faces.get(i);
-                Mat faceROI = new Mat(grayFrame, faceRect);
+                // Process each detected face
+                for (int i = 0; i < faces.size(); i++) {
+                    Rect faceRect = faces.get(i);
+                    Mat faceROI = new Mat(grayFrame, faceRect);
 
-                // Recognize face
-                recognizer.predict(faceROI, label, confidence);
-                int predictedLabel = label.get(0);
-                double predictionConfidence = confidence.get(0);
+                    // Recognize face
+                    recognizer.predict(faceROI, label, confidence);
+                    int predictedLabel = label.get(0);
+                    double predictionConfidence = confidence.get(0);
 
-                // Draw rectangle around face
-                Scalar color = new Scalar(0, 255, 0, 0); // Green by default
-                String displayText = "Unknown";
+                    // Draw rectangle around face
+                    Scalar color = new Scalar(0, 255, 0, 0); // Green by default
+                    String displayText = "Unknown";
 
-                // If confidence is good enough
-                if (predictionConfidence < CONFIDENCE_THRESHOLD) {
-                    try {
-                        // Get student by ID (label is student_id)
-                        Student student = studentDAO.getStudentById(predictedLabel);
+                    // If confidence is good enough
+                    if (predictionConfidence < CONFIDENCE_THRESHOLD) {
+                        try {
+                            // Get student by ID (label is student_id)
+                            Student student = studentDAO.getStudentById(predictedLabel);
                         
-                        if (student != null && student.isActive()) {
-                            displayText = student.getFullName();
+                            if (student != null && student.isActive()) {
+                                displayText = student.getFullName();
                             
-                            // Check if enough time has passed since last recognition
-                            long currentTime = System.currentTimeMillis();
-                            if (predictedLabel != lastRecognizedId || 
-                                (currentTime - lastRecognitionTime) > RECOGNITION_COOLDOWN) {
+                                // Check if enough time has passed since last recognition
+                                long currentTime = System.currentTimeMillis();
+                                if (predictedLabel != lastRecognizedId || 
+                                    (currentTime - lastRecognitionTime) > RECOGNITION_COOLDOWN) {
                                 
-                                // Try to mark attendance
-                                try {
-                                    boolean marked = attendanceService.markAttendance(
-                                        student.getStudentId(), courseId, sessionType);
+                                    // Try to mark attendance
+                                    try {
+                                        boolean marked = attendanceService.markAttendance(
+                                            student.getStudentId(), courseId, sessionType);
                                     
-                                    if (marked) {
-                                        color = new Scalar(0, 255, 0, 0); // Green for success
-                                        System.out.println("✓ ATTENDANCE MARKED: " + student.getFullName() + 
-                                                         " (" + student.getAdmissionNumber() + ")");
-                                    } else {
-                                        color = new Scalar(255, 165, 0, 0); // Orange for already marked
-                                    }
+                                        if (marked) {
+                                            color = new Scalar(0, 255, 0, 0); // Green for success
+                                            System.out.println("✓ ATTENDANCE MARKED: " + student.getFullName() + 
+                                                             " (" + student.getAdmissionNumber() + ")");
+                                        } else {
+                                            color = new Scalar(255, 165, 0, 0); // Orange for already marked
+                                        }
                                     
-                                    lastRecognizedId = predictedLabel;
-                                    lastRecognitionTime = currentTime;
+                                        lastRecognizedId = predictedLabel;
+                                        lastRecognitionTime = currentTime;
                                     
-                                } catch (SQLException e) {
-                                    System.err.println("✗ Error marking attendance: " + e.getMessage());
-                                    color = new Scalar(0, 0, 255, 0); // Red for error
+                                    } catch (SQLException e) {
+                                        System.err.println("✗ Error marking attendance: " + e.getMessage());
+                                        color = new Scalar(0, 0, 255, 0); // Red for error
+                                    }
                                 }
-                            }
                             
-                            displayText += " (" + String.format("%.1f", predictionConfidence) + "%)";
-                        } else {
-                            displayText = "Unknown Student";
+                                displayText += " (" + String.format("%.1f", predictionConfidence) + "%)";
+                            } else {
+                                displayText = "Unknown Student";
+                                color = new Scalar(0, 0, 255, 0); // Red
+                            }
+                        } catch (SQLException e) {
+                            System.err.println("✗ Database error: " + e.getMessage());
                             color = new Scalar(0, 0, 255, 0); // Red
                         }
-                    } catch (SQLException e) {
-                        System.err.println("✗ Database error: " + e.getMessage());
-                        color = new Scalar(0, 0, 255, 0); // Red
+                    } else {
+                        color = new Scalar(0, 0, 255, 0); // Red for low confidence
+                        displayText = "Unknown (Low confidence)";
                     }
-                } else {
-                    color = new Scalar(0, 0, 255, 0); // Red for low confidence
-                    displayText = "Unknown (Low confidence)";
+
+                    // Draw rectangle and text
+                    opencv_imgproc.rectangle(frame,
+                        new Point(faceRect.x(), faceRect.y()),
+                        new Point(faceRect.x() + faceRect.width(), faceRect.y() + faceRect.height()),
+                        color, 2, 0, 0);
+                    opencv_imgproc.putText(frame, displayText,
+                        new Point(faceRect.x(), faceRect.y() - 10),
+                        opencv_imgproc.FONT_HERSHEY_SIMPLEX,
+                        0.7,
+                        color,
+                        2,
+                        opencv_imgproc.LINE_AA,
+                        false);
+
+                    faceROI.release();
                 }
 
-                // Draw rectangle and text
-                opencv_imgproc.rectangle(frame,
-                    new Point(faceRect.x(), faceRect.y()),
-                    new Point(faceRect.x() + faceRect.width(), faceRect.y() + faceRect.height()),
-                    color, 2, 0, 0);
-                opencv_imgproc.putText(frame, displayText,
-                    new Point(faceRect.x(), faceRect.y() - 10),
+                // Display info text
+                opencv_imgproc.putText(frame,
+                    "Press 'q' to quit | Green = Recognized | Red = Unknown",
+                    new Point(10, 30),
                     opencv_imgproc.FONT_HERSHEY_SIMPLEX,
-                    0.7,
-                    color,
-                    2,
+                    0.6,
+                    new Scalar(255, 255, 255, 0),
+                    1,
                     opencv_imgproc.LINE_AA,
                     false);
 
-                faceROI.release();
-            }
+                // Show frame
+                opencv_highgui.imshow("Face Recognition Attendance System", frame);
 
-            // Display info text
-            opencv_imgproc.putText(frame,
-                "Press 'q' to quit | Green = Recognized | Red = Unknown",
-                new Point(10, 30),
-                opencv_imgproc.FONT_HERSHEY_SIMPLEX,
-                0.6,
-                new Scalar(255, 255, 255, 0),
-                1,
-                opencv_imgproc.LINE_AA,
-                false);
-
-            // Show frame
-            opencv_highgui.imshow("Face Recognition Attendance System", frame);
-
-            // Check for quit
-            int key = opencv_highgui.waitKey(30);
-            if (key == 'q' || key == 'Q' || key == 27) { // 'q' or ESC
-                System.out.println("\n✓ Face recognition stopped");
-                break;
+                // Check for quit
+                int key = opencv_highgui.waitKey(30);
+                if (key == 'q' || key == 'Q' || key == 27) { // 'q' or ESC
+                    System.out.println("\n✓ Face recognition stopped");
+                    break;
+                }
             }
         }
 
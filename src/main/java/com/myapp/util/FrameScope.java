@@ -0,0 +1,65 @@
+package com.myapp.util;
+
+import org.bytedeco.javacpp.Pointer;
+import org.bytedeco.javacpp.PointerScope;
+
+/**
+ * Native memory arena for one video frame
+ * Every JavaCPP object (Mat, Scalar, Point, RectVector, IntPointer, ...)
+ * allocated on this thread while the scope is open is freed when the frame
+ * ends, instead of whenever the garbage collector gets to its deallocator.
+ * Objects that outlive the frame must be created before the scope opens or
+ * passed to {@link #keep} right where they are created.
+ */
+public final class FrameScope implements AutoCloseable {
+    private final PointerScope scope;
+
+    private FrameScope() {
+        this.scope = new PointerScope();
+    }
+
+    /**
+     * Open the arena for the next frame (use with try-with-resources)
+     * A frame loop whose body never uses the scope opens it before the try
+     * and names it as the resource, e.g. {@code try (frameScope) { ... }}.
+     */
+    public static FrameScope open() {
+        return new FrameScope();
+    }
+
+    /**
+     * Run one frame's work inside its own arena
+     */
+    public static void run(Runnable frame) {
+        FrameScope frameScope = open();
+        try {
+            frame.run();
+        } finally {
+            frameScope.close();
+        }
+    }
+
+    /**
+     * Exempt a pointer created while a frame is open from the frame's
+     * cleanup; no-op outside a frame
+     * Only for pointers allocated in the innermost open scope: detaching
+     * anything else would release it.
+     */
+    public static <P extends Pointer> P keep(P pointer) {
+        PointerScope scope = PointerScope.getInnerScope();
+        if (pointer != null && scope != null) {
+            pointer.retainReference();
+            scope.detach(pointer);
+        }
+        return pointer;
+    }
+
+    /**
+     * Free everything the frame allocated
+     */
+    @Override
+    public void close() {
+        scope.close();
+        NativeMemoryGauge.frameEnded();
+    }
+}
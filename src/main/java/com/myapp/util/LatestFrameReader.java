@@ -0,0 +1,112 @@
+package com.myapp.util;
+
+import org.bytedeco.opencv.opencv_core.Mat;
+import org.bytedeco.opencv.opencv_videoio.VideoCapture;
+
+/**
+ * Reads a camera on its own thread and keeps only the newest frame
+ * A slow consumer always gets the most recent capture instead of working
+ * through the frames the driver queued while it was busy; frames it never
+ * took are counted as dropped.
+ */
+public class LatestFrameReader implements AutoCloseable {
+    private static final long JOIN_TIMEOUT_MS = 1000;
+
+    private final VideoCapture camera;
+    private final Thread thread;
+    private final Object lock = new Object();
+    private volatile boolean running = true;
+
+    // Guarded by lock; the two Mats are swapped after every capture
+    private Mat grabbed = FrameScope.keep(new Mat());
+    private Mat latest = FrameScope.keep(new Mat());
+    private long latestNanos;
+    private long sequence;
+    private long taken;
+    private long dropped;
+
+    public LatestFrameReader(VideoCapture camera, String name) {
+        this.camera = camera;
+        this.thread = new Thread(this::readLoop, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    /**
+     * Copy the newest frame not yet taken into dst, waiting for one if needed
+     * @return System.nanoTime() of its capture, or -1 on timeout or close
+     */
+    public long next(Mat dst, long timeoutMillis) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMillis;
+        synchronized (lock) {
+            while (sequence == taken && running) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0) {
+                    return -1;
+                }
+                lock.wait(remaining);
+            }
+            if (sequence == taken) {
+                return -1;
+            }
+            dropped += sequence - taken - 1;
+            taken = sequence;
+            latest.copyTo(dst);
+            return latestNanos;
+        }
+    }
+
+    /**
+     * Frames captured but superseded before the consumer took them
+     */
+    public long getDropped() {
+        synchronized (lock) {
+            return dropped;
+        }
+    }
+
+    /**
+     * Stop the reader thread (the camera itself stays open)
+     */
+    @Override
+    public void close() {
+        running = false;
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        try {
+            thread.join(JOIN_TIMEOUT_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (lock) {
+            // A reader stuck in camera.read keeps its buffers
+            if (!thread.isAlive()) {
+                grabbed.close();
+                latest.close();
+            }
+        }
+    }
+
+    private void readLoop() {
+        while (running) {
+            // grabbed is only touched by this thread between swaps
+            if (!camera.read(grabbed) || grabbed.empty()) {
+                try {
+                    Thread.sleep(10);
+                } catch (InterruptedException e) {
+                    return;
+                }
+                continue;
+            }
+            synchronized (lock) {
+                Mat previous = latest;
+                latest = grabbed;
+                grabbed = previous;
+                latestNanos = System.nanoTime();
+                sequence++;
+                lock.notifyAll();
+            }
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.myapp.util;
+
+import com.myapp.config.RecognitionConfig;
+import org.bytedeco.javacpp.Pointer;
+
+/**
+ * Gauge of live native memory for long-running capture sessions
+ * JavaCPP-tracked bytes cover the objects allocated through JavaCPP (Mat
+ * headers, Scalar, Point, pointers); the process RSS also covers OpenCV's
+ * own pixel buffers and network weights. Both are sampled as frames end and
+ * logged periodically; growth past the configured limit since the first
+ * frame is reported as a possible leak.
+ */
+public final class NativeMemoryGauge {
+    private static long baselinePhysical = -1;
+    private static long lastLog;
+    private static long frames;
+
+    private NativeMemoryGauge() {
+    }
+
+    /**
+     * Bytes currently held by JavaCPP allocations
+     */
+    public static long getTrackedBytes() {
+        return Pointer.totalBytes();
+    }
+
+    /**
+     * Resident size of the process (heap and native)
+     */
+    public static long getPhysicalBytes() {
+        return Pointer.physicalBytes();
+    }
+
+    /**
+     * One-line summary, e.g. for a statistics screen
+     */
+    public static synchronized String getStatus() {
+        long physical = getPhysicalBytes();
+        String status = String.format("%s tracked in %d objects, RSS %s",
+                                      Pointer.formatBytes(getTrackedBytes()), Pointer.totalCount(),
+                                      Pointer.formatBytes(physical));
+        if (baselinePhysical >= 0) {
+            status += String.format(" (%+.1f MB over %d frames)",
+                                    (physical - baselinePhysical) / (1024.0 * 1024.0), frames);
+        }
+        return status;
+    }
+
+    static synchronized void frameEnded() {
+        frames++;
+        long now = System.currentTimeMillis();
+        if (baselinePhysical < 0) {
+            baselinePhysical = getPhysicalBytes();
+            lastLog = now;
+            return;
+        }
+        if (now - lastLog < RecognitionConfig.getNativeMemoryLogIntervalSec() * 1000L) {
+            return;
+        }
+        lastLog = now;
+        long growth = getPhysicalBytes() - baselinePhysical;
+        if (growth > RecognitionConfig.getNativeMemoryWarnGrowthMb() * 1024L * 1024L) {
+            System.err.println("⚠ Native memory: " + getStatus() + " - possible leak");
+        } else {
+            System.out.println("⏳ Native memory: " + getStatus());
+        }
+    }
+}
@@ -0,0 +1,136 @@
+package com.myapp.ml;
+
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class EmbeddingCodecTest {
+
+    @Test
+    public void everyHalfSurvivesRoundTrip() {
+        for (int bits = 0; bits < 1 << 16; bits++) {
+            short half = (short) bits;
+            float value = EmbeddingCodec.halfToFloat(half);
+            if (Float.isNaN(value)) {
+                assertTrue(Float.isNaN(EmbeddingCodec.halfToFloat(EmbeddingCodec.floatToHalf(value))));
+            } else {
+                assertEquals("half 0x" + Integer.toHexString(bits), half, EmbeddingCodec.floatToHalf(value));
+            }
+        }
+    }
+
+    @Test
+    public void floatsRoundToNearestHalf() {
+        Random random = new Random(31);
+        for (int i = 0; i < 100000; i++) {
+            float value = (float) (random.nextGaussian() * Math.pow(2, random.nextInt(30) - 20));
+            short half = EmbeddingCodec.floatToHalf(value);
+            float error = Math.abs(value - EmbeddingCodec.halfToFloat(half));
+            // Neither neighbouring half of the same sign is closer
+            for (int neighbour : new int[] {half + 1, half - 1}) {
+                float other = EmbeddingCodec.halfToFloat((short) neighbour);
+                if (!Float.isNaN(other) && Math.signum(other) * Math.signum(value) >= 0) {
+                    assertTrue(value + " -> " + EmbeddingCodec.halfToFloat(half),
+                               error <= Math.abs(value - other));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void tiesRoundToEven() {
+        assertEquals(1.0f, roundTrip(1.0f + 0x1p-11f), 0f);
+        assertEquals(1.0f + 0x1p-9f, roundTrip(1.0f + 3 * 0x1p-11f), 0f);
+        // Halfway between zero and the smallest subnormal
+        assertEquals(0f, roundTrip(0x1p-25f), 0f);
+        assertEquals(0x1p-24f, roundTrip(1.5f * 0x1p-25f), 0f);
+    }
+
+    @Test
+    public void rangeLimits() {
+        assertEquals(65504f, roundTrip(65504f), 0f);
+        assertEquals(Float.POSITIVE_INFINITY, roundTrip(65520f), 0f);
+        assertEquals(Float.NEGATIVE_INFINITY, roundTrip(-1e10f), 0f);
+        assertEquals(-0f, roundTrip(-1e-10f), 0f);
+        assertEquals(0x1p-14f, roundTrip(0x1p-14f), 0f);
+    }
+
+    @Test
+    public void float32BlobsDecodeExactly() {
+        float[] embedding = randomEmbedding(new Random(32), 128);
+        byte[] bytes = EmbeddingCodec.encode(embedding, EmbeddingCodec.Format.FLOAT32);
+
+        assertEquals(4 + 128 * Float.BYTES, bytes.length);
+        assertEquals(EmbeddingCodec.Format.FLOAT32, EmbeddingCodec.formatOf(bytes));
+        assertArrayEquals(embedding, EmbeddingCodec.decode(bytes), 0f);
+    }
+
+    @Test
+    public void float16BlobsHalveTheSize() {
+        float[] embedding = randomEmbedding(new Random(33), 128);
+        byte[] bytes = EmbeddingCodec.encode(embedding, EmbeddingCodec.Format.FLOAT16);
+
+        assertEquals(4 + 128 * Short.BYTES, bytes.length);
+        assertEquals(EmbeddingCodec.Format.FLOAT16, EmbeddingCodec.formatOf(bytes));
+        float[] decoded = EmbeddingCodec.decode(bytes);
+        for (int i = 0; i < embedding.length; i++) {
+            // 11 significant bits
+            assertEquals(embedding[i], decoded[i], Math.abs(embedding[i]) * 0x1p-11f);
+        }
+    }
+
+    @Test
+    public void headerlessBlobsAreLegacyFloat32() {
+        Random random = new Random(34);
+        for (int n = 0; n < 1000; n++) {
+            float[] embedding = randomEmbedding(random, 128);
+            ByteBuffer buffer = ByteBuffer.allocate(embedding.length * Float.BYTES).order(ByteOrder.LITTLE_ENDIAN);
+            buffer.asFloatBuffer().put(embedding);
+            byte[] legacy = buffer.array();
+
+            assertNull(EmbeddingCodec.formatOf(legacy));
+            assertArrayEquals(embedding, EmbeddingCodec.decode(legacy), 0f);
+        }
+    }
+
+    @Test
+    public void legacyRowStartingLikeAHeaderIsStillLegacy() {
+        // Version and format bytes of a header, but a finite first value
+        byte[] legacy = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN)
+                                  .put((byte) 1).put((byte) 0x10).put((byte) 0x00).put((byte) 0x3F)
+                                  .putFloat(1f).array();
+        assertNull(EmbeddingCodec.formatOf(legacy));
+        assertEquals(2, EmbeddingCodec.decode(legacy).length);
+    }
+
+    @Test
+    public void parseFormatDefaultsToFloat16() {
+        assertEquals(EmbeddingCodec.Format.FLOAT32, EmbeddingCodec.parseFormat(" FLOAT32 "));
+        assertEquals(EmbeddingCodec.Format.FLOAT16, EmbeddingCodec.parseFormat("float16"));
+        assertEquals(EmbeddingCodec.Format.FLOAT16, EmbeddingCodec.parseFormat(null));
+    }
+
+    private static float roundTrip(float value) {
+        return EmbeddingCodec.halfToFloat(EmbeddingCodec.floatToHalf(value));
+    }
+
+    private static float[] randomEmbedding(Random random, int dimension) {
+        float[] embedding = new float[dimension];
+        double norm = 0;
+        for (int i = 0; i < dimension; i++) {
+            embedding[i] = (float) random.nextGaussian();
+            norm += embedding[i] * embedding[i];
+        }
+        for (int i = 0; i < dimension; i++) {
+            embedding[i] /= (float) Math.sqrt(norm);
+        }
+        return embedding;
+    }
+}
@@ -0,0 +1,112 @@
+package com.myapp.ml;
+
+import com.myapp.config.RecognitionConfig;
+import com.myapp.ml.DeepLearningRecognizer.RecognitionResult;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Vote finalization thresholds of a track: a single confident match, a
+ * minVotes majority, the vote share against rivals and unknowns, and the
+ * maxRecognitions cut-off
+ * Runs with the default thresholds (finalize at 0.8, 3 votes, 60% share,
+ * give up after 5 embeddings).
+ */
+public class FaceTrackerTest {
+    private FaceTracker tracker;
+    private FaceTracker.Track track;
+
+    @Before
+    public void setUp() {
+        tracker = new FaceTracker(null);
+        track = new FaceTracker.Track(1);
+    }
+
+    @After
+    public void tearDown() {
+        tracker.close();
+    }
+
+    @Test
+    public void defaultsAreTheDocumentedThresholds() {
+        assertEquals(0.8, RecognitionConfig.getTrackerFinalizeConfidence(), 0);
+        assertEquals(3, RecognitionConfig.getTrackerMinVotes());
+        assertEquals(0.6, RecognitionConfig.getTrackerVoteShare(), 0);
+        assertEquals(5, RecognitionConfig.getTrackerMaxRecognitions());
+    }
+
+    @Test
+    public void confidentMatchIsFinalAtOnce() {
+        assertTrue(tracker.vote(track, match(1, 0.9)));
+        assertTrue(track.isIdentified());
+        assertEquals(Integer.valueOf(1), track.getIdentity().getStudentId());
+    }
+
+    @Test
+    public void weakMatchesNeedMinVotes() {
+        assertFalse(tracker.vote(track, match(1, 0.65)));
+        assertFalse(tracker.vote(track, match(1, 0.66)));
+        assertFalse(track.isFinal());
+        assertTrue(tracker.vote(track, match(1, 0.7)));
+        assertTrue(track.isIdentified());
+        // The identity carries the best match of the winning student
+        assertEquals(0.7, track.getIdentity().getConfidence(), 0);
+    }
+
+    @Test
+    public void leaderNeedsTheVoteShare() {
+        assertFalse(tracker.vote(track, match(1, 0.7)));
+        assertFalse(tracker.vote(track, match(2, 0.7)));
+        assertFalse(tracker.vote(track, match(1, 0.7)));
+        // 3 of 4 votes clears 60%
+        assertTrue(tracker.vote(track, match(1, 0.7)));
+        assertEquals(Integer.valueOf(1), track.getIdentity().getStudentId());
+    }
+
+    @Test
+    public void unknownVotesDiluteAConfidentMatch() {
+        assertFalse(tracker.vote(track, unknown()));
+        // 1 of 2 votes is below the share even at 0.9
+        assertFalse(tracker.vote(track, match(1, 0.9)));
+        assertEquals(Integer.valueOf(1), track.getIdentity().getStudentId());
+        assertTrue(tracker.vote(track, match(1, 0.7)));
+        assertTrue(track.isIdentified());
+    }
+
+    @Test
+    public void undecidedTrackIsFinalUnknownAfterMaxRecognitions() {
+        for (int i = 0; i < 4; i++) {
+            assertFalse(tracker.vote(track, unknown()));
+        }
+        assertTrue(tracker.vote(track, unknown()));
+        assertTrue(track.isFinal());
+        assertFalse(track.isIdentified());
+        assertEquals(5, track.getRecognitions());
+    }
+
+    @Test
+    public void splitVoteGivesUpAsUnknown() {
+        tracker.vote(track, match(1, 0.7));
+        tracker.vote(track, match(2, 0.7));
+        tracker.vote(track, match(3, 0.7));
+        tracker.vote(track, match(1, 0.7));
+        // Student 1 leads 2 of 5, under both minVotes and the share
+        assertTrue(tracker.vote(track, match(2, 0.7)));
+        assertFalse(track.isIdentified());
+        assertNull(track.getIdentity().getStudentId());
+    }
+
+    private static RecognitionResult match(int studentId, double confidence) {
+        return new RecognitionResult(studentId, "Student " + studentId, "ADM" + studentId, confidence, true);
+    }
+
+    private static RecognitionResult unknown() {
+        return new RecognitionResult(null, null, null, 0.3, false);
+    }
+}
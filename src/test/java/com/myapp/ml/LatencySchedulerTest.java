@@ -0,0 +1,115 @@
+package com.myapp.ml;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Ladder transitions of the latency scheduler under the default 100 ms
+ * budget: one step down per settle period while over budget, one step up
+ * per recovery period well below it, nothing in between
+ * A level is read back from the detector input size it sets and from how
+ * many of the next frames it analyses and recognizes.
+ */
+public class LatencySchedulerTest {
+    private static final int FULL_INPUT = 300;
+    private static final int OVER_BUDGET_MS = 200;
+    private static final int NEAR_BUDGET_MS = 80;
+
+    // {recognize every, detector input, analyse every} for steps 0..7
+    private static final int[][] LADDER = {
+        {1, 300, 1}, {2, 300, 1}, {4, 300, 1}, {4, 240, 1},
+        {4, 192, 1}, {4, 192, 2}, {4, 192, 3}, {4, 192, 4}
+    };
+
+    private final int[] inputSize = {FULL_INPUT};
+    private final LatencyScheduler scheduler = new LatencyScheduler(FULL_INPUT, size -> inputSize[0] = size);
+
+    @Test
+    public void withinBudgetStaysAtFullQuality() {
+        frames(100, 0);
+        assertLevel(0);
+    }
+
+    @Test
+    public void overBudgetStepsDownOncePerSettlePeriod() {
+        for (int step = 1; step < LADDER.length; step++) {
+            frames(9, OVER_BUDGET_MS);
+            assertLevel(step - 1);
+            frames(1, OVER_BUDGET_MS);
+            assertLevel(step);
+        }
+        frames(50, OVER_BUDGET_MS);
+        assertLevel(LADDER.length - 1);
+    }
+
+    @Test
+    public void belowRecoveryLatencyStepsUpOncePerRecoveryPeriod() {
+        frames(10 * (LADDER.length - 1), OVER_BUDGET_MS);
+        assertLevel(LADDER.length - 1);
+        for (int step = LADDER.length - 2; step >= 0; step--) {
+            frames(29, 0);
+            assertLevel(step + 1);
+            frames(1, 0);
+            assertLevel(step);
+        }
+        frames(50, 0);
+        assertLevel(0);
+    }
+
+    @Test
+    public void latencyBetweenRecoveryAndBudgetHoldsTheLevel() {
+        frames(30, OVER_BUDGET_MS);
+        assertLevel(3);
+        frames(100, NEAR_BUDGET_MS);
+        assertLevel(3);
+    }
+
+    @Test
+    public void closeRestoresTheFullInputSize() {
+        frames(40, OVER_BUDGET_MS);
+        assertEquals(192, inputSize[0]);
+        scheduler.close();
+        assertEquals(FULL_INPUT, inputSize[0]);
+    }
+
+    @Test
+    public void smallInputsDoNotShrinkBelowTheMinimum() {
+        int[] size = {160};
+        LatencyScheduler small = new LatencyScheduler(160, value -> size[0] = value);
+        for (int i = 0; i < 40; i++) {
+            small.frameDone(capturedAgo(OVER_BUDGET_MS));
+        }
+        assertEquals(128, size[0]);
+    }
+
+    private void frames(int count, int latencyMs) {
+        for (int i = 0; i < count; i++) {
+            scheduler.frameDone(capturedAgo(latencyMs));
+        }
+    }
+
+    private void assertLevel(int step) {
+        int[] level = LADDER[step];
+        assertEquals("recognize every at step " + step, 4 / level[0], count(4, true));
+        assertEquals("detector input at step " + step, level[1], inputSize[0]);
+        assertEquals("analyse every at step " + step, 12 / level[2], count(12, false));
+    }
+
+    /**
+     * Frames out of the next n that are recognized (or analysed)
+     */
+    private int count(int n, boolean recognize) {
+        int selected = 0;
+        for (int i = 0; i < n; i++) {
+            if (recognize ? scheduler.shouldRecognize() : scheduler.shouldAnalyze()) {
+                selected++;
+            }
+        }
+        return selected;
+    }
+
+    private static long capturedAgo(int millis) {
+        return System.nanoTime() - millis * 1_000_000L;
+    }
+}
@@ -0,0 +1,81 @@
+package com.myapp.ml.gallery;
+
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Recall of the Hamming shortlist against the exact centroid scan
+ */
+public class BinaryHashCandidateSearchTest {
+    private static final int DIMENSION = 128;
+    private static final int STUDENTS = 3000;
+    private static final int QUERIES = 200;
+    private static final int K = 10;
+
+    @Test
+    public void shortlistRecallAgainstExactSearch() {
+        Random random = new Random(21);
+        EmbeddingGallery.Snapshot snapshot = TestSnapshots.of(gaussianRows(random, STUDENTS), STUDENTS, 1,
+                                                              DIMENSION, 4);
+        BinaryHashCandidateSearch binary = new BinaryHashCandidateSearch();
+        ExactCandidateSearch exact = new ExactCandidateSearch();
+
+        int topHits = 0;
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            // A new photo of a known student: its centroid plus noise
+            int student = random.nextInt(STUDENTS);
+            float[] query = snapshot.getCentroids().rowCopy(rowOf(snapshot, student));
+            for (int i = 0; i < DIMENSION; i++) {
+                query[i] += 0.5f * (float) random.nextGaussian();
+            }
+
+            List<GalleryMatch> expected = exact.search(snapshot, query, K);
+            List<GalleryMatch> actual = binary.search(snapshot, query, K);
+            assertEquals(K, actual.size());
+            if (actual.get(0).getStudentId() == expected.get(0).getStudentId()) {
+                topHits++;
+            }
+            Set<Integer> truth = new HashSet<>();
+            for (GalleryMatch match : expected) {
+                truth.add(match.getStudentId());
+            }
+            for (GalleryMatch match : actual) {
+                if (truth.contains(match.getStudentId())) {
+                    found++;
+                }
+                // Shortlisted students are reported with their exact centroid score
+                assertEquals(snapshot.centroidSimilarity(match.getStudentId(), query), match.getScore(), 1e-5);
+            }
+        }
+        assertTrue("recall@1 too low", topHits >= QUERIES * 0.99);
+        // Beyond the first hit the exact neighbours of random vectors are
+        // barely closer than the rest, so the shortlist keeps only part of them
+        assertTrue("recall@" + K + " too low", (double) found / (QUERIES * K) >= 0.5);
+    }
+
+    private static int rowOf(EmbeddingGallery.Snapshot snapshot, int studentId) {
+        PackedGallery centroids = snapshot.getCentroids();
+        for (int row = 0; row < centroids.size(); row++) {
+            if (centroids.studentIdAt(row) == studentId) {
+                return row;
+            }
+        }
+        throw new IllegalArgumentException("No student " + studentId);
+    }
+
+    private static float[] gaussianRows(Random random, int count) {
+        float[] rows = new float[count * DIMENSION];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = (float) random.nextGaussian();
+        }
+        return rows;
+    }
+}
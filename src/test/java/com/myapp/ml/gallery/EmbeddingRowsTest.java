@@ -0,0 +1,115 @@
+package com.myapp.ml.gallery;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Resident size of quantized snapshots, whose float32 rows are mapped
+ * instead of held on the heap, and exact re-rank scores read from those
+ * mapped rows (spilled or straight from the snapshot file)
+ */
+public class EmbeddingRowsTest {
+    private static final int DIMENSION = 128;
+    private static final int STUDENTS = 100;
+    private static final int PER_STUDENT = 20;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void int8GalleryIsAQuarterOfFloat32() throws Exception {
+        float[] rows = unitRows(new Random(1), STUDENTS * PER_STUDENT);
+        EmbeddingGallery.Snapshot exact = TestSnapshots.of(rows, STUDENTS, PER_STUDENT, DIMENSION, 4);
+        EmbeddingGallery.Snapshot quantized = exact
+            .withQuantizer(ScalarQuantizer.train(rows, STUDENTS * PER_STUDENT, DIMENSION))
+            .withMappedRows(folder.getRoot().toPath());
+
+        assertFalse(exact.embeddings().isMapped());
+        assertTrue(quantized.embeddings().isMapped());
+        // One byte per value for the rows; the float32 centroids stay resident
+        long centroidBytes = (long) STUDENTS * (DIMENSION + 1) * Float.BYTES;
+        assertTrue(quantized.getResidentBytes() + " vs " + exact.getResidentBytes(),
+                   quantized.getResidentBytes() <= exact.getResidentBytes() / 4 + centroidBytes);
+    }
+
+    @Test
+    public void mappedRowsGiveExactRerankScores() throws Exception {
+        Random random = new Random(2);
+        float[] rows = unitRows(random, STUDENTS * PER_STUDENT);
+        EmbeddingGallery.Snapshot exact = TestSnapshots.of(rows, STUDENTS, PER_STUDENT, DIMENSION, 4);
+        EmbeddingGallery.Snapshot quantized = exact
+            .withQuantizer(ScalarQuantizer.train(rows, STUDENTS * PER_STUDENT, DIMENSION))
+            .withMappedRows(folder.getRoot().toPath());
+
+        for (int q = 0; q < 10; q++) {
+            float[] query = unitRows(random, 1);
+            assertSameRerank(exact, quantized, query);
+        }
+    }
+
+    @Test
+    public void snapshotFileServesQuantizedRowsFromItsMapping() throws Exception {
+        Random random = new Random(3);
+        float[] rows = unitRows(random, STUDENTS * PER_STUDENT);
+        EmbeddingGallery.Snapshot exact = TestSnapshots.of(rows, STUDENTS, PER_STUDENT, DIMENSION, 4);
+        EmbeddingGallery.Snapshot quantized = exact
+            .withQuantizer(ScalarQuantizer.train(rows, STUDENTS * PER_STUDENT, DIMENSION));
+        Path path = folder.getRoot().toPath().resolve("gallery.snap");
+        GallerySnapshotFile.write(quantized, "model", path);
+
+        EmbeddingGallery.Snapshot loaded = GallerySnapshotFile.read(path).getSnapshot();
+        assertTrue(loaded.embeddings().isMapped());
+        assertEquals(STUDENTS * PER_STUDENT, loaded.getEmbeddingCount());
+        assertSameRerank(exact, loaded, unitRows(random, 1));
+    }
+
+    @Test
+    public void unquantizedRowsStayOnTheHeap() throws Exception {
+        float[] rows = unitRows(new Random(4), STUDENTS * PER_STUDENT);
+        EmbeddingGallery.Snapshot exact = TestSnapshots.of(rows, STUDENTS, PER_STUDENT, DIMENSION, 4);
+        Path path = folder.getRoot().toPath().resolve("gallery.snap");
+        GallerySnapshotFile.write(exact, "model", path);
+
+        EmbeddingGallery.Snapshot loaded = GallerySnapshotFile.read(path).getSnapshot();
+        assertFalse(loaded.embeddings().isMapped());
+        assertEquals(exact.getResidentBytes(), loaded.getResidentBytes());
+    }
+
+    private static void assertSameRerank(EmbeddingGallery.Snapshot exact, EmbeddingGallery.Snapshot mapped,
+                                         float[] query) {
+        List<GalleryMatch> candidates = exact.searchCentroids(query, 10);
+        List<GalleryMatch> expected = exact.rerank(query, candidates);
+        List<GalleryMatch> actual = mapped.rerank(query, candidates);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getStudentId(), actual.get(i).getStudentId());
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 1e-5);
+        }
+    }
+
+    private static float[] unitRows(Random random, int count) {
+        float[] rows = new float[count * DIMENSION];
+        for (int row = 0; row < count; row++) {
+            double norm = 0;
+            for (int i = 0; i < DIMENSION; i++) {
+                float value = (float) random.nextGaussian();
+                rows[row * DIMENSION + i] = value;
+                norm += value * value;
+            }
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < DIMENSION; i++) {
+                rows[row * DIMENSION + i] *= scale;
+            }
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,134 @@
+package com.myapp.ml.gallery;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class HnswIndexTest {
+    private static final int DIMENSION = 64;
+    private static final int COUNT = 2000;
+    private static final int QUERIES = 100;
+    private static final int K = 10;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recallAgainstExactSearch() {
+        Random random = new Random(1);
+        float[][] vectors = randomVectors(random, COUNT);
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 200, 100);
+        for (int i = 0; i < COUNT; i++) {
+            index.insert(i, vectors[i], i);
+        }
+        assertEquals(COUNT, index.size());
+
+        assertTrue("recall@" + K + " too low", recall(index, vectors, random) >= 0.95);
+    }
+
+    @Test
+    public void deletedAndReplacedLabelsAreNotReturned() {
+        Random random = new Random(2);
+        float[][] vectors = randomVectors(random, 200);
+        HnswIndex index = new HnswIndex(DIMENSION, 8, 100, 50);
+        for (int i = 0; i < vectors.length; i++) {
+            index.insert(i, vectors[i], 1);
+        }
+
+        assertTrue(index.delete(5));
+        assertFalse(index.delete(5));
+        assertNull(index.getStamp(5));
+        TopK deleted = index.search(vectors[5], K);
+        for (int i = 0; i < deleted.size(); i++) {
+            assertTrue(deleted.idAt(i) != 5);
+        }
+
+        // Label 7 now carries the vector of 8
+        index.insert(7, vectors[8], 2);
+        assertEquals(Long.valueOf(2), index.getStamp(7));
+        TopK replaced = index.search(vectors[8], 2);
+        Set<Integer> top = new HashSet<>();
+        for (int i = 0; i < replaced.size(); i++) {
+            top.add(replaced.idAt(i));
+        }
+        assertEquals(Set.of(7, 8), top);
+        assertEquals(vectors.length - 1, index.size());
+    }
+
+    @Test
+    public void savedIndexAnswersLikeTheOriginal() throws Exception {
+        Random random = new Random(3);
+        float[][] vectors = randomVectors(random, 500);
+        HnswIndex index = new HnswIndex(DIMENSION, 16, 100, 64);
+        for (int i = 0; i < vectors.length; i++) {
+            index.insert(i, vectors[i], i);
+        }
+        Path path = folder.getRoot().toPath().resolve("index.hnsw");
+        index.save(path);
+        HnswIndex loaded = HnswIndex.load(path, 64);
+
+        assertEquals(index.size(), loaded.size());
+        assertEquals(index.getM(), loaded.getM());
+        float[] query = randomVectors(random, 1)[0];
+        TopK expected = index.search(query, K);
+        TopK actual = loaded.search(query, K);
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.idAt(i), actual.idAt(i));
+        }
+    }
+
+    private static double recall(HnswIndex index, float[][] vectors, Random random) {
+        int found = 0;
+        for (int q = 0; q < QUERIES; q++) {
+            float[] query = randomVectors(random, 1)[0];
+            TopK exact = new TopK(K);
+            for (int i = 0; i < vectors.length; i++) {
+                exact.offer(i, cosine(query, vectors[i]));
+            }
+            Set<Integer> truth = new HashSet<>();
+            for (int i = 0; i < exact.size(); i++) {
+                truth.add(exact.idAt(i));
+            }
+            TopK approximate = index.search(query, K);
+            for (int i = 0; i < approximate.size(); i++) {
+                if (truth.contains(approximate.idAt(i))) {
+                    found++;
+                }
+            }
+        }
+        return (double) found / (QUERIES * K);
+    }
+
+    private static float[][] randomVectors(Random random, int count) {
+        float[][] vectors = new float[count][DIMENSION];
+        for (float[] vector : vectors) {
+            for (int i = 0; i < DIMENSION; i++) {
+                vector[i] = (float) random.nextGaussian();
+            }
+        }
+        return vectors;
+    }
+
+    private static double cosine(float[] a, float[] b) {
+        double dot = 0;
+        double normA = 0;
+        double normB = 0;
+        for (int i = 0; i < a.length; i++) {
+            dot += a[i] * b[i];
+            normA += a[i] * a[i];
+            normB += b[i] * b[i];
+        }
+        return dot / Math.sqrt(normA * normB);
+    }
+}
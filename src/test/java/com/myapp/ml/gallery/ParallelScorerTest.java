@@ -0,0 +1,107 @@
+package com.myapp.ml.gallery;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The fork/join and cache-blocked scans must find the same top-k as the
+ * plain sequential scan
+ */
+public class ParallelScorerTest {
+    private static final int DIMENSION = 64;
+    // Above the default recognition.parallel.threshold
+    private static final int ROWS = 25000;
+    private static final int K = 10;
+
+    private ForkJoinPool pool;
+    private PackedGallery gallery;
+    private float[][] queries;
+
+    @Before
+    public void setUp() {
+        pool = new ForkJoinPool(4);
+        ParallelScorer.setPool(pool);
+
+        Random random = new Random(11);
+        float[] vectors = new float[ROWS * DIMENSION];
+        int[] ids = new int[ROWS];
+        for (int row = 0; row < ROWS; row++) {
+            ids[row] = row;
+            for (int i = 0; i < DIMENSION; i++) {
+                vectors[row * DIMENSION + i] = (float) random.nextGaussian();
+            }
+        }
+        gallery = new PackedGallery(DIMENSION, vectors, ids);
+
+        queries = new float[6][DIMENSION];
+        for (float[] query : queries) {
+            for (int i = 0; i < DIMENSION; i++) {
+                query[i] = (float) random.nextGaussian();
+            }
+        }
+    }
+
+    @After
+    public void tearDown() {
+        ParallelScorer.setPool(null);
+        pool.shutdown();
+    }
+
+    @Test
+    public void parallelScanMatchesSequentialScan() {
+        assertTrue(ParallelScorer.isParallel(ROWS));
+        for (float[] query : queries) {
+            assertSameTopK(sequential(query, 0, ROWS), ParallelScorer.topK(gallery, query, 0, ROWS, K));
+        }
+    }
+
+    @Test
+    public void parallelScanOfSubrangeMatchesSequentialScan() {
+        int from = 1234;
+        int to = ROWS - 777;
+        for (float[] query : queries) {
+            assertSameTopK(sequential(query, from, to), ParallelScorer.topK(gallery, query, from, to, K));
+        }
+    }
+
+    @Test
+    public void batchScansMatchSequentialScan() {
+        TopK[] blocked = BatchScorer.topK(gallery, queries, K);
+        TopK[] parallel = ParallelScorer.topK(gallery, queries, K);
+        for (int q = 0; q < queries.length; q++) {
+            TopK expected = sequential(queries[q], 0, ROWS);
+            assertSameTopK(expected, blocked[q]);
+            assertSameTopK(expected, parallel[q]);
+        }
+    }
+
+    @Test
+    public void batchSkipsQueriesOfAnotherDimension() {
+        float[][] mixed = {queries[0], new float[DIMENSION + 1], null};
+        TopK[] results = BatchScorer.topK(gallery, mixed, K);
+        assertSameTopK(sequential(queries[0], 0, ROWS), results[0]);
+        assertEquals(0, results[1].size());
+        assertEquals(0, results[2].size());
+    }
+
+    private TopK sequential(float[] query, int fromRow, int toRow) {
+        TopK topK = new TopK(K);
+        gallery.score(query, fromRow, toRow, topK);
+        return topK;
+    }
+
+    private static void assertSameTopK(TopK expected, TopK actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.idAt(i), actual.idAt(i));
+            assertEquals(expected.scoreAt(i), actual.scoreAt(i), 1e-4);
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package com.myapp.ml.gallery;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Projected scores against exact dot products on data that lies in a
+ * low-rank subspace, where the projection loses nothing but the per-query
+ * constant
+ */
+public class PcaProjectionTest {
+    private static final int DIMENSION = 64;
+    private static final int RANK = 8;
+    private static final int COUNT = 1000;
+
+    @Test
+    public void lowRankScoresDifferByAPerQueryConstant() {
+        Random random = new Random(1);
+        float[] rows = lowRankRows(random, COUNT);
+        PcaProjection projection = PcaProjection.fit(rows, COUNT, DIMENSION, RANK, 1);
+        float[] projected = projection.projectRows(rows, COUNT);
+        int width = projection.getProjectedDimension();
+        assertEquals(RANK + 1, width);
+
+        for (int q = 0; q < 5; q++) {
+            float[] query = gaussian(random, DIMENSION);
+            float[] projectedQuery = projection.projectQuery(query);
+            double offset = dot(projectedQuery, projected, 0, width) - dot(query, rows, 0, DIMENSION);
+            for (int row = 1; row < COUNT; row++) {
+                double exact = dot(query, rows, row * DIMENSION, DIMENSION);
+                double approximate = dot(projectedQuery, projected, row * width, width);
+                assertEquals(exact + offset, approximate, 1e-3);
+            }
+        }
+    }
+
+    @Test
+    public void projectRowMatchesProjectRows() {
+        float[] rows = lowRankRows(new Random(2), 50);
+        PcaProjection projection = PcaProjection.fit(rows, 50, DIMENSION, RANK, 1);
+        float[] all = projection.projectRows(rows, 50);
+        int width = projection.getProjectedDimension();
+
+        float[] one = new float[width];
+        projection.projectRow(rows, 17 * DIMENSION, one, 0, new float[DIMENSION], new float[RANK]);
+        for (int i = 0; i < width; i++) {
+            assertEquals(all[17 * width + i], one[i], 0f);
+        }
+    }
+
+    @Test
+    public void componentsAreClampedToTheDimension() {
+        float[] rows = lowRankRows(new Random(3), 100);
+        assertEquals(DIMENSION, PcaProjection.fit(rows, 100, DIMENSION, 500, 1).getComponents());
+        assertEquals(1, PcaProjection.fit(rows, 100, DIMENSION, 0, 1).getComponents());
+    }
+
+    @Test
+    public void writeThenReadProjectsIdentically() throws Exception {
+        Random random = new Random(4);
+        float[] rows = lowRankRows(random, 200);
+        PcaProjection projection = PcaProjection.fit(rows, 200, DIMENSION, RANK, 7);
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            projection.write(out);
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+        PcaProjection read = PcaProjection.read(buffer);
+
+        assertEquals(0, buffer.remaining());
+        assertEquals(7, read.getVersion());
+        assertEquals(DIMENSION, read.getDimension());
+        assertEquals(RANK, read.getComponents());
+        assertEquals(200, read.getFittedOn());
+        assertArrayEquals(projection.projectRows(rows, 200), read.projectRows(rows, 200), 0f);
+        float[] query = gaussian(random, DIMENSION);
+        assertArrayEquals(projection.projectQuery(query), read.projectQuery(query), 0f);
+    }
+
+    /**
+     * Rows spanned by RANK random directions around a common offset
+     */
+    private static float[] lowRankRows(Random random, int count) {
+        float[] offset = gaussian(random, DIMENSION);
+        float[][] basis = new float[RANK][];
+        for (int b = 0; b < RANK; b++) {
+            basis[b] = gaussian(random, DIMENSION);
+        }
+        float[] rows = new float[count * DIMENSION];
+        for (int row = 0; row < count; row++) {
+            System.arraycopy(offset, 0, rows, row * DIMENSION, DIMENSION);
+            for (int b = 0; b < RANK; b++) {
+                float weight = (float) random.nextGaussian() * 0.5f;
+                for (int i = 0; i < DIMENSION; i++) {
+                    rows[row * DIMENSION + i] += weight * basis[b][i];
+                }
+            }
+        }
+        return rows;
+    }
+
+    private static float[] gaussian(Random random, int dimension) {
+        float[] vector = new float[dimension];
+        float norm = 0;
+        for (int i = 0; i < dimension; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        norm = (float) Math.sqrt(norm);
+        for (int i = 0; i < dimension; i++) {
+            vector[i] /= norm;
+        }
+        return vector;
+    }
+
+    private static double dot(float[] query, float[] rows, int offset, int length) {
+        double sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += query[i] * rows[offset + i];
+        }
+        return sum;
+    }
+}
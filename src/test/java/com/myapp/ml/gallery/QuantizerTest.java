@@ -0,0 +1,220 @@
+package com.myapp.ml.gallery;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Error bounds of the int8 and PQ codes against the float32 rows, and the
+ * exact final re-rank of a quantized snapshot
+ * A code's reconstruction is read back through the scorer with unit
+ * queries, so the bounds are checked per dimension and per score.
+ */
+public class QuantizerTest {
+    private static final int DIMENSION = 128;
+    private static final int COUNT = 2000;
+
+    @Test
+    public void scalarCodesStayWithinHalfAStep() {
+        float[] rows = clusteredRows(new Random(1), COUNT);
+        ScalarQuantizer quantizer = ScalarQuantizer.train(rows, COUNT, DIMENSION);
+        float[] step = steps(rows, COUNT);
+
+        byte[] code = new byte[quantizer.getCodeSize()];
+        for (int row = 0; row < COUNT; row += 97) {
+            quantizer.encode(rows, row * DIMENSION, code, 0);
+            float[] restored = reconstruct(quantizer, code);
+            for (int i = 0; i < DIMENSION; i++) {
+                assertEquals(rows[row * DIMENSION + i], restored[i], step[i] / 2 + 1e-5);
+            }
+        }
+    }
+
+    @Test
+    public void scalarScoreErrorIsBoundedByTheSteps() {
+        Random random = new Random(2);
+        float[] rows = clusteredRows(random, COUNT);
+        ScalarQuantizer quantizer = ScalarQuantizer.train(rows, COUNT, DIMENSION);
+        float[] step = steps(rows, COUNT);
+        float[] query = clusteredRows(random, 1);
+        EmbeddingQuantizer.Scorer scorer = quantizer.scorer(query);
+
+        double bound = 1e-4;
+        for (int i = 0; i < DIMENSION; i++) {
+            bound += Math.abs(query[i]) * step[i] / 2;
+        }
+        byte[] codes = encodeAll(quantizer, rows, COUNT);
+        for (int row = 0; row < COUNT; row++) {
+            double exact = dot(query, rows, row);
+            assertEquals(exact, scorer.score(codes, row * DIMENSION), bound);
+        }
+    }
+
+    @Test
+    public void productScoreErrorIsBoundedByReconstructionError() {
+        Random random = new Random(3);
+        float[] rows = clusteredRows(random, COUNT);
+        ProductQuantizer quantizer = ProductQuantizer.train(rows, COUNT, DIMENSION, 32);
+        assertEquals(32, quantizer.getCodeSize());
+        float[] query = clusteredRows(random, 1);
+        EmbeddingQuantizer.Scorer scorer = quantizer.scorer(query);
+
+        byte[] code = new byte[quantizer.getCodeSize()];
+        double relativeError = 0;
+        for (int row = 0; row < COUNT; row += 7) {
+            quantizer.encode(rows, row * DIMENSION, code, 0);
+            float[] restored = reconstruct(quantizer, code);
+            double error = 0;
+            double norm = 0;
+            for (int i = 0; i < DIMENSION; i++) {
+                double diff = rows[row * DIMENSION + i] - restored[i];
+                error += diff * diff;
+                norm += rows[row * DIMENSION + i] * rows[row * DIMENSION + i];
+            }
+            // |q.x - q.x'| <= |q| |x - x'| with |q| = 1
+            assertEquals(dot(query, rows, row), scorer.score(code, 0), Math.sqrt(error) + 1e-4);
+            relativeError += Math.sqrt(error / norm);
+        }
+        assertTrue("PQ reconstruction too coarse", relativeError / (COUNT / 7 + 1) < 0.25);
+    }
+
+    @Test
+    public void productSubspacesDivideTheDimension() {
+        float[] rows = clusteredRows(new Random(4), 300);
+        // Largest divisor of 128 not above 30
+        ProductQuantizer quantizer = ProductQuantizer.train(rows, 300, DIMENSION, 30);
+        assertEquals(16, quantizer.getSubspaces());
+        assertEquals(16, quantizer.getCodeSize());
+    }
+
+    @Test
+    public void writtenQuantizersScoreIdentically() throws Exception {
+        Random random = new Random(5);
+        float[] rows = clusteredRows(random, 500);
+        float[] query = clusteredRows(random, 1);
+        EmbeddingQuantizer[] quantizers = {
+            ScalarQuantizer.train(rows, 500, DIMENSION),
+            ProductQuantizer.train(rows, 500, DIMENSION, 16)
+        };
+        for (EmbeddingQuantizer quantizer : quantizers) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            try (DataOutputStream out = new DataOutputStream(bytes)) {
+                quantizer.write(out);
+            }
+            EmbeddingQuantizer read = EmbeddingQuantizer.read(quantizer.getName(),
+                                                              ByteBuffer.wrap(bytes.toByteArray()));
+
+            byte[] codes = encodeAll(quantizer, rows, 500);
+            assertArrayEquals(codes, encodeAll(read, rows, 500));
+            EmbeddingQuantizer.Scorer expected = quantizer.scorer(query);
+            EmbeddingQuantizer.Scorer actual = read.scorer(query);
+            for (int row = 0; row < 500; row++) {
+                int offset = row * quantizer.getCodeSize();
+                assertEquals(expected.score(codes, offset), actual.score(codes, offset), 0f);
+            }
+        }
+    }
+
+    @Test
+    public void quantizedRerankReturnsExactScores() {
+        Random random = new Random(6);
+        int students = 60;
+        int perStudent = 5;
+        float[] rows = clusteredRows(random, students * perStudent);
+        EmbeddingGallery.Snapshot exact = TestSnapshots.of(rows, students, perStudent, DIMENSION, 3);
+        EmbeddingGallery.Snapshot quantized = exact.withQuantizer(
+            ProductQuantizer.train(rows, students * perStudent, DIMENSION, 16));
+
+        float[] query = clusteredRows(random, 1);
+        List<GalleryMatch> candidates = exact.searchCourse(0, query, 20);
+        List<GalleryMatch> expected = exact.rerank(query, candidates);
+        List<GalleryMatch> pruned = quantized.rerank(query, candidates, 5);
+        assertEquals(5, pruned.size());
+        for (GalleryMatch match : pruned) {
+            assertEquals(exact.averageSimilarity(match.getStudentId(), query), match.getScore(), 0.0);
+        }
+        List<GalleryMatch> full = quantized.rerank(query, candidates);
+        assertEquals(expected.size(), full.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getStudentId(), full.get(i).getStudentId());
+            assertEquals(expected.get(i).getScore(), full.get(i).getScore(), 0.0);
+        }
+    }
+
+    /**
+     * Unit-length rows around a few dozen identities, like face embeddings
+     */
+    private static float[] clusteredRows(Random random, int count) {
+        Random centers = new Random(99);
+        float[][] identities = new float[40][DIMENSION];
+        for (float[] identity : identities) {
+            for (int i = 0; i < DIMENSION; i++) {
+                identity[i] = (float) centers.nextGaussian();
+            }
+        }
+        float[] rows = new float[count * DIMENSION];
+        for (int row = 0; row < count; row++) {
+            float[] identity = identities[random.nextInt(identities.length)];
+            double norm = 0;
+            for (int i = 0; i < DIMENSION; i++) {
+                float value = identity[i] + 0.3f * (float) random.nextGaussian();
+                rows[row * DIMENSION + i] = value;
+                norm += value * value;
+            }
+            float scale = (float) (1 / Math.sqrt(norm));
+            for (int i = 0; i < DIMENSION; i++) {
+                rows[row * DIMENSION + i] *= scale;
+            }
+        }
+        return rows;
+    }
+
+    private static float[] steps(float[] rows, int count) {
+        float[] step = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            float min = Float.POSITIVE_INFINITY;
+            float max = Float.NEGATIVE_INFINITY;
+            for (int row = 0; row < count; row++) {
+                min = Math.min(min, rows[row * DIMENSION + i]);
+                max = Math.max(max, rows[row * DIMENSION + i]);
+            }
+            step[i] = (max - min) / 255;
+        }
+        return step;
+    }
+
+    private static float[] reconstruct(EmbeddingQuantizer quantizer, byte[] code) {
+        float[] restored = new float[DIMENSION];
+        float[] unit = new float[DIMENSION];
+        for (int i = 0; i < DIMENSION; i++) {
+            unit[i] = 1f;
+            restored[i] = quantizer.scorer(unit).score(code, 0);
+            unit[i] = 0f;
+        }
+        return restored;
+    }
+
+    private static byte[] encodeAll(EmbeddingQuantizer quantizer, float[] rows, int count) {
+        byte[] codes = new byte[count * quantizer.getCodeSize()];
+        for (int row = 0; row < count; row++) {
+            quantizer.encode(rows, row * DIMENSION, codes, row * quantizer.getCodeSize());
+        }
+        return codes;
+    }
+
+    private static double dot(float[] query, float[] rows, int row) {
+        double sum = 0;
+        for (int i = 0; i < DIMENSION; i++) {
+            sum += query[i] * rows[row * DIMENSION + i];
+        }
+        return sum;
+    }
+}
@@ -0,0 +1,150 @@
+package com.myapp.ml.gallery;
+
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ShardProtocolTest {
+
+    @Test
+    public void requestRoundTrip() throws IOException {
+        float[] query = {0.25f, -1.5f, 3.0f, Float.MIN_VALUE};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardProtocol.writeRequest(new DataOutputStream(bytes), new float[][] {query}, "facenet-v2", 42, 5);
+
+        ShardProtocol.Request request = ShardProtocol.readRequest(input(bytes));
+        assertEquals(1, request.queries.length);
+        assertArrayEquals(query, request.queries[0], 0f);
+        assertEquals("facenet-v2", request.model);
+        assertEquals(Integer.valueOf(42), request.courseId);
+        assertEquals(5, request.k);
+    }
+
+    @Test
+    public void requestWithoutCourse() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardProtocol.writeRequest(new DataOutputStream(bytes), new float[][] {{1f}}, "facenet", null, 1);
+
+        assertNull(ShardProtocol.readRequest(input(bytes)).courseId);
+    }
+
+    @Test
+    public void batchRequestKeepsQueryOrder() throws IOException {
+        float[][] queries = {{1f, 2f}, {3f, 4f}, {5f, 6f}};
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardProtocol.writeRequest(new DataOutputStream(bytes), queries, "facenet", 3, 2);
+
+        ShardProtocol.Request request = ShardProtocol.readRequest(input(bytes));
+        assertEquals(queries.length, request.queries.length);
+        for (int i = 0; i < queries.length; i++) {
+            assertArrayEquals(queries[i], request.queries[i], 0f);
+        }
+    }
+
+    @Test
+    public void batchResponseRoundTrip() throws IOException {
+        List<GalleryMatch> first = Collections.singletonList(new GalleryMatch(5, 0.8));
+        List<GalleryMatch> second = Arrays.asList(new GalleryMatch(9, 0.5), new GalleryMatch(2, 0.4));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardProtocol.writeResponse(new DataOutputStream(bytes), Arrays.asList(
+            new ShardMatches(first, null, "facenet"), new ShardMatches(Collections.emptyList(), second, "facenet")));
+
+        List<ShardMatches> decoded = ShardProtocol.readResponse(input(bytes), 2);
+        assertMatches(first, decoded.get(0).getCourseMatches());
+        assertNull(decoded.get(0).getGlobalMatches());
+        assertMatches(second, decoded.get(1).getGlobalMatches());
+        assertEquals("facenet", decoded.get(1).getModelTag());
+    }
+
+    @Test
+    public void responseRoundTrip() throws IOException {
+        List<GalleryMatch> course = Arrays.asList(new GalleryMatch(7, 0.91), new GalleryMatch(3, 0.42));
+        List<GalleryMatch> global = Collections.singletonList(new GalleryMatch(11, 0.66));
+        ShardMatches decoded = roundTrip(new ShardMatches(course, global, "facenet-v2"));
+
+        assertEquals("facenet-v2", decoded.getModelTag());
+        assertMatches(course, decoded.getCourseMatches());
+        assertMatches(global, decoded.getGlobalMatches());
+    }
+
+    @Test
+    public void skippedGlobalSearchStaysNull() throws IOException {
+        List<GalleryMatch> course = Collections.singletonList(new GalleryMatch(1, 0.8));
+        ShardMatches decoded = roundTrip(new ShardMatches(course, null, "facenet"));
+
+        assertMatches(course, decoded.getCourseMatches());
+        assertNull(decoded.getGlobalMatches());
+    }
+
+    @Test
+    public void unknownModelTagStaysNull() throws IOException {
+        assertNull(roundTrip(ShardMatches.empty(null)).getModelTag());
+    }
+
+    @Test
+    public void errorResponseIsRaised() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardProtocol.writeError(new DataOutputStream(bytes), "gallery unavailable");
+        try {
+            ShardProtocol.readResponse(input(bytes), 1);
+            fail("Expected the shard error");
+        } catch (IOException e) {
+            assertTrue(e.getMessage().contains("gallery unavailable"));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedRequestIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF("facenet");
+        out.writeInt(ShardProtocol.NO_COURSE);
+        out.writeInt(1);
+        out.writeInt(1);
+        out.writeInt(1 << 20);
+        ShardProtocol.readRequest(input(bytes));
+    }
+
+    @Test(expected = IOException.class)
+    public void oversizedBatchIsRejected() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeUTF("facenet");
+        out.writeInt(ShardProtocol.NO_COURSE);
+        out.writeInt(1);
+        out.writeInt(ShardProtocol.MAX_QUERIES + 1);
+        out.writeInt(4);
+        ShardProtocol.readRequest(input(bytes));
+    }
+
+    private static ShardMatches roundTrip(ShardMatches matches) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        ShardProtocol.writeResponse(new DataOutputStream(bytes), Collections.singletonList(matches));
+        return ShardProtocol.readResponse(input(bytes), 1).get(0);
+    }
+
+    private static DataInputStream input(ByteArrayOutputStream bytes) {
+        return new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    private static void assertMatches(List<GalleryMatch> expected, List<GalleryMatch> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertEquals(expected.get(i).getStudentId(), actual.get(i).getStudentId());
+            assertEquals(expected.get(i).getScore(), actual.get(i).getScore(), 0.0);
+        }
+    }
+}
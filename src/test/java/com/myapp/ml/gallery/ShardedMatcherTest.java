@@ -0,0 +1,166 @@
+package com.myapp.ml.gallery;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Merging of shard answers: best matches across shards, answers of a
+ * shard still serving another embedding model left out, one request per
+ * shard for a batch, and partial results logged only when they change
+ */
+public class ShardedMatcherTest {
+    private static final float[] QUERY = {1f, 0f};
+
+    private ShardedMatcher matcher;
+
+    @After
+    public void tearDown() {
+        if (matcher != null) {
+            matcher.close();
+        }
+    }
+
+    @Test
+    public void mergesTheBestMatchesOfEveryShard() throws Exception {
+        matcher = new ShardedMatcher(Arrays.asList(
+            shard("a", "v2", new GalleryMatch(1, 0.9), new GalleryMatch(2, 0.5)),
+            shard("b", "v2", new GalleryMatch(3, 0.7))), 1000, 1000);
+
+        ShardMatches merged = matcher.search(QUERY, "v2", null, 2);
+        assertEquals("v2", merged.getModelTag());
+        assertIds(merged.getGlobalMatches(), 1, 3);
+    }
+
+    @Test
+    public void dropsShardsServingAnotherModel() throws Exception {
+        matcher = new ShardedMatcher(Arrays.asList(
+            shard("a", "v2", new GalleryMatch(1, 0.6)),
+            shard("b", "v1", new GalleryMatch(3, 0.95))), 1000, 1000);
+
+        ShardMatches merged = matcher.search(QUERY, "v2", null, 2);
+        assertIds(merged.getGlobalMatches(), 1);
+    }
+
+    @Test
+    public void batchKeepsQueryOrderAndDropsStaleShards() throws Exception {
+        matcher = new ShardedMatcher(Arrays.asList(
+            shard("a", "v2", new GalleryMatch(1, 0.6)),
+            shard("b", "v1", new GalleryMatch(3, 0.95))), 1000, 1000);
+
+        List<ShardMatches> results = matcher.searchBatch(new float[][] {QUERY, null, QUERY}, "v2", null, 1);
+        assertEquals(3, results.size());
+        assertIds(results.get(0).getGlobalMatches(), 1);
+        assertIds(results.get(1).getGlobalMatches());
+        assertIds(results.get(2).getGlobalMatches(), 1);
+    }
+
+    @Test
+    public void batchSendsOneRequestPerShard() throws Exception {
+        FixedShard a = (FixedShard) shard("a", "v2", new GalleryMatch(1, 0.6));
+        FixedShard b = (FixedShard) shard("b", "v2", new GalleryMatch(2, 0.7));
+        matcher = new ShardedMatcher(Arrays.asList(a, b), 1000, 1000);
+
+        List<ShardMatches> results = matcher.searchBatch(new float[][] {QUERY, QUERY, QUERY}, "v2", null, 1);
+        assertEquals(3, results.size());
+        assertEquals(1, a.batches.get());
+        assertEquals(1, b.batches.get());
+        assertEquals(0, a.searches.get() + b.searches.get());
+    }
+
+    @Test
+    public void partialResultsAreLoggedOnlyWhenTheyChange() throws Exception {
+        GalleryShard failing = new FixedShard("dead", null);
+        matcher = new ShardedMatcher(Arrays.asList(shard("a", "v2", new GalleryMatch(1, 0.6)), failing), 1000, 0);
+
+        PrintStream stderr = System.err;
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        System.setErr(new PrintStream(captured, true));
+        try {
+            for (int i = 0; i < 20; i++) {
+                assertIds(matcher.search(QUERY, "v2", null, 1).getGlobalMatches(), 1);
+            }
+        } finally {
+            System.setErr(stderr);
+        }
+        String log = captured.toString();
+        assertEquals(1, log.split("Partial matches", -1).length - 1);
+    }
+
+    @Test
+    public void courseHitSkipsTheGlobalMatches() throws Exception {
+        GalleryShard course = new FixedShard("a", new ShardMatches(
+            Collections.singletonList(new GalleryMatch(4, 0.9)), null, "v2"));
+        matcher = new ShardedMatcher(Collections.singletonList(course), 1000, 1000);
+
+        ShardMatches merged = matcher.search(QUERY, "v2", 7, 1);
+        assertIds(merged.getCourseMatches(), 4);
+        assertNull(merged.getGlobalMatches());
+    }
+
+    private static GalleryShard shard(String name, String model, GalleryMatch... global) {
+        return new FixedShard(name, new ShardMatches(Collections.emptyList(), Arrays.asList(global), model));
+    }
+
+    private static void assertIds(List<GalleryMatch> matches, int... ids) {
+        assertEquals(ids.length, matches.size());
+        for (int i = 0; i < ids.length; i++) {
+            assertEquals(ids[i], matches.get(i).getStudentId());
+        }
+    }
+
+    /**
+     * Shard answering every query with the same matches (failing when null)
+     */
+    private static class FixedShard implements GalleryShard {
+        private final String name;
+        private final ShardMatches answer;
+        final AtomicInteger searches = new AtomicInteger();
+        final AtomicInteger batches = new AtomicInteger();
+
+        FixedShard(String name, ShardMatches answer) {
+            this.name = name;
+            this.answer = answer;
+        }
+
+        @Override
+        public ShardMatches search(float[] query, String model, Integer courseId, int k) throws IOException {
+            searches.incrementAndGet();
+            return answer();
+        }
+
+        @Override
+        public List<ShardMatches> searchBatch(float[][] queries, String model, Integer courseId, int k)
+                throws IOException {
+            batches.incrementAndGet();
+            List<ShardMatches> answers = new ArrayList<>();
+            for (float[] query : queries) {
+                answers.add(query != null ? answer() : ShardMatches.empty(model));
+            }
+            return answers;
+        }
+
+        private ShardMatches answer() throws IOException {
+            if (answer == null) {
+                throw new IOException("connection refused");
+            }
+            return answer;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+    }
+}
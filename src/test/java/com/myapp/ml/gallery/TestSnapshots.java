@@ -0,0 +1,37 @@
+package com.myapp.ml.gallery;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds gallery snapshots from packed rows without a database
+ */
+final class TestSnapshots {
+
+    private TestSnapshots() {
+    }
+
+    /**
+     * Students 0..students-1, each owning the next perStudent rows, spread
+     * round-robin over the given number of courses
+     */
+    static EmbeddingGallery.Snapshot of(float[] rows, int students, int perStudent, int dimension, int courses) {
+        Map<Integer, EmbeddingGallery.StudentEmbeddings> entries = new HashMap<>();
+        Map<Integer, float[]> loadedRows = new HashMap<>();
+        for (int s = 0; s < students; s++) {
+            float[] studentRows = Arrays.copyOfRange(rows, s * perStudent * dimension,
+                                                     (s + 1) * perStudent * dimension);
+            float[] centroid = new float[dimension];
+            for (int r = 0; r < perStudent; r++) {
+                for (int i = 0; i < dimension; i++) {
+                    centroid[i] += studentRows[r * dimension + i] / perStudent;
+                }
+            }
+            entries.put(s, new EmbeddingGallery.StudentEmbeddings(s, s % courses, dimension, perStudent,
+                                                                  centroid, perStudent, null));
+            loadedRows.put(s, studentRows);
+        }
+        return EmbeddingGallery.Snapshot.build(entries, loadedRows, null, null);
+    }
+}
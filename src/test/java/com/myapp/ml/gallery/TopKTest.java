@@ -0,0 +1,82 @@
+package com.myapp.ml.gallery;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+public class TopKTest {
+
+    @Test
+    public void keepsBestScoresInDescendingOrder() {
+        TopK topK = new TopK(3);
+        topK.offer(1, 0.2);
+        topK.offer(2, 0.9);
+        topK.offer(3, 0.5);
+        topK.offer(4, 0.7);
+        topK.offer(5, 0.1);
+
+        List<GalleryMatch> matches = topK.toMatches();
+        assertEquals(3, matches.size());
+        assertEquals(2, matches.get(0).getStudentId());
+        assertEquals(4, matches.get(1).getStudentId());
+        assertEquals(3, matches.get(2).getStudentId());
+        assertEquals(0.5, topK.threshold(), 0.0);
+    }
+
+    @Test
+    public void rejectsScoresNotAboveThresholdOnceFull() {
+        TopK topK = new TopK(2);
+        assertTrue(topK.offer(1, 0.5));
+        assertEquals(Double.NEGATIVE_INFINITY, topK.threshold(), 0.0);
+        assertTrue(topK.offer(2, 0.6));
+        assertFalse(topK.offer(3, 0.5));
+        assertFalse(topK.offer(4, 0.1));
+        assertTrue(topK.offer(5, 0.55));
+        assertEquals(5, topK.idAt(1));
+    }
+
+    @Test
+    public void matchesSortedScanOfRandomScores() {
+        Random random = new Random(7);
+        double[] scores = new double[500];
+        TopK topK = new TopK(10);
+        for (int id = 0; id < scores.length; id++) {
+            scores[id] = random.nextDouble();
+            topK.offer(id, scores[id]);
+        }
+
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        for (int i = 0; i < topK.size(); i++) {
+            assertEquals(sorted[sorted.length - 1 - i], topK.scoreAt(i), 0.0);
+            assertEquals(sorted[sorted.length - 1 - i], scores[topK.idAt(i)], 0.0);
+        }
+    }
+
+    @Test
+    public void mergeCombinesPartialResults() {
+        TopK left = new TopK(3);
+        TopK right = new TopK(3);
+        left.offer(1, 0.9);
+        left.offer(2, 0.3);
+        right.offer(3, 0.8);
+        right.offer(4, 0.4);
+        left.merge(right);
+
+        assertEquals(3, left.size());
+        assertEquals(1, left.idAt(0));
+        assertEquals(3, left.idAt(1));
+        assertEquals(4, left.idAt(2));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsEmptyCapacity() {
+        new TopK(0);
+    }
+}